@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.service;
+
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import android.content.ComponentName;
+import android.content.Context;
+
+import androidx.collection.LongSparseArray;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
+import org.sufficientlysecure.keychain.operations.results.PgpEditKeyResult;
+import org.sufficientlysecure.keychain.pgp.PgpKeyOperation;
+import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.pgp.UncachedPublicKey;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.Algorithm;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.Curve;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.SubkeyAdd;
+import org.sufficientlysecure.keychain.util.Passphrase;
+import timber.log.Timber;
+
+
+/**
+ * Looks up cached passphrases from the instrumentation process, so every lookup crosses the
+ * boundary to the :passphrase_cache process like it does for operations in the app.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PassphraseCacheProcessTest {
+    private static final int ITERATIONS = 200;
+
+    private Context context;
+    private KeyWritableRepository keyRepository;
+    private Passphrase passphrase;
+    private long masterKeyId;
+    private long[] masterKeyIds;
+    private long[] subKeyIds;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        keyRepository = KeyWritableRepository.create(context);
+        passphrase = new Passphrase("process test");
+
+        SaveKeyringParcel.Builder builder = SaveKeyringParcel.buildNewKeyringParcel();
+        builder.addSubkeyAdd(SubkeyAdd.createSubkeyAdd(
+                Algorithm.ECDSA, 0, Curve.NIST_P256, KeyFlags.CERTIFY_OTHER, 0L));
+        builder.addSubkeyAdd(SubkeyAdd.createSubkeyAdd(
+                Algorithm.ECDSA, 0, Curve.NIST_P256, KeyFlags.SIGN_DATA, 0L));
+        builder.addSubkeyAdd(SubkeyAdd.createSubkeyAdd(
+                Algorithm.ECDH, 0, Curve.NIST_P256, KeyFlags.ENCRYPT_COMMS | KeyFlags.ENCRYPT_STORAGE, 0L));
+        builder.addUserId("passphrase cache process test");
+        builder.setNewUnlock(ChangeUnlockParcel.createUnLockParcelForNewKey(passphrase));
+        PgpEditKeyResult result = new PgpKeyOperation(null).createSecretKeyRing(builder.build());
+        Assert.assertTrue("test key creation must succeed", result.success());
+
+        UncachedKeyRing ring = result.getRing();
+        Assert.assertTrue(keyRepository.saveSecretKeyRing(ring).success());
+        masterKeyId = ring.getMasterKeyId();
+
+        ArrayList<Long> keyIds = new ArrayList<>();
+        for (Iterator<UncachedPublicKey> it = ring.getPublicKeys(); it.hasNext(); ) {
+            keyIds.add(it.next().getKeyId());
+        }
+        masterKeyIds = new long[keyIds.size()];
+        subKeyIds = new long[keyIds.size()];
+        for (int i = 0; i < keyIds.size(); i++) {
+            masterKeyIds[i] = masterKeyId;
+            subKeyIds[i] = keyIds.get(i);
+        }
+
+        PassphraseCacheService.addCachedPassphrase(context, masterKeyId, masterKeyId, passphrase,
+                "passphrase cache process test", Integer.MAX_VALUE);
+        // the passphrase is added asynchronously
+        for (int i = 0; i < 50; i++) {
+            if (PassphraseCacheService.getCachedPassphrase(context, masterKeyId, masterKeyId) != null) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        PassphraseCacheService.clearCachedPassphrase(context, masterKeyId, masterKeyId);
+        keyRepository.deleteKeyRing(masterKeyId);
+    }
+
+    @Test
+    public void testServiceRunsInOwnProcess() throws Exception {
+        String processName = context.getPackageManager().getServiceInfo(
+                new ComponentName(context, PassphraseCacheService.class), 0).processName;
+        Assert.assertNotEquals("service must run in a process of its own",
+                context.getApplicationInfo().processName, processName);
+    }
+
+    @Test
+    public void testBatchedLookup() throws Exception {
+        LongSparseArray<Passphrase> result = PassphraseCacheService.getCachedPassphrases(context, masterKeyIds, subKeyIds);
+
+        Assert.assertEquals("all keys must be in the result", subKeyIds.length, result.size());
+        for (long subKeyId : subKeyIds) {
+            Assert.assertEquals("cached passphrase must be returned for every key", passphrase, result.get(subKeyId));
+        }
+    }
+
+    @Test
+    public void testLookupBenchmark() throws Exception {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int j = 0; j < subKeyIds.length; j++) {
+                Assert.assertEquals(passphrase,
+                        PassphraseCacheService.getCachedPassphrase(context, masterKeyIds[j], subKeyIds[j]));
+            }
+        }
+        long singleNanos = (System.nanoTime() - startTime) / ITERATIONS;
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            LongSparseArray<Passphrase> result =
+                    PassphraseCacheService.getCachedPassphrases(context, masterKeyIds, subKeyIds);
+            Assert.assertEquals(subKeyIds.length, result.size());
+        }
+        long batchedNanos = (System.nanoTime() - startTime) / ITERATIONS;
+
+        Timber.d("passphrase cache lookup of %d keys across processes: one by one %d µs, batched %d µs",
+                subKeyIds.length, singleNanos / 1000, batchedNanos / 1000);
+    }
+}
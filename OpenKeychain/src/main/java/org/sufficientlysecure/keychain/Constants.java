@@ -110,6 +110,8 @@ public final class Constants {
 
     public static final class Pref {
         public static final String PASSPHRASE_CACHE_SUBS = "passphraseCacheSubs";
+        public static final String PASSPHRASE_CACHE_SESSION_KEYS = "passphraseCacheSessionKeys";
+        public static final String SSH_AGENT_SESSION_TIMEOUT = "sshAgentSessionTimeout";
         public static final String PASSPHRASE_CACHE_LAST_TTL = "passphraseCacheLastTtl";
         public static final String LANGUAGE = "language";
         public static final String KEY_SERVERS = "keyServers";
@@ -145,6 +147,8 @@ public final class Constants {
         public static final String EXPERIMENTAL_SMARTPGP_AUTHORITIES = "smartpgp_authorities";
 
         public static final String KEY_SIGNATURES_TABLE_INITIALIZED = "key_signatures_table_initialized";
+        public static final String TRUST_UPDATE_PENDING_SIGNERS = "trust_update_pending_signers";
+        public static final String TRUST_UPDATE_RESUME_AFTER = "trust_update_resume_after";
 
         public static final class Theme {
             public static final String AUTO = "auto";
@@ -48,7 +48,7 @@ import timber.log.Timber;
  */
 public class KeychainDatabase {
     private static final String DATABASE_NAME = "openkeychain.db";
-    private static final int DATABASE_VERSION = 36;
+    private static final int DATABASE_VERSION = 40;
     private final SupportSQLiteOpenHelper supportSQLiteOpenHelper;
     private final Database sqldelightDatabase;
 
@@ -101,7 +101,8 @@ public class KeychainDatabase {
                         CustomColumnAdapters.GOSSIP_ORIGIN_ADAPTER),
                 new Certs.Adapter(CustomColumnAdapters.VERIFICATON_STATUS_ADAPTER),
                 new Key_metadata.Adapter(CustomColumnAdapters.DATE_ADAPTER),
-                new Keys.Adapter(CustomColumnAdapters.SECRET_KEY_TYPE_ADAPTER)
+                new Keys.Adapter(CustomColumnAdapters.SECRET_KEY_TYPE_ADAPTER),
+                new Unified_key_info.Adapter(CustomColumnAdapters.VERIFICATON_STATUS_ADAPTER)
         );
     }
 
@@ -126,9 +127,11 @@ public class KeychainDatabase {
         recreateDatabaseViews(db);
 
         db.execSQL("CREATE INDEX keys_by_rank ON keys (rank, master_key_id);");
+        db.execSQL("CREATE INDEX keys_by_key_id ON keys (key_id);");
         db.execSQL("CREATE INDEX uids_by_rank ON user_packets (rank, user_id, master_key_id);");
         db.execSQL("CREATE INDEX verified_certs ON certs (verified, master_key_id);");
         db.execSQL("CREATE INDEX uids_by_email ON user_packets (email);");
+        db.execSQL("CREATE INDEX unified_key_info_by_email ON unified_key_info (email COLLATE NOCASE);");
 
         Preferences.getPreferences(context).setKeySignaturesTableInitialized();
     }
@@ -143,31 +146,52 @@ public class KeychainDatabase {
             case 34:
             case 35:
                 // nothing
+            case 36:
+                db.execSQL("CREATE INDEX IF NOT EXISTS keys_by_key_id ON keys (key_id);");
+            case 37:
+                db.execSQL("""
+                        CREATE TABLE IF NOT EXISTS unified_key_info (
+                            master_key_id INTEGER NOT NULL PRIMARY KEY,
+                            fingerprint BLOB NOT NULL,
+                            min_rank INTEGER,
+                            user_id TEXT,
+                            name TEXT,
+                            email TEXT,
+                            comment TEXT,
+                            creation INTEGER NOT NULL,
+                            expiry INTEGER,
+                            is_revoked INTEGER NOT NULL,
+                            is_secure INTEGER NOT NULL,
+                            can_certify INTEGER NOT NULL,
+                            verified INTEGER,
+                            has_duplicate INTEGER NOT NULL,
+                            has_any_secret INTEGER NOT NULL,
+                            has_encrypt_key INTEGER NOT NULL,
+                            has_sign_key INTEGER NOT NULL,
+                            has_auth_key INTEGER NOT NULL,
+                            autocrypt_package_names_csv TEXT,
+                            user_id_list TEXT,
+                            FOREIGN KEY(master_key_id) REFERENCES keyrings_public(master_key_id) ON DELETE CASCADE
+                        );
+                """);
+                db.execSQL("CREATE INDEX IF NOT EXISTS unified_key_info_by_email ON unified_key_info (email COLLATE NOCASE);");
+                // populate from the old view, which is dropped below
+                db.execSQL("INSERT OR REPLACE INTO unified_key_info SELECT * FROM unifiedKeyView;");
+            case 38:
+                db.execSQL("ALTER TABLE key_metadata ADD COLUMN last_merged_digest BLOB;");
+            case 39:
+                db.execSQL("ALTER TABLE key_metadata ADD COLUMN http_source TEXT;");
+                db.execSQL("ALTER TABLE key_metadata ADD COLUMN http_etag TEXT;");
+                db.execSQL("ALTER TABLE key_metadata ADD COLUMN http_last_modified TEXT;");
         }
-        // recreate the unified key view on any upgrade
+        // recreate the views on any upgrade
         recreateDatabaseViews(db);
     }
 
     private static void recreateDatabaseViews(SupportSQLiteDatabase db) {
         // for some reason those aren't created as part of the schema. so we do it here.
+        // replaced by the unified_key_info table
         db.execSQL("DROP VIEW IF EXISTS unifiedKeyView");
-        db.execSQL(
-                """
-                        CREATE VIEW unifiedKeyView AS
-                            SELECT keys.master_key_id, keys.fingerprint, MIN(user_packets.rank), user_packets.user_id, user_packets.name, user_packets.email, user_packets.comment, keys.creation, keys.expiry, keys.is_revoked, keys.is_secure, keys.can_certify, certs.verified,
-                                (EXISTS (SELECT * FROM user_packets AS dups WHERE dups.master_key_id != keys.master_key_id AND dups.rank = 0 AND dups.name = user_packets.name COLLATE NOCASE AND dups.email = user_packets.email COLLATE NOCASE )) AS has_duplicate,
-                                (EXISTS (SELECT * FROM keys AS k WHERE k.master_key_id = keys.master_key_id AND k.has_secret != 0)) AS has_any_secret,
-                                (EXISTS (SELECT * FROM keys AS k WHERE k.master_key_id = keys.master_key_id AND k.can_encrypt != 0)) AS has_encrypt_key,
-                                (EXISTS (SELECT * FROM keys AS k WHERE k.master_key_id = keys.master_key_id AND k.can_sign != 0)) AS has_sign_key,
-                                (EXISTS (SELECT * FROM keys AS k WHERE k.master_key_id = keys.master_key_id AND k.can_authenticate != 0)) AS has_auth_key,
-                                GROUP_CONCAT(DISTINCT aTI.package_name) AS autocrypt_package_names_csv,
-                                GROUP_CONCAT(user_packets.user_id, '|||') AS user_id_list
-                            FROM keys
-                                 INNER JOIN user_packets ON ( keys.master_key_id = user_packets.master_key_id AND user_packets.type IS NULL AND (user_packets.rank = 0 OR user_packets.is_revoked = 0))
-                                 LEFT JOIN certs ON ( keys.master_key_id = certs.master_key_id AND certs.verified = 1 )
-                                 LEFT JOIN autocrypt_peers AS aTI ON ( aTI.master_key_id = keys.master_key_id )
-                            WHERE keys.rank = 0
-                            GROUP BY keys.master_key_id;""");
         db.execSQL("DROP VIEW IF EXISTS validKeys");
         db.execSQL("""
                         CREATE VIEW validKeys AS
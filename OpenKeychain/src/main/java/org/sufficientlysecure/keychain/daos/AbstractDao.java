@@ -1,12 +1,17 @@
 package org.sufficientlysecure.keychain.daos;
 
 
+import java.util.List;
+
 import androidx.sqlite.db.SupportSQLiteDatabase;
 import org.sufficientlysecure.keychain.Database;
 import org.sufficientlysecure.keychain.KeychainDatabase;
 
 
 class AbstractDao {
+    // stay well below sqlite's limit on the number of bound parameters
+    static final int MAX_QUERY_PARAMETERS = 500;
+
     private final KeychainDatabase db;
     private final DatabaseNotifyManager databaseNotifyManager;
 
@@ -26,4 +31,19 @@ class AbstractDao {
     DatabaseNotifyManager getDatabaseNotifyManager() {
         return databaseNotifyManager;
     }
+
+    /**
+     * Recomputes the unified_key_info rows of the given keys from the tables they are derived from.
+     * Writes to any of those tables must call this, in the same transaction.
+     * <p>
+     * Rows are deleted first, since the refresh selects nothing for keys that no longer have a
+     * primary user id, and would otherwise leave their stale row in place.
+     */
+    void refreshUnifiedKeyInfo(List<Long> masterKeyIds) {
+        for (int i = 0; i < masterKeyIds.size(); i += MAX_QUERY_PARAMETERS) {
+            List<Long> chunk = masterKeyIds.subList(i, Math.min(i + MAX_QUERY_PARAMETERS, masterKeyIds.size()));
+            getDatabase().getKeysQueries().deleteUnifiedKeyInfo(chunk);
+            getDatabase().getKeysQueries().refreshUnifiedKeyInfo(chunk);
+        }
+    }
 }
@@ -25,6 +25,7 @@ import java.util.Set;
 
 import android.content.Context;
 
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import org.sufficientlysecure.keychain.ApiAllowedKeysQueries;
 import org.sufficientlysecure.keychain.ApiAppsQueries;
 import org.sufficientlysecure.keychain.Api_apps;
@@ -91,7 +92,20 @@ public class ApiAppDao extends AbstractDao {
     }
 
     public void deleteApiApp(String packageName) {
-        apiAppsQueries.deleteByPackageName(packageName);
+        SupportSQLiteDatabase db = getWritableDb();
+        try {
+            db.beginTransaction();
+
+            // autocrypt peers of this app are deleted on cascade
+            List<Long> autocryptMasterKeyIds = getDatabase().getAutocryptPeersQueries()
+                    .selectMasterKeyIdsByPackageName(packageName).executeAsList();
+            apiAppsQueries.deleteByPackageName(packageName);
+            refreshUnifiedKeyInfo(autocryptMasterKeyIds);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         getDatabaseNotifyManager().notifyApiAppChange(packageName);
     }
 
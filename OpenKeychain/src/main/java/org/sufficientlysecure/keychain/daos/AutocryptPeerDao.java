@@ -26,6 +26,7 @@ import java.util.List;
 import android.content.Context;
 
 import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import org.sufficientlysecure.keychain.AutocryptKeyStatus;
 import org.sufficientlysecure.keychain.AutocryptPeersQueries;
 import org.sufficientlysecure.keychain.Autocrypt_peers;
@@ -83,9 +84,24 @@ public class AutocryptPeerDao extends AbstractDao {
     public void updateKey(String packageName, String autocryptId, Date effectiveDate,
             long masterKeyId,
             boolean isMutual) {
-        ensureAutocryptPeerExists(packageName, autocryptId);
-        autocryptPeersQueries.updateKey(packageName, autocryptId, effectiveDate, masterKeyId,
-                isMutual);
+        SupportSQLiteDatabase db = getWritableDb();
+        try {
+            db.beginTransaction();
+
+            Autocrypt_peers peer = getAutocryptPeer(packageName, autocryptId);
+            ensureAutocryptPeerExists(packageName, autocryptId);
+            autocryptPeersQueries.updateKey(packageName, autocryptId, effectiveDate, masterKeyId,
+                    isMutual);
+            if (peer != null && peer.getMaster_key_id() != null && peer.getMaster_key_id() != masterKeyId) {
+                refreshUnifiedKeyInfo(Arrays.asList(peer.getMaster_key_id(), masterKeyId));
+            } else {
+                refreshUnifiedKeyInfo(Collections.singletonList(masterKeyId));
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         getDatabaseNotifyManager().notifyAutocryptUpdate(autocryptId, masterKeyId);
     }
 
@@ -103,8 +119,21 @@ public class AutocryptPeerDao extends AbstractDao {
     }
 
     public void deleteByIdentifier(String packageName, String autocryptId) {
-        Autocrypt_peers peer = getAutocryptPeer(packageName, autocryptId);
-        autocryptPeersQueries.deleteByIdentifier(packageName, autocryptId);
+        Autocrypt_peers peer;
+        SupportSQLiteDatabase db = getWritableDb();
+        try {
+            db.beginTransaction();
+
+            peer = getAutocryptPeer(packageName, autocryptId);
+            autocryptPeersQueries.deleteByIdentifier(packageName, autocryptId);
+            if (peer != null && peer.getMaster_key_id() != null) {
+                refreshUnifiedKeyInfo(Collections.singletonList(peer.getMaster_key_id()));
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         if (peer != null && peer.getMaster_key_id() != null) {
             getDatabaseNotifyManager().notifyAutocryptDelete(autocryptId, peer.getMaster_key_id());
         }
@@ -1,6 +1,8 @@
 package org.sufficientlysecure.keychain.daos;
 
 
+import java.util.Collection;
+
 import android.content.ContentResolver;
 import android.content.Context;
 import android.net.Uri;
@@ -12,6 +14,9 @@ public class DatabaseNotifyManager {
     private static final Uri URI_KEYS = Uri.parse("content://" + Constants.PROVIDER_AUTHORITY + "/keys");
     private static final Uri URI_APPS = Uri.parse("content://" + Constants.PROVIDER_AUTHORITY + "/apps");
 
+    // each notification is a binder call to every observer
+    private static final int MAX_KEY_NOTIFICATIONS = 100;
+
     private ContentResolver contentResolver;
 
     public static DatabaseNotifyManager create(Context context) {
@@ -33,6 +38,21 @@ public class DatabaseNotifyManager {
         contentResolver.notifyChange(uri, null);
     }
 
+    /**
+     * Notifies about a number of changed keys at once, each through its own uri, so observers can
+     * update only those. Past MAX_KEY_NOTIFICATIONS keys, a single notification for all keys is
+     * cheaper than one per key.
+     */
+    public void notifyKeysChange(Collection<Long> masterKeyIds) {
+        if (masterKeyIds.size() > MAX_KEY_NOTIFICATIONS) {
+            notifyAllKeysChange();
+            return;
+        }
+        for (long masterKeyId : masterKeyIds) {
+            notifyKeyChange(masterKeyId);
+        }
+    }
+
     public void notifyAutocryptDelete(String autocryptId, Long masterKeyId) {
         Uri uri = getNotifyUriMasterKeyId(masterKeyId);
         contentResolver.notifyChange(uri, null);
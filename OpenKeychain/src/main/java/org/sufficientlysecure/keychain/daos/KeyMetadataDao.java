@@ -7,9 +7,12 @@ import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
 
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import org.sufficientlysecure.keychain.KeyMetadataQueries;
 import org.sufficientlysecure.keychain.Key_metadata;
 import org.sufficientlysecure.keychain.KeychainDatabase;
+import org.sufficientlysecure.keychain.keyimport.HttpCacheValidators;
 
 
 public class KeyMetadataDao extends AbstractDao {
@@ -35,10 +38,46 @@ public class KeyMetadataDao extends AbstractDao {
     }
 
     public void renewKeyLastUpdatedTime(long masterKeyId, boolean seenOnKeyservers) {
-        queries.replaceKeyMetadata(masterKeyId, new Date(), seenOnKeyservers);
+        // update in place, to keep the other columns
+        SupportSQLiteDatabase db = getWritableDb();
+        db.beginTransaction();
+        try {
+            queries.insertKeyMetadataIfMissing(masterKeyId);
+            queries.updateLastUpdated(new Date(), seenOnKeyservers, masterKeyId);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         getDatabaseNotifyManager().notifyKeyMetadataChange(masterKeyId);
     }
 
+    /**
+     * Returns the cache validators of the last response from the given source which was merged into
+     * this key, or null if the key was modified by any other means since.
+     */
+    @Nullable
+    public HttpCacheValidators getHttpCacheValidators(long masterKeyId, String source) {
+        Key_metadata keyMetadata = getKeyMetadata(masterKeyId);
+        if (keyMetadata == null || !source.equals(keyMetadata.getHttp_source())) {
+            return null;
+        }
+        return HttpCacheValidators.create(keyMetadata.getHttp_etag(), keyMetadata.getHttp_last_modified());
+    }
+
+    /** Remembers the cache validators of a response, after its data was merged into the key. */
+    public void saveHttpCacheValidators(long masterKeyId, String source, HttpCacheValidators validators) {
+        SupportSQLiteDatabase db = getWritableDb();
+        db.beginTransaction();
+        try {
+            queries.insertKeyMetadataIfMissing(masterKeyId);
+            queries.updateHttpCacheValidators(source, validators.getETag(), validators.getLastModified(),
+                    masterKeyId);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     public List<byte[]> getFingerprintsForKeysOlderThan(long olderThan, TimeUnit timeUnit) {
         return queries.selectFingerprintsForKeysOlderThan(new Date(timeUnit.toMillis(olderThan)))
                 .executeAsList();
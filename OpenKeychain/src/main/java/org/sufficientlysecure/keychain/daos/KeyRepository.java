@@ -26,6 +26,7 @@ import java.util.List;
 import android.content.Context;
 
 import androidx.annotation.WorkerThread;
+import androidx.collection.LongSparseArray;
 import com.squareup.sqldelight.Query;
 import com.squareup.sqldelight.db.SqlCursor;
 import org.bouncycastle.bcpg.ArmoredOutputStream;
@@ -35,6 +36,7 @@ import org.sufficientlysecure.keychain.KeychainDatabase;
 import org.sufficientlysecure.keychain.Keyrings_public;
 import org.sufficientlysecure.keychain.Keys;
 import org.sufficientlysecure.keychain.KeysQueries;
+import org.sufficientlysecure.keychain.SelectMasterKeyIdsBySubkeys;
 import org.sufficientlysecure.keychain.model.UnifiedKeyInfo;
 import org.sufficientlysecure.keychain.model.UserId;
 import org.sufficientlysecure.keychain.operations.results.OperationResult.LogType;
@@ -143,6 +145,23 @@ public class KeyRepository extends AbstractDao {
         return keysQueries.selectMasterKeyIdBySubkey(subKeyId).executeAsOneOrNull();
     }
 
+    /**
+     * Returns master key ids by subkey id, for all of the given subkey ids that are in the database.
+     */
+    public LongSparseArray<Long> getMasterKeyIdsBySubkeyIds(long... subKeyIds) {
+        LongSparseArray<Long> result = new LongSparseArray<>(subKeyIds.length);
+        List<Long> subKeyIdList = getLongArrayAsList(subKeyIds);
+        // stay below sqlite's limit on the number of bound parameters
+        for (int i = 0; i < subKeyIdList.size(); i += MAX_QUERY_PARAMETERS) {
+            List<Long> chunk = subKeyIdList.subList(i, Math.min(i + MAX_QUERY_PARAMETERS, subKeyIdList.size()));
+            List<SelectMasterKeyIdsBySubkeys> rows = keysQueries.selectMasterKeyIdsBySubkeys(chunk).executeAsList();
+            for (SelectMasterKeyIdsBySubkeys row : rows) {
+                result.put(row.getKey_id(), row.getMaster_key_id());
+            }
+        }
+        return result;
+    }
+
     public UnifiedKeyInfo getUnifiedKeyInfo(long masterKeyId) {
         return keysQueries.selectUnifiedKeyInfoByMasterKeyId(masterKeyId, UnifiedKeyInfo::create).executeAsOneOrNull();
     }
@@ -153,7 +172,7 @@ public class KeyRepository extends AbstractDao {
     }
 
     public List<UnifiedKeyInfo> getUnifiedKeyInfosByMailAddress(String mailAddress) {
-        return keysQueries.selectUnifiedKeyInfoSearchMailAddress('%' + mailAddress + '%', UnifiedKeyInfo::create)
+        return keysQueries.selectUnifiedKeyInfoSearchMailAddress(mailAddress, UnifiedKeyInfo::create)
                 .executeAsList();
     }
 
@@ -161,6 +180,11 @@ public class KeyRepository extends AbstractDao {
         return keysQueries.selectAllUnifiedKeyInfo(UnifiedKeyInfo::create).executeAsList();
     }
 
+    /** Returns the master key ids of all keys, in the order of {@link #getAllUnifiedKeyInfo()}. */
+    public List<Long> getAllUnifiedKeyInfoMasterKeyIds() {
+        return keysQueries.selectAllUnifiedKeyInfoMasterKeyIds().executeAsList();
+    }
+
     public List<UnifiedKeyInfo> getAllUnifiedKeyInfoWithSecret() {
         return keysQueries.selectAllUnifiedKeyInfoWithSecret(UnifiedKeyInfo::create).executeAsList();
     }
@@ -23,23 +23,34 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 
 import android.content.Context;
+import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.collection.LongSparseArray;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 import org.openintents.openpgp.util.OpenPgpUtils;
+import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.sufficientlysecure.keychain.Certs;
+import org.sufficientlysecure.keychain.KeyMetadataQueries;
+import org.sufficientlysecure.keychain.Key_metadata;
 import org.sufficientlysecure.keychain.Key_signatures;
 import org.sufficientlysecure.keychain.KeychainDatabase;
 import org.sufficientlysecure.keychain.Keyrings_public;
 import org.sufficientlysecure.keychain.Keys;
 import org.sufficientlysecure.keychain.KeysQueries;
 import org.sufficientlysecure.keychain.R;
+import org.sufficientlysecure.keychain.SelectUserPacketsByMasterKeyId;
 import org.sufficientlysecure.keychain.User_packets;
-import org.sufficientlysecure.keychain.UtilQueries;
 import org.sufficientlysecure.keychain.daos.DatabaseBatchInteractor.BatchOp;
 import org.sufficientlysecure.keychain.model.UnifiedKeyInfo;
 import org.sufficientlysecure.keychain.operations.results.OperationResult.LogType;
@@ -54,6 +65,7 @@ import org.sufficientlysecure.keychain.pgp.CanonicalizedSecretKey;
 import org.sufficientlysecure.keychain.pgp.CanonicalizedSecretKey.SecretKeyType;
 import org.sufficientlysecure.keychain.pgp.CanonicalizedSecretKeyRing;
 import org.sufficientlysecure.keychain.pgp.KeyRing;
+import org.sufficientlysecure.keychain.pgp.PrecanonicalizedKeyRing;
 import org.sufficientlysecure.keychain.pgp.Progressable;
 import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
 import org.sufficientlysecure.keychain.pgp.UncachedPublicKey;
@@ -79,11 +91,17 @@ import timber.log.Timber;
  */
 public class KeyWritableRepository extends KeyRepository {
     private static final int MAX_CACHED_KEY_SIZE = 1024 * 50;
+    private static final int TRUST_BATCH_SIZE = 50;
 
     private final Context context;
     private final DatabaseNotifyManager databaseNotifyManager;
     private AutocryptPeerDao autocryptPeerDao;
     private DatabaseBatchInteractor databaseBatchInteractor;
+    private final TrustedKeysCache trustedKeysCache;
+
+    private boolean mBatchTransactionFailed;
+    private Set<Long> mBatchChangedMasterKeyIds;
+    private boolean mBatchTrustedKeysChanged;
 
     public static KeyWritableRepository create(Context context) {
         LocalPublicKeyStorage localPublicKeyStorage = LocalPublicKeyStorage.getInstance(context);
@@ -114,9 +132,14 @@ public class KeyWritableRepository extends KeyRepository {
         this.databaseNotifyManager = databaseNotifyManager;
         this.autocryptPeerDao = autocryptPeerDao;
         this.databaseBatchInteractor = new DatabaseBatchInteractor(getDatabase());
+        this.trustedKeysCache = TrustedKeysCache.getInstance();
     }
 
     private LongSparseArray<CanonicalizedPublicKey> getTrustedMasterKeys() {
+        return trustedKeysCache.getTrustedKeys(getDatabase(), this::loadTrustedMasterKeys);
+    }
+
+    private LongSparseArray<CanonicalizedPublicKey> loadTrustedMasterKeys() {
         LongSparseArray<CanonicalizedPublicKey> result = new LongSparseArray<>();
 
         List<UnifiedKeyInfo> unifiedKeyInfoWithSecret = getAllUnifiedKeyInfoWithSecret();
@@ -165,9 +188,12 @@ public class KeyWritableRepository extends KeyRepository {
      * This method will not delete all previous data for this masterKeyId from the database prior
      * to inserting. All public data is effectively re-inserted, secret keyrings are left deleted
      * and need to be saved externally to be preserved past the operation.
+     * <p/>
+     * The lastMergedDigest is remembered for the fast path in savePublicKeyRing, or cleared if null.
      */
     @SuppressWarnings("unchecked")
-    private int saveCanonicalizedPublicKeyRing(CanonicalizedPublicKeyRing keyRing, boolean selfCertsAreTrusted) {
+    private int saveCanonicalizedPublicKeyRing(CanonicalizedPublicKeyRing keyRing, boolean selfCertsAreTrusted,
+            @Nullable byte[] lastMergedDigest) {
 
         // start with ok result
         int result = SaveKeyringResult.SAVED_PUBLIC;
@@ -255,217 +281,15 @@ public class KeyWritableRepository extends KeyRepository {
             // get a list of owned secret keys, for verification filtering
             LongSparseArray<CanonicalizedPublicKey> trustedKeys = getTrustedMasterKeys();
 
-            // classify and order user ids. primary are moved to the front, revoked to the back,
-            // otherwise the order in the keyfile is preserved.
-            List<UserPacketItem> uids = new ArrayList<>();
-
             List<Long> signerKeyIds = new ArrayList<>();
+            List<UserPacketItem> uids = classifyUserPackets(masterKey, trustedKeys, signerKeyIds);
 
-            if (trustedKeys.size() == 0) {
-                log(LogType.MSG_IP_UID_CLASSIFYING_ZERO);
-            } else {
-                log(LogType.MSG_IP_UID_CLASSIFYING, trustedKeys.size());
-            }
-            mIndent += 1;
-            for (byte[] rawUserId : masterKey.getUnorderedRawUserIds()) {
-                String userId = Utf8Util.fromUTF8ByteArrayReplaceBadEncoding(rawUserId);
-                UserPacketItem item = new UserPacketItem();
-                uids.add(item);
-                OpenPgpUtils.UserId splitUserId = KeyRing.splitUserId(userId);
-                item.userId = userId;
-                item.name = splitUserId.name;
-                item.email = splitUserId.email;
-                item.comment = splitUserId.comment;
-                int unknownCerts = 0;
-
-                log(LogType.MSG_IP_UID_PROCESSING, userId);
-                mIndent += 1;
-                // look through signatures for this specific key
-                for (WrappedSignature cert : new IterableIterator<>(
-                        masterKey.getSignaturesForRawId(rawUserId))) {
-                    long certId = cert.getKeyId();
-                    // self signature
-                    if (certId == masterKeyId) {
-
-                        // NOTE self-certificates are already verified during canonicalization,
-                        // AND we know there is at most one cert plus at most one revocation
-                        if (!cert.isRevocation()) {
-                            item.selfCert = cert;
-                            item.isPrimary = cert.isPrimaryUserId();
-                        } else {
-                            item.selfRevocation = cert;
-                            log(LogType.MSG_IP_UID_REVOKED);
-                        }
-                        continue;
-
-                    }
-
-                    // keep a note about the issuer of this key signature
-                    if (!signerKeyIds.contains(certId)) {
-                        Key_signatures keySignature = new Key_signatures(masterKeyId, certId);
-                        operations.add(DatabaseBatchInteractor.createInsertSignerKey(keySignature));
-                        signerKeyIds.add(certId);
-                    }
-
-                    boolean isSignatureFromTrustedKey = trustedKeys.indexOfKey(certId) >= 0;
-                    if (!isSignatureFromTrustedKey) {
-                        unknownCerts += 1;
-                        continue;
-                    }
-
-                    // verify signatures from known private keys
-                    CanonicalizedPublicKey trustedKey = trustedKeys.get(certId);
-
-                    try {
-                        cert.init(trustedKey);
-                        // if it doesn't certify, leave a note and skip
-                        if (!cert.verifySignature(masterKey, rawUserId)) {
-                            log(LogType.MSG_IP_UID_CERT_BAD);
-                            continue;
-                        }
-
-                        log(cert.isRevocation()
-                                        ? LogType.MSG_IP_UID_CERT_GOOD_REVOKE
-                                        : LogType.MSG_IP_UID_CERT_GOOD,
-                                KeyFormattingUtils.convertKeyIdToHexShort(trustedKey.getKeyId())
-                        );
-
-                        // check if there is a previous certificate
-                        WrappedSignature prev = item.trustedCerts.get(cert.getKeyId());
-                        if (prev != null) {
-                            // if it's newer, skip this one
-                            if (prev.getCreationTime().after(cert.getCreationTime())) {
-                                log(LogType.MSG_IP_UID_CERT_OLD);
-                                continue;
-                            }
-                            // if the previous one was a non-revokable certification, no need to look further
-                            if (!prev.isRevocation() && !prev.isRevokable()) {
-                                log(LogType.MSG_IP_UID_CERT_NONREVOKE);
-                                continue;
-                            }
-                            log(LogType.MSG_IP_UID_CERT_NEW);
-                        }
-                        item.trustedCerts.put(cert.getKeyId(), cert);
-
-                    } catch (PgpGeneralException e) {
-                        log(LogType.MSG_IP_UID_CERT_ERROR,
-                                KeyFormattingUtils.convertKeyIdToHex(cert.getKeyId()));
-                    }
-
-                }
-
-                if (unknownCerts > 0) {
-                    log(LogType.MSG_IP_UID_CERTS_UNKNOWN, unknownCerts);
-                }
-                mIndent -= 1;
-
-            }
-            mIndent -= 1;
-
-            ArrayList<WrappedUserAttribute> userAttributes = masterKey.getUnorderedUserAttributes();
-            // Don't spam the log if there aren't even any attributes
-            if (!userAttributes.isEmpty()) {
-                log(LogType.MSG_IP_UAT_CLASSIFYING);
-            }
-
-            mIndent += 1;
-            for (WrappedUserAttribute userAttribute : userAttributes) {
-
-                UserPacketItem item = new UserPacketItem();
-                uids.add(item);
-                item.type = userAttribute.getType();
-                item.attributeData = userAttribute.getEncoded();
-
-                int unknownCerts = 0;
-
-                switch (item.type) {
-                    case WrappedUserAttribute.UAT_IMAGE:
-                        log(LogType.MSG_IP_UAT_PROCESSING_IMAGE);
-                        break;
-                    default:
-                        log(LogType.MSG_IP_UAT_PROCESSING_UNKNOWN);
-                        break;
-                }
-                mIndent += 1;
-                // look through signatures for this specific key
-                for (WrappedSignature cert : new IterableIterator<>(
-                        masterKey.getSignaturesForUserAttribute(userAttribute))) {
-                    long certId = cert.getKeyId();
-                    // self signature
-                    if (certId == masterKeyId) {
-
-                        // NOTE self-certificates are already verified during canonicalization,
-                        // AND we know there is at most one cert plus at most one revocation
-                        // AND the revocation only exists if there is no newer certification
-                        if (!cert.isRevocation()) {
-                            item.selfCert = cert;
-                        } else {
-                            item.selfRevocation = cert;
-                            log(LogType.MSG_IP_UAT_REVOKED);
-                        }
-                        continue;
-
-                    }
-
-                    // do we have a trusted key for this?
-                    if (trustedKeys.indexOfKey(certId) < 0) {
-                        unknownCerts += 1;
-                        continue;
-                    }
-
-                    // verify signatures from known private keys
-                    CanonicalizedPublicKey trustedKey = trustedKeys.get(certId);
-
-                    try {
-                        cert.init(trustedKey);
-                        // if it doesn't certify, leave a note and skip
-                        if (!cert.verifySignature(masterKey, userAttribute)) {
-                            log(LogType.MSG_IP_UAT_CERT_BAD);
-                            continue;
-                        }
-
-                        log(cert.isRevocation()
-                                        ? LogType.MSG_IP_UAT_CERT_GOOD_REVOKE
-                                        : LogType.MSG_IP_UAT_CERT_GOOD,
-                                KeyFormattingUtils.convertKeyIdToHexShort(trustedKey.getKeyId())
-                        );
-
-                        // check if there is a previous certificate
-                        WrappedSignature prev = item.trustedCerts.get(cert.getKeyId());
-                        if (prev != null) {
-                            // if it's newer, skip this one
-                            if (prev.getCreationTime().after(cert.getCreationTime())) {
-                                log(LogType.MSG_IP_UAT_CERT_OLD);
-                                continue;
-                            }
-                            // if the previous one was a non-revokable certification, no need to look further
-                            if (!prev.isRevocation() && !prev.isRevokable()) {
-                                log(LogType.MSG_IP_UAT_CERT_NONREVOKE);
-                                continue;
-                            }
-                            log(LogType.MSG_IP_UAT_CERT_NEW);
-                        }
-                        item.trustedCerts.put(cert.getKeyId(), cert);
-
-                    } catch (PgpGeneralException e) {
-                        log(LogType.MSG_IP_UAT_CERT_ERROR,
-                                KeyFormattingUtils.convertKeyIdToHex(cert.getKeyId()));
-                    }
-
-                }
-
-                if (unknownCerts > 0) {
-                    log(LogType.MSG_IP_UAT_CERTS_UNKNOWN, unknownCerts);
-                }
-                mIndent -= 1;
-
+            // keep a note about the issuers of key signatures
+            for (long signerKeyId : signerKeyIds) {
+                Key_signatures keySignature = new Key_signatures(masterKeyId, signerKeyId);
+                operations.add(DatabaseBatchInteractor.createInsertSignerKey(keySignature));
             }
-            mIndent -= 1;
 
-            log(LogType.MSG_IP_UID_REORDER);
-            // primary before regular before revoked (see UserIdItem.compareTo)
-            // this is a stable sort, so the order of keys is otherwise preserved.
-            Collections.sort(uids);
             // iterate and put into db
             for (int userIdRank = 0; userIdRank < uids.size(); userIdRank++) {
                 UserPacketItem item = uids.get(userIdRank);
@@ -488,18 +312,7 @@ public class KeyWritableRepository extends KeyRepository {
                 operations.add(buildCertOperations(masterKeyId, userIdRank, item.selfCert,
                         selfCertsAreTrusted ? VerificationStatus.VERIFIED_SECRET : VerificationStatus.VERIFIED_SELF));
 
-                // iterate over signatures
-                for (int i = 0; i < item.trustedCerts.size(); i++) {
-                    WrappedSignature sig = item.trustedCerts.valueAt(i);
-                    // if it's a revocation
-                    if (sig.isRevocation()) {
-                        // don't further process it
-                        continue;
-                    }
-                    // otherwise, build database operation
-                    operations.add(buildCertOperations(
-                            masterKeyId, userIdRank, sig, VerificationStatus.VERIFIED_SECRET));
-                }
+                addTrustedCertOperations(operations, masterKeyId, userIdRank, item);
             }
 
         } catch (IOException e) {
@@ -511,9 +324,12 @@ public class KeyWritableRepository extends KeyRepository {
         }
 
         SupportSQLiteDatabase db = getWritableDb();
+        boolean isTrustedKeyChanged = false;
         try {
             db.beginTransaction();
 
+            UnifiedKeyInfo previousKeyInfo = getUnifiedKeyInfo(masterKeyId);
+
             // delete old version of this keyRing (from database only!), which also deletes all keys and userIds on cascade
             getDatabase().getKeyRingsPublicQueries().deleteByMasterKeyId(masterKeyId);
             int deletedRows = getDatabase().getUtilQueries().selectChanges().executeAsOne().intValue();
@@ -527,24 +343,269 @@ public class KeyWritableRepository extends KeyRepository {
 
             log(LogType.MSG_IP_APPLY_BATCH);
             databaseBatchInteractor.applyBatch(operations);
+            saveLastMergedDigest(masterKeyId, lastMergedDigest);
+            refreshUnifiedKeyInfo(Collections.singletonList(masterKeyId));
+            refreshUnifiedKeyInfoDuplicates(previousKeyInfo, getUnifiedKeyInfo(masterKeyId));
             if (encodedKeyRing.length >= MAX_CACHED_KEY_SIZE) {
                 mLocalPublicKeyStorage.writePublicKey(masterKeyId, encodedKeyRing);
             }
-            databaseNotifyManager.notifyKeyChange(masterKeyId);
+            notifyKeyChange(masterKeyId);
 
             db.setTransactionSuccessful();
+            // the public part of a trusted key changed, make sure it is reloaded
+            isTrustedKeyChanged = trustedKeysCache.isTrustedKey(masterKeyId);
             log(LogType.MSG_IP_SUCCESS);
             return result;
         } catch (IOException e) {
+            mBatchTransactionFailed = true;
             log(LogType.MSG_IP_ERROR_OP_EXC);
             Timber.e(e, "OperationApplicationException during import");
             return SaveKeyringResult.RESULT_ERROR;
         } finally {
             db.endTransaction();
+            if (isTrustedKeyChanged) {
+                invalidateTrustedKeys();
+            }
         }
 
     }
 
+    /**
+     * Classifies the user ids and attributes of a keyring, verifying certifications by the given
+     * trusted keys, and sorts them in the order they are stored in. The issuers of all third-party
+     * certifications are added to signerKeyIds.
+     */
+    private List<UserPacketItem> classifyUserPackets(UncachedPublicKey masterKey,
+            LongSparseArray<CanonicalizedPublicKey> trustedKeys, List<Long> signerKeyIds) throws IOException {
+        long masterKeyId = masterKey.getKeyId();
+
+        // classify and order user ids. primary are moved to the front, revoked to the back,
+        // otherwise the order in the keyfile is preserved.
+        List<UserPacketItem> uids = new ArrayList<>();
+
+        if (trustedKeys.size() == 0) {
+            log(LogType.MSG_IP_UID_CLASSIFYING_ZERO);
+        } else {
+            log(LogType.MSG_IP_UID_CLASSIFYING, trustedKeys.size());
+        }
+        mIndent += 1;
+        for (byte[] rawUserId : masterKey.getUnorderedRawUserIds()) {
+            String userId = Utf8Util.fromUTF8ByteArrayReplaceBadEncoding(rawUserId);
+            UserPacketItem item = new UserPacketItem();
+            uids.add(item);
+            OpenPgpUtils.UserId splitUserId = KeyRing.splitUserId(userId);
+            item.userId = userId;
+            item.name = splitUserId.name;
+            item.email = splitUserId.email;
+            item.comment = splitUserId.comment;
+            int unknownCerts = 0;
+
+            log(LogType.MSG_IP_UID_PROCESSING, userId);
+            mIndent += 1;
+            // look through signatures for this specific key
+            for (WrappedSignature cert : new IterableIterator<>(
+                    masterKey.getSignaturesForRawId(rawUserId))) {
+                long certId = cert.getKeyId();
+                // self signature
+                if (certId == masterKeyId) {
+
+                    // NOTE self-certificates are already verified during canonicalization,
+                    // AND we know there is at most one cert plus at most one revocation
+                    if (!cert.isRevocation()) {
+                        item.selfCert = cert;
+                        item.isPrimary = cert.isPrimaryUserId();
+                    } else {
+                        item.selfRevocation = cert;
+                        log(LogType.MSG_IP_UID_REVOKED);
+                    }
+                    continue;
+
+                }
+
+                // keep a note about the issuer of this key signature
+                if (!signerKeyIds.contains(certId)) {
+                    signerKeyIds.add(certId);
+                }
+
+                boolean isSignatureFromTrustedKey = trustedKeys.indexOfKey(certId) >= 0;
+                if (!isSignatureFromTrustedKey) {
+                    unknownCerts += 1;
+                    continue;
+                }
+
+                // verify signatures from known private keys
+                CanonicalizedPublicKey trustedKey = trustedKeys.get(certId);
+
+                try {
+                    cert.init(trustedKey);
+                    // if it doesn't certify, leave a note and skip
+                    if (!cert.verifySignature(masterKey, rawUserId)) {
+                        log(LogType.MSG_IP_UID_CERT_BAD);
+                        continue;
+                    }
+
+                    log(cert.isRevocation()
+                                    ? LogType.MSG_IP_UID_CERT_GOOD_REVOKE
+                                    : LogType.MSG_IP_UID_CERT_GOOD,
+                            KeyFormattingUtils.convertKeyIdToHexShort(trustedKey.getKeyId())
+                    );
+
+                    // check if there is a previous certificate
+                    WrappedSignature prev = item.trustedCerts.get(cert.getKeyId());
+                    if (prev != null) {
+                        // if it's newer, skip this one
+                        if (prev.getCreationTime().after(cert.getCreationTime())) {
+                            log(LogType.MSG_IP_UID_CERT_OLD);
+                            continue;
+                        }
+                        // if the previous one was a non-revokable certification, no need to look further
+                        if (!prev.isRevocation() && !prev.isRevokable()) {
+                            log(LogType.MSG_IP_UID_CERT_NONREVOKE);
+                            continue;
+                        }
+                        log(LogType.MSG_IP_UID_CERT_NEW);
+                    }
+                    item.trustedCerts.put(cert.getKeyId(), cert);
+
+                } catch (PgpGeneralException e) {
+                    log(LogType.MSG_IP_UID_CERT_ERROR,
+                            KeyFormattingUtils.convertKeyIdToHex(cert.getKeyId()));
+                }
+
+            }
+
+            if (unknownCerts > 0) {
+                log(LogType.MSG_IP_UID_CERTS_UNKNOWN, unknownCerts);
+            }
+            mIndent -= 1;
+
+        }
+        mIndent -= 1;
+
+        ArrayList<WrappedUserAttribute> userAttributes = masterKey.getUnorderedUserAttributes();
+        // Don't spam the log if there aren't even any attributes
+        if (!userAttributes.isEmpty()) {
+            log(LogType.MSG_IP_UAT_CLASSIFYING);
+        }
+
+        mIndent += 1;
+        for (WrappedUserAttribute userAttribute : userAttributes) {
+
+            UserPacketItem item = new UserPacketItem();
+            uids.add(item);
+            item.type = userAttribute.getType();
+            item.attributeData = userAttribute.getEncoded();
+
+            int unknownCerts = 0;
+
+            switch (item.type) {
+                case WrappedUserAttribute.UAT_IMAGE:
+                    log(LogType.MSG_IP_UAT_PROCESSING_IMAGE);
+                    break;
+                default:
+                    log(LogType.MSG_IP_UAT_PROCESSING_UNKNOWN);
+                    break;
+            }
+            mIndent += 1;
+            // look through signatures for this specific key
+            for (WrappedSignature cert : new IterableIterator<>(
+                    masterKey.getSignaturesForUserAttribute(userAttribute))) {
+                long certId = cert.getKeyId();
+                // self signature
+                if (certId == masterKeyId) {
+
+                    // NOTE self-certificates are already verified during canonicalization,
+                    // AND we know there is at most one cert plus at most one revocation
+                    // AND the revocation only exists if there is no newer certification
+                    if (!cert.isRevocation()) {
+                        item.selfCert = cert;
+                    } else {
+                        item.selfRevocation = cert;
+                        log(LogType.MSG_IP_UAT_REVOKED);
+                    }
+                    continue;
+
+                }
+
+                // do we have a trusted key for this?
+                if (trustedKeys.indexOfKey(certId) < 0) {
+                    unknownCerts += 1;
+                    continue;
+                }
+
+                // verify signatures from known private keys
+                CanonicalizedPublicKey trustedKey = trustedKeys.get(certId);
+
+                try {
+                    cert.init(trustedKey);
+                    // if it doesn't certify, leave a note and skip
+                    if (!cert.verifySignature(masterKey, userAttribute)) {
+                        log(LogType.MSG_IP_UAT_CERT_BAD);
+                        continue;
+                    }
+
+                    log(cert.isRevocation()
+                                    ? LogType.MSG_IP_UAT_CERT_GOOD_REVOKE
+                                    : LogType.MSG_IP_UAT_CERT_GOOD,
+                            KeyFormattingUtils.convertKeyIdToHexShort(trustedKey.getKeyId())
+                    );
+
+                    // check if there is a previous certificate
+                    WrappedSignature prev = item.trustedCerts.get(cert.getKeyId());
+                    if (prev != null) {
+                        // if it's newer, skip this one
+                        if (prev.getCreationTime().after(cert.getCreationTime())) {
+                            log(LogType.MSG_IP_UAT_CERT_OLD);
+                            continue;
+                        }
+                        // if the previous one was a non-revokable certification, no need to look further
+                        if (!prev.isRevocation() && !prev.isRevokable()) {
+                            log(LogType.MSG_IP_UAT_CERT_NONREVOKE);
+                            continue;
+                        }
+                        log(LogType.MSG_IP_UAT_CERT_NEW);
+                    }
+                    item.trustedCerts.put(cert.getKeyId(), cert);
+
+                } catch (PgpGeneralException e) {
+                    log(LogType.MSG_IP_UAT_CERT_ERROR,
+                            KeyFormattingUtils.convertKeyIdToHex(cert.getKeyId()));
+                }
+
+            }
+
+            if (unknownCerts > 0) {
+                log(LogType.MSG_IP_UAT_CERTS_UNKNOWN, unknownCerts);
+            }
+            mIndent -= 1;
+
+        }
+        mIndent -= 1;
+
+        log(LogType.MSG_IP_UID_REORDER);
+        // primary before regular before revoked (see UserIdItem.compareTo)
+        // this is a stable sort, so the order of keys is otherwise preserved.
+        Collections.sort(uids);
+
+        return uids;
+    }
+
+    private void addTrustedCertOperations(List<BatchOp> operations, long masterKeyId, int userIdRank,
+            UserPacketItem item) {
+        // iterate over signatures
+        for (int i = 0; i < item.trustedCerts.size(); i++) {
+            WrappedSignature sig = item.trustedCerts.valueAt(i);
+            // if it's a revocation
+            if (sig.isRevocation()) {
+                // don't further process it
+                continue;
+            }
+            // otherwise, build database operation
+            operations.add(buildCertOperations(
+                    masterKeyId, userIdRank, sig, VerificationStatus.VERIFIED_SECRET));
+        }
+    }
+
     private void writeSecretKeyRing(CanonicalizedSecretKeyRing keyRing, long masterKeyId) throws IOException {
         byte[] encodedKey = keyRing.getEncoded();
         localSecretKeyStorage.writeSecretKey(masterKeyId, encodedKey);
@@ -558,16 +619,55 @@ public class KeyWritableRepository extends KeyRepository {
             Timber.e(e, "Could not delete file!");
             return false;
         }
-        autocryptPeerDao.deleteByMasterKeyId(masterKeyId);
 
-        getDatabase().getKeyRingsPublicQueries().deleteByMasterKeyId(masterKeyId);
-        int deletedRows = getDatabase().getUtilQueries().selectChanges().executeAsOne().intValue();
+        int deletedRows;
+        SupportSQLiteDatabase db = getWritableDb();
+        try {
+            db.beginTransaction();
+
+            UnifiedKeyInfo previousKeyInfo = getUnifiedKeyInfo(masterKeyId);
+            autocryptPeerDao.deleteByMasterKeyId(masterKeyId);
+
+            getDatabase().getKeyRingsPublicQueries().deleteByMasterKeyId(masterKeyId);
+            deletedRows = getDatabase().getUtilQueries().selectChanges().executeAsOne().intValue();
+            // key_metadata is not bound to the key, but what was merged into it is gone now
+            saveLastMergedDigest(masterKeyId, null);
+            refreshUnifiedKeyInfoDuplicates(previousKeyInfo, null);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
 
+        // only after the delete, so the snapshot can't be loaded again with the deleted key
+        if (trustedKeysCache.isTrustedKey(masterKeyId)) {
+            invalidateTrustedKeys();
+        }
         databaseNotifyManager.notifyKeyChange(masterKeyId);
 
         return deletedRows > 0;
     }
 
+    /**
+     * The has_duplicate flag of other keys depends on the primary user id of this one, so those
+     * are updated if it changed. The row of the key itself must already be up to date.
+     */
+    private void refreshUnifiedKeyInfoDuplicates(UnifiedKeyInfo before, UnifiedKeyInfo after) {
+        boolean isUnchanged = before != null && after != null &&
+                TextUtils.equals(before.name(), after.name()) && TextUtils.equals(before.email(), after.email());
+        if (isUnchanged) {
+            return;
+        }
+
+        KeysQueries keysQueries = getDatabase().getKeysQueries();
+        if (before != null && before.name() != null && before.email() != null) {
+            keysQueries.updateUnifiedKeyInfoHasDuplicate(before.name(), before.email());
+        }
+        if (after != null && after.name() != null && after.email() != null) {
+            keysQueries.updateUnifiedKeyInfoHasDuplicate(after.name(), after.email());
+        }
+    }
+
     private static class UserPacketItem implements Comparable<UserPacketItem> {
         Integer type;
         String userId;
@@ -630,46 +730,73 @@ public class KeyWritableRepository extends KeyRepository {
                 return SaveKeyringResult.RESULT_ERROR;
             }
 
-            {
+            SupportSQLiteDatabase db = getWritableDb();
+            try {
+                db.beginTransaction();
+
                 KeysQueries keysQueries = getDatabase().getKeysQueries();
-                UtilQueries utilQueries = getDatabase().getUtilQueries();
 
                 keysQueries.updateHasSecretByMasterKeyId(masterKeyId, SecretKeyType.GNU_DUMMY);
 
-                // then, mark exactly the keys we have available
+                // then, mark exactly the keys we have available, with one update per type
                 log(LogType.MSG_IS_IMPORTING_SUBKEYS);
                 mIndent += 1;
+                Set<Long> existingKeyIds = new HashSet<>(keysQueries.selectKeyIdsByMasterKeyId(masterKeyId).executeAsList());
+                EnumMap<SecretKeyType, List<Long>> keyIdsByType = new EnumMap<>(SecretKeyType.class);
                 for (CanonicalizedSecretKey sub : keyRing.secretKeyIterator()) {
                     long id = sub.getKeyId();
-                    SecretKeyType mode = sub.getSecretKeyTypeSuperExpensive();
-                    keysQueries.updateHasSecretByKeyId(id, mode);
-                    int upd = utilQueries.selectChanges().executeAsOne().intValue();
-                    if (upd == 1) {
-                        switch (mode) {
-                            case PASSPHRASE:
-                                log(LogType.MSG_IS_SUBKEY_OK, KeyFormattingUtils.convertKeyIdToHex(id));
-                                break;
-                            case PASSPHRASE_EMPTY:
-                                log(LogType.MSG_IS_SUBKEY_EMPTY, KeyFormattingUtils.convertKeyIdToHex(id));
-                                break;
-                            case GNU_DUMMY:
-                                log(LogType.MSG_IS_SUBKEY_STRIPPED, KeyFormattingUtils.convertKeyIdToHex(id));
-                                break;
-                            case DIVERT_TO_CARD:
-                                log(LogType.MSG_IS_SUBKEY_DIVERT, KeyFormattingUtils.convertKeyIdToHex(id));
-                                break;
-                        }
-                    } else {
+                    if (!existingKeyIds.contains(id)) {
                         log(LogType.MSG_IS_SUBKEY_NONEXISTENT, KeyFormattingUtils.convertKeyIdToHex(id));
+                        continue;
+                    }
+                    SecretKeyType mode = sub.getSecretKeyTypeSuperExpensive();
+                    List<Long> keyIds = keyIdsByType.get(mode);
+                    if (keyIds == null) {
+                        keyIds = new ArrayList<>();
+                        keyIdsByType.put(mode, keyIds);
+                    }
+                    keyIds.add(id);
+                    switch (mode) {
+                        case PASSPHRASE:
+                            log(LogType.MSG_IS_SUBKEY_OK, KeyFormattingUtils.convertKeyIdToHex(id));
+                            break;
+                        case PASSPHRASE_EMPTY:
+                            log(LogType.MSG_IS_SUBKEY_EMPTY, KeyFormattingUtils.convertKeyIdToHex(id));
+                            break;
+                        case GNU_DUMMY:
+                            log(LogType.MSG_IS_SUBKEY_STRIPPED, KeyFormattingUtils.convertKeyIdToHex(id));
+                            break;
+                        case DIVERT_TO_CARD:
+                            log(LogType.MSG_IS_SUBKEY_DIVERT, KeyFormattingUtils.convertKeyIdToHex(id));
+                            break;
+                    }
+                }
+                for (Entry<SecretKeyType, List<Long>> entry : keyIdsByType.entrySet()) {
+                    // all keys of the ring were set to GNU_DUMMY above
+                    if (entry.getKey() == SecretKeyType.GNU_DUMMY) {
+                        continue;
+                    }
+                    List<Long> keyIds = entry.getValue();
+                    // stay below sqlite's limit on the number of bound parameters
+                    for (int i = 0; i < keyIds.size(); i += MAX_QUERY_PARAMETERS) {
+                        List<Long> chunk = keyIds.subList(i, Math.min(i + MAX_QUERY_PARAMETERS, keyIds.size()));
+                        keysQueries.updateHasSecretByKeyIds(entry.getKey(), masterKeyId, chunk);
                     }
                 }
                 mIndent -= 1;
 
                 // this implicitly leaves all keys which were not in the secret key ring
                 // with has_secret = 1
+
+                refreshUnifiedKeyInfo(Collections.singletonList(masterKeyId));
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
 
-            databaseNotifyManager.notifyKeyChange(masterKeyId);
+            invalidateTrustedKeys();
+
+            notifyKeyChange(masterKeyId);
 
             log(LogType.MSG_IS_SUCCESS);
             return result;
@@ -693,6 +820,28 @@ public class KeyWritableRepository extends KeyRepository {
             ArrayList<CanonicalizedKeyRing> canKeyRings,
             boolean forceRefresh,
             boolean skipSave) {
+        return savePublicKeyRing(publicRing, null, expectedFingerprint, canKeyRings, forceRefresh, skipSave);
+    }
+
+    /**
+     * Same as above, but reuses the result of canonicalizing the keyring ahead of time in case
+     * there is no older version of it to merge with.
+     */
+    public SaveKeyringResult savePublicKeyRing(PrecanonicalizedKeyRing publicRing,
+            byte[] expectedFingerprint,
+            ArrayList<CanonicalizedKeyRing> canKeyRings,
+            boolean forceRefresh,
+            boolean skipSave) {
+        return savePublicKeyRing(publicRing.getRing(), publicRing, expectedFingerprint, canKeyRings, forceRefresh,
+                skipSave);
+    }
+
+    private SaveKeyringResult savePublicKeyRing(UncachedKeyRing publicRing,
+            PrecanonicalizedKeyRing precanonicalized,
+            byte[] expectedFingerprint,
+            ArrayList<CanonicalizedKeyRing> canKeyRings,
+            boolean forceRefresh,
+            boolean skipSave) {
 
         try {
             long masterKeyId = publicRing.getMasterKeyId();
@@ -704,6 +853,21 @@ public class KeyWritableRepository extends KeyRepository {
                 return new SaveKeyringResult(SaveKeyringResult.RESULT_ERROR, mLog, null);
             }
 
+            // Early breakout if exactly this data was merged before, merging it again can't change anything
+            byte[] mergedDigest = computeMergedDigest(publicRing);
+            if (!forceRefresh && Arrays.equals(mergedDigest, getLastMergedDigest(masterKeyId))) {
+                try {
+                    CanonicalizedPublicKeyRing storedRing = getCanonicalizedPublicKeyRing(masterKeyId);
+                    if (expectedFingerprint == null || storedRing.containsBoundSubkey(expectedFingerprint)) {
+                        if (canKeyRings != null) canKeyRings.add(storedRing);
+                        log(LogType.MSG_IP_SUCCESS_IDENTICAL);
+                        return new SaveKeyringResult(SaveKeyringResult.UPDATED, mLog, storedRing);
+                    }
+                } catch (NotFoundException e) {
+                    // the key was deleted since, fall through and save it again
+                }
+            }
+
             CanonicalizedPublicKeyRing canPublicRing;
             boolean alreadyExists = false;
 
@@ -731,6 +895,9 @@ public class KeyWritableRepository extends KeyRepository {
                 // Early breakout if nothing changed
                 if (!forceRefresh && Arrays.hashCode(publicRing.getEncoded())
                         == Arrays.hashCode(oldPublicRing.getEncoded())) {
+                    if (!skipSave) {
+                        saveLastMergedDigest(masterKeyId, mergedDigest);
+                    }
                     log(LogType.MSG_IP_SUCCESS_IDENTICAL);
                     return new SaveKeyringResult(SaveKeyringResult.UPDATED, mLog, canPublicRing);
                 }
@@ -738,7 +905,7 @@ public class KeyWritableRepository extends KeyRepository {
                 // Not an issue, just means we are dealing with a new keyring.
 
                 // Canonicalize this keyring, to assert a number of assumptions made about it.
-                canPublicRing = (CanonicalizedPublicKeyRing) publicRing.canonicalize(mLog, mIndent);
+                canPublicRing = (CanonicalizedPublicKeyRing) canonicalize(publicRing, precanonicalized);
                 if (canPublicRing == null) {
                     return new SaveKeyringResult(SaveKeyringResult.RESULT_ERROR, mLog, null);
                 }
@@ -785,7 +952,7 @@ public class KeyWritableRepository extends KeyRepository {
                 result = SaveKeyringResult.SAVED_PUBLIC
                         | (alreadyExists ? SaveKeyringResult.UPDATED : 0);
             } else {
-                result = saveCanonicalizedPublicKeyRing(canPublicRing, canSecretRing != null);
+                result = saveCanonicalizedPublicKeyRing(canPublicRing, canSecretRing != null, mergedDigest);
             }
 
             // Save the saved keyring (if any)
@@ -812,6 +979,30 @@ public class KeyWritableRepository extends KeyRepository {
         }
     }
 
+    private static byte[] computeMergedDigest(UncachedKeyRing publicRing) throws IOException {
+        byte[] encoded = publicRing.getEncoded();
+        SHA256Digest digest = new SHA256Digest();
+        digest.update(encoded, 0, encoded.length);
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+        return result;
+    }
+
+    @Nullable
+    private byte[] getLastMergedDigest(long masterKeyId) {
+        Key_metadata keyMetadata = getDatabase().getKeyMetadataQueries().selectByMasterKeyId(masterKeyId)
+                .executeAsOneOrNull();
+        return keyMetadata != null ? keyMetadata.getLast_merged_digest() : null;
+    }
+
+    private void saveLastMergedDigest(long masterKeyId, @Nullable byte[] mergedDigest) {
+        KeyMetadataQueries keyMetadataQueries = getDatabase().getKeyMetadataQueries();
+        if (mergedDigest != null) {
+            keyMetadataQueries.insertKeyMetadataIfMissing(masterKeyId);
+        }
+        keyMetadataQueries.updateLastMergedDigest(mergedDigest, masterKeyId);
+    }
+
     public SaveKeyringResult savePublicKeyRing(UncachedKeyRing publicRing, byte[] expectedFingerprint) {
         return savePublicKeyRing(publicRing, expectedFingerprint, null, false, false);
     }
@@ -832,6 +1023,23 @@ public class KeyWritableRepository extends KeyRepository {
     public SaveKeyringResult saveSecretKeyRing(UncachedKeyRing secretRing,
                                                ArrayList<CanonicalizedKeyRing> canKeyRings,
                                                boolean skipSave) {
+        return saveSecretKeyRing(secretRing, null, canKeyRings, skipSave);
+    }
+
+    /**
+     * Same as above, but reuses the result of canonicalizing the keyring ahead of time in case
+     * there is no older version of it to merge with.
+     */
+    public SaveKeyringResult saveSecretKeyRing(PrecanonicalizedKeyRing secretRing,
+                                               ArrayList<CanonicalizedKeyRing> canKeyRings,
+                                               boolean skipSave) {
+        return saveSecretKeyRing(secretRing.getRing(), secretRing, canKeyRings, skipSave);
+    }
+
+    private SaveKeyringResult saveSecretKeyRing(UncachedKeyRing secretRing,
+                                                PrecanonicalizedKeyRing precanonicalized,
+                                                ArrayList<CanonicalizedKeyRing> canKeyRings,
+                                                boolean skipSave) {
 
         try {
             long masterKeyId = secretRing.getMasterKeyId();
@@ -880,7 +1088,7 @@ public class KeyWritableRepository extends KeyRepository {
 
                 // Canonicalize this keyring, to assert a number of assumptions made about it.
                 // This is a safe cast, because we made sure this is a secret ring above
-                canSecretRing = (CanonicalizedSecretKeyRing) secretRing.canonicalize(mLog, mIndent);
+                canSecretRing = (CanonicalizedSecretKeyRing) canonicalize(secretRing, precanonicalized);
                 if (canSecretRing == null) {
 
                     // Special case: If keyring canonicalization failed, try again after adding
@@ -929,7 +1137,8 @@ public class KeyWritableRepository extends KeyRepository {
                 // skip save method, set fixed result
                 publicResult = SaveKeyringResult.SAVED_PUBLIC;
             } else {
-                publicResult = saveCanonicalizedPublicKeyRing(canPublicRing, true);
+                // the stored data is no longer just a merge of public data
+                publicResult = saveCanonicalizedPublicKeyRing(canPublicRing, true, null);
             }
 
             if ((publicResult & SaveKeyringResult.RESULT_ERROR) == SaveKeyringResult.RESULT_ERROR) {
@@ -958,6 +1167,89 @@ public class KeyWritableRepository extends KeyRepository {
         return saveSecretKeyRing(secretRing, null, false);
     }
 
+    private CanonicalizedKeyRing canonicalize(UncachedKeyRing keyRing, PrecanonicalizedKeyRing precanonicalized) {
+        if (precanonicalized != null && precanonicalized.getRing() == keyRing) {
+            return precanonicalized.replay(mLog, mIndent);
+        }
+        return keyRing.canonicalize(mLog, mIndent);
+    }
+
+    /**
+     * Starts a transaction spanning several of the save methods above, so their writes are
+     * committed together. Every call must be followed by {@link #endBatchTransaction()}.
+     */
+    public void beginBatchTransaction() {
+        mBatchTransactionFailed = false;
+        mBatchChangedMasterKeyIds = new HashSet<>();
+        mBatchTrustedKeysChanged = false;
+        getWritableDb().beginTransaction();
+    }
+
+    /**
+     * Commits the transaction started by {@link #beginBatchTransaction()}, and sends a single
+     * change notification for all keys saved in it. If one of the saves failed inside its own
+     * part of the transaction, the whole batch is rolled back, so none of the keyrings saved
+     * since are persisted. Returns false in that case.
+     */
+    public boolean endBatchTransaction() {
+        SupportSQLiteDatabase db = getWritableDb();
+        if (!mBatchTransactionFailed) {
+            db.setTransactionSuccessful();
+        }
+        db.endTransaction();
+
+        Set<Long> changedMasterKeyIds = mBatchChangedMasterKeyIds;
+        mBatchChangedMasterKeyIds = null;
+        if (mBatchTrustedKeysChanged) {
+            mBatchTrustedKeysChanged = false;
+            trustedKeysCache.invalidate();
+        }
+        if (!mBatchTransactionFailed) {
+            databaseNotifyManager.notifyKeysChange(changedMasterKeyIds);
+        }
+        return !mBatchTransactionFailed;
+    }
+
+    /**
+     * Rolls back the transaction started by {@link #beginBatchTransaction()}, instead of ending it.
+     * This is for batches which were interrupted by an exception, and must not commit the part
+     * that did run.
+     */
+    public void rollbackBatchTransaction() {
+        mBatchTransactionFailed = true;
+        endBatchTransaction();
+    }
+
+    /**
+     * Invalidates the trusted keys snapshot, or defers it to the end of the batch transaction if
+     * there is one. A snapshot loaded before the commit would still contain the old keys.
+     */
+    private void invalidateTrustedKeys() {
+        if (mBatchChangedMasterKeyIds != null) {
+            mBatchTrustedKeysChanged = true;
+        } else {
+            trustedKeysCache.invalidate();
+        }
+    }
+
+    /** Notifies about a changed key, or defers it to the end of the batch transaction if there is one. */
+    private void notifyKeyChange(long masterKeyId) {
+        if (mBatchChangedMasterKeyIds != null) {
+            mBatchChangedMasterKeyIds.add(masterKeyId);
+        } else {
+            databaseNotifyManager.notifyKeyChange(masterKeyId);
+        }
+    }
+
+    /**
+     * Updates the verification status of certifications on keys signed by any of the given keys,
+     * after the secret part of those was imported or deleted. Only certifications by trusted keys
+     * are verified, and the certs of each key are replaced in place unless that changes the order
+     * of its user ids, in which case the key is saved anew.
+     * <p>
+     * Keys are processed in order of their master key id, and the progress is saved after each
+     * batch. An update which is interrupted is resumed by the next call of this method.
+     */
     @NonNull
     public UpdateTrustResult updateTrustDb(List<Long> signerMasterKeyIds, Progressable progress) {
         OperationLog log = new OperationLog();
@@ -967,12 +1259,27 @@ public class KeyWritableRepository extends KeyRepository {
         Preferences preferences = Preferences.getPreferences(context);
         boolean isTrustDbInitialized = preferences.isKeySignaturesTableInitialized();
 
-        List<Long> masterKeyIds;
+        // include the signers of an earlier update that didn't finish. we can skip the keys it
+        // already processed, unless there are new signers which might affect those as well.
+        Set<Long> pendingSignerIds = preferences.getPendingTrustUpdateSigners();
+        Long resumeAfterMasterKeyId = preferences.getPendingTrustUpdateResumeAfter();
+        if (isTrustDbInitialized && !pendingSignerIds.containsAll(signerMasterKeyIds)) {
+            resumeAfterMasterKeyId = null;
+        }
+        pendingSignerIds.addAll(signerMasterKeyIds);
+        preferences.setPendingTrustUpdate(pendingSignerIds, resumeAfterMasterKeyId);
+
+        TreeSet<Long> masterKeyIds;
         if (!isTrustDbInitialized) {
             log.add(LogType.MSG_TRUST_INITIALIZE, 1);
-            masterKeyIds = getAllMasterKeyIds();
+            masterKeyIds = new TreeSet<>(getAllMasterKeyIds());
+        } else if (pendingSignerIds.isEmpty()) {
+            masterKeyIds = new TreeSet<>();
         } else {
-            masterKeyIds = getMasterKeyIdsBySigner(signerMasterKeyIds);
+            masterKeyIds = new TreeSet<>(getMasterKeyIdsBySigner(new ArrayList<>(pendingSignerIds)));
+        }
+        if (resumeAfterMasterKeyId != null) {
+            masterKeyIds = new TreeSet<>(masterKeyIds.tailSet(resumeAfterMasterKeyId, false));
         }
 
         int totalKeys = masterKeyIds.size();
@@ -985,30 +1292,130 @@ public class KeyWritableRepository extends KeyRepository {
             log.add(LogType.MSG_TRUST_COUNT, 1, totalKeys);
         }
 
-        for (long masterKeyId : masterKeyIds) {
+        List<Long> sortedMasterKeyIds = new ArrayList<>(masterKeyIds);
+        for (int i = 0; i < totalKeys; i += TRUST_BATCH_SIZE) {
+            List<Long> batch = sortedMasterKeyIds.subList(i, Math.min(i + TRUST_BATCH_SIZE, totalKeys));
+            List<SaveKeyringResult> results = new ArrayList<>(batch.size());
+            LongSparseArray<CanonicalizedPublicKey> trustedKeys = getTrustedMasterKeys();
             try {
-                log.add(LogType.MSG_TRUST_KEY, 1, KeyFormattingUtils.beautifyKeyId(masterKeyId));
-
-                byte[] pubKeyData = loadPublicKeyRingData(masterKeyId);
-                UncachedKeyRing uncachedKeyRing = UncachedKeyRing.decodeFromData(pubKeyData);
-
-                clearLog();
-                SaveKeyringResult result = savePublicKeyRing(uncachedKeyRing, true);
+                boolean committed = false;
+                boolean completed = false;
+                beginBatchTransaction();
+                try {
+                    for (long masterKeyId : batch) {
+                        results.add(updateTrust(masterKeyId, trustedKeys));
+                    }
+                    completed = true;
+                } finally {
+                    if (completed) {
+                        committed = endBatchTransaction();
+                    } else {
+                        rollbackBatchTransaction();
+                    }
+                }
 
-                log.add(result, 1);
-                progress.setProgress(processedKeys++, totalKeys);
+                // one failed save rolls back the whole batch, so do this one key at a time
+                if (!committed) {
+                    results.clear();
+                    for (long masterKeyId : batch) {
+                        results.add(updateTrust(masterKeyId, trustedKeys));
+                    }
+                }
             } catch (NotFoundException | PgpGeneralException | IOException e) {
                 Timber.e(e, "Error updating trust database");
                 return new UpdateTrustResult(UpdateTrustResult.RESULT_ERROR, log);
             }
+            preferences.setPendingTrustUpdate(pendingSignerIds, batch.get(batch.size() - 1));
+
+            for (int j = 0; j < batch.size(); j++) {
+                log.add(LogType.MSG_TRUST_KEY, 1, KeyFormattingUtils.beautifyKeyId(batch.get(j)));
+                if (results.get(j) != null) {
+                    log.add(results.get(j), 1);
+                }
+                progress.setProgress(processedKeys++, totalKeys);
+            }
         }
 
         preferences.setKeySignaturesTableInitialized();
+        preferences.clearPendingTrustUpdate();
 
         log.add(LogType.MSG_TRUST_OK, 1);
         return new UpdateTrustResult(UpdateTrustResult.RESULT_OK, log);
     }
 
+    /** Finishes a trust database update that was interrupted, if there is one. */
+    @NonNull
+    public UpdateTrustResult resumeTrustDbUpdate(Progressable progress) {
+        return updateTrustDb(Collections.emptyList(), progress);
+    }
+
+    /**
+     * Replaces the third-party certs of a key according to the given trusted keys. Returns the
+     * result of saving the key anew if that was necessary, or null if it was updated in place.
+     */
+    @Nullable
+    private SaveKeyringResult updateTrust(long masterKeyId, LongSparseArray<CanonicalizedPublicKey> trustedKeys)
+            throws NotFoundException, PgpGeneralException, IOException {
+        byte[] pubKeyData = loadPublicKeyRingData(masterKeyId);
+        UncachedKeyRing uncachedKeyRing = UncachedKeyRing.decodeFromData(pubKeyData);
+
+        // the stored keyring is canonicalized already, so this only verifies certs by trusted keys
+        clearLog();
+        List<Long> signerKeyIds = new ArrayList<>();
+        List<UserPacketItem> uids = classifyUserPackets(uncachedKeyRing.getPublicKey(), trustedKeys, signerKeyIds);
+
+        // the rank of user ids depends on their trusted certs, if it changed all rows need to be rewritten
+        if (!isStoredInOrder(masterKeyId, uids)) {
+            clearLog();
+            return savePublicKeyRing(uncachedKeyRing, true);
+        }
+
+        ArrayList<BatchOp> operations = new ArrayList<>();
+        for (int userIdRank = 0; userIdRank < uids.size(); userIdRank++) {
+            UserPacketItem item = uids.get(userIdRank);
+            // don't bother with trusted certs if the uid is revoked, same as on save
+            if (item.selfRevocation == null) {
+                addTrustedCertOperations(operations, masterKeyId, userIdRank, item);
+            }
+        }
+
+        SupportSQLiteDatabase db = getWritableDb();
+        try {
+            db.beginTransaction();
+
+            for (long signerKeyId : signerKeyIds) {
+                getDatabase().getKeySignaturesQueries().insertKeySignatureIfMissing(masterKeyId, signerKeyId);
+            }
+            getDatabase().getCertsQueries().deleteThirdPartyCertsByMasterKeyId(masterKeyId);
+            databaseBatchInteractor.applyBatch(operations);
+            refreshUnifiedKeyInfo(Collections.singletonList(masterKeyId));
+            notifyKeyChange(masterKeyId);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return null;
+    }
+
+    private boolean isStoredInOrder(long masterKeyId, List<UserPacketItem> uids) {
+        List<SelectUserPacketsByMasterKeyId> storedUids =
+                getDatabase().getUserPacketsQueries().selectUserPacketsByMasterKeyId(masterKeyId).executeAsList();
+        if (storedUids.size() != uids.size()) {
+            return false;
+        }
+        for (int i = 0; i < uids.size(); i++) {
+            UserPacketItem item = uids.get(i);
+            SelectUserPacketsByMasterKeyId storedUid = storedUids.get(i);
+            Long type = item.type != null ? item.type.longValue() : null;
+            if (!Objects.equals(type, storedUid.getType()) || !TextUtils.equals(item.userId, storedUid.getUser_id())
+                    || !Arrays.equals(item.attributeData, storedUid.getAttribute_data())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private BatchOp buildCertOperations(long masterKeyId, int rank, WrappedSignature cert, VerificationStatus verificationStatus) {
         try {
             long creationUnixTime = cert.getCreationTime().getTime() / 1000;
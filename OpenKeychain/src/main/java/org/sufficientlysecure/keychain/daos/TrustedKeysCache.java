@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.daos;
+
+
+import androidx.annotation.VisibleForTesting;
+import androidx.collection.LongSparseArray;
+import org.sufficientlysecure.keychain.Database;
+import org.sufficientlysecure.keychain.pgp.CanonicalizedPublicKey;
+import timber.log.Timber;
+
+
+/**
+ * Process-wide snapshot of the master keys of all keyrings we hold secret keys for.
+ * <p>
+ * Certifications are only verified if they were issued by one of these keys, so the set is
+ * needed for every keyring that is saved. It changes only when a secret keyring is saved or
+ * deleted, so instead of reloading and re-parsing it for each key during a bulk import, one
+ * snapshot is shared by all repository instances until it is invalidated.
+ */
+public class TrustedKeysCache {
+    private static TrustedKeysCache sInstance;
+
+    public static synchronized TrustedKeysCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new TrustedKeysCache();
+        }
+        return sInstance;
+    }
+
+    private long version = 0;
+    private int loadCount = 0;
+    private Snapshot snapshot;
+
+    private TrustedKeysCache() {
+    }
+
+    /**
+     * Returns the current snapshot of trusted keys, loading it first if necessary.
+     * <p>
+     * The returned array is shared and must not be modified.
+     */
+    synchronized LongSparseArray<CanonicalizedPublicKey> getTrustedKeys(Database database,
+            TrustedKeysLoader loader) {
+        // snapshots are only valid for the database they were loaded from
+        if (snapshot == null || snapshot.database != database) {
+            Timber.d("Loading trusted keys snapshot, version %d", version);
+            snapshot = new Snapshot(database, loader.loadTrustedKeys());
+            loadCount += 1;
+        }
+        return snapshot.trustedKeys;
+    }
+
+    synchronized boolean isTrustedKey(long masterKeyId) {
+        return snapshot != null && snapshot.trustedKeys.indexOfKey(masterKeyId) >= 0;
+    }
+
+    synchronized void invalidate() {
+        version += 1;
+        snapshot = null;
+    }
+
+    /**
+     * Returns the version of the trusted keys set, which is incremented each time it is invalidated.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /** Returns how often the snapshot was loaded, i.e. the number of misses. */
+    @VisibleForTesting
+    public synchronized int getLoadCount() {
+        return loadCount;
+    }
+
+    interface TrustedKeysLoader {
+        LongSparseArray<CanonicalizedPublicKey> loadTrustedKeys();
+    }
+
+    private static class Snapshot {
+        final Database database;
+        final LongSparseArray<CanonicalizedPublicKey> trustedKeys;
+
+        Snapshot(Database database, LongSparseArray<CanonicalizedPublicKey> trustedKeys) {
+            this.database = database;
+            this.trustedKeys = trustedKeys;
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package org.sufficientlysecure.keychain.keyimport;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.sufficientlysecure.keychain.util.ParcelableProxy;
 import org.sufficientlysecure.keychain.util.Preferences;
@@ -25,22 +26,77 @@ import timber.log.Timber;
 
 import java.net.Proxy;
 import java.util.ArrayList;
-import java.util.Vector;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Search two or more types of server for online keys.
+ * <p>
+ * All sources are searched in parallel, on a pool of threads shared by all searches. Results are
+ * merged as each source responds, so that a slow source doesn't hold up the results of the others.
  */
 public class CloudSearch {
 
     private final static long SECONDS = 1000;
+    private static final int MAX_THREADS = 6;
+
+    private static final ThreadPoolExecutor searchExecutor;
+
+    static {
+        // with an unbounded queue, a pool never grows beyond its core threads
+        searchExecutor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        searchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Receives the results of a search while it is still running.
+     */
+    public interface SearchListener {
+        /**
+         * Called each time a source has returned new results, with a snapshot of all results so
+         * far. Called on the thread which runs the search.
+         */
+        void onSearchResults(ArrayList<ImportKeysListEntry> results);
+    }
+
+    private final String query;
+    private final Preferences.CloudSearchPrefs cloudPrefs;
+    private final ParcelableProxy proxy;
+
+    private final ArrayList<Future<List<ImportKeysListEntry>>> searchFutures = new ArrayList<>();
+    private boolean cancelled;
+
+    public CloudSearch(@NonNull String query, Preferences.CloudSearchPrefs cloudPrefs,
+            @NonNull ParcelableProxy proxy) {
+        this.query = query;
+        this.cloudPrefs = cloudPrefs;
+        this.proxy = proxy;
+    }
 
     public static ArrayList<ImportKeysListEntry> search(
             @NonNull final String query, Preferences.CloudSearchPrefs cloudPrefs, @NonNull final ParcelableProxy proxy)
             throws KeyserverClient.CloudSearchFailureException {
+        return new CloudSearch(query, cloudPrefs, proxy).search(null);
+    }
+
+    /**
+     * Searches all enabled sources, and returns once all of them responded or the time is up. A
+     * search can only be run once.
+     *
+     * @param listener receives the results of each source as it responds, may be null
+     */
+    public ArrayList<ImportKeysListEntry> search(@Nullable SearchListener listener)
+            throws KeyserverClient.CloudSearchFailureException {
 
         final ArrayList<KeyserverClient> servers = new ArrayList<>();
-        // it's a Vector for sync, multiple threads might report problems
-        final Vector<KeyserverClient.CloudSearchFailureException> problems = new Vector<>();
+        final ArrayList<KeyserverClient.CloudSearchFailureException> problems = new ArrayList<>();
 
         if (cloudPrefs.isKeyserverEnabled()) {
             servers.add(HkpKeyserverClient.fromHkpKeyserverAddress(cloudPrefs.getKeyserver()));
@@ -52,43 +108,56 @@ public class CloudSearch {
             servers.add(WebKeyDirectoryClient.getInstance());
         }
 
-        int numberOfServers = servers.size();
-        final ImportKeysList results = new ImportKeysList(numberOfServers);
-
-        if (numberOfServers > 0) {
-            ArrayList<Thread> searchThreads = new ArrayList<>();
-            for (final KeyserverClient keyserverClient : servers) {
-                Runnable r = new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            results.addAll(keyserverClient.search(query, proxy));
-                        } catch (KeyserverClient.CloudSearchFailureException e) {
-                            problems.add(e);
-                        }
-                        results.finishedAdding(); // notifies if all searchers done
-                    }
-                };
-                Thread searchThread = new Thread(r);
-                searchThreads.add(searchThread);
-                searchThread.start();
+        final ImportKeysList results = new ImportKeysList();
+
+        if (!servers.isEmpty()) {
+            ExecutorCompletionService<List<ImportKeysListEntry>> searchCompletionService =
+                    new ExecutorCompletionService<>(searchExecutor);
+            synchronized (this) {
+                for (final KeyserverClient keyserverClient : servers) {
+                    searchFutures.add(searchCompletionService.submit(() -> keyserverClient.search(query, proxy)));
+                }
+                if (cancelled) {
+                    cancelSearches();
+                }
             }
 
             // wait for either all the searches to come back, or 10 seconds. If using proxy, wait 30 seconds.
-            synchronized (results) {
-                try {
-                    results.wait((proxy.getProxy() == Proxy.NO_PROXY ? 30 : 10) * SECONDS);
-                    for (Thread thread : searchThreads) {
-                        // kill threads that haven't returned yet
-                        thread.interrupt();
+            long timeout = (proxy.getProxy() == Proxy.NO_PROXY ? 10 : 30) * SECONDS;
+            long deadline = System.currentTimeMillis() + timeout;
+            int outstandingSearches = servers.size();
+            try {
+                while (outstandingSearches > 0) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    Future<List<ImportKeysListEntry>> future = remaining > 0
+                            ? searchCompletionService.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                    if (future == null) {
+                        break;
+                    }
+                    outstandingSearches--;
+
+                    try {
+                        if (results.addAll(future.get()) && listener != null) {
+                            listener.onSearchResults(results.snapshot());
+                        }
+                    } catch (ExecutionException e) {
+                        if (!(e.getCause() instanceof KeyserverClient.CloudSearchFailureException)) {
+                            throw new RuntimeException(e.getCause());
+                        }
+                        problems.add((KeyserverClient.CloudSearchFailureException) e.getCause());
+                    } catch (CancellationException e) {
+                        // cancelled along with the whole search
                     }
-                } catch (InterruptedException ignored) {
                 }
+            } catch (InterruptedException ignored) {
+            } finally {
+                // stop the searches that haven't returned yet
+                cancel();
             }
 
-            if (results.outstandingSuppliers() > 0) {
+            if (outstandingSearches > 0) {
                 String message = "Launched " + servers.size() + " cloud searchers, but " +
-                        results.outstandingSuppliers() + "failed to complete.";
+                        outstandingSearches + " failed to complete.";
                 problems.add(new KeyserverClient.QueryFailedException(message));
             }
         } else {
@@ -106,6 +175,21 @@ public class CloudSearch {
             }
         }
 
-        return results;
+        return results.snapshot();
+    }
+
+    /**
+     * Cancels the searches of all sources which haven't responded yet. May be called from any
+     * thread, results which come in afterwards are dropped.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        cancelSearches();
+    }
+
+    private void cancelSearches() {
+        for (Future<List<ImportKeysListEntry>> future : searchFutures) {
+            future.cancel(true);
+        }
     }
 }
@@ -19,6 +19,7 @@ package org.sufficientlysecure.keychain.keyimport;
 
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import okhttp3.MediaType;
 import okhttp3.ResponseBody;
@@ -35,6 +36,7 @@ import okhttp3.RequestBody;
 import okhttp3.Response;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -43,6 +45,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.regex.Matcher;
@@ -134,6 +137,9 @@ public class HkpKeyserverClient implements KeyserverClient {
                     Pattern.CASE_INSENSITIVE
             );
 
+    private static final Pattern ARMORED_PUBLIC_KEY = Pattern.compile(
+            "-----BEGIN PGP PUBLIC KEY BLOCK-----.*?-----END PGP PUBLIC KEY BLOCK-----", Pattern.DOTALL);
+
     private static final Charset UTF_8 = Charset.forName("utf-8");
 
 
@@ -169,7 +175,7 @@ public class HkpKeyserverClient implements KeyserverClient {
 
             Timber.d("Keyserver search: " + url + " using Proxy: " + proxy.getProxy());
 
-            data = query(url, proxy);
+            data = query(url, proxy, null).getBody();
         } catch (URISyntaxException e) {
             throw new IllegalStateException("Unsupported keyserver URI");
         } catch (HttpError e) {
@@ -304,7 +310,16 @@ public class HkpKeyserverClient implements KeyserverClient {
 
     @Override
     public String get(String keyIdHex, ParcelableProxy proxy) throws KeyserverClient.QueryFailedException {
-        String data;
+        return getIfModified(keyIdHex, proxy, null).getBody();
+    }
+
+    /**
+     * Retrieves a key like get, but as a conditional request if validators of an earlier response
+     * are given. If the key was not modified since, the returned response has no body.
+     */
+    public KeyserverResponse getIfModified(String keyIdHex, ParcelableProxy proxy,
+            @Nullable HttpCacheValidators validators) throws KeyserverClient.QueryFailedException {
+        KeyserverResponse response;
         try {
             HttpUrl url = getHttpUrl(proxy).newBuilder()
                     .addPathSegment("lookup")
@@ -315,7 +330,7 @@ public class HkpKeyserverClient implements KeyserverClient {
 
             Timber.d("Keyserver get: " + url + " using Proxy: " + proxy.getProxy());
 
-            data = query(url, proxy);
+            response = query(url, proxy, validators);
         } catch (URISyntaxException e) {
             throw new IllegalStateException("Unsupported keyserver URI");
         } catch (HttpError httpError) {
@@ -325,17 +340,63 @@ public class HkpKeyserverClient implements KeyserverClient {
             }
             throw new KeyserverClient.QueryFailedException("not found");
         }
-        if (data == null) {
-            throw new KeyserverClient.QueryFailedException("data is null");
+        if (response.isNotModified()) {
+            return response;
         }
 
-        Matcher matcher = PgpHelper.PGP_PUBLIC_KEY.matcher(data);
+        Matcher matcher = PgpHelper.PGP_PUBLIC_KEY.matcher(response.getBody());
         if (matcher.find()) {
-            return matcher.group(1);
+            return KeyserverResponse.create(matcher.group(1), response.getValidators());
         }
         throw new KeyserverClient.QueryFailedException("data is null");
     }
 
+    /**
+     * Retrieves several keys with a single request, by repeating the search parameter of get.
+     * Servers which don't support this may return only some of the keys, so callers must check
+     * which ones are contained and fetch the rest individually.
+     *
+     * @return the armored key blocks of the response, or null if the keyserver refused the request
+     *         in a way which means it doesn't support it, rather than that it failed temporarily
+     */
+    @Nullable
+    public List<String> getMultiple(List<String> keyIdHexes, ParcelableProxy proxy)
+            throws KeyserverClient.QueryFailedException {
+        String data;
+        try {
+            HttpUrl.Builder urlBuilder = getHttpUrl(proxy).newBuilder()
+                    .addPathSegment("lookup")
+                    .addQueryParameter("op", "get")
+                    .addQueryParameter("options", "mr");
+            for (String keyIdHex : keyIdHexes) {
+                urlBuilder.addQueryParameter("search", keyIdHex);
+            }
+            HttpUrl url = urlBuilder.build();
+
+            Timber.d("Keyserver get of %d keys: %s using Proxy: %s", keyIdHexes.size(), url, proxy.getProxy());
+
+            data = query(url, proxy, null).getBody();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Unsupported keyserver URI");
+        } catch (HttpError httpError) {
+            Timber.d(httpError, "Failed to get keys at HkpKeyserver");
+            if (httpError.getCode() == 404) {
+                throw new KeyserverClient.QueryNotFoundException("not found");
+            }
+            if (httpError.getCode() == 400 || httpError.getCode() == 501) {
+                return null;
+            }
+            throw new KeyserverClient.QueryFailedException("get of several keys failed");
+        }
+
+        ArrayList<String> armoredKeys = new ArrayList<>();
+        Matcher matcher = ARMORED_PUBLIC_KEY.matcher(data);
+        while (matcher.find()) {
+            armoredKeys.add(matcher.group());
+        }
+        return armoredKeys;
+    }
+
     @Override
     public void add(String armoredKey, ParcelableProxy proxy) throws KeyserverClient.AddKeyException {
         try {
@@ -387,23 +448,31 @@ public class HkpKeyserverClient implements KeyserverClient {
                 .build();
     }
 
-    private String query(HttpUrl url, @NonNull ParcelableProxy proxy) throws KeyserverClient.QueryFailedException, HttpError {
+    private KeyserverResponse query(HttpUrl url, @NonNull ParcelableProxy proxy,
+            @Nullable HttpCacheValidators validators) throws KeyserverClient.QueryFailedException, HttpError {
         try {
             OkHttpClient client = OkHttpClientFactory.getClientPinnedIfAvailable(url.url(), proxy.getProxy());
 
-            Request request = new Request.Builder()
-                    .url(url)
-                    .build();
+            Request.Builder requestBuilder = new Request.Builder()
+                    .url(url);
+            if (validators != null) {
+                validators.addToRequest(requestBuilder);
+            }
 
             Response response = client
-                    .newCall(request)
+                    .newCall(requestBuilder.build())
                     .execute();
 
+            if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                response.close();
+                return KeyserverResponse.createNotModified(validators);
+            }
+
             // contains body both in case of success or failure
             String responseBody = getResponseBodyAsUtf8(response);
 
             if (response.isSuccessful()) {
-                return responseBody;
+                return KeyserverResponse.create(responseBody, HttpCacheValidators.fromResponse(response));
             } else {
                 throw new HttpError(response.code(), responseBody);
             }
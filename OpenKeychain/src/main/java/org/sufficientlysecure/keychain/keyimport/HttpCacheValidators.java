@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.keyimport;
+
+
+import androidx.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+import okhttp3.Request;
+import okhttp3.Response;
+
+
+/**
+ * The ETag and Last-Modified headers of an http response, which allow asking the server whether
+ * a resource was modified since, without downloading it again.
+ */
+@AutoValue
+public abstract class HttpCacheValidators {
+    @Nullable
+    public abstract String getETag();
+    @Nullable
+    public abstract String getLastModified();
+
+    public static HttpCacheValidators create(@Nullable String eTag, @Nullable String lastModified) {
+        return new AutoValue_HttpCacheValidators(eTag, lastModified);
+    }
+
+    /** Returns the validators of the given response, or null if it has none. */
+    @Nullable
+    static HttpCacheValidators fromResponse(Response response) {
+        String eTag = response.header("ETag");
+        String lastModified = response.header("Last-Modified");
+        if (eTag == null && lastModified == null) {
+            return null;
+        }
+        return create(eTag, lastModified);
+    }
+
+    /** Makes the request conditional, so that the server responds with 304 if nothing changed. */
+    void addToRequest(Request.Builder builder) {
+        if (getETag() != null) {
+            builder.header("If-None-Match", getETag());
+        }
+        if (getLastModified() != null) {
+            builder.header("If-Modified-Since", getLastModified());
+        }
+    }
+}
@@ -17,19 +17,21 @@
 
 package org.sufficientlysecure.keychain.keyimport;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 
 /**
- * Just an ArrayList, only with a synchronized dupe-merging add/addAll, and a sign-off method
+ * Just an ArrayList, only with a synchronized dupe-merging add/addAll.
+ * <p>
+ * Entries are found by fingerprint, so that results can be merged in one at a time as sources
+ * respond. A merge replaces the existing entry by a merged copy, which leaves the entries of
+ * earlier snapshots of this list untouched.
  */
 public class ImportKeysList extends ArrayList<ImportKeysListEntry> {
 
-    private int mSupplierCount;
-
-    public ImportKeysList(int supplierCount) {
-        mSupplierCount = supplierCount;
-    }
+    private final HashMap<ByteBuffer, Integer> mIndexByFingerprint = new HashMap<>();
 
     @Override
     public boolean add(ImportKeysListEntry toAdd) {
@@ -46,15 +48,38 @@ public class ImportKeysList extends ArrayList<ImportKeysListEntry> {
         return modified;
     }
 
+    /**
+     * Returns a copy of the current entries, which stay unmodified while more are added.
+     */
+    public synchronized ArrayList<ImportKeysListEntry> snapshot() {
+        return new ArrayList<>(this);
+    }
+
     // NOTE: side-effects
     // NOTE: synchronized
     private synchronized boolean addOrMerge(ImportKeysListEntry toAdd) {
-        for (ImportKeysListEntry existing : this) {
-            if (toAdd.hasSameKeyAs(existing)) {
-                return mergeDupes(toAdd, existing);
-            }
+        if (toAdd.getFingerprint() == null) {
+            return super.add(toAdd);
+        }
+
+        ByteBuffer fingerprint = ByteBuffer.wrap(toAdd.getFingerprint());
+        Integer index = mIndexByFingerprint.get(fingerprint);
+        if (index == null) {
+            mIndexByFingerprint.put(fingerprint, size());
+            return super.add(toAdd);
+        }
+
+        ImportKeysListEntry merged = new ImportKeysListEntry(get(index));
+        if (!mergeDupes(toAdd, merged)) {
+            return false;
         }
-        return super.add(toAdd);
+        ParcelableKeyRing keyRing = merged.getParcelableKeyRing();
+        if (keyRing != null && keyRing.getBytes() == null) {
+            // a reference to the key on servers must include the sources merged in just now
+            merged.setParcelableKeyRing(null);
+        }
+        set(index, merged);
+        return true;
     }
 
     // being a little anal about the ArrayList#addAll contract here
@@ -90,16 +115,4 @@ public class ImportKeysList extends ArrayList<ImportKeysListEntry> {
 
         return modified;
     }
-
-    // NOTE: synchronized
-    public synchronized void finishedAdding() {
-        mSupplierCount--;
-        if (mSupplierCount == 0) {
-            this.notify();
-        }
-    }
-
-    public int outstandingSuppliers() {
-        return mSupplierCount;
-    }
 }
@@ -258,6 +258,32 @@ public class ImportKeysListEntry implements Serializable, Parcelable {
         mUserIds = new ArrayList<>();
     }
 
+    /**
+     * Copy constructor, the copy can be merged with other entries without affecting this one
+     */
+    ImportKeysListEntry(ImportKeysListEntry other) {
+        mParcelableKeyRing = other.mParcelableKeyRing;
+        mUserIds = new ArrayList<>(other.mUserIds);
+        // always replaced as a whole, never modified
+        mMergedUserIds = other.mMergedUserIds;
+        mKeyIdHex = other.mKeyIdHex;
+        mSecretKey = other.mSecretKey;
+        mRevoked = other.mRevoked;
+        mExpired = other.mExpired;
+        mSecure = other.mSecure;
+        mUpdated = other.mUpdated;
+        mDate = other.mDate;
+        mFingerprint = other.mFingerprint;
+        mBitStrength = other.mBitStrength;
+        mCurveOid = other.mCurveOid;
+        mAlgorithm = other.mAlgorithm;
+        mPrimaryUserId = other.mPrimaryUserId;
+        mKeyserver = other.mKeyserver;
+        mFbUsername = other.mFbUsername;
+        mQuery = other.mQuery;
+        mHashCode = other.mHashCode;
+    }
+
     /**
      * Constructor based on key object, used for import from NFC, QR Codes, files
      */
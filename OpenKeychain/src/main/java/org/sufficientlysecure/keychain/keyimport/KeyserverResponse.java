@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.keyimport;
+
+
+import androidx.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+
+
+/** The body of a keyserver response, along with its cache validators. */
+@AutoValue
+public abstract class KeyserverResponse {
+    /** The body of the response, or null if the resource was not modified. */
+    @Nullable
+    public abstract String getBody();
+    @Nullable
+    public abstract HttpCacheValidators getValidators();
+
+    static KeyserverResponse create(String body, @Nullable HttpCacheValidators validators) {
+        return new AutoValue_KeyserverResponse(body, validators);
+    }
+
+    static KeyserverResponse createNotModified(@Nullable HttpCacheValidators validators) {
+        return new AutoValue_KeyserverResponse(null, validators);
+    }
+
+    public boolean isNotModified() {
+        return getBody() == null;
+    }
+}
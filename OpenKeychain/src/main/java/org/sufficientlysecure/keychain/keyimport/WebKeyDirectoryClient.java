@@ -106,15 +106,16 @@ public class WebKeyDirectoryClient implements KeyserverClient {
             Request request = new Request.Builder().url(url).build();
 
             OkHttpClient client = OkHttpClientFactory.getClientPinnedIfAvailableWithRedirects(url, proxy);
-            Response response = client.newCall(request).execute();
-
-            if (response.isSuccessful()) {
-                return response.body().bytes();
-            } else if (response.code() == HttpURLConnection.HTTP_NOT_FOUND) {
-                return null;
-            } else {
-                throw new QueryFailedException("Error while fetching key from Web Key Directory. " +
-                        "Response:" + response);
+            // close the response in all cases, to return the shared connection to the pool
+            try (Response response = client.newCall(request).execute()) {
+                if (response.isSuccessful()) {
+                    return response.body().bytes();
+                } else if (response.code() == HttpURLConnection.HTTP_NOT_FOUND) {
+                    return null;
+                } else {
+                    throw new QueryFailedException("Error while fetching key from Web Key Directory. " +
+                            "Response:" + response);
+                }
             }
 
         } catch (UnknownHostException e) {
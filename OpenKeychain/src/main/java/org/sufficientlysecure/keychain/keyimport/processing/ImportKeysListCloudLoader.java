@@ -18,6 +18,9 @@
 package org.sufficientlysecure.keychain.keyimport.processing;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
 import androidx.annotation.Nullable;
 import androidx.loader.content.AsyncTaskLoader;
 import org.sufficientlysecure.keychain.keyimport.CloudSearch;
@@ -46,6 +49,9 @@ public class ImportKeysListCloudLoader
     private ArrayList<ImportKeysListEntry> mEntryList = new ArrayList<>();
     private AsyncTaskResultWrapper<ArrayList<ImportKeysListEntry>> mEntryListWrapper;
 
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile CloudSearch mCloudSearch;
+
     /**
      * Searches a keyserver as specified in cloudPrefs, using an explicit proxy if passed
      *
@@ -79,17 +85,17 @@ public class ImportKeysListCloudLoader
             queryServer(false);
         }
 
-        // Now we have all the data needed to build the parcelable key ring for this key
-        for (ImportKeysListEntry e : mEntryList) {
-            if (e.getParcelableKeyRing() == null) {
-                e.setParcelableKeyRing(ParcelableKeyRing.createFromReference(e.getFingerprint(), e.getKeyIdHex(),
-                        e.getFbUsername()));
-            }
-        }
-
         return mEntryListWrapper;
     }
 
+    @Override
+    public void cancelLoadInBackground() {
+        CloudSearch cloudSearch = mCloudSearch;
+        if (cloudSearch != null) {
+            cloudSearch.cancel();
+        }
+    }
+
     @Override
     protected void onReset() {
         super.onReset();
@@ -137,33 +143,17 @@ public class ImportKeysListCloudLoader
         }
 
         try {
-            ArrayList<ImportKeysListEntry> searchResult = CloudSearch.search(
-                    mState.mServerQuery,
-                    mState.mCloudPrefs,
-                    proxy
-            );
+            mCloudSearch = new CloudSearch(mState.mServerQuery, mState.mCloudPrefs, proxy);
+            if (isLoadInBackgroundCanceled()) {
+                mCloudSearch.cancel();
+            }
+            // a fingerprint must match a unique result, which is only known once all sources responded
+            CloudSearch.SearchListener listener = enforceFingerprint ? null
+                    : partialResult -> deliverPartialResult(toEntryList(partialResult, false));
+            ArrayList<ImportKeysListEntry> searchResult = mCloudSearch.search(listener);
 
             mEntryList.clear();
-            // add result to data
-            if (enforceFingerprint) {
-                String fingerprintHex = mState.mServerQuery.substring(2);
-                Timber.d("fingerprint: " + fingerprintHex);
-                // query must return only one result!
-                if (searchResult.size() == 1) {
-                    if (fingerprintHex.length() != 40) {
-                        throw new IllegalArgumentException("Bad format!");
-                    }
-                    ImportKeysListEntry uniqueEntry = searchResult.get(0);
-                    /*
-                     * set fingerprint explicitly after query
-                     * to enforce a check when the key is imported by KeychainService
-                     */
-                    uniqueEntry.setFingerprint(KeyFormattingUtils.convertFingerprintHexFingerprint(fingerprintHex));
-                    mEntryList.add(uniqueEntry);
-                }
-            } else {
-                mEntryList.addAll(searchResult);
-            }
+            mEntryList.addAll(toEntryList(searchResult, enforceFingerprint));
             GetKeyResult getKeyResult = new GetKeyResult(GetKeyResult.RESULT_OK, null);
             mEntryListWrapper = new AsyncTaskResultWrapper<>(mEntryList, getKeyResult);
         } catch (KeyserverClient.CloudSearchFailureException e) {
@@ -193,6 +183,59 @@ public class ImportKeysListCloudLoader
             log.add(logType, 0);
             GetKeyResult getKeyResult = new GetKeyResult(error, log);
             mEntryListWrapper = new AsyncTaskResultWrapper<>(mEntryList, getKeyResult);
+        } finally {
+            mCloudSearch = null;
+        }
+    }
+
+    /**
+     * Delivers the results of the sources which responded so far, while the others are still
+     * searched. Partial results are delivered without an operation result.
+     */
+    private void deliverPartialResult(ArrayList<ImportKeysListEntry> entryList) {
+        if (entryList.isEmpty()) {
+            return;
+        }
+
+        AsyncTaskResultWrapper<ArrayList<ImportKeysListEntry>> partialResult =
+                new AsyncTaskResultWrapper<>(entryList, null);
+        mMainHandler.post(() -> {
+            if (isStarted() && !isLoadInBackgroundCanceled()) {
+                deliverResult(partialResult);
+            }
+        });
+    }
+
+    private ArrayList<ImportKeysListEntry> toEntryList(ArrayList<ImportKeysListEntry> searchResult,
+            boolean enforceFingerprint) {
+        ArrayList<ImportKeysListEntry> entryList = new ArrayList<>();
+        if (enforceFingerprint) {
+            String fingerprintHex = mState.mServerQuery.substring(2);
+            Timber.d("fingerprint: " + fingerprintHex);
+            // query must return only one result!
+            if (searchResult.size() == 1) {
+                if (fingerprintHex.length() != 40) {
+                    throw new IllegalArgumentException("Bad format!");
+                }
+                ImportKeysListEntry uniqueEntry = searchResult.get(0);
+                /*
+                 * set fingerprint explicitly after query
+                 * to enforce a check when the key is imported by KeychainService
+                 */
+                uniqueEntry.setFingerprint(KeyFormattingUtils.convertFingerprintHexFingerprint(fingerprintHex));
+                entryList.add(uniqueEntry);
+            }
+        } else {
+            entryList.addAll(searchResult);
+        }
+
+        // Now we have all the data needed to build the parcelable key ring for this key
+        for (ImportKeysListEntry e : entryList) {
+            if (e.getParcelableKeyRing() == null) {
+                e.setParcelableKeyRing(ParcelableKeyRing.createFromReference(e.getFingerprint(), e.getKeyIdHex(),
+                        e.getFbUsername()));
+            }
         }
+        return entryList;
     }
 }
@@ -15,6 +15,8 @@ import org.sufficientlysecure.keychain.operations.KeySyncParcel;
 import org.sufficientlysecure.keychain.operations.results.ImportKeyResult;
 import org.sufficientlysecure.keychain.service.input.CryptoInputParcel;
 import org.sufficientlysecure.keychain.ui.OrbotRequiredDialogActivity;
+import org.sufficientlysecure.keychain.util.Preferences;
+import org.sufficientlysecure.keychain.util.ProgressScaler;
 import timber.log.Timber;
 
 
@@ -31,6 +33,11 @@ public class KeyserverSyncWorker extends Worker {
         KeyWritableRepository keyWritableRepository =
                 KeyWritableRepository.create(getApplicationContext());
 
+        if (Preferences.getPreferences(getApplicationContext()).hasPendingTrustUpdate()) {
+            Timber.d("Resuming interrupted trust database update…");
+            keyWritableRepository.resumeTrustDbUpdate(new ProgressScaler());
+        }
+
         Timber.d("Starting key sync…");
         KeySyncOperation keySync =
                 new KeySyncOperation(getApplicationContext(), keyWritableRepository, null,
@@ -0,0 +1,205 @@
+package org.sufficientlysecure.keychain.livedata;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+import org.sufficientlysecure.keychain.daos.DatabaseNotifyManager;
+import org.sufficientlysecure.keychain.daos.KeyRepository;
+import org.sufficientlysecure.keychain.model.UnifiedKeyInfo;
+import org.sufficientlysecure.keychain.ui.adapter.FlexibleKeyDetailsItem;
+import org.sufficientlysecure.keychain.ui.adapter.FlexibleKeyItem;
+import org.sufficientlysecure.keychain.ui.adapter.FlexibleKeyItemFactory;
+import org.sufficientlysecure.keychain.ui.keyview.loader.AsyncTaskLiveData;
+
+
+/**
+ * Items of the key list, which are updated incrementally on changes of single keys.
+ * <p>
+ * A notification for a single master key id only re-queries the rows of the changed keys, and
+ * takes the order of the list from a query over the master key ids alone. A notification for all
+ * keys reloads every row, but items of unchanged keys are reused, so the adapter only rebinds
+ * changed rows in either case.
+ */
+public class KeyListLiveData extends AsyncTaskLiveData<List<FlexibleKeyItem>> {
+    private static final int MAX_KEYS_PER_QUERY = 500;
+
+    private final KeyRepository keyRepository;
+    private final FlexibleKeyItemFactory flexibleKeyItemFactory;
+
+    private final Map<Long, FlexibleKeyDetailsItem> keyItems = new HashMap<>();
+    private final Set<Long> changedMasterKeyIds = new HashSet<>();
+    private boolean reloadAll = true;
+
+    public KeyListLiveData(Context context) {
+        super(context, DatabaseNotifyManager.getNotifyUriAllKeys());
+
+        keyRepository = KeyRepository.create(context);
+        flexibleKeyItemFactory = new FlexibleKeyItemFactory(context.getResources());
+    }
+
+    @Override
+    protected void onContentChanged(@Nullable Uri changedUri) {
+        Long masterKeyId = getMasterKeyIdFromUri(changedUri);
+        synchronized (changedMasterKeyIds) {
+            if (masterKeyId != null) {
+                changedMasterKeyIds.add(masterKeyId);
+            } else {
+                reloadAll = true;
+            }
+        }
+    }
+
+    // loads may overlap if notifications arrive quickly, the cached items need them to run in order
+    @Override
+    protected synchronized List<FlexibleKeyItem> asyncLoadData() {
+        boolean loadAll;
+        long[] masterKeyIdsToLoad;
+        synchronized (changedMasterKeyIds) {
+            loadAll = reloadAll || keyItems.isEmpty();
+            masterKeyIdsToLoad = toLongArray(changedMasterKeyIds);
+            reloadAll = false;
+            changedMasterKeyIds.clear();
+        }
+
+        List<FlexibleKeyDetailsItem> listedItems;
+        if (loadAll) {
+            listedItems = loadAllKeyItems();
+        } else {
+            listedItems = loadChangedKeyItems(masterKeyIdsToLoad);
+        }
+        return flexibleKeyItemFactory.buildFlexibleKeyItems(listedItems);
+    }
+
+    private List<FlexibleKeyDetailsItem> loadAllKeyItems() {
+        List<UnifiedKeyInfo> unifiedKeyInfos = keyRepository.getAllUnifiedKeyInfo();
+
+        List<FlexibleKeyDetailsItem> listedItems = new ArrayList<>(unifiedKeyInfos.size());
+        Map<Long, FlexibleKeyDetailsItem> previousKeyItems = new HashMap<>(keyItems);
+        keyItems.clear();
+        for (UnifiedKeyInfo unifiedKeyInfo : unifiedKeyInfos) {
+            FlexibleKeyDetailsItem item = previousKeyItems.get(unifiedKeyInfo.master_key_id());
+            if (item == null || !item.keyInfo.equals(unifiedKeyInfo)) {
+                item = flexibleKeyItemFactory.createKeyItem(unifiedKeyInfo);
+            }
+            keyItems.put(unifiedKeyInfo.master_key_id(), item);
+            listedItems.add(item);
+        }
+        return listedItems;
+    }
+
+    private List<FlexibleKeyDetailsItem> loadChangedKeyItems(long[] changedMasterKeyIds) {
+        Set<String> changedIdentities = new HashSet<>();
+        for (long masterKeyId : changedMasterKeyIds) {
+            FlexibleKeyDetailsItem previousItem = keyItems.remove(masterKeyId);
+            if (previousItem != null) {
+                addIdentity(changedIdentities, previousItem.keyInfo);
+            }
+        }
+        List<Long> masterKeyIds = keyRepository.getAllUnifiedKeyInfoMasterKeyIds();
+
+        // changed keys and, in case a notification got lost, any other unknown ones
+        List<Long> missingMasterKeyIds = new ArrayList<>();
+        for (Long masterKeyId : masterKeyIds) {
+            if (!keyItems.containsKey(masterKeyId)) {
+                missingMasterKeyIds.add(masterKeyId);
+            }
+        }
+        List<UnifiedKeyInfo> loadedKeyInfos = loadKeyItems(missingMasterKeyIds);
+        Set<Long> loadedMasterKeyIds = new HashSet<>();
+        for (UnifiedKeyInfo unifiedKeyInfo : loadedKeyInfos) {
+            loadedMasterKeyIds.add(unifiedKeyInfo.master_key_id());
+            addIdentity(changedIdentities, unifiedKeyInfo);
+        }
+
+        // the duplicate flag of keys with the same name and email changes along with them
+        List<Long> duplicateMasterKeyIds = new ArrayList<>();
+        for (FlexibleKeyDetailsItem item : keyItems.values()) {
+            if (!loadedMasterKeyIds.contains(item.keyInfo.master_key_id())
+                    && changedIdentities.contains(getIdentity(item.keyInfo))) {
+                duplicateMasterKeyIds.add(item.keyInfo.master_key_id());
+            }
+        }
+        loadKeyItems(duplicateMasterKeyIds);
+
+        List<FlexibleKeyDetailsItem> listedItems = new ArrayList<>(masterKeyIds.size());
+        Map<Long, FlexibleKeyDetailsItem> listedKeyItems = new HashMap<>(masterKeyIds.size());
+        for (Long masterKeyId : masterKeyIds) {
+            FlexibleKeyDetailsItem item = keyItems.get(masterKeyId);
+            // deleted in between the two queries
+            if (item != null) {
+                listedItems.add(item);
+                listedKeyItems.put(masterKeyId, item);
+            }
+        }
+        // drops items of deleted keys
+        keyItems.clear();
+        keyItems.putAll(listedKeyItems);
+        return listedItems;
+    }
+
+    private List<UnifiedKeyInfo> loadKeyItems(List<Long> masterKeyIds) {
+        List<UnifiedKeyInfo> unifiedKeyInfos = new ArrayList<>(masterKeyIds.size());
+        // stay below the limit of sqlite for the number of query parameters
+        for (int i = 0; i < masterKeyIds.size(); i += MAX_KEYS_PER_QUERY) {
+            List<Long> queriedMasterKeyIds =
+                    masterKeyIds.subList(i, Math.min(i + MAX_KEYS_PER_QUERY, masterKeyIds.size()));
+            unifiedKeyInfos.addAll(keyRepository.getUnifiedKeyInfo(toLongArray(queriedMasterKeyIds)));
+        }
+        for (UnifiedKeyInfo unifiedKeyInfo : unifiedKeyInfos) {
+            keyItems.put(unifiedKeyInfo.master_key_id(), flexibleKeyItemFactory.createKeyItem(unifiedKeyInfo));
+        }
+        return unifiedKeyInfos;
+    }
+
+    private static void addIdentity(Set<String> identities, UnifiedKeyInfo unifiedKeyInfo) {
+        String identity = getIdentity(unifiedKeyInfo);
+        if (identity != null) {
+            identities.add(identity);
+        }
+    }
+
+    @Nullable
+    private static String getIdentity(UnifiedKeyInfo unifiedKeyInfo) {
+        if (unifiedKeyInfo.name() == null || unifiedKeyInfo.email() == null) {
+            return null;
+        }
+        // names and emails are compared without case in the database
+        return (unifiedKeyInfo.name() + '\n' + unifiedKeyInfo.email()).toLowerCase(Locale.ROOT);
+    }
+
+    @Nullable
+    private static Long getMasterKeyIdFromUri(@Nullable Uri uri) {
+        if (uri == null) {
+            return null;
+        }
+        List<String> pathSegments = uri.getPathSegments();
+        if (pathSegments.size() != 2) {
+            return null;
+        }
+        try {
+            return Long.parseLong(pathSegments.get(1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long[] toLongArray(Collection<Long> values) {
+        long[] result = new long[values.size()];
+        int i = 0;
+        for (Long value : values) {
+            result[i++] = value;
+        }
+        return result;
+    }
+}
@@ -20,17 +20,40 @@ package org.sufficientlysecure.keychain.network;
 
 import java.net.Proxy;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.CertificatePinner;
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
 
+/**
+ * Hands out OkHttpClients for keyserver, WKD and other network traffic.
+ * <p>
+ * All clients are derived from one base client, and share its connection pool and dispatcher.
+ * Clients for keyserver requests are additionally kept per proxy, pinned host and redirect
+ * policy, so that syncing many keys from the same keyserver keeps reusing a kept-alive (or
+ * HTTP/2) connection, instead of a new TLS handshake and Tor circuit for each key.
+ */
 public class OkHttpClientFactory {
+    private static OkHttpClient baseClient;
     private static OkHttpClient client;
+    private static final Map<ClientConfig, OkHttpClient> configuredClients = new HashMap<>();
 
-    public static OkHttpClient getSimpleClient() {
+    private static synchronized OkHttpClient getBaseClient() {
+        if (baseClient == null) {
+            baseClient = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                    .build();
+        }
+        return baseClient;
+    }
+
+    public static synchronized OkHttpClient getSimpleClient() {
         if (client == null) {
-            client = new OkHttpClient.Builder()
+            client = getBaseClient().newBuilder()
                     .connectTimeout(5000, TimeUnit.MILLISECONDS)
                     .readTimeout(25000, TimeUnit.MILLISECONDS)
                     .build();
@@ -39,7 +62,7 @@ public class OkHttpClientFactory {
     }
 
     public static OkHttpClient getSimpleClientPinned(CertificatePinner pinner) {
-        return new OkHttpClient.Builder()
+        return getBaseClient().newBuilder()
                 .connectTimeout(5000, TimeUnit.MILLISECONDS)
                 .readTimeout(25000, TimeUnit.MILLISECONDS)
                 .certificatePinner(pinner)
@@ -55,8 +78,23 @@ public class OkHttpClientFactory {
         return getClientPinnedIfAvailable(url, proxy, true);
     }
 
-    private static OkHttpClient getClientPinnedIfAvailable(URL url, Proxy proxy, boolean followRedirects) {
-        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+    private static synchronized OkHttpClient getClientPinnedIfAvailable(URL url, Proxy proxy,
+            boolean followRedirects) {
+        // If a pinned cert is available, use it!
+        // NOTE: this fails gracefully back to "no pinning" if no cert is available.
+        TlsCertificatePinning tlsCertificatePinning = new TlsCertificatePinning(url);
+        boolean isHttpsProtocol = "https".equals(url.getProtocol());
+        boolean isPinAvailable = tlsCertificatePinning.isPinAvailable();
+        // a pinned client only accepts the certificate of its host, so it can't be shared with others
+        String pinnedHost = isHttpsProtocol && isPinAvailable ? url.getHost() : null;
+
+        ClientConfig config = new ClientConfig(proxy, pinnedHost, followRedirects);
+        OkHttpClient configuredClient = configuredClients.get(config);
+        if (configuredClient != null) {
+            return configuredClient;
+        }
+
+        OkHttpClient.Builder builder = getBaseClient().newBuilder();
 
         builder.followRedirects(followRedirects)
                 .followSslRedirects(false);
@@ -71,16 +109,43 @@ public class OkHttpClientFactory {
                     .readTimeout(25000, TimeUnit.MILLISECONDS);
         }
 
-        // If a pinned cert is available, use it!
-        // NOTE: this fails gracefully back to "no pinning" if no cert is available.
-        TlsCertificatePinning tlsCertificatePinning = new TlsCertificatePinning(url);
-        boolean isHttpsProtocol = "https".equals(url.getProtocol());
-        boolean isPinAvailable = tlsCertificatePinning.isPinAvailable();
-        if (isHttpsProtocol && isPinAvailable) {
+        if (pinnedHost != null) {
             tlsCertificatePinning.pinCertificate(builder);
         }
 
-        return builder.build();
+        configuredClient = builder.build();
+        configuredClients.put(config, configuredClient);
+        return configuredClient;
+    }
+
+    private static final class ClientConfig {
+        private final Proxy proxy;
+        private final String pinnedHost;
+        private final boolean followRedirects;
+
+        ClientConfig(Proxy proxy, String pinnedHost, boolean followRedirects) {
+            this.proxy = proxy;
+            this.pinnedHost = pinnedHost;
+            this.followRedirects = followRedirects;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClientConfig)) {
+                return false;
+            }
+            ClientConfig that = (ClientConfig) o;
+            return followRedirects == that.followRedirects && Objects.equals(proxy, that.proxy)
+                    && Objects.equals(pinnedHost, that.pinnedHost);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(proxy, pinnedHost, followRedirects);
+        }
     }
 
 }
@@ -23,15 +23,18 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 import android.content.Context;
-import android.net.Uri;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -52,11 +55,9 @@ import org.sufficientlysecure.keychain.pgp.PgpSignEncryptOperation;
 import org.sufficientlysecure.keychain.pgp.Progressable;
 import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
 import org.sufficientlysecure.keychain.pgp.exception.PgpGeneralException;
-import org.sufficientlysecure.keychain.provider.TemporaryFileProvider;
 import org.sufficientlysecure.keychain.service.BackupKeyringParcel;
 import org.sufficientlysecure.keychain.service.input.CryptoInputParcel;
 import org.sufficientlysecure.keychain.ui.util.KeyFormattingUtils;
-import org.sufficientlysecure.keychain.util.CountingOutputStream;
 import org.sufficientlysecure.keychain.util.FileHelper;
 import org.sufficientlysecure.keychain.util.InputData;
 import org.sufficientlysecure.keychain.util.Numeric9x4PassphraseUtil;
@@ -77,6 +78,8 @@ import timber.log.Timber;
 public class BackupOperation extends BaseOperation<BackupKeyringParcel> {
     // this is a very simple matcher, we only need basic sanitization
     private static final Pattern HEADER_PATTERN = Pattern.compile("[a-zA-Z0-9_-]+: [^\\n]+");
+    // bounds the plaintext kept in memory between export and encryption of an encrypted backup
+    private static final int PIPE_BUFFER_SIZE = 1 << 16;
 
     public BackupOperation(Context context, KeyRepository keyRepository, Progressable
             progressable) {
@@ -105,49 +108,29 @@ public class BackupOperation extends BaseOperation<BackupKeyringParcel> {
         }
 
         try {
-            Uri plainUri = null;
-            OutputStream plainOut;
             if (backupInput.getIsEncrypted()) {
                 if (cryptoInput == null) {
                     throw new IllegalStateException("Encrypted backup must supply cryptoInput parameter");
                 }
+                return executeEncrypted(log, backupInput, cryptoInput, outputStream);
+            }
 
-                plainUri = TemporaryFileProvider.createFile(mContext);
-                plainOut = FileHelper.openOutputStreamSafe(mContext.getContentResolver(), plainUri);
-            } else {
-                if (backupInput.getOutputUri() == null || outputStream != null) {
-                    throw new IllegalArgumentException("Unencrypted export to output stream is not supported!");
-                } else {
-                    plainOut = FileHelper.openOutputStreamSafe(mContext.getContentResolver(), backupInput.getOutputUri());
-                }
+            if (backupInput.getOutputUri() == null || outputStream != null) {
+                throw new IllegalArgumentException("Unencrypted export to output stream is not supported!");
             }
+            OutputStream plainOut =
+                    FileHelper.openOutputStreamSafe(mContext.getContentResolver(), backupInput.getOutputUri());
 
-            CountingOutputStream outStream = new CountingOutputStream(new BufferedOutputStream(plainOut));
             boolean backupSuccess = exportKeysToStream(log, backupInput.getMasterKeyIds(),
-                    backupInput.getExportSecret(), backupInput.getExportPublic(), outStream, backupInput.getExtraHeaders());
+                    backupInput.getExportSecret(), backupInput.getExportPublic(),
+                    new BufferedOutputStream(plainOut), backupInput.getExtraHeaders());
 
             if (!backupSuccess) {
                 // if there was an error, it will be in the log so we just have to return
                 return new ExportResult(ExportResult.RESULT_ERROR, log);
             }
 
-            if (!backupInput.getIsEncrypted()) {
-                // log.add(LogType.MSG_EXPORT_NO_ENCRYPT, 1);
-                log.add(LogType.MSG_BACKUP_SUCCESS, 1);
-                return new ExportResult(ExportResult.RESULT_OK, log);
-            }
-
-            long exportedDataSize = outStream.getCount();
-            PgpSignEncryptResult encryptResult =
-                    encryptBackupData(backupInput, cryptoInput, outputStream, plainUri, exportedDataSize);
-
-            if (!encryptResult.success()) {
-                log.addByMerge(encryptResult, 1);
-                // log.add(LogType.MSG_EXPORT_ERROR_ENCRYPT, 1);
-                return new ExportResult(ExportResult.RESULT_ERROR, log);
-            }
-
-            log.add(encryptResult, 1);
+            // log.add(LogType.MSG_EXPORT_NO_ENCRYPT, 1);
             log.add(LogType.MSG_BACKUP_SUCCESS, 1);
             return new ExportResult(ExportResult.RESULT_OK, log);
 
@@ -158,11 +141,78 @@ public class BackupOperation extends BaseOperation<BackupKeyringParcel> {
 
     }
 
+    /**
+     * Exports the keys straight into the encryption. The export runs on a second thread and writes
+     * into a bounded pipe, which is read by the encryption on this thread, so the plaintext keys
+     * are never written to storage.
+     */
     @NonNull
-    private PgpSignEncryptResult encryptBackupData(@NonNull BackupKeyringParcel backupInput,
-            @NonNull CryptoInputParcel cryptoInput, @Nullable OutputStream outputStream, Uri plainUri, long exportedDataSize)
+    private ExportResult executeEncrypted(@NonNull OperationLog log, @NonNull BackupKeyringParcel backupInput,
+            @NonNull CryptoInputParcel cryptoInput, @Nullable OutputStream outputStream)
             throws FileNotFoundException {
-        PgpSignEncryptOperation signEncryptOperation = new PgpSignEncryptOperation(mContext, mKeyRepository, mProgressable, mCancelled);
+        OutputStream outStream = openBackupOutputStream(backupInput, outputStream);
+
+        PipedInputStream plainIn = new PipedInputStream(PIPE_BUFFER_SIZE);
+        OutputStream plainOut;
+        try {
+            plainOut = new BufferedOutputStream(new PipedOutputStream(plainIn));
+        } catch (IOException e) {
+            throw new AssertionError("a new pipe must be connectable");
+        }
+
+        // the log is only written by the export thread until its task is done
+        FutureTask<Boolean> exportTask = new FutureTask<>(() -> exportKeysToStream(log,
+                backupInput.getMasterKeyIds(), backupInput.getExportSecret(), backupInput.getExportPublic(),
+                plainOut, backupInput.getExtraHeaders()));
+        new Thread(exportTask, "BackupExport").start();
+
+        PgpSignEncryptResult encryptResult;
+        try {
+            encryptResult = encryptBackupData(backupInput, cryptoInput, plainIn, outStream);
+        } finally {
+            // if the encryption stopped early, this unblocks the export thread
+            try {
+                plainIn.close();
+            } catch (IOException e) {
+                Timber.e(e, "error closing stream");
+            }
+        }
+
+        boolean backupSuccess;
+        try {
+            backupSuccess = exportTask.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.add(LogType.MSG_BACKUP_ERROR_IO, 1);
+            return new ExportResult(ExportResult.RESULT_ERROR, log);
+        }
+
+        if (!backupSuccess) {
+            // if there was an error, it will be in the log so we just have to return
+            return new ExportResult(ExportResult.RESULT_ERROR, log);
+        }
+
+        if (!encryptResult.success()) {
+            log.addByMerge(encryptResult, 1);
+            // log.add(LogType.MSG_EXPORT_ERROR_ENCRYPT, 1);
+            return new ExportResult(ExportResult.RESULT_ERROR, log);
+        }
+
+        log.add(encryptResult, 1);
+        log.add(LogType.MSG_BACKUP_SUCCESS, 1);
+        return new ExportResult(ExportResult.RESULT_OK, log);
+    }
+
+    @NonNull
+    private PgpSignEncryptResult encryptBackupData(@NonNull BackupKeyringParcel backupInput,
+            @NonNull CryptoInputParcel cryptoInput, @NonNull InputStream inStream, @NonNull OutputStream outStream) {
+        // the encryption keeps pace with the export, which reports the progress of both
+        PgpSignEncryptOperation signEncryptOperation = new PgpSignEncryptOperation(mContext, mKeyRepository, null, mCancelled);
 
         PgpSignEncryptData.Builder builder = PgpSignEncryptData.builder();
         Passphrase passphrase = cryptoInput.getPassphrase();
@@ -176,8 +226,6 @@ public class BackupOperation extends BaseOperation<BackupKeyringParcel> {
         }
         PgpSignEncryptData pgpSignEncryptData = builder.build();
 
-        InputStream inStream = FileHelper.openInputStreamSafe(mContext.getContentResolver(), plainUri);
-
         String filename;
         long[] masterKeyIds = backupInput.getMasterKeyIds();
         if (masterKeyIds != null && masterKeyIds.length == 1) {
@@ -189,23 +237,26 @@ public class BackupOperation extends BaseOperation<BackupKeyringParcel> {
         }
         filename += backupInput.getExportSecret() ? Constants.FILE_EXTENSION_BACKUP_SECRET : Constants.FILE_EXTENSION_BACKUP_PUBLIC;
 
-        InputData inputData = new InputData(inStream, exportedDataSize, filename);
+        // the size is only known once the export is done
+        InputData inputData = new InputData(inStream, InputData.UNKNOWN_FILESIZE, filename);
+
+        return signEncryptOperation.execute(
+                pgpSignEncryptData, CryptoInputParcel.createCryptoInputParcel(), inputData, outStream);
+    }
 
-        OutputStream outStream;
+    @NonNull
+    private OutputStream openBackupOutputStream(@NonNull BackupKeyringParcel backupInput,
+            @Nullable OutputStream outputStream) throws FileNotFoundException {
         if (backupInput.getOutputUri() == null) {
             if (outputStream == null) {
                 throw new IllegalArgumentException("If output uri is not set, outputStream must not be null!");
             }
-            outStream = outputStream;
-        } else {
-            if (outputStream != null) {
-                throw new IllegalArgumentException("If output uri is set, outputStream must null!");
-            }
-            outStream = FileHelper.openOutputStreamSafe(mContext.getContentResolver(), backupInput.getOutputUri());
+            return outputStream;
         }
-
-        return signEncryptOperation.execute(
-                pgpSignEncryptData, CryptoInputParcel.createCryptoInputParcel(), inputData, outStream);
+        if (outputStream != null) {
+            throw new IllegalArgumentException("If output uri is set, outputStream must null!");
+        }
+        return FileHelper.openOutputStreamSafe(mContext.getContentResolver(), backupInput.getOutputUri());
     }
 
     boolean exportKeysToStream(OperationLog log, long[] masterKeyIds, boolean exportSecret, boolean exportPublic,
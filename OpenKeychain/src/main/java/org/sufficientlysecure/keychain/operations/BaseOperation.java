@@ -24,6 +24,7 @@ import android.content.Context;
 import android.os.Parcelable;
 import androidx.annotation.NonNull;
 import androidx.annotation.StringRes;
+import androidx.collection.LongSparseArray;
 
 import org.sufficientlysecure.keychain.Constants.key;
 import org.sufficientlysecure.keychain.daos.KeyRepository;
@@ -33,6 +34,7 @@ import org.sufficientlysecure.keychain.pgp.Progressable;
 import org.sufficientlysecure.keychain.service.PassphraseCacheService;
 import org.sufficientlysecure.keychain.service.input.CryptoInputParcel;
 import org.sufficientlysecure.keychain.util.Passphrase;
+import org.sufficientlysecure.keychain.util.Preferences;
 
 public abstract class BaseOperation<T extends Parcelable> implements PassphraseCacheInterface {
 
@@ -116,6 +118,18 @@ public abstract class BaseOperation<T extends Parcelable> implements PassphraseC
         return getCachedPassphrase(key.symmetric, key.symmetric);
     }
 
+    /**
+     * Hands session keys derived while unlocking a key back to the passphrase cache, if enabled in
+     * the preferences. They are only kept if the passphrase is cached, and expire along with it.
+     */
+    protected void addCachedSessionKeys(long masterKeyId, long subKeyId, Passphrase passphrase) {
+        if (!passphrase.hasNewSessionKeys()
+                || !Preferences.getPreferences(mContext).getPassphraseCacheSessionKeys()) {
+            return;
+        }
+        PassphraseCacheService.addCachedSessionKeys(mContext, masterKeyId, subKeyId, passphrase);
+    }
+
     @Override
     public Passphrase getCachedPassphrase(long masterKeyId, long subKeyId) throws NoSecretKeyException {
         try {
@@ -126,4 +140,9 @@ public abstract class BaseOperation<T extends Parcelable> implements PassphraseC
         }
     }
 
+    @Override
+    public LongSparseArray<Passphrase> getCachedPassphrases(long[] masterKeyIds, long[] subKeyIds) {
+        return PassphraseCacheService.getCachedPassphrases(mContext, masterKeyIds, subKeyIds);
+    }
+
 }
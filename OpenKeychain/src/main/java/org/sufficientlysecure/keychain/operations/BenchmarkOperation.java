@@ -104,7 +104,8 @@ public class BenchmarkOperation extends BaseOperation<BenchmarkInputParcel> {
             PgpDecryptVerifyInputParcel.Builder builder = PgpDecryptVerifyInputParcel.builder()
                     .setInputBytes(encryptResult.getResultBytes())
                     .setAllowSymmetricDecryption(true);
-            decryptResult = op.execute(builder.build(), CryptoInputParcel.createCryptoInputParcel(passphrase));
+            // the plaintext is not needed, so don't keep it in memory
+            decryptResult = op.execute(builder.build(), CryptoInputParcel.createCryptoInputParcel(passphrase), null);
             log.add(decryptResult, 1);
             log.add(LogType.MSG_BENCH_DEC_TIME, 2, String.format("%.2f", decryptResult.mOperationTime / 1000.0));
             totalTime += decryptResult.mOperationTime;
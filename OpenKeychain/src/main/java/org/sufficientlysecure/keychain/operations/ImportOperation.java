@@ -18,14 +18,26 @@
 package org.sufficientlysecure.keychain.operations;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -37,12 +49,15 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import org.sufficientlysecure.keychain.R;
 import org.sufficientlysecure.keychain.daos.KeyMetadataDao;
+import org.sufficientlysecure.keychain.daos.KeyRepository.NotFoundException;
 import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
 import org.sufficientlysecure.keychain.keyimport.FacebookKeyserverClient;
 import org.sufficientlysecure.keychain.keyimport.HkpKeyserverAddress;
 import org.sufficientlysecure.keychain.keyimport.HkpKeyserverClient;
+import org.sufficientlysecure.keychain.keyimport.HttpCacheValidators;
 import org.sufficientlysecure.keychain.keyimport.KeyserverClient;
 import org.sufficientlysecure.keychain.keyimport.KeyserverClient.QueryNotFoundException;
+import org.sufficientlysecure.keychain.keyimport.KeyserverResponse;
 import org.sufficientlysecure.keychain.keyimport.ParcelableKeyRing;
 import org.sufficientlysecure.keychain.network.orbot.OrbotHelper;
 import org.sufficientlysecure.keychain.operations.results.ImportKeyResult;
@@ -52,8 +67,10 @@ import org.sufficientlysecure.keychain.operations.results.OperationResult.Operat
 import org.sufficientlysecure.keychain.operations.results.SaveKeyringResult;
 import org.sufficientlysecure.keychain.operations.results.UpdateTrustResult;
 import org.sufficientlysecure.keychain.pgp.CanonicalizedKeyRing;
+import org.sufficientlysecure.keychain.pgp.PrecanonicalizedKeyRing;
 import org.sufficientlysecure.keychain.pgp.Progressable;
 import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.pgp.UncachedKeyRing.IteratorWithIOThrow;
 import org.sufficientlysecure.keychain.pgp.exception.PgpGeneralException;
 import org.sufficientlysecure.keychain.service.ImportKeyringParcel;
 import org.sufficientlysecure.keychain.service.input.CryptoInputParcel;
@@ -84,6 +101,12 @@ import timber.log.Timber;
 public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel> {
 
     private static final int MAX_THREADS = 10;
+    private static final int WRITE_BATCH_SIZE = 50;
+    private static final int KEYSERVER_BATCH_SIZE = 20;
+
+    /** Urls of keyservers which refused a request for several keys, these are not asked again. */
+    private static final Set<String> keyserversWithoutMultipleGet =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
 
     public static final String CACHE_FILE_NAME = "key_import.pcl";
 
@@ -107,19 +130,20 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
     // Overloaded functions for using progressable supplied in constructor during import
     public ImportKeyResult serialKeyRingImport(Iterator<ParcelableKeyRing> entries, int num,
             HkpKeyserverAddress keyserver, ParcelableProxy proxy, boolean skipSave, boolean forceReinsert) {
-        return serialKeyRingImport(entries, num, keyserver, mProgressable, proxy, skipSave, forceReinsert);
+        return serialKeyRingImport(entries, num, keyserver, mProgressable, proxy, skipSave, forceReinsert, false,
+                null);
     }
 
     @NonNull
-    private ImportKeyResult serialKeyRingImport(ParcelableFileCache<ParcelableKeyRing> cache,
-            HkpKeyserverAddress keyserver, ParcelableProxy proxy, boolean skipSave, boolean forceReinsert) {
+    private ImportKeyResult parallelKeyRingImport(ParcelableFileCache<ParcelableKeyRing> cache,
+            boolean skipSave, boolean forceReinsert) {
 
         // get entries from cached file
         try {
             IteratorWithSize<ParcelableKeyRing> it = cache.readCache();
             int numEntries = it.getSize();
 
-            return serialKeyRingImport(it, numEntries, keyserver, mProgressable, proxy, skipSave, forceReinsert);
+            return parallelKeyRingImport(it, numEntries, skipSave, forceReinsert);
         } catch (IOException e) {
 
             // Special treatment here, we need a lot
@@ -138,11 +162,14 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
      * @param hkpKeyserver contains uri of keyserver to import from, if it is an import from cloud
      * @param progressable Allows multi-threaded import to supply a progressable that ignores the
      *                     progress of a single key being imported
+     * @param keySync      if known keys are refreshed, which may use the cache validators of their last download
+     * @param prefetchedKeys keys which were already downloaded from hkpKeyserver, by fingerprint
      */
     @NonNull
     private ImportKeyResult serialKeyRingImport(Iterator<ParcelableKeyRing> entries, int numTotalKeys,
             HkpKeyserverAddress hkpKeyserver, Progressable progressable, @NonNull ParcelableProxy proxy,
-            boolean skipSave, boolean forceReinsert) {
+            boolean skipSave, boolean forceReinsert, boolean keySync,
+            @Nullable Map<ByteBuffer, UncachedKeyRing> prefetchedKeys) {
         if (progressable != null) {
             progressable.setProgress(R.string.progress_importing, 0, 100);
         }
@@ -155,11 +182,7 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
             return new ImportKeyResult(ImportKeyResult.RESULT_FAIL_NOTHING, log);
         }
 
-        int newKeys = 0, updatedKeys = 0, missingKeys = 0, badKeys = 0;
-        ArrayList<Long> secretMasterKeyIds = new ArrayList<>();
-        ArrayList<Long> importedMasterKeyIds = new ArrayList<>();
-
-        ArrayList<CanonicalizedKeyRing> canKeyRings = new ArrayList<>();
+        ImportCounts counts = new ImportCounts();
 
         boolean cancelled = false;
         int keyImportsFinished = 0;
@@ -175,6 +198,7 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
             }
 
             boolean keyWasDownloaded = false;
+            KeyserverDownload download = null;
 
             try {
 
@@ -183,13 +207,26 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
                 // If there is already byte data, use that
                 if (entry.getBytes() != null) {
                     key = UncachedKeyRing.decodeFromData(entry.getBytes());
+                } else if (prefetchedKeys != null && entry.getExpectedFingerprint() != null
+                        && prefetchedKeys.containsKey(ByteBuffer.wrap(entry.getExpectedFingerprint()))) {
+                    // downloaded along with other keys, there are no validators for a single one of them
+                    download = new KeyserverDownload(null);
+                    key = prefetchedKeys.get(ByteBuffer.wrap(entry.getExpectedFingerprint()));
+
+                    log.add(LogType.MSG_IMPORT_KEYSERVER, 1, hkpKeyserver);
+                    String fingerprintHex = KeyFormattingUtils.convertFingerprintToHex(entry.getExpectedFingerprint());
+                    log.add(LogType.MSG_IMPORT_FETCH_KEYSERVER, 2, "0x" + fingerprintHex.substring(24));
+                    log.add(LogType.MSG_IMPORT_FETCH_KEYSERVER_OK, 3);
+                    keyWasDownloaded = true;
                 } else {
+                    download = new KeyserverDownload(getHttpCacheValidators(hkpKeyserver, entry, skipSave,
+                            forceReinsert, keySync));
                     try {
-                        key = fetchKeyFromInternet(hkpKeyserver, proxy, log, entry, key);
+                        key = fetchKeyFromInternet(hkpKeyserver, proxy, log, entry, key, download);
                     } catch (QueryNotFoundException e) {
                         // note that this does NOT fire on network errors! those will be logged inline and return in null
                         log.add(LogType.MSG_IMPORT_FETCH_ERROR_NOT_FOUND, 2);
-                        missingKeys += 1;
+                        counts.missingKeys += 1;
 
                         byte[] fingerprintHex = entry.getExpectedFingerprint();
                         if (fingerprintHex != null) {
@@ -199,12 +236,21 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
                         continue;
                     }
 
+                    if (download.notModified) {
+                        // the keyserver has nothing new since the last refresh, so there is nothing to merge
+                        long masterKeyId = KeyFormattingUtils.getKeyIdFromFingerprint(entry.getExpectedFingerprint());
+                        counts.updatedKeys += 1;
+                        counts.importedMasterKeyIds.add(masterKeyId);
+                        keyMetadataDao.renewKeyLastUpdatedTime(masterKeyId, true);
+                        continue;
+                    }
+
                     if (key != null) {
                         keyWasDownloaded = true;
 
                         if (key.isSecret()) {
                             log.add(LogType.MSG_IMPORT_FETCH_ERROR_KEYSERVER_SECRET, 2);
-                            badKeys += 1;
+                            counts.badKeys += 1;
                             continue;
                         }
                     }
@@ -212,7 +258,7 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
 
                 if (key == null) {
                     log.add(LogType.MSG_IMPORT_FETCH_ERROR, 2);
-                    badKeys += 1;
+                    counts.badKeys += 1;
                     continue;
                 }
 
@@ -222,35 +268,25 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
                 synchronized (mKeyRepository) {
                     mKeyRepository.clearLog();
                     if (key.isSecret()) {
-                        result = mKeyWritableRepository.saveSecretKeyRing(key, canKeyRings, skipSave);
+                        result = mKeyWritableRepository.saveSecretKeyRing(key, counts.canKeyRings, skipSave);
                     } else {
-                        result = mKeyWritableRepository.savePublicKeyRing(key, entry.getExpectedFingerprint(), canKeyRings,
-                                forceReinsert, skipSave);
+                        result = mKeyWritableRepository.savePublicKeyRing(key, entry.getExpectedFingerprint(),
+                                counts.canKeyRings, forceReinsert, skipSave);
                     }
                 }
-                if (!result.success()) {
-                    badKeys += 1;
-                } else {
-                    if (result.updated()) {
-                        updatedKeys += 1;
-                        importedMasterKeyIds.add(key.getMasterKeyId());
-                    } else {
-                        newKeys += 1;
-                        if (key.isSecret()) {
-                            secretMasterKeyIds.add(key.getMasterKeyId());
-                        }
-                        importedMasterKeyIds.add(key.getMasterKeyId());
-                    }
-
-                    if (!skipSave && keyWasDownloaded) {
-                        keyMetadataDao.renewKeyLastUpdatedTime(key.getMasterKeyId(), true);
+                if (counts.addSaveResult(key, result) && !skipSave && keyWasDownloaded) {
+                    keyMetadataDao.renewKeyLastUpdatedTime(key.getMasterKeyId(), true);
+                    // only if the saved data is exactly what the keyserver returned
+                    if (download.responseValidators != null && entry.getFbUsername() == null) {
+                        keyMetadataDao.saveHttpCacheValidators(key.getMasterKeyId(), hkpKeyserver.getUrl(),
+                                download.responseValidators);
                     }
                 }
 
                 log.add(result, 2);
             } catch (IOException | PgpGeneralException e) {
                 Timber.e(e, "Encountered bad key on import!");
-                ++badKeys;
+                counts.badKeys += 1;
             }
 
             // update progress
@@ -258,22 +294,197 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
             progressable.setProgress(keyImportsFinished, numTotalKeys);
         }
 
+        return finishKeyRingImport(log, counts, progressable, cancelled, skipSave);
+    }
+
+    /**
+     * Imports keyrings which are all available as bytes, as in an import from file. Decoding and
+     * canonicalization run on a pool of worker threads, while this thread saves the results in
+     * input order, WRITE_BATCH_SIZE keyrings per transaction. Keyrings which are already in the
+     * database are still merged and canonicalized here, since that needs their stored version.
+     */
+    @NonNull
+    private ImportKeyResult parallelKeyRingImport(Iterator<ParcelableKeyRing> entries, int numTotalKeys,
+            boolean skipSave, boolean forceReinsert) {
+        if (mProgressable != null) {
+            mProgressable.setProgress(R.string.progress_importing, 0, 100);
+        }
+
+        OperationLog log = new OperationLog();
+        log.add(LogType.MSG_IMPORT, 0, numTotalKeys);
+
+        // If there aren't even any keys, do nothing here.
+        if (entries == null || !entries.hasNext()) {
+            return new ImportKeyResult(ImportKeyResult.RESULT_FAIL_NOTHING, log);
+        }
+
+        ImportCounts counts = new ImportCounts();
+
+        boolean cancelled = false;
+        int keyImportsFinished = 0;
+
+        ExecutorService canonicalizeExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        ArrayDeque<PendingKeyRing> pending = new ArrayDeque<>();
+        try {
+            while (entries.hasNext() || !pending.isEmpty()) {
+                // keep the workers busy while the batch is being saved
+                while (pending.size() < 2 * WRITE_BATCH_SIZE && entries.hasNext()) {
+                    ParcelableKeyRing entry = entries.next();
+                    byte[] data = entry.getBytes();
+                    pending.add(new PendingKeyRing(entry.getExpectedFingerprint(),
+                            canonicalizeExecutor.submit(() -> precanonicalizeKeyRing(data))));
+                }
+
+                // Has this action been cancelled? If so, don't proceed any further
+                if (checkCancelled()) {
+                    cancelled = true;
+                    break;
+                }
+
+                // bad keys stay in the batch as null, so they are logged in input order
+                ArrayList<PrecanonicalizedKeyRing> batch = new ArrayList<>();
+                ArrayList<byte[]> expectedFingerprints = new ArrayList<>();
+                while (batch.size() < WRITE_BATCH_SIZE && !pending.isEmpty()) {
+                    PendingKeyRing pendingKeyRing = pending.poll();
+                    batch.add(takeKeyRing(pendingKeyRing.keyRing));
+                    expectedFingerprints.add(pendingKeyRing.expectedFingerprint);
+                }
+
+                List<SaveKeyringResult> results = saveKeyRingBatch(batch, expectedFingerprints, counts.canKeyRings,
+                        skipSave, forceReinsert);
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batch.get(i) == null) {
+                        log.add(LogType.MSG_IMPORT_FETCH_ERROR, 2);
+                        counts.badKeys += 1;
+                        continue;
+                    }
+                    counts.addSaveResult(batch.get(i).getRing(), results.get(i));
+                    log.add(results.get(i), 2);
+                }
+
+                // update progress
+                keyImportsFinished += batch.size();
+                if (mProgressable != null) {
+                    mProgressable.setProgress(keyImportsFinished, numTotalKeys);
+                }
+            }
+        } finally {
+            canonicalizeExecutor.shutdownNow();
+        }
+
+        return finishKeyRingImport(log, counts, mProgressable, cancelled, skipSave);
+    }
+
+    @Nullable
+    private static PrecanonicalizedKeyRing precanonicalizeKeyRing(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return PrecanonicalizedKeyRing.canonicalize(UncachedKeyRing.decodeFromData(data));
+        } catch (IOException | PgpGeneralException e) {
+            Timber.e(e, "Encountered bad key on import!");
+            return null;
+        }
+    }
+
+    @Nullable
+    private static PrecanonicalizedKeyRing takeKeyRing(Future<PrecanonicalizedKeyRing> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            Timber.e(e, "Encountered bad key on import!");
+            return null;
+        }
+    }
+
+    /**
+     * Saves a batch of keyrings in a single transaction. A keyring which fails to save inside the
+     * transaction takes the others down with it, in that case they are saved one by one instead.
+     * The result of a null keyring is null.
+     */
+    private List<SaveKeyringResult> saveKeyRingBatch(List<PrecanonicalizedKeyRing> batch,
+            List<byte[]> expectedFingerprints, ArrayList<CanonicalizedKeyRing> canKeyRings, boolean skipSave,
+            boolean forceReinsert) {
+        ArrayList<SaveKeyringResult> results = new ArrayList<>(batch.size());
+        if (batch.isEmpty()) {
+            return results;
+        }
+
+        ArrayList<CanonicalizedKeyRing> batchCanKeyRings = new ArrayList<>();
+
+        // synchronizing prevents https://github.com/open-keychain/open-keychain/issues/1221
+        // and https://github.com/open-keychain/open-keychain/issues/1480
+        synchronized (mKeyRepository) {
+            boolean committed = false;
+            boolean completed = false;
+            mKeyWritableRepository.beginBatchTransaction();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    results.add(saveKeyRing(batch.get(i), expectedFingerprints.get(i), batchCanKeyRings, skipSave,
+                            forceReinsert));
+                }
+                completed = true;
+            } finally {
+                if (completed) {
+                    committed = mKeyWritableRepository.endBatchTransaction();
+                } else {
+                    mKeyWritableRepository.rollbackBatchTransaction();
+                }
+            }
+
+            if (!committed) {
+                Timber.d("Batch of %d keys was rolled back, saving individually", batch.size());
+                results.clear();
+                batchCanKeyRings.clear();
+                for (int i = 0; i < batch.size(); i++) {
+                    results.add(saveKeyRing(batch.get(i), expectedFingerprints.get(i), batchCanKeyRings, skipSave,
+                            forceReinsert));
+                }
+            }
+        }
+
+        canKeyRings.addAll(batchCanKeyRings);
+        return results;
+    }
+
+    @Nullable
+    private SaveKeyringResult saveKeyRing(@Nullable PrecanonicalizedKeyRing keyRing, byte[] expectedFingerprint,
+            ArrayList<CanonicalizedKeyRing> canKeyRings, boolean skipSave, boolean forceReinsert) {
+        if (keyRing == null) {
+            return null;
+        }
+        mKeyRepository.clearLog();
+        if (keyRing.getRing().isSecret()) {
+            return mKeyWritableRepository.saveSecretKeyRing(keyRing, canKeyRings, skipSave);
+        } else {
+            return mKeyWritableRepository.savePublicKeyRing(keyRing, expectedFingerprint, canKeyRings, forceReinsert,
+                    skipSave);
+        }
+    }
+
+    /**
+     * Consolidates the trust database if secret keys were imported, and builds the final result.
+     */
+    @NonNull
+    private ImportKeyResult finishKeyRingImport(OperationLog log, ImportCounts counts, Progressable progressable,
+            boolean cancelled, boolean skipSave) {
         // Special: consolidate on secret key import (cannot be cancelled!)
         // synchronized on mProviderHelper to prevent
         // https://github.com/open-keychain/open-keychain/issues/1221 since a consolidate deletes
         // and re-inserts keys, which could conflict with a parallel db key update
-        if (!skipSave && !secretMasterKeyIds.isEmpty()) {
+        if (!skipSave && !counts.secretMasterKeyIds.isEmpty()) {
             setPreventCancel();
             synchronized (mKeyRepository) {
-                UpdateTrustResult result = mKeyWritableRepository.updateTrustDb(secretMasterKeyIds, progressable);
+                UpdateTrustResult result = mKeyWritableRepository.updateTrustDb(counts.secretMasterKeyIds, progressable);
                 log.add(result, 1);
             }
         }
 
         // convert to long array
-        long[] importedMasterKeyIdsArray = new long[importedMasterKeyIds.size()];
-        for (int i = 0; i < importedMasterKeyIds.size(); ++i) {
-            importedMasterKeyIdsArray[i] = importedMasterKeyIds.get(i);
+        long[] importedMasterKeyIdsArray = new long[counts.importedMasterKeyIds.size()];
+        for (int i = 0; i < counts.importedMasterKeyIds.size(); ++i) {
+            importedMasterKeyIdsArray[i] = counts.importedMasterKeyIds.get(i);
         }
 
         int resultType = 0;
@@ -283,19 +494,19 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
         }
 
         // special return case: no new keys at all
-        if (badKeys == 0 && newKeys == 0 && updatedKeys == 0) {
+        if (counts.badKeys == 0 && counts.newKeys == 0 && counts.updatedKeys == 0) {
             // if keys merely aren't on keyservers, it's just a warning
             resultType = ImportKeyResult.RESULT_FAIL_NOTHING;
         } else {
-            if (newKeys > 0) {
+            if (counts.newKeys > 0) {
                 resultType |= ImportKeyResult.RESULT_OK_NEWKEYS;
             }
-            if (updatedKeys > 0) {
+            if (counts.updatedKeys > 0) {
                 resultType |= ImportKeyResult.RESULT_OK_UPDATED;
             }
-            if (badKeys > 0) {
+            if (counts.badKeys > 0) {
                 resultType |= ImportKeyResult.RESULT_WITH_ERRORS;
-                if (newKeys == 0 && updatedKeys == 0) {
+                if (counts.newKeys == 0 && counts.updatedKeys == 0) {
                     resultType |= ImportKeyResult.RESULT_ERROR;
                 }
             }
@@ -306,9 +517,9 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
 
         if (!cancelled) {
             // Final log entry, it's easier to do this individually
-            if ((newKeys > 0 || updatedKeys > 0) && badKeys > 0) {
+            if ((counts.newKeys > 0 || counts.updatedKeys > 0) && counts.badKeys > 0) {
                 log.add(LogType.MSG_IMPORT_PARTIAL, 1);
-            } else if (newKeys > 0 || updatedKeys > 0) {
+            } else if (counts.newKeys > 0 || counts.updatedKeys > 0) {
                 log.add(LogType.MSG_IMPORT_SUCCESS, 1);
             } else {
                 log.add(LogType.MSG_IMPORT_ERROR, 1);
@@ -316,15 +527,40 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
         }
 
         ImportKeyResult result = new ImportKeyResult(
-                resultType, log, newKeys, updatedKeys, missingKeys, badKeys, secretMasterKeyIds.size(),
-                importedMasterKeyIdsArray);
+                resultType, log, counts.newKeys, counts.updatedKeys, counts.missingKeys, counts.badKeys,
+                counts.secretMasterKeyIds.size(), importedMasterKeyIdsArray);
 
-        result.setCanonicalizedKeyRings(canKeyRings);
+        result.setCanonicalizedKeyRings(counts.canKeyRings);
         return result;
     }
 
+    /**
+     * Returns the cache validators to refresh the given entry with a conditional request. Keys
+     * are only refreshed that way in a plain sync from a keyserver, if ever, and only while they
+     * are still in the database. For any other download, a "not modified" response would leave
+     * nothing to import.
+     */
+    @Nullable
+    private HttpCacheValidators getHttpCacheValidators(HkpKeyserverAddress hkpKeyserver, ParcelableKeyRing entry,
+            boolean skipSave, boolean forceReinsert, boolean keySync) {
+        if (!keySync || hkpKeyserver == null || entry.getExpectedFingerprint() == null
+                || entry.getFbUsername() != null || skipSave || forceReinsert) {
+            return null;
+        }
+        long masterKeyId = KeyFormattingUtils.getKeyIdFromFingerprint(entry.getExpectedFingerprint());
+        try {
+            byte[] storedFingerprint = mKeyRepository.getFingerprintByKeyId(masterKeyId);
+            if (!Arrays.equals(storedFingerprint, entry.getExpectedFingerprint())) {
+                return null;
+            }
+        } catch (NotFoundException e) {
+            return null;
+        }
+        return keyMetadataDao.getHttpCacheValidators(masterKeyId, hkpKeyserver.getUrl());
+    }
+
     private UncachedKeyRing fetchKeyFromInternet(HkpKeyserverAddress hkpKeyserver, @NonNull ParcelableProxy proxy,
-            OperationLog log, ParcelableKeyRing entry, UncachedKeyRing key)
+            OperationLog log, ParcelableKeyRing entry, UncachedKeyRing key, KeyserverDownload download)
             throws PgpGeneralException, IOException, QueryNotFoundException {
         QueryNotFoundException queryNotFoundException = null;
 
@@ -333,7 +569,7 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
         if (canFetchFromKeyservers) {
             UncachedKeyRing keyserverKey = null;
             try {
-                keyserverKey = fetchKeyFromKeyserver(hkpKeyserver, proxy, log, entry);
+                keyserverKey = fetchKeyFromKeyserver(hkpKeyserver, proxy, log, entry, download);
             } catch (QueryNotFoundException e) {
                 queryNotFoundException = e;
             }
@@ -360,9 +596,10 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
 
     @Nullable
     private UncachedKeyRing fetchKeyFromKeyserver(HkpKeyserverAddress hkpKeyserver, @NonNull ParcelableProxy proxy,
-            OperationLog log, ParcelableKeyRing entry) throws PgpGeneralException, IOException, KeyserverClient.QueryNotFoundException {
+            OperationLog log, ParcelableKeyRing entry, KeyserverDownload download)
+            throws PgpGeneralException, IOException, KeyserverClient.QueryNotFoundException {
         try {
-            byte[] data;
+            KeyserverResponse response;
             log.add(LogType.MSG_IMPORT_KEYSERVER, 1, hkpKeyserver);
 
             HkpKeyserverClient keyserverInteractor = HkpKeyserverClient.fromHkpKeyserverAddress(hkpKeyserver);
@@ -372,12 +609,20 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
                 String fingerprintHex = KeyFormattingUtils.convertFingerprintToHex(entry.getExpectedFingerprint());
                 log.add(LogType.MSG_IMPORT_FETCH_KEYSERVER, 2, "0x" +
                         fingerprintHex.substring(24));
-                data = keyserverInteractor.get("0x" + fingerprintHex, proxy).getBytes();
+                response = keyserverInteractor.getIfModified("0x" + fingerprintHex, proxy,
+                        download.requestValidators);
             } else {
                 log.add(LogType.MSG_IMPORT_FETCH_KEYSERVER, 2, entry.getKeyIdHex());
-                data = keyserverInteractor.get(entry.getKeyIdHex(), proxy).getBytes();
+                response = keyserverInteractor.getIfModified(entry.getKeyIdHex(), proxy, null);
             }
-            UncachedKeyRing keyserverKey = UncachedKeyRing.decodeFromData(data);
+            if (response.isNotModified()) {
+                log.add(LogType.MSG_IMPORT_FETCH_KEYSERVER_NOT_MODIFIED, 3);
+                download.notModified = true;
+                return null;
+            }
+            download.responseValidators = response.getValidators();
+
+            UncachedKeyRing keyserverKey = UncachedKeyRing.decodeFromData(response.getBody().getBytes());
             if (keyserverKey != null) {
                 log.add(LogType.MSG_IMPORT_FETCH_KEYSERVER_OK, 3);
             } else {
@@ -394,6 +639,50 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
         }
     }
 
+    /**
+     * Downloads the keys of the given entries from the keyserver with a single request. Only keys
+     * with one of the expected fingerprints are returned, any others the keyserver might send are
+     * dropped. Entries whose key is missing from the result are left for a download of their own.
+     */
+    @NonNull
+    private Map<ByteBuffer, UncachedKeyRing> fetchKeysFromKeyserver(HkpKeyserverAddress hkpKeyserver,
+            @NonNull ParcelableProxy proxy, List<ParcelableKeyRing> entries) {
+        HashSet<ByteBuffer> expectedFingerprints = new HashSet<>();
+        ArrayList<String> keyIdHexes = new ArrayList<>(entries.size());
+        for (ParcelableKeyRing entry : entries) {
+            expectedFingerprints.add(ByteBuffer.wrap(entry.getExpectedFingerprint()));
+            keyIdHexes.add("0x" + KeyFormattingUtils.convertFingerprintToHex(entry.getExpectedFingerprint()));
+        }
+
+        HashMap<ByteBuffer, UncachedKeyRing> keys = new HashMap<>();
+        try {
+            List<String> armoredKeys = HkpKeyserverClient.fromHkpKeyserverAddress(hkpKeyserver)
+                    .getMultiple(keyIdHexes, proxy);
+            if (armoredKeys == null) {
+                Timber.d("Keyserver %s refused a request for several keys", hkpKeyserver.getUrl());
+                keyserversWithoutMultipleGet.add(hkpKeyserver.getUrl());
+                return keys;
+            }
+
+            for (String armoredKey : armoredKeys) {
+                // a single armored block may contain several keyrings
+                IteratorWithIOThrow<UncachedKeyRing> it =
+                        UncachedKeyRing.fromStream(new ByteArrayInputStream(armoredKey.getBytes(StandardCharsets.UTF_8)));
+                while (it.hasNext()) {
+                    UncachedKeyRing key = it.next();
+                    ByteBuffer fingerprint = ByteBuffer.wrap(key.getFingerprint());
+                    if (!key.isSecret() && expectedFingerprints.contains(fingerprint)) {
+                        keys.put(fingerprint, key);
+                    }
+                }
+            }
+        } catch (KeyserverClient.QueryFailedException | IOException e) {
+            // including not found, which may also mean the keyserver only looked at one of the keys
+            Timber.d(e, "query for several keys failed");
+        }
+        return keys;
+    }
+
     private UncachedKeyRing fetchKeyFromFacebook(@NonNull ParcelableProxy proxy, OperationLog log, ParcelableKeyRing entry)
             throws PgpGeneralException, IOException {
         if (facebookServer == null) {
@@ -445,12 +734,13 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
         HkpKeyserverAddress keyServer = importInput.getKeyserver();
         boolean skipSave = importInput.isSkipSave();
         boolean forceReinsert = importInput.isForceReinsert();
+        boolean keySync = importInput.isKeySync();
 
         ImportKeyResult result;
-        if (keyList == null) {// import from file, do serially
+        if (keyList == null) {// import from file, no network involved
             ParcelableFileCache<ParcelableKeyRing> cache =
                     new ParcelableFileCache<>(mContext, CACHE_FILE_NAME);
-            result = serialKeyRingImport(cache, null, null, skipSave, forceReinsert);
+            result = parallelKeyRingImport(cache, skipSave, forceReinsert);
         } else {
             ParcelableProxy proxy;
             if (cryptoInput.getParcelableProxy() == null) {
@@ -465,53 +755,72 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
                 proxy = cryptoInput.getParcelableProxy();
             }
 
-            result = multiThreadedKeyImport(keyList, keyServer, proxy, skipSave, forceReinsert);
+            result = multiThreadedKeyImport(keyList, keyServer, proxy, skipSave, forceReinsert, keySync);
         }
         return result;
     }
 
+    /**
+     * Imports the given keys on a pool of threads. Keys which are only referenced by fingerprint
+     * are downloaded from the keyserver KEYSERVER_BATCH_SIZE at a time, with a single request per
+     * batch. Keys which a batch download did not return are then downloaded individually, just
+     * like all other keys. A batch request can't be conditional, so keys with stored cache
+     * validators are left out of batches and refreshed with a conditional request of their own.
+     */
     @NonNull
     private ImportKeyResult multiThreadedKeyImport(List<ParcelableKeyRing> keyList, HkpKeyserverAddress keyServer,
-            ParcelableProxy proxy, boolean skipSave, boolean forceReinsert) {
+            ParcelableProxy proxy, boolean skipSave, boolean forceReinsert, boolean keySync) {
         Timber.d("Multi-threaded key import starting");
 
-        final Iterator<ParcelableKeyRing> keyListIterator = keyList.iterator();
         final int totKeys = keyList.size();
 
-        ExecutorService importExecutor = new ThreadPoolExecutor(0, MAX_THREADS, 30L, TimeUnit.SECONDS,
+        // with an unbounded queue, a pool never grows beyond its core threads
+        ThreadPoolExecutor importExecutor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30L, TimeUnit.SECONDS,
                 new LinkedBlockingQueue<Runnable>());
-        ExecutorCompletionService<ImportKeyResult> importCompletionService =
+        importExecutor.allowCoreThreadTimeOut(true);
+        ExecutorCompletionService<ImportJobResult> importCompletionService =
                 new ExecutorCompletionService<>(importExecutor);
 
-        while (keyListIterator.hasNext()) { // submit all key rings to be imported
-
-            final ParcelableKeyRing pkRing = keyListIterator.next();
-
-            Callable<ImportKeyResult> importOperationCallable = new Callable<ImportKeyResult>
-                    () {
-
-                @Override
-                public ImportKeyResult call() {
-                    if (checkCancelled()) {
-                        return null;
-                    }
-
-                    ArrayList<ParcelableKeyRing> list = new ArrayList<>();
-                    list.add(pkRing);
-                    ProgressScaler ignoreProgressable = new ProgressScaler();
-
-                    return serialKeyRingImport(list.iterator(), 1, keyServer, ignoreProgressable,
-                            proxy, skipSave, forceReinsert);
-                }
-            };
+        boolean canFetchBatched = canFetchBatched(keyServer, proxy);
+        ArrayList<ParcelableKeyRing> batch = new ArrayList<>();
+        for (ParcelableKeyRing pkRing : keyList) { // submit all key rings to be imported
+            boolean canBeBatched = canFetchBatched && pkRing.getBytes() == null
+                    && pkRing.getExpectedFingerprint() != null && pkRing.getFbUsername() == null
+                    && getHttpCacheValidators(keyServer, pkRing, skipSave, forceReinsert, keySync) == null;
+            if (!canBeBatched) {
+                importCompletionService.submit(
+                        () -> importSingleKey(pkRing, keyServer, proxy, skipSave, forceReinsert, keySync));
+                continue;
+            }
 
-            importCompletionService.submit(importOperationCallable);
+            batch.add(pkRing);
+            if (batch.size() == KEYSERVER_BATCH_SIZE) {
+                final List<ParcelableKeyRing> fullBatch = batch;
+                importCompletionService.submit(
+                        () -> importBatch(fullBatch, keyServer, proxy, skipSave, forceReinsert));
+                batch = new ArrayList<>();
+            }
+        }
+        if (batch.size() == 1) {
+            // a single key is better off with a conditional request of its own
+            ParcelableKeyRing pkRing = batch.get(0);
+            importCompletionService.submit(
+                    () -> importSingleKey(pkRing, keyServer, proxy, skipSave, forceReinsert, keySync));
+        } else if (!batch.isEmpty()) {
+            final List<ParcelableKeyRing> lastBatch = batch;
+            importCompletionService.submit(
+                    () -> importBatch(lastBatch, keyServer, proxy, skipSave, forceReinsert));
         }
 
         KeyImportAccumulator accumulator = new KeyImportAccumulator(totKeys, mProgressable);
         while (!accumulator.isImportFinished()) { // accumulate the results of each import
             try {
-                accumulator.accumulateKeyImport(importCompletionService.take().get());
+                ImportJobResult jobResult = importCompletionService.take().get();
+                for (ParcelableKeyRing pkRing : jobResult.remainingEntries) {
+                    importCompletionService.submit(
+                            () -> importSingleKey(pkRing, keyServer, proxy, skipSave, forceReinsert, keySync));
+                }
+                accumulator.accumulateKeyImport(jobResult.result, jobResult.numKeys);
             } catch (InterruptedException | ExecutionException e) {
                 Timber.e(e, "A key could not be imported during multi-threaded " +
                         "import");
@@ -527,6 +836,125 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
         return accumulator.getConsolidatedResult();
     }
 
+    /**
+     * Keys are only downloaded in batches if the keyserver didn't refuse that before, and never
+     * over Tor, where a single request for several keys would link them to each other.
+     */
+    private boolean canFetchBatched(HkpKeyserverAddress keyServer, ParcelableProxy proxy) {
+        return keyServer != null && !proxy.isTorEnabled()
+                && !keyserversWithoutMultipleGet.contains(keyServer.getUrl());
+    }
+
+    private ImportJobResult importSingleKey(ParcelableKeyRing pkRing, HkpKeyserverAddress keyServer,
+            ParcelableProxy proxy, boolean skipSave, boolean forceReinsert, boolean keySync) {
+        if (checkCancelled()) {
+            return new ImportJobResult(null, 1, Collections.emptyList());
+        }
+
+        ArrayList<ParcelableKeyRing> list = new ArrayList<>();
+        list.add(pkRing);
+        ProgressScaler ignoreProgressable = new ProgressScaler();
+
+        ImportKeyResult result = serialKeyRingImport(list.iterator(), 1, keyServer, ignoreProgressable,
+                proxy, skipSave, forceReinsert, keySync, null);
+        return new ImportJobResult(result, 1, Collections.emptyList());
+    }
+
+    private ImportJobResult importBatch(List<ParcelableKeyRing> batch, HkpKeyserverAddress keyServer,
+            ParcelableProxy proxy, boolean skipSave, boolean forceReinsert) {
+        if (checkCancelled()) {
+            return new ImportJobResult(null, batch.size(), Collections.emptyList());
+        }
+
+        Map<ByteBuffer, UncachedKeyRing> prefetchedKeys = fetchKeysFromKeyserver(keyServer, proxy, batch);
+
+        ArrayList<ParcelableKeyRing> fetchedEntries = new ArrayList<>();
+        ArrayList<ParcelableKeyRing> remainingEntries = new ArrayList<>();
+        for (ParcelableKeyRing pkRing : batch) {
+            if (prefetchedKeys.containsKey(ByteBuffer.wrap(pkRing.getExpectedFingerprint()))) {
+                fetchedEntries.add(pkRing);
+            } else {
+                remainingEntries.add(pkRing);
+            }
+        }
+        Timber.d("Batch download returned %d of %d keys", fetchedEntries.size(), batch.size());
+        if (fetchedEntries.isEmpty()) {
+            return new ImportJobResult(null, 0, remainingEntries);
+        }
+
+        ProgressScaler ignoreProgressable = new ProgressScaler();
+        ImportKeyResult result = serialKeyRingImport(fetchedEntries.iterator(), fetchedEntries.size(), keyServer,
+                ignoreProgressable, proxy, skipSave, forceReinsert, false, prefetchedKeys);
+        return new ImportJobResult(result, fetchedEntries.size(), remainingEntries);
+    }
+
+    /** The result of one job of a multi-threaded import, which may leave entries for further jobs. */
+    private static class ImportJobResult {
+        @Nullable
+        final ImportKeyResult result;
+        final int numKeys;
+        final List<ParcelableKeyRing> remainingEntries;
+
+        ImportJobResult(@Nullable ImportKeyResult result, int numKeys, List<ParcelableKeyRing> remainingEntries) {
+            this.result = result;
+            this.numKeys = numKeys;
+            this.remainingEntries = remainingEntries;
+        }
+    }
+
+    /** The state of a conditional download of one key from a keyserver. */
+    private static class KeyserverDownload {
+        @Nullable
+        final HttpCacheValidators requestValidators;
+        @Nullable
+        HttpCacheValidators responseValidators;
+        boolean notModified;
+
+        KeyserverDownload(@Nullable HttpCacheValidators requestValidators) {
+            this.requestValidators = requestValidators;
+        }
+    }
+
+    /** A keyring of a file import which is being canonicalized, with the fingerprint it must match. */
+    private static class PendingKeyRing {
+        @Nullable
+        final byte[] expectedFingerprint;
+        final Future<PrecanonicalizedKeyRing> keyRing;
+
+        PendingKeyRing(@Nullable byte[] expectedFingerprint, Future<PrecanonicalizedKeyRing> keyRing) {
+            this.expectedFingerprint = expectedFingerprint;
+            this.keyRing = keyRing;
+        }
+    }
+
+    /** Tallies the keys of a single import. */
+    private static class ImportCounts {
+        int newKeys = 0, updatedKeys = 0, missingKeys = 0, badKeys = 0;
+        final ArrayList<Long> secretMasterKeyIds = new ArrayList<>();
+        final ArrayList<Long> importedMasterKeyIds = new ArrayList<>();
+
+        final ArrayList<CanonicalizedKeyRing> canKeyRings = new ArrayList<>();
+
+        /** Counts the result of saving the given key, returns true if it was saved successfully. */
+        boolean addSaveResult(UncachedKeyRing key, SaveKeyringResult result) {
+            if (!result.success()) {
+                badKeys += 1;
+                return false;
+            }
+
+            if (result.updated()) {
+                updatedKeys += 1;
+            } else {
+                newKeys += 1;
+                if (key.isSecret()) {
+                    secretMasterKeyIds.add(key.getMasterKeyId());
+                }
+            }
+            importedMasterKeyIds.add(key.getMasterKeyId());
+            return true;
+        }
+    }
+
     /**
      * Used to accumulate the results of individual key imports
      */
@@ -565,7 +993,12 @@ public class ImportOperation extends BaseReadWriteOperation<ImportKeyringParcel>
         }
 
         public void accumulateKeyImport(ImportKeyResult result) {
-            mImportedKeys++;
+            accumulateKeyImport(result, 1);
+        }
+
+        /** Accumulates the result of an import of several keys, which may be null if it was cancelled. */
+        public void accumulateKeyImport(@Nullable ImportKeyResult result, int numKeys) {
+            mImportedKeys += numKeys;
 
             if (result == null) {
                 return;
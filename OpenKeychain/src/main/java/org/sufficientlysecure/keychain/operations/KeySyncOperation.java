@@ -82,7 +82,7 @@ public class KeySyncOperation extends BaseReadWriteOperation<KeySyncParcel> {
         Timber.d("Starting normal update");
         ImportOperation importOp = new ImportOperation(mContext, mKeyWritableRepository, mProgressable, mCancelled);
         return importOp.execute(
-                ImportKeyringParcel.createImportKeyringParcel(keyList, preferences.getPreferredKeyserver(), reinsertAll),
+                ImportKeyringParcel.createForKeySync(keyList, preferences.getPreferredKeyserver(), reinsertAll),
                 cryptoInputParcel
         );
     }
@@ -141,9 +141,10 @@ public class KeySyncOperation extends BaseReadWriteOperation<KeySyncParcel> {
             ImportKeyResult result =
                     new ImportOperation(mContext, mKeyWritableRepository, null, mCancelled)
                             .execute(
-                                    ImportKeyringParcel.createImportKeyringParcel(
+                                    ImportKeyringParcel.createForKeySync(
                                             keyWrapper,
-                                            preferences.getPreferredKeyserver()
+                                            preferences.getPreferredKeyserver(),
+                                            false
                                     ),
                                     cryptoInputParcel
                             );
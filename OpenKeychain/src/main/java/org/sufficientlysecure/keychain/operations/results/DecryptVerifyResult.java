@@ -18,6 +18,8 @@
 package org.sufficientlysecure.keychain.operations.results;
 
 
+import java.io.InputStream;
+
 import android.os.Parcel;
 
 import org.openintents.openpgp.OpenPgpDecryptionResult;
@@ -26,6 +28,7 @@ import org.openintents.openpgp.OpenPgpSignatureResult;
 import org.sufficientlysecure.keychain.pgp.DecryptVerifySecurityProblem;
 import org.sufficientlysecure.keychain.service.input.CryptoInputParcel;
 import org.sufficientlysecure.keychain.service.input.RequiredInputParcel;
+import org.sufficientlysecure.keychain.util.ChunkedByteArrayOutputStream;
 
 public class DecryptVerifyResult extends InputPendingResult {
 
@@ -39,7 +42,7 @@ public class DecryptVerifyResult extends InputPendingResult {
 
     CryptoInputParcel mCachedCryptoInputParcel;
 
-    byte[] mOutputBytes;
+    ChunkedByteArrayOutputStream mOutputBuffer;
 
     public long mOperationTime;
     private final long[] mSkippedDisallowedKeys;
@@ -108,12 +111,21 @@ public class DecryptVerifyResult extends InputPendingResult {
         mDecryptionMetadata = decryptMetadata;
     }
 
-    public void setOutputBytes(byte[] outputBytes) {
-        mOutputBytes = outputBytes;
+    public void setOutputBuffer(ChunkedByteArrayOutputStream outputBuffer) {
+        mOutputBuffer = outputBuffer;
     }
 
+    /**
+     * Returns a copy of the output as a single array, or null if it was not kept in memory. Use
+     * getOutputStream() to read it without copying.
+     */
     public byte[] getOutputBytes() {
-        return mOutputBytes;
+        return mOutputBuffer != null ? mOutputBuffer.toByteArray() : null;
+    }
+
+    /** Returns a stream which reads the output from memory, or null if it was not kept in memory. */
+    public InputStream getOutputStream() {
+        return mOutputBuffer != null ? mOutputBuffer.toInputStream() : null;
     }
 
     public long[] getSkippedDisallowedKeys() {
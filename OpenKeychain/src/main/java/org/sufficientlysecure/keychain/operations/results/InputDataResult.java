@@ -19,6 +19,7 @@ package org.sufficientlysecure.keychain.operations.results;
 
 
 import java.util.ArrayList;
+import java.util.List;
 
 import android.net.Uri;
 import android.os.Parcel;
@@ -69,6 +70,14 @@ public class InputDataResult extends InputPendingResult {
         return mOutputUris;
     }
 
+    @Override
+    protected void collectMetrics(List<OperationMetrics> result) {
+        super.collectMetrics(result);
+        if (mDecryptVerifyResult != null) {
+            mDecryptVerifyResult.collectMetrics(result);
+        }
+    }
+
     @Override
     public int describeContents() {
         return 0;
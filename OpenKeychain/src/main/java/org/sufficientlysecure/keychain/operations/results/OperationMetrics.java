@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.operations.results;
+
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+import org.sufficientlysecure.keychain.BuildConfig;
+
+
+/**
+ * Time spent and bytes processed per stage of a sign/encrypt or decrypt/verify operation.
+ * <p>
+ * Stages may be nested, e.g. reading from the cipher stream reads from the armor stream, which
+ * in turn reads from the input. Time spent in a nested stage is not counted for the enclosing
+ * one, so the times of all stages add up to the measured part of the operation.
+ * <p>
+ * Streams are measured per buffer. Single byte reads and writes are only counted, since timing
+ * each of them would cost more than the byte itself. Their time is counted for the enclosing
+ * stage, so callers reading byte by byte time the whole loop with start() and stop() instead.
+ * <p>
+ * Instances are not thread safe, each operation records into its own.
+ */
+public class OperationMetrics implements Parcelable {
+
+    public enum Stage {
+        /** S2K and unlocking of secret keys */
+        KEY_UNLOCK,
+        /** Generating or recovering the session key, including public key operations */
+        SESSION_KEY,
+        SYMMETRIC_CIPHER,
+        COMPRESSION,
+        SIGNATURE_HASH,
+        ARMOR,
+        INPUT_IO,
+        OUTPUT_IO,
+    }
+
+    private final String operationName;
+    private final long[] timeNanos;
+    private final long[] bytes;
+
+    // stages currently being measured, innermost last
+    private final ArrayList<Stage> activeStages = new ArrayList<>();
+
+    public OperationMetrics(String operationName) {
+        this.operationName = operationName;
+        timeNanos = new long[Stage.values().length];
+        bytes = new long[Stage.values().length];
+    }
+
+    private OperationMetrics(Parcel source) {
+        operationName = source.readString();
+        timeNanos = source.createLongArray();
+        bytes = source.createLongArray();
+    }
+
+    /**
+     * Starts measuring a stage. Must be followed by stop() for the same stage, typically in a
+     * finally block.
+     *
+     * @return a start time, to be passed to stop()
+     */
+    public long start(Stage stage) {
+        activeStages.add(stage);
+        return System.nanoTime();
+    }
+
+    public void stop(Stage stage, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+
+        int index = activeStages.lastIndexOf(stage);
+        if (index < 0) {
+            throw new IllegalStateException("stage was not started: " + stage);
+        }
+        activeStages.remove(index);
+
+        timeNanos[stage.ordinal()] += elapsed;
+        if (index > 0) {
+            // this time was spent inside of the enclosing stage, don't count it twice
+            timeNanos[activeStages.get(index - 1).ordinal()] -= elapsed;
+        }
+    }
+
+    public void addBytes(Stage stage, long count) {
+        bytes[stage.ordinal()] += count;
+    }
+
+    public String getOperationName() {
+        return operationName;
+    }
+
+    public long getTimeNanos(Stage stage) {
+        return timeNanos[stage.ordinal()];
+    }
+
+    public long getBytes(Stage stage) {
+        return bytes[stage.ordinal()];
+    }
+
+    /** Wraps a stream so that reading from it is measured as the given stage. */
+    public InputStream measure(InputStream in, Stage stage) {
+        return new MeasuringInputStream(in, stage);
+    }
+
+    /** Wraps a stream so that writing to it is measured as the given stage. */
+    public OutputStream measure(OutputStream out, Stage stage) {
+        return new MeasuringOutputStream(out, stage);
+    }
+
+    /**
+     * Returns the metrics in a line based format which is suitable for export, prefixed with
+     * a line identifying the device and app version.
+     */
+    public String getPrintableMetrics() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format(Locale.ENGLISH, "metrics: %s, %s %s, sdk %d, version %s\n", operationName,
+                Build.MANUFACTURER, Build.MODEL, Build.VERSION.SDK_INT, BuildConfig.VERSION_NAME));
+        for (Stage stage : Stage.values()) {
+            long time = timeNanos[stage.ordinal()];
+            long count = bytes[stage.ordinal()];
+            if (time == 0 && count == 0) {
+                continue;
+            }
+            result.append(String.format(Locale.ENGLISH, "  %s: %.3f ms", stage, time / 1e6));
+            if (count > 0) {
+                result.append(String.format(Locale.ENGLISH, ", %d bytes", count));
+                if (time > 0) {
+                    result.append(String.format(Locale.ENGLISH, ", %.2f MB/s", count * 1e3 / time));
+                }
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(operationName);
+        dest.writeLongArray(timeNanos);
+        dest.writeLongArray(bytes);
+    }
+
+    public static final Creator<OperationMetrics> CREATOR = new Creator<OperationMetrics>() {
+        public OperationMetrics createFromParcel(final Parcel source) {
+            return new OperationMetrics(source);
+        }
+
+        public OperationMetrics[] newArray(final int size) {
+            return new OperationMetrics[size];
+        }
+    };
+
+    private class MeasuringInputStream extends FilterInputStream {
+        private final Stage stage;
+
+        MeasuringInputStream(InputStream in, Stage stage) {
+            super(in);
+            this.stage = stage;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                addBytes(stage, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            long startNanos = start(stage);
+            try {
+                int count = in.read(b, off, len);
+                if (count > 0) {
+                    addBytes(stage, count);
+                }
+                return count;
+            } finally {
+                stop(stage, startNanos);
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long startNanos = start(stage);
+            try {
+                return in.skip(n);
+            } finally {
+                stop(stage, startNanos);
+            }
+        }
+    }
+
+    private class MeasuringOutputStream extends FilterOutputStream {
+        private final Stage stage;
+
+        MeasuringOutputStream(OutputStream out, Stage stage) {
+            super(out);
+            this.stage = stage;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            addBytes(stage, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            long startNanos = start(stage);
+            try {
+                out.write(b, off, len);
+                addBytes(stage, len);
+            } finally {
+                stop(stage, startNanos);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long startNanos = start(stage);
+            try {
+                out.flush();
+            } finally {
+                stop(stage, startNanos);
+            }
+        }
+
+        // FilterOutputStream's close() would flush first, just close the delegate stream
+        @Override
+        public void close() throws IOException {
+            long startNanos = start(stage);
+            try {
+                out.close();
+            } finally {
+                stop(stage, startNanos);
+            }
+        }
+    }
+}
@@ -78,6 +78,9 @@ public abstract class OperationResult implements Parcelable {
     /// A list of log entries tied to the operation result.
     protected OperationLog mLog;
 
+    /// Per stage timings of the operation, if it recorded any.
+    private OperationMetrics mMetrics;
+
     public OperationResult(int result, OperationLog log) {
         mResult = result;
         mLog = log;
@@ -87,6 +90,7 @@ public abstract class OperationResult implements Parcelable {
         mResult = source.readInt();
         // get log out of cache based on UUID from source
         mLog = logCache.readFromParcelAndGetFromCache(source);
+        mMetrics = source.readParcelable(OperationMetrics.class.getClassLoader());
     }
 
     public int getResult() {
@@ -110,6 +114,32 @@ public abstract class OperationResult implements Parcelable {
         return mLog;
     }
 
+    public OperationMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public void setMetrics(OperationMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /** Returns the metrics of this result and all of its sub results. */
+    public List<OperationMetrics> collectMetrics() {
+        ArrayList<OperationMetrics> result = new ArrayList<>();
+        collectMetrics(result);
+        return result;
+    }
+
+    protected void collectMetrics(List<OperationMetrics> result) {
+        if (mMetrics != null) {
+            result.add(mMetrics);
+        }
+        for (LogEntryParcel entry : mLog) {
+            if (entry instanceof SubLogEntryParcel) {
+                ((SubLogEntryParcel) entry).getSubResult().collectMetrics(result);
+            }
+        }
+    }
+
     /** One entry in the log. */
     public static class LogEntryParcel implements Parcelable {
         public final LogType mType;
@@ -212,6 +242,12 @@ public abstract class OperationResult implements Parcelable {
             mSubResult = source.readParcelable(SubLogEntryParcel.class.getClassLoader());
         }
 
+        /** Clones this SubLogEntryParcel, adding extra indent. The sub result is NOT cloned! */
+        public SubLogEntryParcel(SubLogEntryParcel original, int extraIndent) {
+            super(original, extraIndent);
+            mSubResult = original.mSubResult;
+        }
+
         public OperationResult getSubResult() {
             return mSubResult;
         }
@@ -540,6 +576,7 @@ public abstract class OperationResult implements Parcelable {
         MSG_MF_ERROR_FINGERPRINT (LogLevel.ERROR, R.string.msg_mf_error_fingerprint),
         MSG_MF_ERROR_KEYID (LogLevel.ERROR, R.string.msg_mf_error_keyid),
         MSG_MF_ERROR_INTEGRITY (LogLevel.ERROR, R.string.msg_mf_error_integrity),
+        MSG_MF_ERROR_INTERRUPTED (LogLevel.ERROR, R.string.msg_mf_error_interrupted),
         MSG_MF_ERROR_MASTER_NONE(LogLevel.ERROR, R.string.msg_mf_error_master_none),
         MSG_MF_ERROR_NO_CERTIFY (LogLevel.ERROR, R.string.msg_cr_error_no_certify),
         MSG_MF_ERROR_NOEXIST_PRIMARY (LogLevel.ERROR, R.string.msg_mf_error_noexist_primary),
@@ -759,6 +796,7 @@ public abstract class OperationResult implements Parcelable {
         MSG_IMPORT_FETCH_FACEBOOK (LogLevel.INFO, R.string.msg_import_fetch_facebook),
         MSG_IMPORT_FETCH_KEYSERVER (LogLevel.INFO, R.string.msg_import_fetch_keyserver),
         MSG_IMPORT_FETCH_KEYSERVER_OK (LogLevel.DEBUG, R.string.msg_import_fetch_keyserver_ok),
+        MSG_IMPORT_FETCH_KEYSERVER_NOT_MODIFIED (LogLevel.DEBUG, R.string.msg_import_fetch_keyserver_not_modified),
         MSG_IMPORT_KEYSERVER (LogLevel.DEBUG, R.string.msg_import_keyserver),
         MSG_IMPORT_MERGE (LogLevel.DEBUG, R.string.msg_import_merge),
         MSG_IMPORT_MERGE_ERROR (LogLevel.ERROR, R.string.msg_import_merge_error),
@@ -929,6 +967,7 @@ public abstract class OperationResult implements Parcelable {
         dest.writeInt(mResult);
         // cache log and write UUID to dest
         logCache.cacheAndWriteToParcel(mLog, dest);
+        dest.writeParcelable(mMetrics, 0);
     }
 
     public static class OperationLog implements Iterable<LogEntryParcel> {
@@ -993,6 +1032,16 @@ public abstract class OperationResult implements Parcelable {
             mParcels.addAll(parcels);
         }
 
+        public void addAll(OperationLog log, int extraIndent) {
+            for (LogEntryParcel entry : log) {
+                if (entry instanceof SubLogEntryParcel) {
+                    mParcels.add(new SubLogEntryParcel((SubLogEntryParcel) entry, extraIndent));
+                } else {
+                    mParcels.add(new LogEntryParcel(entry, extraIndent));
+                }
+            }
+        }
+
         public List<LogEntryParcel> toList() {
             return mParcels;
         }
@@ -18,13 +18,16 @@
 package org.sufficientlysecure.keychain.pgp;
 
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.security.PrivateKey;
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.RSAPrivateCrtKey;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import androidx.annotation.VisibleForTesting;
 import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
 import org.bouncycastle.bcpg.S2K;
 import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
@@ -74,6 +77,15 @@ public class CanonicalizedSecretKey extends CanonicalizedPublicKey {
     final private static int PRIVATE_KEY_STATE_UNLOCKED = 1;
     final private static int PRIVATE_KEY_STATE_DIVERT_TO_CARD = 2;
 
+    /**
+     * Process-wide cache of secret key types which could only be found by a trial decryption.
+     * Editing a keyring or importing it again saves the same secret key packets, so the same
+     * trials would run again. Entries are keyed by the secret key packet, which includes the
+     * S2K salt, so a key with a changed passphrase can never hit an old entry.
+     */
+    private static final DigestKeyedCache<SecretKeyType> sSecretKeyTypeCache = new DigestKeyedCache<>(256);
+    private static final AtomicInteger sTrialDecryptionCount = new AtomicInteger();
+
     CanonicalizedSecretKey(CanonicalizedSecretKeyRing ring, PGPSecretKey key) {
         super(ring, key.getPublicKey());
         mSecretKey = key;
@@ -144,7 +156,12 @@ public class CanonicalizedSecretKey extends CanonicalizedPublicKey {
     /** This method returns the SecretKeyType for this secret key, testing for an empty
      * passphrase in the process.
      *
-     * This method can potentially take a LONG time (i.e. seconds), so it should only
+     * Most keys can be classified from their packet metadata alone: dummy keys by their S2K,
+     * and keys without passphrase because they are not encrypted at all, which is how
+     * OpenKeychain stores them. Only encrypted keys need a trial decryption with an empty
+     * passphrase, whose result is cached by the digest of the secret key packet.
+     *
+     * The trial can potentially take a LONG time (i.e. seconds), so this method should only
      * ever be called by {@link KeyWritableRepository} for the purpose of caching its output
      * in the database.
      */
@@ -159,6 +176,28 @@ public class CanonicalizedSecretKey extends CanonicalizedPublicKey {
             return SecretKeyType.GNU_DUMMY;
         }
 
+        // an unencrypted key is unlocked without any passphrase, see unlock()
+        if (mSecretKey.getKeyEncryptionAlgorithm() == SymmetricKeyAlgorithmTags.NULL) {
+            return SecretKeyType.PASSPHRASE_EMPTY;
+        }
+
+        ByteBuffer cacheKey;
+        try {
+            cacheKey = DigestKeyedCache.computeKey(mSecretKey.getEncoded());
+        } catch (IOException e) {
+            cacheKey = null;
+        }
+        return sSecretKeyTypeCache.get(cacheKey, this::getSecretKeyTypeByTrialDecryption);
+    }
+
+    /** Returns how often a secret key type was found by trial decryption, i.e. the number of misses. */
+    @VisibleForTesting
+    public static int getTrialDecryptionCount() {
+        return sTrialDecryptionCount.get();
+    }
+
+    private SecretKeyType getSecretKeyTypeByTrialDecryption() {
+        sTrialDecryptionCount.incrementAndGet();
         try {
             PBESecretKeyDecryptor keyDecryptor = new JcePBESecretKeyDecryptorBuilder().setProvider(
                     Constants.BOUNCY_CASTLE_PROVIDER_NAME).build("".toCharArray());
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.pgp;
+
+
+import java.nio.ByteBuffer;
+
+import androidx.annotation.Nullable;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.sufficientlysecure.keychain.util.LruCache;
+
+
+/**
+ * Cache of the results of expensive operations on OpenPGP packets, keyed by a digest over all
+ * inputs of the operation.
+ * <p>
+ * Since the digest covers every input, a changed packet can never hit an old entry and no
+ * explicit invalidation is needed. Results are computed outside the lock, so two threads which
+ * miss the same entry at the same time may both compute it.
+ */
+class DigestKeyedCache<V> {
+    interface Computation<V, E extends Exception> {
+        V compute() throws E;
+    }
+
+    private final LruCache<ByteBuffer, V> results;
+
+    DigestKeyedCache(int maxEntries) {
+        results = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * Returns the cached result for the given cache key, or performs the computation and caches
+     * its result. A null cache key means the inputs could not be encoded, and always computes.
+     */
+    <E extends Exception> V get(@Nullable ByteBuffer cacheKey, Computation<V, E> computation) throws E {
+        if (cacheKey == null) {
+            return computation.compute();
+        }
+
+        V cachedResult;
+        synchronized (this) {
+            cachedResult = results.get(cacheKey);
+        }
+        if (cachedResult != null) {
+            return cachedResult;
+        }
+
+        V result = computation.compute();
+        synchronized (this) {
+            results.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    /** Computes a cache key over a sequence of encoded inputs. */
+    static ByteBuffer computeKey(byte[]... parts) {
+        SHA256Digest digest = new SHA256Digest();
+        for (byte[] part : parts) {
+            // length prefix, so that no two different sequences of parts hash the same input
+            int length = part.length;
+            digest.update((byte) (length >>> 24));
+            digest.update((byte) (length >>> 16));
+            digest.update((byte) (length >>> 8));
+            digest.update((byte) length);
+            digest.update(part, 0, length);
+        }
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+        return ByteBuffer.wrap(result);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.pgp;
+
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Process;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import org.sufficientlysecure.keychain.Constants;
+import timber.log.Timber;
+
+
+/**
+ * Process-wide pool of RSA key pairs which are generated in the background ahead of time.
+ * <p>
+ * Generating an RSA key takes seconds, up to a minute for 4096 bit keys on slow devices, and
+ * creating a key for a security token generates three of them. Where the key types are known
+ * before the user has finished entering everything else, they can be prepared here, and
+ * {@link PgpKeyOperation} takes them from the pool instead of generating them.
+ * <p>
+ * Only key pairs which were explicitly prepared are generated. They are kept in memory only,
+ * never written to storage, and dropped if they are not used within a few minutes or when the
+ * screen which prepared them is left. The creation time of the OpenPGP key is set when the key
+ * pair is taken, not when it was generated. Curve based keys are not pooled, generating them
+ * takes only milliseconds.
+ */
+public class KeyPairPool {
+    private static final long MAX_AGE_NANOS = TimeUnit.MINUTES.toNanos(15);
+    private static final int MAX_KEY_PAIRS_PER_SIZE = 3;
+
+    private static KeyPairPool sInstance;
+
+    public static synchronized KeyPairPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new KeyPairPool();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        if (sInstance != null) {
+            sInstance.clear();
+        }
+        sInstance = null;
+    }
+
+    private static class PooledKeyPair {
+        final KeyPair keyPair;
+        final long generatedAt;
+
+        PooledKeyPair(KeyPair keyPair, long generatedAt) {
+            this.keyPair = keyPair;
+            this.generatedAt = generatedAt;
+        }
+    }
+
+    private final HashMap<Integer, ArrayDeque<PooledKeyPair>> rsaKeyPairs = new HashMap<>();
+    private final HashMap<Integer, Integer> wantedRsaKeyPairs = new HashMap<>();
+    private Thread generatorThread;
+
+    private int hits;
+    private int misses;
+
+    private KeyPairPool() {
+    }
+
+    /**
+     * Makes sure the given number of RSA key pairs of this size will be available, generating
+     * the missing ones on a low priority background thread.
+     */
+    public synchronized void prepareRsaKeyPairs(int keySize, int count) {
+        count = Math.min(count, MAX_KEY_PAIRS_PER_SIZE);
+        Integer wanted = wantedRsaKeyPairs.get(keySize);
+        if (wanted == null || wanted < count) {
+            wantedRsaKeyPairs.put(keySize, count);
+        }
+
+        if (generatorThread == null) {
+            generatorThread = new Thread(this::generateKeyPairs, "KeyPairPool");
+            generatorThread.setDaemon(true);
+            generatorThread.start();
+        }
+    }
+
+    /**
+     * Drops all pooled key pairs and stops generating more. The key pair which is being
+     * generated at the moment is discarded when it is done.
+     */
+    public synchronized void clear() {
+        int pooled = 0;
+        for (ArrayDeque<PooledKeyPair> keyPairs : rsaKeyPairs.values()) {
+            pooled += keyPairs.size();
+        }
+        if (pooled > 0 || !wantedRsaKeyPairs.isEmpty()) {
+            Timber.d("Key pair pool: dropping %d unused key pairs", pooled);
+        }
+        rsaKeyPairs.clear();
+        wantedRsaKeyPairs.clear();
+    }
+
+    /** Returns a pooled RSA key pair of this size, or null if there is none. */
+    @Nullable
+    synchronized KeyPair takeRsaKeyPair(int keySize) {
+        dropExpiredKeyPairs();
+
+        ArrayDeque<PooledKeyPair> keyPairs = rsaKeyPairs.get(keySize);
+        PooledKeyPair pooledKeyPair = keyPairs != null ? keyPairs.poll() : null;
+
+        // one less to generate, whether this one came from the pool or not
+        Integer wanted = wantedRsaKeyPairs.get(keySize);
+        if (wanted != null && wanted > 1) {
+            wantedRsaKeyPairs.put(keySize, wanted - 1);
+        } else {
+            wantedRsaKeyPairs.remove(keySize);
+        }
+
+        if (pooledKeyPair != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        Timber.d("Key pair pool: %s for RSA %d, %d of %d key pairs taken from pool",
+                pooledKeyPair != null ? "hit" : "miss", keySize, hits, hits + misses);
+
+        return pooledKeyPair != null ? pooledKeyPair.keyPair : null;
+    }
+
+    @VisibleForTesting
+    synchronized int getPooledRsaKeyPairCount(int keySize) {
+        dropExpiredKeyPairs();
+        ArrayDeque<PooledKeyPair> keyPairs = rsaKeyPairs.get(keySize);
+        return keyPairs != null ? keyPairs.size() : 0;
+    }
+
+    private void generateKeyPairs() {
+        // the background priority of the platform, so generating doesn't compete with the UI thread
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        while (true) {
+            int keySize;
+            synchronized (this) {
+                keySize = getNextWantedKeySize();
+                if (keySize == 0) {
+                    generatorThread = null;
+                    return;
+                }
+            }
+
+            long startTime = System.nanoTime();
+            KeyPair keyPair;
+            try {
+                KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA", Constants.BOUNCY_CASTLE_PROVIDER_NAME);
+                keyGen.initialize(keySize, new SecureRandom());
+                keyPair = keyGen.generateKeyPair();
+            } catch (GeneralSecurityException e) {
+                Timber.e(e, "Error generating key pair for pool");
+                synchronized (this) {
+                    wantedRsaKeyPairs.clear();
+                    generatorThread = null;
+                }
+                return;
+            }
+            long generatedAt = System.nanoTime();
+            Timber.d("Key pair pool: generated RSA %d key pair in %d ms",
+                    keySize, TimeUnit.NANOSECONDS.toMillis(generatedAt - startTime));
+
+            synchronized (this) {
+                ArrayDeque<PooledKeyPair> keyPairs = rsaKeyPairs.get(keySize);
+                if (keyPairs == null) {
+                    keyPairs = new ArrayDeque<>();
+                    rsaKeyPairs.put(keySize, keyPairs);
+                }
+                // key operations may have generated their own in the meantime
+                Integer wanted = wantedRsaKeyPairs.get(keySize);
+                if (wanted != null && keyPairs.size() < wanted) {
+                    keyPairs.add(new PooledKeyPair(keyPair, generatedAt));
+                }
+            }
+        }
+    }
+
+    /** Returns a key size with fewer pooled key pairs than wanted, or 0 if there is none. */
+    private int getNextWantedKeySize() {
+        dropExpiredKeyPairs();
+        for (Entry<Integer, Integer> entry : wantedRsaKeyPairs.entrySet()) {
+            ArrayDeque<PooledKeyPair> keyPairs = rsaKeyPairs.get(entry.getKey());
+            int pooled = keyPairs != null ? keyPairs.size() : 0;
+            if (pooled < entry.getValue()) {
+                return entry.getKey();
+            }
+        }
+        return 0;
+    }
+
+    private void dropExpiredKeyPairs() {
+        long now = System.nanoTime();
+        for (Entry<Integer, ArrayDeque<PooledKeyPair>> entry : rsaKeyPairs.entrySet()) {
+            Iterator<PooledKeyPair> it = entry.getValue().iterator();
+            boolean droppedAny = false;
+            while (it.hasNext()) {
+                if (now - it.next().generatedAt > MAX_AGE_NANOS) {
+                    it.remove();
+                    droppedAny = true;
+                }
+            }
+            // nobody used them, so they are not generated again
+            if (droppedAny) {
+                wantedRsaKeyPairs.put(entry.getKey(), entry.getValue().size());
+            }
+        }
+    }
+}
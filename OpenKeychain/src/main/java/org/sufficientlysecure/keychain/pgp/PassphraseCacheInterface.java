@@ -17,6 +17,7 @@
 
 package org.sufficientlysecure.keychain.pgp;
 
+import androidx.collection.LongSparseArray;
 import org.sufficientlysecure.keychain.util.Passphrase;
 
 public interface PassphraseCacheInterface {
@@ -29,4 +30,11 @@ public interface PassphraseCacheInterface {
 
     Passphrase getCachedPassphrase(long masterKeyId, long subKeyId) throws NoSecretKeyException;
 
+    /**
+     * Gets cached passphrases for a number of keys in a single lookup. The master key id and
+     * subkey id of each key must be at the same index of both arrays. Keys for which no secret key
+     * is available are absent from the result.
+     */
+    LongSparseArray<Passphrase> getCachedPassphrases(long[] masterKeyIds, long[] subKeyIds);
+
 }
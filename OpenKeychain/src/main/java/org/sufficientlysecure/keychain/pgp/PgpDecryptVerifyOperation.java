@@ -26,9 +26,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.security.SignatureException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -37,6 +39,8 @@ import android.text.TextUtils;
 import android.webkit.MimeTypeMap;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
 import org.bouncycastle.bcpg.ArmoredInputStream;
 import org.bouncycastle.openpgp.PGPCompressedData;
 import org.bouncycastle.openpgp.PGPDataValidationException;
@@ -65,6 +69,8 @@ import org.sufficientlysecure.keychain.daos.KeyRepository;
 import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
 import org.sufficientlysecure.keychain.operations.BaseOperation;
 import org.sufficientlysecure.keychain.operations.results.DecryptVerifyResult;
+import org.sufficientlysecure.keychain.operations.results.OperationMetrics;
+import org.sufficientlysecure.keychain.operations.results.OperationMetrics.Stage;
 import org.sufficientlysecure.keychain.operations.results.OperationResult.LogType;
 import org.sufficientlysecure.keychain.operations.results.OperationResult.OperationLog;
 import org.sufficientlysecure.keychain.pgp.CanonicalizedSecretKey.SecretKeyType;
@@ -78,6 +84,7 @@ import org.sufficientlysecure.keychain.service.input.RequiredInputParcel;
 import org.sufficientlysecure.keychain.service.input.RequiredInputParcel.RequireAnyDecryptPassphraseBuilder;
 import org.sufficientlysecure.keychain.ui.util.KeyFormattingUtils;
 import org.sufficientlysecure.keychain.util.CharsetVerifier;
+import org.sufficientlysecure.keychain.util.ChunkedByteArrayOutputStream;
 import org.sufficientlysecure.keychain.util.FileHelper;
 import org.sufficientlysecure.keychain.util.InputData;
 import org.sufficientlysecure.keychain.util.Passphrase;
@@ -96,11 +103,55 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
         super(context, keyRepository, progressable);
     }
 
-    /** Decrypts and/or verifies data based on parameters of PgpDecryptVerifyInputParcel. */
+    /**
+     * Decrypts and/or verifies data based on parameters of PgpDecryptVerifyInputParcel.
+     * <p>
+     * If no output uri is given, the output is returned in memory as part of the result, in the
+     * buffer it was written to. Use execute(PgpDecryptVerifyInputParcel, CryptoInputParcel,
+     * OutputStream) to stream it instead.
+     */
     @NonNull
     public DecryptVerifyResult execute(PgpDecryptVerifyInputParcel input, CryptoInputParcel cryptoInput) {
-        InputData inputData;
+        if (input.getOutputUri() == null) {
+            ChunkedByteArrayOutputStream outputBuffer = new ChunkedByteArrayOutputStream();
+            DecryptVerifyResult result = execute(input, cryptoInput, outputBuffer, outputBuffer);
+            result.setOutputBuffer(outputBuffer);
+            return result;
+        }
+
         OutputStream outputStream;
+        try {
+            outputStream = FileHelper.openOutputStreamSafe(mContext.getContentResolver(), input.getOutputUri());
+        } catch (FileNotFoundException e) {
+            Timber.e(e, "Output URI could not be opened: " + input.getOutputUri());
+            OperationLog log = new OperationLog();
+            log.add(LogType.MSG_DC_ERROR_IO, 1);
+            return new DecryptVerifyResult(DecryptVerifyResult.RESULT_ERROR, log);
+        }
+        return execute(input, cryptoInput, outputStream);
+    }
+
+    /**
+     * Decrypts and/or verifies the input given in the PgpDecryptVerifyInputParcel, streaming the
+     * output into a sink. Apart from cleartext signatures, which must be buffered until the
+     * signature is read, memory use does not depend on the size of the data.
+     *
+     * @param outputStream sink for the output, or null to discard it
+     */
+    @NonNull
+    public DecryptVerifyResult execute(PgpDecryptVerifyInputParcel input, CryptoInputParcel cryptoInput,
+            OutputStream outputStream) {
+        return execute(input, cryptoInput, outputStream, null);
+    }
+
+    /**
+     * @param outputBuffer the in-memory buffer which outputStream writes to, if it is one. A
+     *                     cleartext signature is then verified from there instead of a copy.
+     */
+    @NonNull
+    private DecryptVerifyResult execute(PgpDecryptVerifyInputParcel input, CryptoInputParcel cryptoInput,
+            OutputStream outputStream, @Nullable ChunkedByteArrayOutputStream outputBuffer) {
+        InputData inputData;
 
         long startTime = System.currentTimeMillis();
 
@@ -125,24 +176,7 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
             }
         }
 
-        if (input.getOutputUri() == null) {
-            outputStream = new ByteArrayOutputStream();
-        } else {
-            try {
-                outputStream = FileHelper.openOutputStreamSafe(mContext.getContentResolver(), input.getOutputUri());
-            } catch (FileNotFoundException e) {
-                Timber.e(e, "Output URI could not be opened: " + input.getOutputUri());
-                OperationLog log = new OperationLog();
-                log.add(LogType.MSG_DC_ERROR_IO, 1);
-                return new DecryptVerifyResult(DecryptVerifyResult.RESULT_ERROR, log);
-            }
-        }
-
-        DecryptVerifyResult result = executeInternal(input, cryptoInput, inputData, outputStream);
-        if (outputStream instanceof ByteArrayOutputStream) {
-            byte[] outputData = ((ByteArrayOutputStream) outputStream).toByteArray();
-            result.setOutputBytes(outputData);
-        }
+        DecryptVerifyResult result = executeInternal(input, cryptoInput, inputData, outputStream, outputBuffer);
 
         result.mOperationTime = System.currentTimeMillis() - startTime;
         Timber.d("total time taken: " + format("%.2f", result.mOperationTime / 1000.0) + "s");
@@ -153,20 +187,38 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
     @NonNull
     public DecryptVerifyResult execute(PgpDecryptVerifyInputParcel input, CryptoInputParcel cryptoInput,
             InputData inputData, OutputStream outputStream) {
-        return executeInternal(input, cryptoInput, inputData, outputStream);
+        return executeInternal(input, cryptoInput, inputData, outputStream, null);
     }
 
     @NonNull
     private DecryptVerifyResult executeInternal(PgpDecryptVerifyInputParcel input, CryptoInputParcel cryptoInput,
-            InputData inputData, OutputStream outputStream) {
+            InputData inputData, OutputStream outputStream, ChunkedByteArrayOutputStream outputBuffer) {
+        OperationMetrics metrics = new OperationMetrics("decrypt/verify");
+        if (outputStream != null) {
+            outputStream = metrics.measure(outputStream, Stage.OUTPUT_IO);
+        }
+
+        DecryptVerifyResult result =
+                executeMeasured(input, cryptoInput, inputData, outputStream, outputBuffer, metrics);
+
+        result.setMetrics(metrics);
+        Timber.d(metrics.getPrintableMetrics());
+        return result;
+    }
+
+    @NonNull
+    private DecryptVerifyResult executeMeasured(PgpDecryptVerifyInputParcel input, CryptoInputParcel cryptoInput,
+            InputData inputData, OutputStream outputStream, ChunkedByteArrayOutputStream outputBuffer,
+            OperationMetrics metrics) {
         try {
             if (input.getDetachedSignature() != null) {
                 Timber.d("Detached signature present, verifying with this signature only");
 
-                return verifyDetachedSignature(input, inputData, outputStream, 0);
+                return verifyDetachedSignature(input, inputData, outputStream, metrics, 0);
             } else {
                 // automatically works with PGP ascii armor and PGP binary
-                InputStream inputStream = PGPUtil.getDecoderStream(inputData.getInputStream());
+                InputStream inputStream = PGPUtil.getDecoderStream(
+                        metrics.measure(inputData.getInputStream(), Stage.INPUT_IO));
 
                 if (inputStream instanceof ArmoredInputStream) {
                     ArmoredInputStream aIn = (ArmoredInputStream) inputStream;
@@ -175,13 +227,13 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
 
                     if (aIn.isClearText()) {
                         // a cleartext signature, verify it with the other method
-                        return verifyCleartextSignature(input, aIn, outputStream, 0);
+                        return verifyCleartextSignature(input, aIn, outputStream, outputBuffer, metrics, 0);
                     } else {
                         // else: ascii armored encryption! go on...
-                        return decryptVerify(input, cryptoInput, inputData, inputStream, outputStream, 0);
+                        return decryptVerify(input, cryptoInput, inputData, inputStream, outputStream, metrics, 0);
                     }
                 } else {
-                    return decryptVerify(input, cryptoInput, inputData, inputStream, outputStream, 0);
+                    return decryptVerify(input, cryptoInput, inputData, inputStream, outputStream, metrics, 0);
                 }
             }
         } catch (PGPException e) {
@@ -301,7 +353,8 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
     @NonNull
     private DecryptVerifyResult decryptVerify(
             PgpDecryptVerifyInputParcel input, CryptoInputParcel cryptoInput,
-            InputData inputData, InputStream in, OutputStream out, int indent) throws IOException, PGPException {
+            InputData inputData, InputStream in, OutputStream out, OperationMetrics metrics, int indent)
+            throws IOException, PGPException {
 
         OperationLog log = new OperationLog();
 
@@ -312,6 +365,9 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
 
         // parse ASCII Armor headers
         ArmorHeaders armorHeaders = parseArmorHeaders(in, log, indent);
+        if (in instanceof ArmoredInputStream) {
+            in = metrics.measure(in, Stage.ARMOR);
+        }
         String charset = armorHeaders.charset;
         RequiredInputParcel customRequiredInputParcel = null;
         if (armorHeaders.backupVersion != null && armorHeaders.backupVersion == 2) {
@@ -337,7 +393,8 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
 
             if (obj instanceof PGPEncryptedDataList) {
                 esResult = handleEncryptedPacket(
-                        input, cryptoInput, (PGPEncryptedDataList) obj, log, indent, customRequiredInputParcel);
+                        input, cryptoInput, (PGPEncryptedDataList) obj, log, indent, customRequiredInputParcel,
+                        metrics);
 
                 // if there is an error, nothing left to do here
                 if (esResult.errorResult != null) {
@@ -367,7 +424,8 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
                     decryptionResultBuilder.setInsecure(true);
                 }
 
-                plainFact = new JcaSkipMarkerPGPObjectFactory(esResult.cleartextStream);
+                plainFact = new JcaSkipMarkerPGPObjectFactory(
+                        metrics.measure(esResult.cleartextStream, Stage.SYMMETRIC_CIPHER));
                 dataChunk = plainFact.nextObject();
 
             } else {
@@ -389,7 +447,8 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
             log.add(LogType.MSG_DC_CLEAR_DECOMPRESS, indent + 1);
 
             PGPCompressedData compressedData = (PGPCompressedData) dataChunk;
-            plainFact = new JcaSkipMarkerPGPObjectFactory(compressedData.getDataStream());
+            plainFact = new JcaSkipMarkerPGPObjectFactory(
+                    metrics.measure(compressedData.getDataStream(), Stage.COMPRESSION));
             dataChunk = plainFact.nextObject();
         }
 
@@ -497,7 +556,15 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
             }
 
             // update signature buffer if signature is also present
-            signatureChecker.updateSignatureData(buffer, 0, length);
+            if (signatureChecker.isInitialized()) {
+                long hashStart = metrics.start(Stage.SIGNATURE_HASH);
+                try {
+                    signatureChecker.updateSignatureData(buffer, 0, length);
+                } finally {
+                    metrics.stop(Stage.SIGNATURE_HASH, hashStart);
+                }
+                metrics.addBytes(Stage.SIGNATURE_HASH, length);
+            }
 
             charsetVerifier.readBytesFromBuffer(0, length);
 
@@ -524,7 +591,13 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
         if (signatureChecker.isInitialized()) {
 
             Object o = plainFact.nextObject();
-            boolean signatureCheckOk = signatureChecker.verifySignatureOnePass(o, log, indent + 1);
+            boolean signatureCheckOk;
+            long verifyStart = metrics.start(Stage.SIGNATURE_HASH);
+            try {
+                signatureCheckOk = signatureChecker.verifySignatureOnePass(o, log, indent + 1);
+            } finally {
+                metrics.stop(Stage.SIGNATURE_HASH, verifyStart);
+            }
 
             if (!signatureCheckOk) {
                 return new DecryptVerifyResult(DecryptVerifyResult.RESULT_ERROR, log);
@@ -590,9 +663,48 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
 
     }
 
+    private LongSparseArray<Long> getMasterKeyIdsForRecipients(PGPEncryptedDataList enc) {
+        ArrayList<Long> subKeyIds = new ArrayList<>();
+        Iterator<?> it = enc.getEncryptedDataObjects();
+        while (it.hasNext()) {
+            Object obj = it.next();
+            if (obj instanceof PGPPublicKeyEncryptedData) {
+                subKeyIds.add(((PGPPublicKeyEncryptedData) obj).getKeyID());
+            }
+        }
+
+        long[] subKeyIdsArray = new long[subKeyIds.size()];
+        for (int i = 0; i < subKeyIdsArray.length; i++) {
+            subKeyIdsArray[i] = subKeyIds.get(i);
+        }
+        return mKeyRepository.getMasterKeyIdsBySubkeyIds(subKeyIdsArray);
+    }
+
+    /**
+     * Gets the cached passphrases of all recipient keys in our database which may be used for
+     * decryption, in a single lookup.
+     */
+    private LongSparseArray<Passphrase> getCachedPassphrasesForRecipients(
+            LongSparseArray<Long> masterKeyIdsBySubkeyId, @Nullable List<Long> allowedKeyIds) {
+        ArrayList<Long> subKeyIds = new ArrayList<>();
+        for (int i = 0; i < masterKeyIdsBySubkeyId.size(); i++) {
+            if (allowedKeyIds == null || allowedKeyIds.contains(masterKeyIdsBySubkeyId.valueAt(i))) {
+                subKeyIds.add(masterKeyIdsBySubkeyId.keyAt(i));
+            }
+        }
+
+        long[] masterKeyIdsArray = new long[subKeyIds.size()];
+        long[] subKeyIdsArray = new long[subKeyIds.size()];
+        for (int i = 0; i < subKeyIdsArray.length; i++) {
+            subKeyIdsArray[i] = subKeyIds.get(i);
+            masterKeyIdsArray[i] = masterKeyIdsBySubkeyId.get(subKeyIdsArray[i]);
+        }
+        return getCachedPassphrases(masterKeyIdsArray, subKeyIdsArray);
+    }
+
     private EncryptStreamResult handleEncryptedPacket(PgpDecryptVerifyInputParcel input, CryptoInputParcel cryptoInput,
-            PGPEncryptedDataList enc, OperationLog log, int indent, RequiredInputParcel customRequiredInputParcel)
-            throws PGPException {
+            PGPEncryptedDataList enc, OperationLog log, int indent, RequiredInputParcel customRequiredInputParcel,
+            OperationMetrics metrics) throws PGPException {
 
         EncryptStreamResult result = new EncryptStreamResult();
 
@@ -609,6 +721,10 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
 
         Passphrase passphrase = null;
 
+        // resolve the master key ids of all recipients in a single query
+        LongSparseArray<Long> masterKeyIdsBySubkeyId = getMasterKeyIdsForRecipients(enc);
+        LongSparseArray<Passphrase> cachedPassphrases = null;
+
         Iterator<?> it = enc.getEncryptedDataObjects();
 
         RequireAnyDecryptPassphraseBuilder requirePassphraseBuilder = new RequireAnyDecryptPassphraseBuilder();
@@ -634,7 +750,7 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
 
                 try {
                     // get actual keyring object based on master key id
-                    Long masterKeyId = mKeyRepository.getMasterKeyIdBySubkeyId(subKeyId);
+                    Long masterKeyId = masterKeyIdsBySubkeyId.get(subKeyId);
                     if (masterKeyId == null) {
                         log.add(LogType.MSG_DC_ASKIP_NO_KEY, indent + 1);
                         continue;
@@ -679,15 +795,19 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
                     } else if (cryptoInput.hasPassphraseForSubkey(subKeyId)) {
                         passphrase = cryptoInput.getPassphrase();
                     } else {
-                        // if no passphrase was explicitly set try to get it from the cache service
-                        try {
-                            // returns "" if key has no passphrase
-                            passphrase = getCachedPassphrase(subKeyId);
-                            log.add(LogType.MSG_DC_PASS_CACHED, indent + 1);
-                        } catch (PassphraseCacheInterface.NoSecretKeyException e) {
+                        // if no passphrase was explicitly set try to get it from the cache service,
+                        // for all recipients at once so the next key doesn't need another lookup
+                        if (cachedPassphrases == null) {
+                            cachedPassphrases = getCachedPassphrasesForRecipients(
+                                    masterKeyIdsBySubkeyId, input.getAllowedKeyIds());
+                        }
+                        if (cachedPassphrases.indexOfKey(subKeyId) < 0) {
                             log.add(LogType.MSG_DC_ERROR_NO_KEY, indent + 1);
                             return result.with(new DecryptVerifyResult(DecryptVerifyResult.RESULT_ERROR, log));
                         }
+                        // "" if key has no passphrase
+                        passphrase = cachedPassphrases.get(subKeyId);
+                        log.add(LogType.MSG_DC_PASS_CACHED, indent + 1);
 
                         // if passphrase was not cached, return here indicating that a passphrase is missing!
                         if (passphrase == null) {
@@ -793,6 +913,8 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
                     digestCalcProvider).setProvider(Constants.BOUNCY_CASTLE_PROVIDER_NAME).build(
                     passphrase.getCharArray());
 
+            // the S2K is only run here, so this is where the passphrase is effectively checked
+            long unlockStart = metrics.start(Stage.KEY_UNLOCK);
             try {
                 result.cleartextStream = encryptedDataSymmetric.getDataStream(decryptorFactory);
             } catch (PGPDataValidationException e) {
@@ -800,6 +922,8 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
                 RequiredInputParcel requiredInputParcel = customRequiredInputParcel != null ?
                         customRequiredInputParcel : RequiredInputParcel.createRequiredSymmetricPassphrase();
                 return result.with(new DecryptVerifyResult(log, requiredInputParcel, cryptoInput));
+            } finally {
+                metrics.stop(Stage.KEY_UNLOCK, unlockStart);
             }
 
             result.encryptedData = encryptedDataSymmetric;
@@ -810,15 +934,22 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
             if (decryptedSessionKeyAvailable) {
                 decryptorFactory = cachedKeyDecryptorFactory;
             } else {
+                long unlockStart = metrics.start(Stage.KEY_UNLOCK);
                 try {
                     log.add(LogType.MSG_DC_UNLOCKING, indent + 1);
                     if (!decryptionKey.unlock(passphrase)) {
                         log.add(LogType.MSG_DC_ERROR_BAD_PASSPHRASE, indent + 1);
                         return result.with(new DecryptVerifyResult(DecryptVerifyResult.RESULT_ERROR, log));
                     }
+                    if (passphrase != null) {
+                        addCachedSessionKeys(decryptionKey.getRing().getMasterKeyId(), decryptionKey.getKeyId(),
+                                passphrase);
+                    }
                 } catch (PgpGeneralException e) {
                     log.add(LogType.MSG_DC_ERROR_EXTRACT_KEY, indent + 1);
                     return result.with(new DecryptVerifyResult(DecryptVerifyResult.RESULT_ERROR, log));
+                } finally {
+                    metrics.stop(Stage.KEY_UNLOCK, unlockStart);
                 }
 
                 decryptorFactory = decryptionKey.getCachingDecryptorFactory(cryptoInput);
@@ -837,11 +968,14 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
                 }
             }
 
+            long sessionKeyStart = metrics.start(Stage.SESSION_KEY);
             try {
                 result.cleartextStream = encryptedDataAsymmetric.getDataStream(decryptorFactory);
             } catch (PGPKeyValidationException | ArrayIndexOutOfBoundsException e) {
                 log.add(LogType.MSG_DC_ERROR_CORRUPT_DATA, indent + 1);
                 return result.with(new DecryptVerifyResult(DecryptVerifyResult.RESULT_ERROR, log));
+            } finally {
+                metrics.stop(Stage.SESSION_KEY, sessionKeyStart);
             }
 
             result.symmetricEncryptionAlgo = encryptedDataAsymmetric.getSymmetricAlgorithm(decryptorFactory);
@@ -885,42 +1019,46 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
      */
     @NonNull
     private DecryptVerifyResult verifyCleartextSignature(
-            PgpDecryptVerifyInputParcel input, ArmoredInputStream aIn, OutputStream outputStream, int indent) throws IOException, PGPException {
+            PgpDecryptVerifyInputParcel input, ArmoredInputStream aIn, OutputStream outputStream,
+            ChunkedByteArrayOutputStream outputBuffer, OperationMetrics metrics, int indent)
+            throws IOException, PGPException {
 
         OperationLog log = new OperationLog();
 
-        byte[] clearText;
+        // the signature follows the cleartext, so it must be kept for verification. the output
+        // is written as it is read though. if the output is kept in memory anyway, the signature
+        // is verified from there, otherwise from a copy. the input is not read a second time, it
+        // might have changed in between.
+        ChunkedByteArrayOutputStream clearTextCopy = outputBuffer == null ? new ChunkedByteArrayOutputStream() : null;
         { // read cleartext
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-
             updateProgress(R.string.progress_reading_data, 0, 100);
 
+            // the cleartext is read byte by byte to find its end, so it is timed as a whole
             ByteArrayOutputStream lineOut = new ByteArrayOutputStream();
-            int lookAhead = readInputLine(lineOut, aIn);
-            byte[] lineSep = getLineSeparator();
-
-            byte[] line = lineOut.toByteArray();
-            out.write(line, 0, getLengthWithoutSeparator(line));
-            out.write(lineSep);
-
-            while (lookAhead != -1 && aIn.isClearText()) {
-                lookAhead = readInputLine(lineOut, lookAhead, aIn);
-                line = lineOut.toByteArray();
-                out.write(line, 0, getLengthWithoutSeparator(line));
-                out.write(lineSep);
-            }
+            InputStream measuredIn = metrics.measure(aIn, Stage.ARMOR);
+            long readStart = metrics.start(Stage.ARMOR);
+            try {
+                int lookAhead = readInputLine(lineOut, measuredIn);
+                byte[] lineSep = getLineSeparator();
+
+                writeCleartextLine(lineOut, lineSep, clearTextCopy, outputStream);
 
-            out.close();
-            clearText = out.toByteArray();
+                while (lookAhead != -1 && aIn.isClearText()) {
+                    lookAhead = readInputLine(lineOut, lookAhead, measuredIn);
+                    writeCleartextLine(lineOut, lineSep, clearTextCopy, outputStream);
+                }
+            } finally {
+                metrics.stop(Stage.ARMOR, readStart);
+            }
         }
 
         if (outputStream != null) {
-            outputStream.write(clearText);
             outputStream.close();
         }
+        ChunkedByteArrayOutputStream clearText = clearTextCopy != null ? clearTextCopy : outputBuffer;
 
         updateProgress(R.string.progress_processing_signature, 60, 100);
-        JcaSkipMarkerPGPObjectFactory pgpFact = new JcaSkipMarkerPGPObjectFactory(aIn);
+        JcaSkipMarkerPGPObjectFactory pgpFact = new JcaSkipMarkerPGPObjectFactory(metrics.measure(aIn, Stage.ARMOR));
 
         DecryptVerifySecurityProblemBuilder securityProblemBuilder = new DecryptVerifySecurityProblemBuilder();
         PgpSignatureChecker signatureChecker = new PgpSignatureChecker(mKeyRepository, input.getSenderAddress(),
@@ -936,8 +1074,14 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
             try {
                 updateProgress(R.string.progress_verifying_signature, 90, 100);
 
-                signatureChecker.updateSignatureWithCleartext(clearText);
-                signatureChecker.verifySignature(log, indent);
+                long hashStart = metrics.start(Stage.SIGNATURE_HASH);
+                try {
+                    signatureChecker.updateSignatureWithCleartext(clearText.toInputStream());
+                    signatureChecker.verifySignature(log, indent);
+                } finally {
+                    metrics.stop(Stage.SIGNATURE_HASH, hashStart);
+                }
+                metrics.addBytes(Stage.SIGNATURE_HASH, clearText.size());
 
             } catch (SignatureException e) {
                 Timber.d(e, "SignatureException");
@@ -949,7 +1093,7 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
 
         log.add(LogType.MSG_DC_OK, indent);
 
-        OpenPgpMetadata metadata = new OpenPgpMetadata("", "text/plain", -1, clearText.length, "utf-8");
+        OpenPgpMetadata metadata = new OpenPgpMetadata("", "text/plain", -1, clearText.size(), "utf-8");
 
         DecryptVerifyResult result = new DecryptVerifyResult(DecryptVerifyResult.RESULT_OK, log);
         result.setSignatureResult(signatureChecker.getSignatureResult());
@@ -962,8 +1106,8 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
 
     @NonNull
     private DecryptVerifyResult verifyDetachedSignature(
-            PgpDecryptVerifyInputParcel input, InputData inputData, OutputStream out, int indent)
-            throws IOException, PGPException {
+            PgpDecryptVerifyInputParcel input, InputData inputData, OutputStream out, OperationMetrics metrics,
+            int indent) throws IOException, PGPException {
 
         OperationLog log = new OperationLog();
 
@@ -998,14 +1142,20 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
             long wholeSize = inputData.getSize() - inputData.getStreamPosition();
             int length;
             byte[] buffer = new byte[1 << 16];
-            InputStream in = inputData.getInputStream();
+            InputStream in = metrics.measure(inputData.getInputStream(), Stage.INPUT_IO);
             while ((length = in.read(buffer)) > 0) {
                 if (out != null) {
                     out.write(buffer, 0, length);
                 }
 
                 // update signature buffer if signature is also present
-                signatureChecker.updateSignatureData(buffer, 0, length);
+                long hashStart = metrics.start(Stage.SIGNATURE_HASH);
+                try {
+                    signatureChecker.updateSignatureData(buffer, 0, length);
+                } finally {
+                    metrics.stop(Stage.SIGNATURE_HASH, hashStart);
+                }
+                metrics.addBytes(Stage.SIGNATURE_HASH, length);
 
                 alreadyWritten += length;
                 if (wholeSize > 0) {
@@ -1021,7 +1171,9 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
             updateProgress(R.string.progress_verifying_signature, 90, 100);
             log.add(LogType.MSG_DC_CLEAR_SIGNATURE_CHECK, indent);
 
+            long verifyStart = metrics.start(Stage.SIGNATURE_HASH);
             signatureChecker.verifySignature(log, indent);
+            metrics.stop(Stage.SIGNATURE_HASH, verifyStart);
 
         }
 
@@ -1039,6 +1191,21 @@ public class PgpDecryptVerifyOperation extends BaseOperation<PgpDecryptVerifyInp
         return result;
     }
 
+    private static void writeCleartextLine(ByteArrayOutputStream lineOut, byte[] lineSep,
+            OutputStream clearText, OutputStream outputStream) throws IOException {
+        byte[] line = lineOut.toByteArray();
+        int length = getLengthWithoutSeparator(line);
+
+        if (clearText != null) {
+            clearText.write(line, 0, length);
+            clearText.write(lineSep);
+        }
+        if (outputStream != null) {
+            outputStream.write(line, 0, length);
+            outputStream.write(lineSep);
+        }
+    }
+
     private static int readInputLine(ByteArrayOutputStream bOut, InputStream fIn)
             throws IOException {
         bOut.reset();
@@ -34,9 +34,17 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.nist.NISTNamedCurves;
@@ -113,9 +121,11 @@ import timber.log.Timber;
  * This indicator may be null.
  */
 public class PgpKeyOperation {
+    private static final long CANCEL_CHECK_INTERVAL_MS = 100;
 
     private Stack<Progressable> mProgress;
     private AtomicBoolean mCancelled;
+    private int mMaxGenerationThreads = Runtime.getRuntime().availableProcessors();
 
     public PgpKeyOperation(Progressable progress) {
         super();
@@ -130,6 +140,12 @@ public class PgpKeyOperation {
         mCancelled = cancelled;
     }
 
+    /** Limits the number of threads new subkeys are generated on, e.g. to 1 for a serial baseline. */
+    @VisibleForTesting
+    public void setMaxGenerationThreads(int maxGenerationThreads) {
+        mMaxGenerationThreads = maxGenerationThreads;
+    }
+
     private boolean checkCancelled() {
         return mCancelled != null && mCancelled.get();
     }
@@ -172,8 +188,31 @@ public class PgpKeyOperation {
         throw new RuntimeException("Invalid choice! (can't happen)");
     }
 
-    /** Creates new secret key. */
-    private PGPKeyPair createKey(SubkeyAdd add, Date creationTime, OperationLog log, int indent) {
+    /**
+     * A key pair generator which is set up for one SubkeyAdd. It has no ties to this operation,
+     * so it may run on any thread.
+     */
+    private static class KeyPairGeneration implements Callable<KeyPair> {
+        final int algorithm;
+        final int progressMessage;
+        final KeyPairGenerator keyGen;
+        final KeyPair pooledKeyPair;
+
+        KeyPairGeneration(int algorithm, int progressMessage, KeyPairGenerator keyGen, KeyPair pooledKeyPair) {
+            this.algorithm = algorithm;
+            this.progressMessage = progressMessage;
+            this.keyGen = keyGen;
+            this.pooledKeyPair = pooledKeyPair;
+        }
+
+        @Override
+        public KeyPair call() {
+            return pooledKeyPair != null ? pooledKeyPair : keyGen.generateKeyPair();
+        }
+    }
+
+    /** Checks a SubkeyAdd and sets up the generation of its key pair, which is not started yet. */
+    private KeyPairGeneration prepareKey(SubkeyAdd add, OperationLog log, int indent) {
 
         try {
             // Some safety checks
@@ -194,6 +233,7 @@ public class PgpKeyOperation {
             }
 
             int algorithm;
+            int progressMessage;
             KeyPairGenerator keyGen;
 
             switch (add.getAlgorithm()) {
@@ -202,7 +242,7 @@ public class PgpKeyOperation {
                         log.add(LogType.MSG_CR_ERROR_FLAGS_DSA, indent);
                         return null;
                     }
-                    progress(R.string.progress_generating_dsa, 30);
+                    progressMessage = R.string.progress_generating_dsa;
                     keyGen = KeyPairGenerator.getInstance("DSA", Constants.BOUNCY_CASTLE_PROVIDER_NAME);
                     keyGen.initialize(add.getKeySize(), new SecureRandom());
                     algorithm = PGPPublicKey.DSA;
@@ -214,7 +254,7 @@ public class PgpKeyOperation {
                         log.add(LogType.MSG_CR_ERROR_FLAGS_ELGAMAL, indent);
                         return null;
                     }
-                    progress(R.string.progress_generating_elgamal, 30);
+                    progressMessage = R.string.progress_generating_elgamal;
                     keyGen = KeyPairGenerator.getInstance("ElGamal", Constants.BOUNCY_CASTLE_PROVIDER_NAME);
                     BigInteger p = Primes.getBestPrime(add.getKeySize());
                     BigInteger g = new BigInteger("2");
@@ -227,11 +267,17 @@ public class PgpKeyOperation {
                 }
 
                 case RSA: {
-                    progress(R.string.progress_generating_rsa, 30);
+                    progressMessage = R.string.progress_generating_rsa;
+                    algorithm = PGPPublicKey.RSA_GENERAL;
+
+                    // take a key pair generated ahead of time, if one was prepared
+                    KeyPair pooledKeyPair = KeyPairPool.getInstance().takeRsaKeyPair(add.getKeySize());
+                    if (pooledKeyPair != null) {
+                        return new KeyPairGeneration(algorithm, progressMessage, null, pooledKeyPair);
+                    }
+
                     keyGen = KeyPairGenerator.getInstance("RSA", Constants.BOUNCY_CASTLE_PROVIDER_NAME);
                     keyGen.initialize(add.getKeySize(), new SecureRandom());
-
-                    algorithm = PGPPublicKey.RSA_GENERAL;
                     break;
                 }
 
@@ -240,7 +286,7 @@ public class PgpKeyOperation {
                         log.add(LogType.MSG_CR_ERROR_FLAGS_ECDSA, indent);
                         return null;
                     }
-                    progress(R.string.progress_generating_ecdsa, 30);
+                    progressMessage = R.string.progress_generating_ecdsa;
                     ECGenParameterSpec ecParamSpec = getEccParameterSpec(add.getCurve());
                     keyGen = KeyPairGenerator.getInstance("ECDSA", Constants.BOUNCY_CASTLE_PROVIDER_NAME);
                     keyGen.initialize(ecParamSpec, new SecureRandom());
@@ -254,7 +300,7 @@ public class PgpKeyOperation {
                         log.add(LogType.MSG_CR_ERROR_FLAGS_EDDSA, indent);
                         return null;
                     }
-                    progress(R.string.progress_generating_eddsa, 30);
+                    progressMessage = R.string.progress_generating_eddsa;
                     keyGen = KeyPairGenerator.getInstance("ED25519", Constants.BOUNCY_CASTLE_PROVIDER_NAME);
                     keyGen.initialize(256, new SecureRandom());
 
@@ -268,7 +314,7 @@ public class PgpKeyOperation {
                         log.add(LogType.MSG_CR_ERROR_FLAGS_ECDH, indent);
                         return null;
                     }
-                    progress(R.string.progress_generating_ecdh, 30);
+                    progressMessage = R.string.progress_generating_ecdh;
                     if (add.getCurve() == Curve.CV25519) {
                         keyGen = KeyPairGenerator.getInstance("X25519");
                         keyGen.initialize(255);
@@ -288,15 +334,67 @@ public class PgpKeyOperation {
                 }
             }
 
-            // build new key pair
-            KeyPair keyPair = keyGen.generateKeyPair();
-            return new JcaPGPKeyPair(algorithm, keyPair, creationTime);
+            return new KeyPairGeneration(algorithm, progressMessage, keyGen, null);
 
         } catch(NoSuchProviderException | InvalidAlgorithmParameterException e) {
             throw new RuntimeException(e);
         } catch(NoSuchAlgorithmException e) {
             log.add(LogType.MSG_CR_ERROR_UNKNOWN_ALGO, indent);
             return null;
+        }
+    }
+
+    /** Checks a SubkeyAdd for a new subkey, and sets up the generation of its key pair. */
+    private KeyPairGeneration prepareSubkey(SubkeyAdd add, boolean divertToCard, OperationLog log, int indent) {
+        if (divertToCard) {
+            log.add(LogType.MSG_MF_ERROR_DIVERT_NEWSUB, indent +1);
+            return null;
+        }
+
+        if (add.getExpiry() == null) {
+            log.add(LogType.MSG_MF_ERROR_NULL_EXPIRY, indent +1);
+            return null;
+        }
+
+        if (add.getExpiry() > 0L && new Date(add.getExpiry() * 1000).before(new Date())) {
+            log.add(LogType.MSG_MF_ERROR_PAST_EXPIRY, indent +1);
+            return null;
+        }
+
+        KeyPairGeneration generation = prepareKey(add, log, indent);
+        if (generation == null) {
+            log.add(LogType.MSG_MF_ERROR_PGP, indent +1);
+        }
+        return generation;
+    }
+
+    /**
+     * Checks the SubkeyAdds for new subkeys, and sets up the generation of their key pairs. Returns
+     * null if one of them can't be created, the reason is logged below its MSG_MF_SUBKEY_NEW.
+     */
+    @Nullable
+    private KeyPairGeneration[] prepareSubkeys(List<SubkeyAdd> addSubKeys, boolean divertToCard, OperationLog log,
+            int indent) {
+        KeyPairGeneration[] generations = new KeyPairGeneration[addSubKeys.size()];
+        for (int i = 0, j = addSubKeys.size(); i < j; i++) {
+            SubkeyAdd add = addSubKeys.get(i);
+            OperationLog prepareLog = new OperationLog();
+            generations[i] = prepareSubkey(add, divertToCard, prepareLog, indent);
+            if (generations[i] == null) {
+                log.add(LogType.MSG_MF_SUBKEY_NEW, indent,
+                        KeyFormattingUtils.getAlgorithmInfo(add.getAlgorithm(), add.getKeySize(), add.getCurve()) );
+                log.addAll(prepareLog, 0);
+                return null;
+            }
+        }
+        return generations;
+    }
+
+    /** Wraps a generated key pair as OpenPGP key pair, with the given creation time. */
+    private static PGPKeyPair buildPgpKeyPair(KeyPairGeneration generation, KeyPair keyPair, Date creationTime,
+            OperationLog log, int indent) {
+        try {
+            return new JcaPGPKeyPair(generation.algorithm, keyPair, creationTime);
         } catch(PGPException e) {
             Timber.e(e, "internal pgp error");
             log.add(LogType.MSG_CR_ERROR_INTERNAL_PGP, indent);
@@ -304,6 +402,66 @@ public class PgpKeyOperation {
         }
     }
 
+    /**
+     * Runs the given key pair generations in parallel, on up to one thread per core, and reports
+     * progress as they finish. Returns null if the operation was cancelled in the meantime, or if
+     * the calling thread was interrupted, in which case its interrupt flag is set again.
+     */
+    @Nullable
+    private KeyPair[] generateKeyPairs(KeyPairGeneration[] generations) {
+        KeyPair[] keyPairs = new KeyPair[generations.length];
+        if (generations.length == 0) {
+            return keyPairs;
+        }
+        if (checkCancelled()) {
+            return null;
+        }
+        // a single key pair is generated right here, no need for another thread
+        if (generations.length == 1) {
+            progress(generations[0].progressMessage, 0);
+            keyPairs[0] = generations[0].call();
+            return keyPairs;
+        }
+
+        int threads = Math.min(generations.length, mMaxGenerationThreads);
+        ExecutorService generateExecutor = Executors.newFixedThreadPool(threads);
+        ExecutorCompletionService<Integer> generated = new ExecutorCompletionService<>(generateExecutor);
+        try {
+            for (int i = 0; i < generations.length; i++) {
+                int index = i;
+                generated.submit(() -> {
+                    keyPairs[index] = generations[index].call();
+                    return index;
+                });
+            }
+
+            progress(R.string.progress_modify_subkeyadd, 0);
+            int finished = 0;
+            while (finished < generations.length) {
+                // generating a key can't be interrupted, but we don't have to wait for it
+                if (checkCancelled()) {
+                    return null;
+                }
+                Future<Integer> future = generated.poll(CANCEL_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    continue;
+                }
+                future.get();
+                finished += 1;
+                progress(R.string.progress_modify_subkeyadd, finished * 100 / generations.length);
+            }
+            return keyPairs;
+        } catch (InterruptedException e) {
+            Timber.e(e, "interrupted while generating keys");
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            generateExecutor.shutdownNow();
+        }
+    }
+
     public PgpEditKeyResult createSecretKeyRing(SaveKeyringParcel saveParcel) {
 
         OperationLog log = new OperationLog();
@@ -338,11 +496,39 @@ public class PgpKeyOperation {
 
             Date creationTime = new Date();
 
+            // Remove certification key from remaining SaveKeyringParcel
+            Builder builder = SaveKeyringParcel.buildUpon(saveParcel);
+            builder.getMutableAddSubKeys().remove(certificationKey);
+            saveParcel = builder.build();
+
+            // an error will already have been logged by prepareKey or prepareSubkeys
+            KeyPairGeneration masterGeneration = prepareKey(certificationKey, log, indent);
+            if (masterGeneration == null) {
+                return new PgpEditKeyResult(PgpEditKeyResult.RESULT_ERROR, log, null);
+            }
+            KeyPairGeneration[] subkeyGenerations = prepareSubkeys(saveParcel.getAddSubKeys(), false, log, indent);
+            if (subkeyGenerations == null) {
+                return new PgpEditKeyResult(PgpEditKeyResult.RESULT_ERROR, log, null);
+            }
+
+            // the master key doesn't depend on the subkeys either, so all key pairs are generated at once
+            KeyPairGeneration[] generations = new KeyPairGeneration[subkeyGenerations.length + 1];
+            generations[0] = masterGeneration;
+            System.arraycopy(subkeyGenerations, 0, generations, 1, subkeyGenerations.length);
+
             subProgressPush(10, 30);
-            PGPKeyPair keyPair = createKey(certificationKey, creationTime, log, indent);
+            KeyPair[] keyPairs = generateKeyPairs(generations);
             subProgressPop();
+            if (keyPairs == null) {
+                if (checkCancelled()) {
+                    log.add(LogType.MSG_OPERATION_CANCELLED, indent);
+                    return new PgpEditKeyResult(PgpEditKeyResult.RESULT_CANCELLED, log, null);
+                }
+                log.add(LogType.MSG_MF_ERROR_INTERRUPTED, indent);
+                return new PgpEditKeyResult(PgpEditKeyResult.RESULT_ERROR, log, null);
+            }
 
-            // return null if this failed (an error will already have been logged by createKey)
+            PGPKeyPair keyPair = buildPgpKeyPair(masterGeneration, keyPairs[0], creationTime, log, indent);
             if (keyPair == null) {
                 return new PgpEditKeyResult(PgpEditKeyResult.RESULT_ERROR, log, null);
             }
@@ -357,14 +543,11 @@ public class PgpKeyOperation {
             PGPSecretKeyRing sKR = new PGPSecretKeyRing(
                     masterSecretKey.getEncoded(), new JcaKeyFingerprintCalculator());
 
-            // Remove certification key from remaining SaveKeyringParcel
-            Builder builder = SaveKeyringParcel.buildUpon(saveParcel);
-            builder.getMutableAddSubKeys().remove(certificationKey);
-            saveParcel = builder.build();
-
             subProgressPush(50, 100);
             CryptoInputParcel cryptoInput = CryptoInputParcel.createCryptoInputParcel(creationTime, new Passphrase(""));
-            return internal(sKR, masterSecretKey, certificationKey.getFlags(), certificationKey.getExpiry(), cryptoInput, saveParcel, log, indent);
+            KeyPair[] subkeyKeyPairs = Arrays.copyOfRange(keyPairs, 1, keyPairs.length);
+            return internal(sKR, masterSecretKey, certificationKey.getFlags(), certificationKey.getExpiry(),
+                    cryptoInput, saveParcel, subkeyGenerations, subkeyKeyPairs, log, indent);
 
         } catch (PGPException e) {
             log.add(LogType.MSG_CR_ERROR_INTERNAL_PGP, indent);
@@ -471,7 +654,8 @@ public class PgpKeyOperation {
         Date expiryTime = wsKR.getPublicKey().getExpiryTime();
         long masterKeyExpiry = expiryTime != null ? expiryTime.getTime() / 1000 : 0L;
 
-        return internal(sKR, masterSecretKey, masterKeyFlags, masterKeyExpiry, cryptoInput, saveParcel, log, indent);
+        return internal(sKR, masterSecretKey, masterKeyFlags, masterKeyExpiry, cryptoInput, saveParcel, null, null,
+                log, indent);
 
     }
 
@@ -539,10 +723,16 @@ public class PgpKeyOperation {
         return true;
     }
 
+    /**
+     * Applies the modifications of the SaveKeyringParcel. The key pairs of new subkeys are generated
+     * here, unless they were already generated by the caller, with their generations passed along.
+     */
     private PgpEditKeyResult internal(PGPSecretKeyRing sKR, PGPSecretKey masterSecretKey,
                                      int masterKeyFlags, long masterKeyExpiry,
                                      CryptoInputParcel cryptoInput,
                                      SaveKeyringParcel saveParcel,
+                                     @Nullable KeyPairGeneration[] subkeyGenerations,
+                                     @Nullable KeyPair[] subkeyKeyPairs,
                                      OperationLog log,
                                      int indent) {
 
@@ -1022,40 +1212,33 @@ public class PgpKeyOperation {
             // 5. Generate and add new subkeys
             subProgressPush(70, 90);
             List<SubkeyAdd> addSubKeys = saveParcel.getAddSubKeys();
-            for (int i = 0, j = addSubKeys.size(); i < j; i++) {
-                // Check if we were cancelled - again. This operation is expensive so we do it each loop.
-                if (checkCancelled()) {
-                    log.add(LogType.MSG_OPERATION_CANCELLED, indent);
-                    return new PgpEditKeyResult(PgpEditKeyResult.RESULT_CANCELLED, log, null);
-                }
-
-                progress(R.string.progress_modify_subkeyadd, (i-1) * (100 / addSubKeys.size()));
-                SaveKeyringParcel.SubkeyAdd add = addSubKeys.get(i);
-                log.add(LogType.MSG_MF_SUBKEY_NEW, indent,
-                        KeyFormattingUtils.getAlgorithmInfo(add.getAlgorithm(), add.getKeySize(), add.getCurve()) );
-
-                if (isDivertToCard(masterSecretKey)) {
-                    log.add(LogType.MSG_MF_ERROR_DIVERT_NEWSUB, indent +1);
+            KeyPairGeneration[] generations = subkeyGenerations;
+            KeyPair[] keyPairs = subkeyKeyPairs;
+            if (keyPairs == null) {
+                generations = prepareSubkeys(addSubKeys, isDivertToCard(masterSecretKey), log, indent);
+                if (generations == null) {
                     return new PgpEditKeyResult(PgpEditKeyResult.RESULT_ERROR, log, null);
                 }
 
-                if (add.getExpiry() == null) {
-                    log.add(LogType.MSG_MF_ERROR_NULL_EXPIRY, indent +1);
+                // generate all new secret keys at once (privkey only for now), they don't depend on each other
+                keyPairs = generateKeyPairs(generations);
+                if (keyPairs == null) {
+                    if (checkCancelled()) {
+                        log.add(LogType.MSG_OPERATION_CANCELLED, indent);
+                        return new PgpEditKeyResult(PgpEditKeyResult.RESULT_CANCELLED, log, null);
+                    }
+                    log.add(LogType.MSG_MF_ERROR_INTERRUPTED, indent);
                     return new PgpEditKeyResult(PgpEditKeyResult.RESULT_ERROR, log, null);
                 }
+            }
 
-                if (add.getExpiry() > 0L && new Date(add.getExpiry() * 1000).before(new Date())) {
-                    log.add(LogType.MSG_MF_ERROR_PAST_EXPIRY, indent +1);
-                    return new PgpEditKeyResult(PgpEditKeyResult.RESULT_ERROR, log, null);
-                }
+            for (int i = 0, j = addSubKeys.size(); i < j; i++) {
+                SaveKeyringParcel.SubkeyAdd add = addSubKeys.get(i);
+                log.add(LogType.MSG_MF_SUBKEY_NEW, indent,
+                        KeyFormattingUtils.getAlgorithmInfo(add.getAlgorithm(), add.getKeySize(), add.getCurve()) );
 
-                // generate a new secret key (privkey only for now)
-                subProgressPush(
-                    (i-1) * (100 / addSubKeys.size()),
-                    i * (100 / addSubKeys.size())
-                );
-                PGPKeyPair keyPair = createKey(add, cryptoInput.getSignatureTime(), log, indent);
-                subProgressPop();
+                PGPKeyPair keyPair = buildPgpKeyPair(
+                        generations[i], keyPairs[i], cryptoInput.getSignatureTime(), log, indent);
                 if (keyPair == null) {
                     log.add(LogType.MSG_MF_ERROR_PGP, indent +1);
                     return new PgpEditKeyResult(PgpEditKeyResult.RESULT_ERROR, log, null);
@@ -58,6 +58,8 @@ import org.sufficientlysecure.keychain.daos.KeyRepository;
 import org.sufficientlysecure.keychain.daos.KeyRepository.NotFoundException;
 import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
 import org.sufficientlysecure.keychain.operations.BaseOperation;
+import org.sufficientlysecure.keychain.operations.results.OperationMetrics;
+import org.sufficientlysecure.keychain.operations.results.OperationMetrics.Stage;
 import org.sufficientlysecure.keychain.operations.results.OperationResult.LogType;
 import org.sufficientlysecure.keychain.operations.results.OperationResult.OperationLog;
 import org.sufficientlysecure.keychain.operations.results.PgpSignEncryptResult;
@@ -168,11 +170,25 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
         return executeInternal(data, cryptoInput, inputData, outputStream);
     }
 
+    private PgpSignEncryptResult executeInternal(PgpSignEncryptData data, CryptoInputParcel cryptoInput,
+            InputData inputData, OutputStream outputStream) {
+        OperationMetrics metrics = new OperationMetrics("sign/encrypt");
+        if (outputStream != null) {
+            outputStream = metrics.measure(outputStream, Stage.OUTPUT_IO);
+        }
+
+        PgpSignEncryptResult result = executeMeasured(data, cryptoInput, inputData, outputStream, metrics);
+
+        result.setMetrics(metrics);
+        Timber.d(metrics.getPrintableMetrics());
+        return result;
+    }
+
     /**
      * Signs and/or encrypts data based on parameters of class
      */
-    private PgpSignEncryptResult executeInternal(PgpSignEncryptData data, CryptoInputParcel cryptoInput,
-            InputData inputData, OutputStream outputStream) {
+    private PgpSignEncryptResult executeMeasured(PgpSignEncryptData data, CryptoInputParcel cryptoInput,
+            InputData inputData, OutputStream outputStream, OperationMetrics metrics) {
         int indent = 0;
         OperationLog log = new OperationLog();
 
@@ -209,7 +225,7 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
             if (passphraseBegin != null) {
                 armorOut.setHeader("Passphrase-Begin", passphraseBegin);
             }
-            out = armorOut;
+            out = metrics.measure(armorOut, Stage.ARMOR);
         } else {
             out = outputStream;
         }
@@ -281,10 +297,18 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
                                     signingMasterKeyId, signingKey.getKeyId(),
                                     cryptoInput.getSignatureTime()), cryptoInput);
                         }
-                        if (!signingKey.unlock(localPassphrase)) {
+                        boolean unlocked;
+                        long unlockStart = metrics.start(Stage.KEY_UNLOCK);
+                        try {
+                            unlocked = signingKey.unlock(localPassphrase);
+                        } finally {
+                            metrics.stop(Stage.KEY_UNLOCK, unlockStart);
+                        }
+                        if (!unlocked) {
                             log.add(LogType.MSG_PSE_ERROR_BAD_PASSPHRASE, indent);
                             return new PgpSignEncryptResult(PgpSignEncryptResult.RESULT_ERROR, log);
                         }
+                        addCachedSessionKeys(signingMasterKeyId, signingKey.getKeyId(), localPassphrase);
                         break;
                     }
 
@@ -401,13 +425,20 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
                 );
                 indent += 1;
 
-                encryptionOut = cPk.open(out, new byte[1 << 16]);
+                // session key generation, and S2K or public key encryption of it, happen on open
+                Stage sessionKeyStage = data.getSymmetricPassphrase() != null ? Stage.KEY_UNLOCK : Stage.SESSION_KEY;
+                long sessionKeyStart = metrics.start(sessionKeyStage);
+                try {
+                    encryptionOut = metrics.measure(cPk.open(out, new byte[1 << 16]), Stage.SYMMETRIC_CIPHER);
+                } finally {
+                    metrics.stop(sessionKeyStage, sessionKeyStart);
+                }
 
                 if (compressionAlgorithm != CompressionAlgorithmTags.UNCOMPRESSED) {
                     log.add(LogType.MSG_PSE_COMPRESSING, indent);
 
                     compressGen = new PGPCompressedDataGenerator(compressionAlgorithm);
-                    bcpgOut = new BCPGOutputStream(compressGen.open(encryptionOut));
+                    bcpgOut = new BCPGOutputStream(metrics.measure(compressGen.open(encryptionOut), Stage.COMPRESSION));
                 } else {
                     bcpgOut = new BCPGOutputStream(encryptionOut);
                 }
@@ -429,13 +460,13 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
                 long alreadyWritten = 0;
                 int length;
                 byte[] buffer = new byte[1 << 16];
-                InputStream in = new BufferedInputStream(inputData.getInputStream());
+                InputStream in = new BufferedInputStream(metrics.measure(inputData.getInputStream(), Stage.INPUT_IO));
                 while ((length = in.read(buffer)) > 0) {
                     pOut.write(buffer, 0, length);
 
                     // update signature buffer if signature is requested
                     if (enableSignature) {
-                        signatureGenerator.update(buffer, 0, length);
+                        updateSignature(signatureGenerator, buffer, length, metrics);
                     }
 
                     alreadyWritten += length;
@@ -457,7 +488,7 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
                 // write -----BEGIN PGP SIGNED MESSAGE-----
                 armorOut.beginClearText(signatureHashAlgorithm);
 
-                InputStream in = new BufferedInputStream(inputData.getInputStream());
+                InputStream in = new BufferedInputStream(metrics.measure(inputData.getInputStream(), Stage.INPUT_IO));
                 final BufferedReader reader = new BufferedReader(new InputStreamReader(in));
 
                 // update signature buffer with first line
@@ -489,7 +520,7 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
                 updateProgress(R.string.progress_signing, 8, 100);
                 log.add(LogType.MSG_PSE_SIGNING_DETACHED, indent);
 
-                InputStream in = new BufferedInputStream(inputData.getInputStream());
+                InputStream in = new BufferedInputStream(metrics.measure(inputData.getInputStream(), Stage.INPUT_IO));
 
                 // handle output stream separately for detached signatures
                 detachedByteOut = new ByteArrayOutputStream();
@@ -510,7 +541,7 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
                 while ((length = in.read(buffer)) > 0) {
                     // no output stream is written, no changed to original data!
 
-                    signatureGenerator.update(buffer, 0, length);
+                    updateSignature(signatureGenerator, buffer, length, metrics);
 
                     alreadyWritten += length;
                     if (inputData.getSize() > 0) {
@@ -526,13 +557,13 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
                 updateProgress(R.string.progress_signing, 8, 100);
                 log.add(LogType.MSG_PSE_SIGNING, indent);
 
-                InputStream in = new BufferedInputStream(inputData.getInputStream());
+                InputStream in = new BufferedInputStream(metrics.measure(inputData.getInputStream(), Stage.INPUT_IO));
 
                 if (compressionAlgorithm != CompressionAlgorithmTags.UNCOMPRESSED) {
                     log.add(LogType.MSG_PSE_COMPRESSING, indent);
 
                     compressGen = new PGPCompressedDataGenerator(compressionAlgorithm);
-                    bcpgOut = new BCPGOutputStream(compressGen.open(out));
+                    bcpgOut = new BCPGOutputStream(metrics.measure(compressGen.open(out), Stage.COMPRESSION));
                 } else {
                     bcpgOut = new BCPGOutputStream(out);
                 }
@@ -550,7 +581,7 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
                 while ((length = in.read(buffer)) > 0) {
                     pOut.write(buffer, 0, length);
 
-                    signatureGenerator.update(buffer, 0, length);
+                    updateSignature(signatureGenerator, buffer, length, metrics);
 
                     alreadyWritten += length;
                     if (inputData.getSize() > 0) {
@@ -566,6 +597,7 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
 
             if (enableSignature) {
                 updateProgress(R.string.progress_generating_signature, 95, 100);
+                long signatureStart = metrics.start(Stage.SIGNATURE_HASH);
                 try {
                     if (detachedBcpgOut != null) {
                         signatureGenerator.generate().encode(detachedBcpgOut);
@@ -578,6 +610,8 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
                     return new PgpSignEncryptResult(log, RequiredInputParcel.createSecurityTokenSignOperation(
                             signingKey.getRing().getMasterKeyId(), signingKey.getKeyId(),
                             e.hashToSign, e.hashAlgo, cryptoInput.getSignatureTime()), cryptoInput);
+                } finally {
+                    metrics.stop(Stage.SIGNATURE_HASH, signatureStart);
                 }
             }
 
@@ -647,6 +681,17 @@ public class PgpSignEncryptOperation extends BaseOperation<PgpSignEncryptInputPa
         return result;
     }
 
+    private static void updateSignature(PGPSignatureGenerator signatureGenerator, byte[] buffer, int length,
+            OperationMetrics metrics) throws SignatureException {
+        long hashStart = metrics.start(Stage.SIGNATURE_HASH);
+        try {
+            signatureGenerator.update(buffer, 0, length);
+        } finally {
+            metrics.stop(Stage.SIGNATURE_HASH, hashStart);
+        }
+        metrics.addBytes(Stage.SIGNATURE_HASH, length);
+    }
+
     private boolean processEncryptionMasterKeyId(int indent, OperationLog log, PgpSignEncryptData data,
             PGPEncryptedDataGenerator cPk, long encryptMasterKeyId) {
         try {
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.pgp;
+
+
+import androidx.annotation.Nullable;
+import org.sufficientlysecure.keychain.operations.results.OperationResult.OperationLog;
+
+
+/**
+ * The outcome of canonicalizing an UncachedKeyRing ahead of time, without access to the database.
+ * <p>
+ * Canonicalization is the expensive part of saving a keyring, and does not depend on any stored
+ * state as long as there is no older version of the keyring to merge with. This class allows
+ * doing it on a worker thread, so that KeyWritableRepository only needs to pick up the result
+ * (and its log) when it finds that the keyring is new.
+ */
+public class PrecanonicalizedKeyRing {
+
+    private final UncachedKeyRing mRing;
+    private final CanonicalizedKeyRing mCanonicalized;
+    private final OperationLog mLog;
+
+    private PrecanonicalizedKeyRing(UncachedKeyRing ring, CanonicalizedKeyRing canonicalized, OperationLog log) {
+        mRing = ring;
+        mCanonicalized = canonicalized;
+        mLog = log;
+    }
+
+    /** Canonicalizes the given keyring. This is safe to call from any thread. */
+    public static PrecanonicalizedKeyRing canonicalize(UncachedKeyRing ring) {
+        OperationLog log = new OperationLog();
+        CanonicalizedKeyRing canonicalized = ring.canonicalize(log, 0);
+        return new PrecanonicalizedKeyRing(ring, canonicalized, log);
+    }
+
+    public UncachedKeyRing getRing() {
+        return mRing;
+    }
+
+    /**
+     * Returns the canonicalized keyring, or null if canonicalization failed, after appending the
+     * log of the canonicalization to the given log as if it had been done there.
+     */
+    @Nullable
+    public CanonicalizedKeyRing replay(OperationLog log, int indent) {
+        log.addAll(mLog, indent);
+        return mCanonicalized;
+    }
+
+}
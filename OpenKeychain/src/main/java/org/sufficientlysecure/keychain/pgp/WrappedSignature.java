@@ -31,11 +31,13 @@ import org.bouncycastle.openpgp.PGPSignatureList;
 import org.bouncycastle.openpgp.PGPUserAttributeSubpacketVector;
 import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentVerifierBuilderProvider;
+import org.bouncycastle.util.Strings;
 import org.sufficientlysecure.keychain.Constants;
 import org.sufficientlysecure.keychain.pgp.exception.PgpGeneralException;
 import timber.log.Timber;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -57,6 +59,8 @@ public class WrappedSignature {
     public static final int CERTIFICATION_REVOCATION = PGPSignature.CERTIFICATION_REVOCATION;
 
     final PGPSignature mSig;
+    // the key this signature is verified with, part of the verification cache key
+    private PGPPublicKey mInitKey;
 
     WrappedSignature(PGPSignature sig) {
         mSig = sig;
@@ -153,6 +157,7 @@ public class WrappedSignature {
                     new JcaPGPContentVerifierBuilderProvider()
                             .setProvider(Constants.BOUNCY_CASTLE_PROVIDER_NAME);
             mSig.init(contentVerifierBuilderProvider, key);
+            mInitKey = key;
         } catch(PGPException e) {
             throw new PgpGeneralException(e);
         }
@@ -174,46 +179,89 @@ public class WrappedSignature {
         }
     }
 
+    /**
+     * Process-wide cache of the results of certificate verifications.
+     * <p>
+     * Keyrings are canonicalized on every import, merge and trust update, which verifies each of
+     * their self-certificates and binding signatures again, even if exactly the same packets were
+     * verified a moment ago. Entries are keyed by the signature packet, the key material of the
+     * signer and the signed data. Since the signer's key is part of the digest, a result is never
+     * reused for a different key with the same key id.
+     */
+    private static final DigestKeyedCache<Boolean> sVerificationCache = new DigestKeyedCache<>(4096);
+
+    // distinguishes the kinds of signed data in the verification cache
+    private static final byte CERT_KEY = 1;
+    private static final byte CERT_SUBKEY = 2;
+    private static final byte CERT_USER_ID = 3;
+    private static final byte CERT_USER_ATTRIBUTE = 4;
+
     boolean verifySignature(PGPPublicKey key) throws PgpGeneralException {
-        try {
-            return mSig.verifyCertification(key);
-        } catch (PGPException e) {
-            throw new PgpGeneralException("Error!", e);
-        }
+        return verifyCached(CERT_KEY,
+                () -> new byte[][] { encodeKeyMaterial(key) },
+                () -> mSig.verifyCertification(key));
     }
 
     boolean verifySignature(PGPPublicKey masterKey, PGPPublicKey subKey) throws PgpGeneralException {
-        try {
-            return mSig.verifyCertification(masterKey, subKey);
-        } catch (PGPException e) {
-            throw new PgpGeneralException("Error!", e);
-        }
+        return verifyCached(CERT_SUBKEY,
+                () -> new byte[][] { encodeKeyMaterial(masterKey), encodeKeyMaterial(subKey) },
+                () -> mSig.verifyCertification(masterKey, subKey));
     }
 
     boolean verifySignature(PGPPublicKey key, String uid) throws PgpGeneralException {
-        try {
-            return mSig.verifyCertification(uid, key);
-        } catch (PGPException e) {
-            throw new PgpGeneralException("Error!", e);
-        }
+        return verifyCached(CERT_USER_ID,
+                () -> new byte[][] { encodeKeyMaterial(key), Strings.toUTF8ByteArray(uid) },
+                () -> mSig.verifyCertification(uid, key));
     }
 
     boolean verifySignature(PGPPublicKey key, byte[] rawUserId) throws PgpGeneralException {
-        try {
-            return mSig.verifyCertification(rawUserId, key);
-        } catch (PGPException e) {
-            throw new PgpGeneralException("Error!", e);
-        }
+        return verifyCached(CERT_USER_ID,
+                () -> new byte[][] { encodeKeyMaterial(key), rawUserId },
+                () -> mSig.verifyCertification(rawUserId, key));
     }
 
     boolean verifySignature(PGPPublicKey key, PGPUserAttributeSubpacketVector attribute) throws PgpGeneralException {
+        return verifyCached(CERT_USER_ATTRIBUTE,
+                () -> new byte[][] { encodeKeyMaterial(key), new WrappedUserAttribute(attribute).getEncoded() },
+                () -> mSig.verifyCertification(attribute, key));
+    }
+
+    private interface SignedDataEncoder {
+        byte[][] encode() throws IOException;
+    }
+
+    /**
+     * Verifies a certification, or returns the result of an earlier verification of the same
+     * signature by the same key, which is the one passed to init(), over the same data.
+     */
+    private boolean verifyCached(byte certType, SignedDataEncoder signedData,
+            DigestKeyedCache.Computation<Boolean, PGPException> verification) throws PgpGeneralException {
+        ByteBuffer cacheKey = null;
         try {
-            return mSig.verifyCertification(attribute, key);
+            // not initialized, the verification throws without touching the cache
+            if (mInitKey != null) {
+                byte[][] data = signedData.encode();
+                byte[][] parts = new byte[data.length + 3][];
+                parts[0] = new byte[] { certType };
+                parts[1] = encodeKeyMaterial(mInitKey);
+                parts[2] = mSig.getEncoded();
+                System.arraycopy(data, 0, parts, 3, data.length);
+                cacheKey = DigestKeyedCache.computeKey(parts);
+            }
+        } catch (IOException e) {
+            Timber.e(e, "Error encoding certification, verifying without cache");
+        }
+        try {
+            return sVerificationCache.get(cacheKey, verification);
         } catch (PGPException e) {
             throw new PgpGeneralException("Error!", e);
         }
     }
 
+    private static byte[] encodeKeyMaterial(PGPPublicKey key) throws IOException {
+        return key.getPublicKeyPacket().getEncodedContents();
+    }
+
     public boolean verifySignature(UncachedPublicKey key, byte[] rawUserId) throws PgpGeneralException {
         return verifySignature(key.getPublicKey(), rawUserId);
     }
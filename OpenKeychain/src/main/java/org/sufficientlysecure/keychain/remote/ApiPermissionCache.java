@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.remote;
+
+
+import java.util.Iterator;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import org.bouncycastle.util.encoders.Hex;
+import org.sufficientlysecure.keychain.daos.DatabaseNotifyManager;
+import org.sufficientlysecure.keychain.util.LruCache;
+import timber.log.Timber;
+
+
+/**
+ * Process-wide cache of positive permission decisions of {@link ApiPermissionHelper}.
+ * <p>
+ * Each remote API call checks the calling uid, which takes two calls into the PackageManager and
+ * a database query. A mail client calls the API hundreds of times during a sync, always with the
+ * same answer. A cached decision records the package and the digest of the certificate it was
+ * made for. It is dropped on any package broadcast for the package, which is the only way its
+ * uid or certificate can change, and on any change of the registered app in the database.
+ * <p>
+ * The remote APIs run in their own processes, while apps are usually changed in the main process,
+ * so changes are observed through the notify uri of {@link DatabaseNotifyManager}.
+ */
+public class ApiPermissionCache {
+    private static final int MAX_ENTRIES = 64;
+    private static final int STATS_LOG_INTERVAL = 100;
+
+    private static ApiPermissionCache sInstance;
+
+    public static synchronized ApiPermissionCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ApiPermissionCache();
+            sInstance.registerInvalidation(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        sInstance = null;
+    }
+
+    private static class AllowedCaller {
+        final String packageName;
+        final String certificateDigest;
+
+        AllowedCaller(String packageName, String certificateDigest) {
+            this.packageName = packageName;
+            this.certificateDigest = certificateDigest;
+        }
+    }
+
+    private final LruCache<Integer, AllowedCaller> allowedCallers = new LruCache<>(MAX_ENTRIES);
+
+    private long hits;
+    private long misses;
+    private long hitNanos;
+    private long missNanos;
+
+    private ApiPermissionCache() {
+    }
+
+    /** Returns the package name of the cached decision for this uid, or null if there is none. */
+    @Nullable
+    synchronized String getAllowedPackage(int uid) {
+        AllowedCaller allowedCaller = allowedCallers.get(uid);
+        return allowedCaller != null ? allowedCaller.packageName : null;
+    }
+
+    synchronized void putAllowed(int uid, String packageName, byte[] certificateDigest) {
+        allowedCallers.put(uid, new AllowedCaller(packageName, Hex.toHexString(certificateDigest)));
+    }
+
+    synchronized void removePackage(String packageName) {
+        Iterator<AllowedCaller> it = allowedCallers.values().iterator();
+        while (it.hasNext()) {
+            AllowedCaller allowedCaller = it.next();
+            if (allowedCaller.packageName.equals(packageName)) {
+                Timber.d("Dropping permission decision for %s, certificate digest %s",
+                        packageName, allowedCaller.certificateDigest);
+                it.remove();
+            }
+        }
+    }
+
+    synchronized void removeAll() {
+        allowedCallers.clear();
+    }
+
+    /** Records the time a permission check took, and whether it was answered from this cache. */
+    synchronized void recordLookup(boolean hit, long nanos) {
+        if (hit) {
+            hits++;
+            hitNanos += nanos;
+        } else {
+            misses++;
+            missNanos += nanos;
+        }
+
+        long lookups = hits + misses;
+        if (lookups % STATS_LOG_INTERVAL == 0 && hits > 0 && misses > 0) {
+            long savedNanos = hits * (missNanos / misses - hitNanos / hits);
+            Timber.d("Permission cache: %d of %d lookups hit, saved %d ms",
+                    hits, lookups, savedNanos / 1000000);
+        }
+    }
+
+    @VisibleForTesting
+    synchronized long getHitCount() {
+        return hits;
+    }
+
+    @VisibleForTesting
+    synchronized long getMissCount() {
+        return misses;
+    }
+
+    private void registerInvalidation(Context context) {
+        BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Uri data = intent.getData();
+                if (data != null) {
+                    removePackage(data.getSchemeSpecificPart());
+                } else {
+                    removeAll();
+                }
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        if (VERSION.SDK_INT >= VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(packageReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(packageReceiver, filter);
+        }
+
+        // there is no handler, so this is called on a binder thread as soon as the change is delivered
+        ContentObserver apiAppObserver = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                if (uri != null && uri.getPathSegments().size() > 1) {
+                    removePackage(uri.getLastPathSegment());
+                } else {
+                    removeAll();
+                }
+            }
+        };
+        context.getContentResolver().registerContentObserver(
+                DatabaseNotifyManager.getNotifyUriAllApps(), true, apiAppObserver);
+    }
+}
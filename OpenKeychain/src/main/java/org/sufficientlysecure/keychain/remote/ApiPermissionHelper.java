@@ -31,6 +31,9 @@ import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.Signature;
 import android.os.Binder;
+import android.os.SystemClock;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
 
 import org.openintents.openpgp.OpenPgpError;
 import org.openintents.openpgp.util.OpenPgpApi;
@@ -46,12 +49,14 @@ public class ApiPermissionHelper {
 
     private final Context mContext;
     private final ApiAppDao mApiAppDao;
+    private final ApiPermissionCache mPermissionCache;
     private PackageManager mPackageManager;
 
     public ApiPermissionHelper(Context context, ApiAppDao apiAppDao) {
         mContext = context;
         mPackageManager = context.getPackageManager();
         mApiAppDao = apiAppDao;
+        mPermissionCache = ApiPermissionCache.getInstance(context);
     }
 
     public static class WrongPackageCertificateException extends Exception {
@@ -184,12 +189,23 @@ public class ApiPermissionHelper {
 
     private boolean isUidAllowed(int uid)
             throws WrongPackageCertificateException {
+        long startTime = SystemClock.elapsedRealtimeNanos();
+
+        String cachedPackage = mPermissionCache.getAllowedPackage(uid);
+        if (cachedPackage != null) {
+            Timber.d("Package is allowed (cached)! packageName: " + cachedPackage);
+            mPermissionCache.recordLookup(true, SystemClock.elapsedRealtimeNanos() - startTime);
+            return true;
+        }
 
         String[] callingPackages = mPackageManager.getPackagesForUid(uid);
 
         // is calling package allowed to use this service?
         for (String currentPkg : callingPackages) {
-            if (isPackageAllowed(currentPkg)) {
+            byte[] packageCertificate = getAllowedPackageCertificate(currentPkg);
+            if (packageCertificate != null) {
+                mPermissionCache.putAllowed(uid, currentPkg, getCertificateDigest(packageCertificate));
+                mPermissionCache.recordLookup(false, SystemClock.elapsedRealtimeNanos() - startTime);
                 return true;
             }
         }
@@ -204,6 +220,15 @@ public class ApiPermissionHelper {
      * @throws WrongPackageCertificateException
      */
     public boolean isPackageAllowed(String packageName) throws WrongPackageCertificateException {
+        return getAllowedPackageCertificate(packageName) != null;
+    }
+
+    /**
+     * Returns the certificate of packageName if it is a registered app for the API, or null if it isn't.
+     *
+     * @throws WrongPackageCertificateException
+     */
+    private byte[] getAllowedPackageCertificate(String packageName) throws WrongPackageCertificateException {
         Timber.d("isPackageAllowed packageName: " + packageName);
 
         byte[] storedPackageCert = mApiAppDao.getApiAppCertificate(packageName);
@@ -211,7 +236,7 @@ public class ApiPermissionHelper {
         boolean isKnownPackage = storedPackageCert != null;
         if (!isKnownPackage) {
             Timber.d("Package is NOT allowed! packageName: " + packageName);
-            return false;
+            return null;
         }
         Timber.d("Package is allowed! packageName: " + packageName);
 
@@ -225,10 +250,18 @@ public class ApiPermissionHelper {
         boolean packageCertMatchesStored = Arrays.equals(currentPackageCert, storedPackageCert);
         if (packageCertMatchesStored) {
             Timber.d("Package certificate matches expected.");
-            return true;
+            return currentPackageCert;
         }
 
         throw new WrongPackageCertificateException("PACKAGE NOT ALLOWED DUE TO CERTIFICATE MISMATCH!");
     }
 
+    private static byte[] getCertificateDigest(byte[] packageCertificate) {
+        SHA256Digest digest = new SHA256Digest();
+        digest.update(packageCertificate, 0, packageCertificate.length);
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+        return result;
+    }
+
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.remote;
+
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * Streams for the framing of messages in a batch call of the remote API, so that no message has
+ * to be held in memory as a whole.
+ * <p>
+ * Each input message is prefixed by its length as a four byte big-endian integer. Each output
+ * message is written as a sequence of chunks, each prefixed by its length in the same way, and
+ * is terminated by a chunk length of FRAME_END_SUCCESS, or of FRAME_END_FAILURE if the message
+ * failed. In the latter case, any data written before is not a valid result and must be dropped.
+ */
+class BatchFraming {
+    static final int FRAME_END_SUCCESS = 0;
+    static final int FRAME_END_FAILURE = -1;
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private BatchFraming() {
+    }
+
+    /** Returns the length of the next input frame, or -1 at the end of the input. */
+    static int readFrameLength(DataInputStream framedInput, int maxLength) throws IOException {
+        int firstByte = framedInput.read();
+        if (firstByte == -1) {
+            return -1;
+        }
+        int length = (firstByte << 24) | (framedInput.readUnsignedByte() << 16)
+                | (framedInput.readUnsignedByte() << 8) | framedInput.readUnsignedByte();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("invalid frame length " + length);
+        }
+        return length;
+    }
+
+    /** The data of a single input frame. Closing it leaves the underlying stream open. */
+    static class FrameInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        FrameInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int result = in.read();
+            if (result != -1) {
+                remaining -= 1;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int result = in.read(b, off, (int) Math.min(len, remaining));
+            if (result > 0) {
+                remaining -= result;
+            }
+            return result;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public void close() {
+            // the next frame follows in the underlying stream
+        }
+
+        /** Skips what was left unread of the frame, throws if the input ends before it. */
+        void skipRemaining() throws IOException {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            while (remaining > 0) {
+                if (read(buffer, 0, buffer.length) == -1) {
+                    throw new EOFException("input ends within a frame");
+                }
+            }
+        }
+    }
+
+    /** The data of a single output frame. Closing it leaves the underlying stream open. */
+    static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private int chunkLength = 0;
+
+        FrameOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (chunkLength == chunk.length) {
+                writeChunk();
+            }
+            chunk[chunkLength++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (chunkLength == chunk.length) {
+                    writeChunk();
+                }
+                int n = Math.min(len, chunk.length - chunkLength);
+                System.arraycopy(b, off, chunk, chunkLength, n);
+                chunkLength += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writeChunk();
+        }
+
+        /** Ends the frame, marking whether the data written to it is a valid result. */
+        void finish(boolean success) throws IOException {
+            writeChunk();
+            out.writeInt(success ? FRAME_END_SUCCESS : FRAME_END_FAILURE);
+        }
+
+        private void writeChunk() throws IOException {
+            if (chunkLength == 0) {
+                return;
+            }
+            out.writeInt(chunkLength);
+            out.write(chunk, 0, chunkLength);
+            chunkLength = 0;
+        }
+    }
+}
@@ -18,6 +18,10 @@
 package org.sufficientlysecure.keychain.remote;
 
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -74,6 +78,8 @@ import org.sufficientlysecure.keychain.pgp.PgpSignEncryptOperation;
 import org.sufficientlysecure.keychain.pgp.Progressable;
 import org.sufficientlysecure.keychain.pgp.SecurityProblem;
 import org.sufficientlysecure.keychain.provider.KeychainExternalContract.AutocryptStatus;
+import org.sufficientlysecure.keychain.remote.BatchFraming.FrameInputStream;
+import org.sufficientlysecure.keychain.remote.BatchFraming.FrameOutputStream;
 import org.sufficientlysecure.keychain.remote.OpenPgpServiceKeyIdExtractor.KeyIdResult;
 import org.sufficientlysecure.keychain.remote.OpenPgpServiceKeyIdExtractor.KeyIdResultStatus;
 import org.sufficientlysecure.keychain.service.BackupKeyringParcel;
@@ -95,6 +101,15 @@ public class OpenPgpService extends Service {
     public static final List<Integer> SUPPORTED_VERSIONS =
             Collections.unmodifiableList(Arrays.asList(7, 8, 9, 10, 11, 12));
 
+    // not part of the OpenPGP API yet, see decryptAndVerifyBatchImpl
+    public static final String ACTION_DECRYPT_VERIFY_BATCH = Constants.INTENT_PREFIX + "DECRYPT_VERIFY_BATCH";
+    public static final String EXTRA_BATCH_SENDER_ADDRESSES = Constants.EXTRA_PREFIX + "batch_sender_addresses"; // String[]
+    public static final String RESULT_BATCH_RESULTS = Constants.EXTRA_PREFIX + "batch_results"; // ArrayList<Intent>
+    // all result intents of a batch are returned in one transaction, which must stay well below its limit
+    static final int MAX_BATCH_SIZE = 50;
+    // messages of a batch are mails, a longer frame is taken as broken framing
+    static final int MAX_BATCH_MESSAGE_LENGTH = 64 * 1024 * 1024;
+
     private ApiPermissionHelper mApiPermissionHelper;
     private KeyRepository mKeyRepository;
     private ApiAppDao mApiAppDao;
@@ -373,24 +388,7 @@ public class OpenPgpService extends Service {
                 outputStream = null;
             }
 
-            int targetApiVersion = data.getIntExtra(OpenPgpApi.EXTRA_API_VERSION, -1);
-
-            CryptoInputParcel cryptoInput = CryptoInputParcelCacheService.getCryptoInputParcel(this, data);
-            if (cryptoInput == null) {
-                cryptoInput = CryptoInputParcel.createCryptoInputParcel();
-            }
-            // override passphrase in input parcel if given by API call
-            if (data.hasExtra(OpenPgpApi.EXTRA_PASSPHRASE)) {
-                cryptoInput = cryptoInput.withPassphrase(
-                        new Passphrase(data.getCharArrayExtra(OpenPgpApi.EXTRA_PASSPHRASE)), null);
-            }
-            if (data.hasExtra(OpenPgpApi.EXTRA_DECRYPTION_RESULT)) {
-                OpenPgpDecryptionResult decryptionResult = data.getParcelableExtra(OpenPgpApi.EXTRA_DECRYPTION_RESULT);
-                if (decryptionResult != null && decryptionResult.hasDecryptedSessionKey()) {
-                    cryptoInput = cryptoInput.withCryptoData(
-                            decryptionResult.getSessionKey(), decryptionResult.getDecryptedSessionKey());
-                }
-            }
+            CryptoInputParcel cryptoInput = getDecryptCryptoInputParcel(data);
 
             byte[] detachedSignature = data.getByteArrayExtra(OpenPgpApi.EXTRA_DETACHED_SIGNATURE);
             String senderAddress = data.getStringExtra(OpenPgpApi.EXTRA_SENDER_ADDRESS);
@@ -402,63 +400,153 @@ public class OpenPgpService extends Service {
             long inputLength = data.getLongExtra(OpenPgpApi.EXTRA_DATA_LENGTH, InputData.UNKNOWN_FILESIZE);
             InputData inputData = new InputData(inputStream, inputLength);
 
-            // allow only private keys associated with accounts of this app
-            // no support for symmetric encryption
-            PgpDecryptVerifyInputParcel input = PgpDecryptVerifyInputParcel.builder()
-                    .setAllowSymmetricDecryption(false)
-                    .setAllowedKeyIds(new ArrayList<>(getAllowedKeyIds()))
-                    .setDecryptMetadataOnly(decryptMetadataOnly)
-                    .setDetachedSignature(detachedSignature)
-                    .setSenderAddress(senderAddress)
-                    .build();
+            PgpDecryptVerifyInputParcel input = buildDecryptVerifyInputParcel(new ArrayList<>(getAllowedKeyIds()),
+                    decryptMetadataOnly, detachedSignature, senderAddress);
 
             DecryptVerifyResult pgpResult = op.execute(input, cryptoInput, inputData, outputStream);
+            return createDecryptVerifyResultIntent(data, pgpResult);
+        } catch (Exception e) {
+            Timber.e(e, "decryptAndVerifyImpl");
+            return createErrorResultIntent(OpenPgpError.GENERIC_ERROR, e.getMessage());
+        }
+    }
 
-            if (pgpResult.isPending()) {
-                // prepare and return PendingIntent to be executed by client
-                RequiredInputParcel requiredInput = pgpResult.getRequiredInputParcel();
-                PendingIntent pIntent = mApiPendingIntentFactory.requiredInputPi(data,
-                        requiredInput, pgpResult.mCryptoInputParcel);
-
-                Intent result = new Intent();
-                result.putExtra(OpenPgpApi.RESULT_INTENT, pIntent);
-                result.putExtra(OpenPgpApi.RESULT_CODE, OpenPgpApi.RESULT_CODE_USER_INTERACTION_REQUIRED);
-                return result;
-
-            } else if (pgpResult.success()) {
-                Intent result = new Intent();
+    /**
+     * Decrypts and verifies a batch of messages, as ACTION_DECRYPT_VERIFY would each of them.
+     * <p>
+     * Messages are read from the input one after the other in the framing of BatchFraming, until
+     * the input ends or MAX_BATCH_SIZE messages were read, any further ones are left for another
+     * call. For each message, its decrypted data is written to the output in chunks, ending with a
+     * marker of whether it could be decrypted. The result intent contains the result intent of each
+     * message in RESULT_BATCH_RESULTS, in input order. Apart from the sender addresses, which can be
+     * given per message in EXTRA_BATCH_SENDER_ADDRESSES, all extras apply to every message.
+     * <p>
+     * The permission check, the lookup of allowed keys and of cached input are done once per
+     * batch. A frame which is longer than MAX_BATCH_MESSAGE_LENGTH or ends early fails the batch.
+     */
+    private Intent decryptAndVerifyBatchImpl(Intent data, InputStream inputStream, OutputStream outputStream) {
+        if (inputStream == null || outputStream == null) {
+            return createErrorResultIntent(OpenPgpError.GENERIC_ERROR, "input and output required!");
+        }
 
-                processDecryptionResultForResultIntent(targetApiVersion, result, pgpResult.getDecryptionResult());
-                processMetadataForResultIntent(result, pgpResult.getDecryptionMetadata());
-                processSignatureResultForResultIntent(targetApiVersion, data, result, pgpResult);
-                processSecurityProblemsPendingIntent(data, result, pgpResult);
+        try {
+            CryptoInputParcel cryptoInput = getDecryptCryptoInputParcel(data);
+            ArrayList<Long> allowedKeyIds = new ArrayList<>(getAllowedKeyIds());
+            String[] senderAddresses = data.getStringArrayExtra(EXTRA_BATCH_SENDER_ADDRESSES);
 
-                result.putExtra(OpenPgpApi.RESULT_CODE, OpenPgpApi.RESULT_CODE_SUCCESS);
-                return result;
-            } else {
-                long[] skippedDisallowedEncryptionKeys = pgpResult.getSkippedDisallowedKeys();
-                if (pgpResult.isKeysDisallowed() &&
-                        skippedDisallowedEncryptionKeys != null && skippedDisallowedEncryptionKeys.length > 0) {
-                    // allow user to select allowed keys
-                    Intent result = new Intent();
-                    String packageName = mApiPermissionHelper.getCurrentCallingPackage();
-                    result.putExtra(OpenPgpApi.RESULT_INTENT,
-                            mApiPendingIntentFactory.createRequestKeyPermissionPendingIntent(
-                                    data, packageName, skippedDisallowedEncryptionKeys));
-                    result.putExtra(OpenPgpApi.RESULT_CODE, OpenPgpApi.RESULT_CODE_USER_INTERACTION_REQUIRED);
-                    return result;
-                }
+            updateAutocryptPeerImpl(data);
 
-                String errorMsg = getString(pgpResult.getLog().getLast().mType.getMsgId());
-                return createErrorResultIntent(OpenPgpError.GENERIC_ERROR, errorMsg);
+            PgpDecryptVerifyOperation op = new PgpDecryptVerifyOperation(this, mKeyRepository, null);
+
+            DataInputStream framedInput = new DataInputStream(new BufferedInputStream(inputStream));
+            DataOutputStream framedOutput = new DataOutputStream(new BufferedOutputStream(outputStream));
+            ArrayList<Intent> results = new ArrayList<>();
+            int messageLength;
+            while (results.size() < MAX_BATCH_SIZE
+                    && (messageLength = BatchFraming.readFrameLength(framedInput, MAX_BATCH_MESSAGE_LENGTH)) >= 0) {
+                int index = results.size();
+                String senderAddress = senderAddresses != null && index < senderAddresses.length
+                        ? senderAddresses[index] : null;
+                PgpDecryptVerifyInputParcel input =
+                        buildDecryptVerifyInputParcel(allowedKeyIds, false, null, senderAddress);
+
+                FrameInputStream messageInput = new FrameInputStream(framedInput, messageLength);
+                FrameOutputStream messageOutput = new FrameOutputStream(framedOutput);
+                DecryptVerifyResult pgpResult = op.execute(input, cryptoInput,
+                        new InputData(messageInput, messageLength), messageOutput);
+                messageInput.skipRemaining();
+
+                results.add(createDecryptVerifyResultIntent(data, pgpResult));
+                messageOutput.finish(pgpResult.success());
             }
+            framedOutput.flush();
 
+            Intent result = new Intent();
+            result.putParcelableArrayListExtra(RESULT_BATCH_RESULTS, results);
+            result.putExtra(OpenPgpApi.RESULT_CODE, OpenPgpApi.RESULT_CODE_SUCCESS);
+            return result;
         } catch (Exception e) {
-            Timber.e(e, "decryptAndVerifyImpl");
+            Timber.e(e, "decryptAndVerifyBatchImpl");
             return createErrorResultIntent(OpenPgpError.GENERIC_ERROR, e.getMessage());
         }
     }
 
+    private CryptoInputParcel getDecryptCryptoInputParcel(Intent data) {
+        CryptoInputParcel cryptoInput = CryptoInputParcelCacheService.getCryptoInputParcel(this, data);
+        if (cryptoInput == null) {
+            cryptoInput = CryptoInputParcel.createCryptoInputParcel();
+        }
+        // override passphrase in input parcel if given by API call
+        if (data.hasExtra(OpenPgpApi.EXTRA_PASSPHRASE)) {
+            cryptoInput = cryptoInput.withPassphrase(
+                    new Passphrase(data.getCharArrayExtra(OpenPgpApi.EXTRA_PASSPHRASE)), null);
+        }
+        if (data.hasExtra(OpenPgpApi.EXTRA_DECRYPTION_RESULT)) {
+            OpenPgpDecryptionResult decryptionResult = data.getParcelableExtra(OpenPgpApi.EXTRA_DECRYPTION_RESULT);
+            if (decryptionResult != null && decryptionResult.hasDecryptedSessionKey()) {
+                cryptoInput = cryptoInput.withCryptoData(
+                        decryptionResult.getSessionKey(), decryptionResult.getDecryptedSessionKey());
+            }
+        }
+        return cryptoInput;
+    }
+
+    private static PgpDecryptVerifyInputParcel buildDecryptVerifyInputParcel(ArrayList<Long> allowedKeyIds,
+            boolean decryptMetadataOnly, byte[] detachedSignature, String senderAddress) {
+        // allow only private keys associated with accounts of this app
+        // no support for symmetric encryption
+        return PgpDecryptVerifyInputParcel.builder()
+                .setAllowSymmetricDecryption(false)
+                .setAllowedKeyIds(allowedKeyIds)
+                .setDecryptMetadataOnly(decryptMetadataOnly)
+                .setDetachedSignature(detachedSignature)
+                .setSenderAddress(senderAddress)
+                .build();
+    }
+
+    private Intent createDecryptVerifyResultIntent(Intent data, DecryptVerifyResult pgpResult) {
+        int targetApiVersion = data.getIntExtra(OpenPgpApi.EXTRA_API_VERSION, -1);
+
+        if (pgpResult.isPending()) {
+            // prepare and return PendingIntent to be executed by client
+            RequiredInputParcel requiredInput = pgpResult.getRequiredInputParcel();
+            PendingIntent pIntent = mApiPendingIntentFactory.requiredInputPi(data,
+                    requiredInput, pgpResult.mCryptoInputParcel);
+
+            Intent result = new Intent();
+            result.putExtra(OpenPgpApi.RESULT_INTENT, pIntent);
+            result.putExtra(OpenPgpApi.RESULT_CODE, OpenPgpApi.RESULT_CODE_USER_INTERACTION_REQUIRED);
+            return result;
+
+        } else if (pgpResult.success()) {
+            Intent result = new Intent();
+
+            processDecryptionResultForResultIntent(targetApiVersion, result, pgpResult.getDecryptionResult());
+            processMetadataForResultIntent(result, pgpResult.getDecryptionMetadata());
+            processSignatureResultForResultIntent(targetApiVersion, data, result, pgpResult);
+            processSecurityProblemsPendingIntent(data, result, pgpResult);
+
+            result.putExtra(OpenPgpApi.RESULT_CODE, OpenPgpApi.RESULT_CODE_SUCCESS);
+            return result;
+        } else {
+            long[] skippedDisallowedEncryptionKeys = pgpResult.getSkippedDisallowedKeys();
+            if (pgpResult.isKeysDisallowed() &&
+                    skippedDisallowedEncryptionKeys != null && skippedDisallowedEncryptionKeys.length > 0) {
+                // allow user to select allowed keys
+                Intent result = new Intent();
+                String packageName = mApiPermissionHelper.getCurrentCallingPackage();
+                result.putExtra(OpenPgpApi.RESULT_INTENT,
+                        mApiPendingIntentFactory.createRequestKeyPermissionPendingIntent(
+                                data, packageName, skippedDisallowedEncryptionKeys));
+                result.putExtra(OpenPgpApi.RESULT_CODE, OpenPgpApi.RESULT_CODE_USER_INTERACTION_REQUIRED);
+                return result;
+            }
+
+            String errorMsg = getString(pgpResult.getLog().getLast().mType.getMsgId());
+            return createErrorResultIntent(OpenPgpError.GENERIC_ERROR, errorMsg);
+        }
+    }
+
     private void processSecurityProblemsPendingIntent(Intent data, Intent result,
             DecryptVerifyResult decryptVerifyResult) {
         DecryptVerifySecurityProblem securityProblem = decryptVerifyResult.getSecurityProblem();
@@ -1067,6 +1155,9 @@ public class OpenPgpService extends Service {
             case OpenPgpApi.ACTION_DECRYPT_METADATA: {
                 return decryptAndVerifyImpl(data, inputStream, outputStream, true, null);
             }
+            case ACTION_DECRYPT_VERIFY_BATCH: {
+                return decryptAndVerifyBatchImpl(data, inputStream, outputStream);
+            }
             case OpenPgpApi.ACTION_GET_SIGN_KEY_ID: {
                 return getSignKeyIdImpl(data);
             }
@@ -55,6 +55,7 @@ import org.sufficientlysecure.keychain.ssh.AuthenticationData;
 import org.sufficientlysecure.keychain.ssh.AuthenticationOperation;
 import org.sufficientlysecure.keychain.ssh.AuthenticationParcel;
 import org.sufficientlysecure.keychain.ssh.AuthenticationResult;
+import org.sufficientlysecure.keychain.ssh.SshAgentSession;
 import org.sufficientlysecure.keychain.ssh.signature.SshSignatureConverter;
 import timber.log.Timber;
 
@@ -64,6 +65,7 @@ public class SshAuthenticationService extends Service {
     private KeyRepository mKeyRepository;
     private ApiAppDao mApiAppDao;
     private ApiPendingIntentFactory mApiPendingIntentFactory;
+    private SshAgentSession mAgentSession;
 
     private static final List<Integer> SUPPORTED_VERSIONS = Collections.unmodifiableList(Collections.singletonList(1));
     private static final int INVALID_API_VERSION = -1;
@@ -78,6 +80,7 @@ public class SshAuthenticationService extends Service {
         mApiAppDao = ApiAppDao.getInstance(this);
 
         mApiPendingIntentFactory = new ApiPendingIntentFactory(getBaseContext());
+        mAgentSession = SshAgentSession.getInstance(this);
     }
 
     private final ISshAuthenticationService.Stub mSSHAgent = new ISshAuthenticationService.Stub() {
@@ -148,11 +151,12 @@ public class SshAuthenticationService extends Service {
         String authSubKeyCurveOid = null;
         try {
             // get first usable subkey capable of authentication
-            authSubKeyId = mKeyRepository.getEffectiveAuthenticationKeyId(masterKeyId);
+            CanonicalizedPublicKey authSubKey = getPublicKey(masterKeyId);
+            authSubKeyId = authSubKey.getKeyId();
             // needed for encoding the resulting signature
-            authSubKeyAlgorithm = getPublicKey(masterKeyId).getAlgorithm();
+            authSubKeyAlgorithm = authSubKey.getAlgorithm();
             if (authSubKeyAlgorithm == PublicKeyAlgorithmTags.ECDSA) {
-                authSubKeyCurveOid = getPublicKey(masterKeyId).getCurveOid();
+                authSubKeyCurveOid = authSubKey.getCurveOid();
             }
         } catch (NotFoundException e) {
             return createExceptionErrorResult(SshAuthenticationApiError.NO_SUCH_KEY,
@@ -175,7 +179,8 @@ public class SshAuthenticationService extends Service {
                 .createAuthenticationParcel(authData.build(), challenge);
 
         // execute authentication operation!
-        AuthenticationOperation authOperation = new AuthenticationOperation(this, mKeyRepository);
+        AuthenticationOperation authOperation = new AuthenticationOperation(this, mKeyRepository,
+                mAgentSession.isEnabled() ? mAgentSession : null);
         AuthenticationResult authResult = authOperation.execute(authData.build(), inputParcel, authParcel);
 
         if (authResult.isPending()) {
@@ -353,22 +358,31 @@ public class SshAuthenticationService extends Service {
     private Intent getSSHPublicKey(long masterKeyId) throws KeyRepository.NotFoundException {
         CanonicalizedPublicKey publicKey = getPublicKey(masterKeyId);
 
-        SshPublicKey sshPublicKey = new SshPublicKey(publicKey);
-        String sshPublicKeyBlob;
-        try {
-            sshPublicKeyBlob = sshPublicKey.getEncodedKey();
-        } catch (PgpGeneralException | NoSuchAlgorithmException e) {
-            return createExceptionErrorResult(SshAuthenticationApiError.GENERIC_ERROR,
-                    "Error converting public key to SSH format", e);
+        String sshPublicKeyBlob = mAgentSession.getSshPublicKey(masterKeyId);
+        if (sshPublicKeyBlob == null) {
+            SshPublicKey sshPublicKey = new SshPublicKey(publicKey);
+            try {
+                sshPublicKeyBlob = sshPublicKey.getEncodedKey();
+            } catch (PgpGeneralException | NoSuchAlgorithmException e) {
+                return createExceptionErrorResult(SshAuthenticationApiError.GENERIC_ERROR,
+                        "Error converting public key to SSH format", e);
+            }
+            mAgentSession.putSshPublicKey(masterKeyId, sshPublicKeyBlob);
         }
 
         return new SshPublicKeyResponse(sshPublicKeyBlob).toIntent();
     }
 
     private CanonicalizedPublicKey getPublicKey(long masterKeyId) throws NotFoundException {
-        KeyRepository keyRepository = KeyRepository.create(getApplicationContext());
-        long authKeyId = keyRepository.getEffectiveAuthenticationKeyId(masterKeyId);
-        return keyRepository.getCanonicalizedPublicKeyRing(masterKeyId).getPublicKey(authKeyId);
+        CanonicalizedPublicKey publicKey = mAgentSession.getPublicKey(masterKeyId);
+        if (publicKey != null) {
+            return publicKey;
+        }
+
+        long authKeyId = mKeyRepository.getEffectiveAuthenticationKeyId(masterKeyId);
+        publicKey = mKeyRepository.getCanonicalizedPublicKeyRing(masterKeyId).getPublicKey(authKeyId);
+        mAgentSession.putPublicKey(masterKeyId, publicKey);
+        return publicKey;
     }
 
     private String getDescription(long masterKeyId) throws NotFoundException {
@@ -36,36 +36,43 @@ public abstract class ImportKeyringParcel implements Parcelable {
     public abstract HkpKeyserverAddress getKeyserver();
     public abstract boolean isSkipSave();
     public abstract boolean isForceReinsert();
+    // a refresh of known keys, which may send the cache validators of their last download
+    public abstract boolean isKeySync();
 
     public static ImportKeyringParcel createImportKeyringParcel(List<ParcelableKeyRing> keyList,
             HkpKeyserverAddress keyserver) {
-        return new AutoValue_ImportKeyringParcel(keyList, keyserver, false, false);
+        return new AutoValue_ImportKeyringParcel(keyList, keyserver, false, false, false);
     }
 
     public static ImportKeyringParcel createImportKeyringParcel(List<ParcelableKeyRing> keyList,
             HkpKeyserverAddress keyserver, boolean forceReinsert) {
-        return new AutoValue_ImportKeyringParcel(keyList, keyserver, false, forceReinsert);
+        return new AutoValue_ImportKeyringParcel(keyList, keyserver, false, forceReinsert, false);
+    }
+
+    public static ImportKeyringParcel createForKeySync(List<ParcelableKeyRing> keyList,
+            HkpKeyserverAddress keyserver, boolean forceReinsert) {
+        return new AutoValue_ImportKeyringParcel(keyList, keyserver, false, forceReinsert, true);
     }
 
     public static ImportKeyringParcel createWithSkipSave(List<ParcelableKeyRing> keyList,
             HkpKeyserverAddress keyserver) {
-        return new AutoValue_ImportKeyringParcel(keyList, keyserver, true, false);
+        return new AutoValue_ImportKeyringParcel(keyList, keyserver, true, false, false);
     }
 
     public static ImportKeyringParcel createImportKeyringParcel(ParcelableKeyRing key) {
-        return new AutoValue_ImportKeyringParcel(Collections.singletonList(key), null, false, false);
+        return new AutoValue_ImportKeyringParcel(Collections.singletonList(key), null, false, false, false);
     }
 
     public static ImportKeyringParcel createFromBytes(byte[] keyData) {
         ParcelableKeyRing keyRing = ParcelableKeyRing.createFromEncodedBytes(keyData);
-        return new AutoValue_ImportKeyringParcel(Collections.singletonList(keyRing), null, false, false);
+        return new AutoValue_ImportKeyringParcel(Collections.singletonList(keyRing), null, false, false, false);
     }
 
     public static ImportKeyringParcel createFromFileCacheWithSkipSave() {
-        return new AutoValue_ImportKeyringParcel(null, null, true, false);
+        return new AutoValue_ImportKeyringParcel(null, null, true, false, false);
     }
 
     public static ImportKeyringParcel createFromFileCache() {
-        return new AutoValue_ImportKeyringParcel(null, null, false, false);
+        return new AutoValue_ImportKeyringParcel(null, null, false, false, false);
     }
 }
\ No newline at end of file
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.service;
+
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
+import org.sufficientlysecure.keychain.util.Passphrase;
+import timber.log.Timber;
+
+
+/**
+ * A binding to the PassphraseCacheService, which is kept open while lookups are coming in.
+ * <p>
+ * Looking up a passphrase through this connection is a single synchronous binder transaction,
+ * rather than an Intent which is answered through a Messenger on a freshly started thread.
+ * Many subkeys can be looked up in one transaction.
+ * <p>
+ * Binding is asynchronous, and the connection callback is delivered on the main thread. This
+ * connection can therefore not be used from the main thread, callers must fall back to the
+ * Intent based lookup in that case.
+ */
+class PassphraseCacheConnection implements ServiceConnection {
+    static final String DESCRIPTOR = "org.sufficientlysecure.keychain.service.PassphraseCacheService";
+    static final int TRANSACTION_GET_CACHED_PASSPHRASES = IBinder.FIRST_CALL_TRANSACTION;
+    static final int TRANSACTION_ADD_CACHED_SESSION_KEYS = IBinder.FIRST_CALL_TRANSACTION + 1;
+
+    static final int RESULT_OKAY = 1;
+    static final int RESULT_KEY_NOT_FOUND = 2;
+
+    private static final long BIND_TIMEOUT_MILLIS = 3000;
+    // keep the binding around a while, to avoid rebinding for each operation in a batch
+    private static final long IDLE_UNBIND_DELAY_MILLIS = 30 * 1000;
+
+    private static PassphraseCacheConnection sInstance;
+
+    static synchronized PassphraseCacheConnection getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PassphraseCacheConnection(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable unbindRunnable = this::unbindIfIdle;
+
+    private IBinder binder;
+    private boolean isBound;
+    private int pendingTransactions;
+
+    private PassphraseCacheConnection(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Looks up cached passphrases for a number of keys in a single transaction.
+     *
+     * @return cached passphrases by subkey id, where a null value means the key is known but its
+     * passphrase is not cached. Keys which are not available are absent from the result. If
+     * the service could not be reached, null is returned.
+     */
+    @Nullable
+    LongSparseArray<Passphrase> getCachedPassphrases(long[] masterKeyIds, long[] subKeyIds) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            return null;
+        }
+
+        IBinder binder = acquireBinder();
+        if (binder == null) {
+            return null;
+        }
+
+        try {
+            return transactGetCachedPassphrases(binder, masterKeyIds, subKeyIds);
+        } catch (RemoteException e) {
+            Timber.e(e, "PassphraseCacheConnection: transaction failed");
+            return null;
+        } finally {
+            releaseBinder();
+        }
+    }
+
+    /**
+     * Hands session keys derived from a cached passphrase back to the cache, where they are kept
+     * along with the passphrase. This is an optimization only, so it is not retried in any way.
+     */
+    void addCachedSessionKeys(long masterKeyId, long subKeyId, Passphrase passphrase) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            return;
+        }
+
+        IBinder binder = acquireBinder();
+        if (binder == null) {
+            return;
+        }
+
+        Parcel data = Parcel.obtain();
+        Parcel reply = Parcel.obtain();
+        try {
+            data.writeInterfaceToken(DESCRIPTOR);
+            data.writeLong(masterKeyId);
+            data.writeLong(subKeyId);
+            passphrase.writeToParcel(data, 0);
+            binder.transact(TRANSACTION_ADD_CACHED_SESSION_KEYS, data, reply, 0);
+            reply.readException();
+        } catch (RemoteException e) {
+            Timber.e(e, "PassphraseCacheConnection: transaction failed");
+        } finally {
+            reply.recycle();
+            data.recycle();
+            releaseBinder();
+        }
+    }
+
+    static LongSparseArray<Passphrase> transactGetCachedPassphrases(IBinder binder,
+            long[] masterKeyIds, long[] subKeyIds) throws RemoteException {
+        Parcel data = Parcel.obtain();
+        Parcel reply = Parcel.obtain();
+        try {
+            data.writeInterfaceToken(DESCRIPTOR);
+            data.writeLongArray(masterKeyIds);
+            data.writeLongArray(subKeyIds);
+            binder.transact(TRANSACTION_GET_CACHED_PASSPHRASES, data, reply, 0);
+            reply.readException();
+
+            LongSparseArray<Passphrase> result = new LongSparseArray<>(subKeyIds.length);
+            for (long subKeyId : subKeyIds) {
+                int resultCode = reply.readInt();
+                if (resultCode != RESULT_OKAY) {
+                    continue;
+                }
+                boolean hasPassphrase = reply.readInt() != 0;
+                result.put(subKeyId, hasPassphrase ? Passphrase.CREATOR.createFromParcel(reply) : null);
+            }
+            return result;
+        } finally {
+            reply.recycle();
+            data.recycle();
+        }
+    }
+
+    private synchronized IBinder acquireBinder() {
+        mainHandler.removeCallbacks(unbindRunnable);
+
+        if (!isBound) {
+            Intent intent = new Intent(context, PassphraseCacheService.class);
+            isBound = context.bindService(intent, this, Context.BIND_AUTO_CREATE);
+            if (!isBound) {
+                Timber.e("PassphraseCacheConnection: could not bind to service");
+                return null;
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + BIND_TIMEOUT_MILLIS;
+        while (binder == null) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                Timber.e("PassphraseCacheConnection: timeout waiting for service connection");
+                scheduleUnbind();
+                return null;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                scheduleUnbind();
+                return null;
+            }
+        }
+
+        pendingTransactions += 1;
+        return binder;
+    }
+
+    private synchronized void releaseBinder() {
+        pendingTransactions -= 1;
+        scheduleUnbind();
+    }
+
+    private void scheduleUnbind() {
+        mainHandler.removeCallbacks(unbindRunnable);
+        mainHandler.postDelayed(unbindRunnable, IDLE_UNBIND_DELAY_MILLIS);
+    }
+
+    private synchronized void unbindIfIdle() {
+        if (!isBound || pendingTransactions > 0) {
+            return;
+        }
+        context.unbindService(this);
+        isBound = false;
+        binder = null;
+    }
+
+    @Override
+    public synchronized void onServiceConnected(ComponentName name, IBinder service) {
+        binder = service;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onServiceDisconnected(ComponentName name) {
+        // the service process died. we stay bound, it will be reconnected when restarted
+        binder = null;
+    }
+}
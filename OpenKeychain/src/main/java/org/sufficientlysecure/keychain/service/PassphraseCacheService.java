@@ -18,6 +18,7 @@
 package org.sufficientlysecure.keychain.service;
 
 
+import java.util.ArrayList;
 import java.util.Date;
 
 import android.app.AlarmManager;
@@ -37,8 +38,10 @@ import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Message;
 import android.os.Messenger;
+import android.os.Parcel;
 import android.os.RemoteException;
 
+import androidx.annotation.Nullable;
 import androidx.collection.LongSparseArray;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationCompat.Builder;
@@ -90,6 +93,12 @@ public class PassphraseCacheService extends Service {
 
     public static final String BROADCAST_ACTION_PASSPHRASE_CACHE_SERVICE = Constants.INTENT_PREFIX
             + "PASSPHRASE_CACHE_BROADCAST";
+    /**
+     * Sent within the app when cached passphrases are cleared or expire, with EXTRA_KEY_ID set to
+     * the key id the passphrase was cached for, or without it if all passphrases were cleared.
+     */
+    public static final String BROADCAST_ACTION_PASSPHRASE_CACHE_CLEARED = Constants.INTENT_PREFIX
+            + "PASSPHRASE_CACHE_CLEARED";
 
     public static final String EXTRA_TTL = "ttl";
     public static final String EXTRA_KEY_ID = "key_id";
@@ -105,7 +114,8 @@ public class PassphraseCacheService extends Service {
 
     private BroadcastReceiver mIntentReceiver;
 
-    private LongSparseArray<CachedPassphrase> mPassphraseCache = new LongSparseArray<>();
+    // accessed from the main thread as well as binder threads, always synchronize on this
+    private final LongSparseArray<CachedPassphrase> mPassphraseCache = new LongSparseArray<>();
 
     Context mContext;
 
@@ -163,8 +173,20 @@ public class PassphraseCacheService extends Service {
     }
 
     /**
-     * Gets a cached passphrase from memory by sending an intent to the service. This method is
-     * designed to wait until the service returns the passphrase.
+     * Hands session keys which were derived from a cached passphrase back to the cache, so the
+     * next unlock of the key can skip the S2K. Does nothing if the passphrase is no longer cached,
+     * or if called from the main thread.
+     */
+    public static void addCachedSessionKeys(Context context, long masterKeyId, long subKeyId, Passphrase passphrase) {
+        PassphraseCacheConnection.getInstance(context).addCachedSessionKeys(masterKeyId, subKeyId, passphrase);
+    }
+
+    /**
+     * Gets a cached passphrase from memory. This method is designed to wait until the service
+     * returns the passphrase.
+     * <p>
+     * If called from a background thread, this is a single transaction over a binding that is
+     * kept open between calls. Otherwise, an intent is sent to the service.
      *
      * @return passphrase or null (if no passphrase is cached for this keyId)
      */
@@ -172,6 +194,49 @@ public class PassphraseCacheService extends Service {
         Timber.d("PassphraseCacheService.getCachedPassphrase() for masterKeyId "
                 + masterKeyId + ", subKeyId " + subKeyId);
 
+        LongSparseArray<Passphrase> result = PassphraseCacheConnection.getInstance(context)
+                .getCachedPassphrases(new long[] { masterKeyId }, new long[] { subKeyId });
+        if (result == null) {
+            return getCachedPassphraseByIntent(context, masterKeyId, subKeyId);
+        }
+        if (result.indexOfKey(subKeyId) < 0) {
+            throw new KeyNotFoundException();
+        }
+        return result.get(subKeyId);
+    }
+
+    /**
+     * Gets cached passphrases for a number of keys at once. The master key id and subkey id
+     * of each key must be at the same index of both arrays.
+     *
+     * @return passphrases by subkey id, null for keys that have no cached passphrase. Keys for
+     * which no secret key is available are absent from the result.
+     */
+    public static LongSparseArray<Passphrase> getCachedPassphrases(Context context, long[] masterKeyIds,
+            long[] subKeyIds) {
+        if (masterKeyIds.length != subKeyIds.length) {
+            throw new IllegalArgumentException("master key ids and subkey ids must be of equal length!");
+        }
+
+        LongSparseArray<Passphrase> result = PassphraseCacheConnection.getInstance(context)
+                .getCachedPassphrases(masterKeyIds, subKeyIds);
+        if (result != null) {
+            return result;
+        }
+
+        result = new LongSparseArray<>(subKeyIds.length);
+        for (int i = 0; i < subKeyIds.length; i++) {
+            try {
+                result.put(subKeyIds[i], getCachedPassphraseByIntent(context, masterKeyIds[i], subKeyIds[i]));
+            } catch (KeyNotFoundException e) {
+                // leave out of result
+            }
+        }
+        return result;
+    }
+
+    private static Passphrase getCachedPassphraseByIntent(Context context, long masterKeyId, long subKeyId)
+            throws KeyNotFoundException {
         Intent intent = new Intent(context, PassphraseCacheService.class);
         intent.setAction(ACTION_PASSPHRASE_CACHE_GET);
 
@@ -229,7 +294,8 @@ public class PassphraseCacheService extends Service {
     /**
      * Internal implementation to get cached passphrase.
      */
-    private Passphrase getCachedPassphraseImpl(long masterKeyId, long subKeyId) throws KeyRepository.NotFoundException {
+    private Passphrase getCachedPassphraseImpl(KeyRepository keyRepository, long masterKeyId, long subKeyId)
+            throws KeyRepository.NotFoundException {
         // on "none" key, just do nothing
         if (masterKeyId == Constants.key.none) {
             return null;
@@ -238,7 +304,7 @@ public class PassphraseCacheService extends Service {
         // passphrase for symmetric encryption?
         if (masterKeyId == Constants.key.symmetric) {
             Timber.d("PassphraseCacheService.getCachedPassphraseImpl() for symmetric encryption");
-            CachedPassphrase cachedPassphrase = mPassphraseCache.get(Constants.key.symmetric);
+            CachedPassphrase cachedPassphrase = getCachedPassphraseEntry(Constants.key.symmetric);
             if (cachedPassphrase == null) {
                 return null;
             }
@@ -250,7 +316,6 @@ public class PassphraseCacheService extends Service {
                 + masterKeyId + ", subKeyId " + subKeyId);
 
         // get the type of key (from the database)
-        KeyRepository keyRepository = KeyRepository.create(this);
         SecretKeyType keyType = keyRepository.getSecretKeyType(subKeyId);
 
         switch (keyType) {
@@ -263,7 +328,7 @@ public class PassphraseCacheService extends Service {
         }
 
         // get cached passphrase
-        CachedPassphrase cachedPassphrase = mPassphraseCache.get(subKeyId);
+        CachedPassphrase cachedPassphrase = getCachedPassphraseEntry(subKeyId);
         if (cachedPassphrase == null) {
 
             // If we cache strictly by subkey, exit early
@@ -279,7 +344,7 @@ public class PassphraseCacheService extends Service {
                 return null;
             }
 
-            cachedPassphrase = mPassphraseCache.get(masterKeyId);
+            cachedPassphrase = getCachedPassphraseEntry(masterKeyId);
             // If we cache strictly by subkey, exit early
             if (cachedPassphrase == null) {
                 Timber.d("PassphraseCacheService: keyring passphrase not (yet) cached, returning null");
@@ -292,6 +357,52 @@ public class PassphraseCacheService extends Service {
         return cachedPassphrase.mPassphrase;
     }
 
+    /**
+     * Adds derived session keys to the cached passphrase they were derived from. They are part of
+     * the cached Passphrase object, so they expire and are cleared together with it.
+     */
+    private void addCachedSessionKeysImpl(long masterKeyId, long subKeyId, Passphrase passphrase) {
+        CachedPassphrase cachedPassphrase = getCachedPassphraseEntry(subKeyId);
+        if (cachedPassphrase == null) {
+            cachedPassphrase = getCachedPassphraseEntry(masterKeyId);
+        }
+        // the passphrase might have been cleared or changed in the meantime
+        if (cachedPassphrase == null || !cachedPassphrase.mPassphrase.hasSameChars(passphrase)) {
+            return;
+        }
+        // the cached object may be parceled on another thread right now, so it is replaced by a copy
+        synchronized (mPassphraseCache) {
+            Passphrase previousPassphrase = cachedPassphrase.mPassphrase;
+            Passphrase updatedPassphrase = new Passphrase(previousPassphrase.getCharArray().clone());
+            updatedPassphrase.addCachedSessionKeys(previousPassphrase);
+            updatedPassphrase.addCachedSessionKeys(passphrase);
+            cachedPassphrase.mPassphrase = updatedPassphrase;
+        }
+        Timber.d("PassphraseCacheService: added session keys for subKeyId " + subKeyId);
+    }
+
+    private CachedPassphrase getCachedPassphraseEntry(long referenceKeyId) {
+        synchronized (mPassphraseCache) {
+            return mPassphraseCache.get(referenceKeyId);
+        }
+    }
+
+    /**
+     * Internal implementation of a single get request, used by both the intent and binder
+     * interfaces.
+     *
+     * @return passphrase or null (if no passphrase is cached for this keyId)
+     */
+    private Passphrase handleGetRequest(KeyRepository keyRepository, long masterKeyId, long subKeyId)
+            throws KeyRepository.NotFoundException {
+        // If only one of these is symmetric, error out!
+        if (masterKeyId == Constants.key.symmetric ^ subKeyId == Constants.key.symmetric) {
+            Timber.e("PassphraseCacheService: Bad request, missing masterKeyId or subKeyId!");
+            throw new KeyRepository.NotFoundException();
+        }
+        return getCachedPassphraseImpl(keyRepository, masterKeyId, subKeyId);
+    }
+
     /**
      * Register BroadcastReceiver that is unregistered when service is destroyed. This
      * BroadcastReceiver hears on intents with ACTION_PASSPHRASE_CACHE_SERVICE to then timeout
@@ -385,7 +496,9 @@ public class PassphraseCacheService extends Service {
                     am.set(AlarmManager.RTC_WAKEUP, triggerTime, buildIntent(this, referenceKeyId));
                 }
 
-                mPassphraseCache.put(referenceKeyId, cachedPassphrase);
+                synchronized (mPassphraseCache) {
+                    mPassphraseCache.put(referenceKeyId, cachedPassphrase);
+                }
 
                 break;
             }
@@ -396,17 +509,11 @@ public class PassphraseCacheService extends Service {
 
                 Message msg = Message.obtain();
                 try {
-                    // If only one of these is symmetric, error out!
-                    if (masterKeyId == Constants.key.symmetric ^ subKeyId == Constants.key.symmetric) {
-                        Timber.e("PassphraseCacheService: Bad request, missing masterKeyId or subKeyId!");
-                        msg.what = MSG_PASSPHRASE_CACHE_GET_KEY_NOT_FOUND;
-                    } else {
-                        Passphrase passphrase = getCachedPassphraseImpl(masterKeyId, subKeyId);
-                        msg.what = MSG_PASSPHRASE_CACHE_GET_OKAY;
-                        Bundle bundle = new Bundle();
-                        bundle.putParcelable(EXTRA_PASSPHRASE, passphrase);
-                        msg.setData(bundle);
-                    }
+                    Passphrase passphrase = handleGetRequest(KeyRepository.create(this), masterKeyId, subKeyId);
+                    msg.what = MSG_PASSPHRASE_CACHE_GET_OKAY;
+                    Bundle bundle = new Bundle();
+                    bundle.putParcelable(EXTRA_PASSPHRASE, passphrase);
+                    msg.setData(bundle);
                 } catch (KeyRepository.NotFoundException e) {
                     Timber.e("PassphraseCacheService: Passphrase for unknown key was requested!");
                     msg.what = MSG_PASSPHRASE_CACHE_GET_KEY_NOT_FOUND;
@@ -432,18 +539,24 @@ public class PassphraseCacheService extends Service {
                     }
                     // Stop specific ttl alarm and
                     am.cancel(buildIntent(this, referenceKeyId));
-                    mPassphraseCache.delete(referenceKeyId);
+                    synchronized (mPassphraseCache) {
+                        mPassphraseCache.delete(referenceKeyId);
+                    }
+                    sendClearedBroadcast(referenceKeyId);
 
                 } else {
 
-                    // Stop all ttl alarms
-                    for (int i = 0; i < mPassphraseCache.size(); i++) {
-                        CachedPassphrase cachedPassphrase = mPassphraseCache.valueAt(i);
-                        if (cachedPassphrase.mTimeoutMode == TimeoutMode.TTL) {
-                            am.cancel(buildIntent(this, mPassphraseCache.keyAt(i)));
+                    synchronized (mPassphraseCache) {
+                        // Stop all ttl alarms
+                        for (int i = 0; i < mPassphraseCache.size(); i++) {
+                            CachedPassphrase cachedPassphrase = mPassphraseCache.valueAt(i);
+                            if (cachedPassphrase.mTimeoutMode == TimeoutMode.TTL) {
+                                am.cancel(buildIntent(this, mPassphraseCache.keyAt(i)));
+                            }
                         }
+                        mPassphraseCache.clear();
                     }
-                    mPassphraseCache.clear();
+                    sendClearedBroadcast(null);
 
                 }
                 break;
@@ -462,14 +575,21 @@ public class PassphraseCacheService extends Service {
     /** Called when one specific passphrase for keyId timed out. */
     private void removeTimeoutedPassphrase(long keyId) {
 
-        CachedPassphrase cPass = mPassphraseCache.get(keyId);
-        if (cPass != null) {
-            if (cPass.mPassphrase != null) {
-                // clean internal char[] from memory!
-                cPass.mPassphrase.removeFromMemory();
+        boolean removed = false;
+        synchronized (mPassphraseCache) {
+            CachedPassphrase cPass = mPassphraseCache.get(keyId);
+            if (cPass != null) {
+                if (cPass.mPassphrase != null) {
+                    // clean internal char[] from memory!
+                    cPass.mPassphrase.removeFromMemory();
+                }
+                // remove passphrase object
+                mPassphraseCache.remove(keyId);
+                removed = true;
             }
-            // remove passphrase object
-            mPassphraseCache.remove(keyId);
+        }
+        if (removed) {
+            sendClearedBroadcast(keyId);
         }
 
         Timber.d("PassphraseCacheService Timeout of keyId " + keyId + ", removed from memory!");
@@ -479,15 +599,22 @@ public class PassphraseCacheService extends Service {
 
     private void removeScreenLockPassphrases() {
 
-        for (int i = 0; i < mPassphraseCache.size(); ) {
-            CachedPassphrase cPass = mPassphraseCache.valueAt(i);
-            if (cPass.mTimeoutMode == TimeoutMode.LOCK) {
-                // remove passphrase object
-                mPassphraseCache.removeAt(i);
-                continue;
+        ArrayList<Long> removedKeyIds = new ArrayList<>();
+        synchronized (mPassphraseCache) {
+            for (int i = 0; i < mPassphraseCache.size(); ) {
+                CachedPassphrase cPass = mPassphraseCache.valueAt(i);
+                if (cPass.mTimeoutMode == TimeoutMode.LOCK) {
+                    // remove passphrase object
+                    removedKeyIds.add(mPassphraseCache.keyAt(i));
+                    mPassphraseCache.removeAt(i);
+                    continue;
+                }
+                // only do this if we didn't remove at, which continues loop by reducing size!
+                i += 1;
             }
-            // only do this if we didn't remove at, which continues loop by reducing size!
-            i += 1;
+        }
+        for (long keyId : removedKeyIds) {
+            sendClearedBroadcast(keyId);
         }
 
         Timber.d("PassphraseCacheService Removing all cached-until-lock passphrases from memory!");
@@ -495,9 +622,29 @@ public class PassphraseCacheService extends Service {
         updateService();
     }
 
+    /**
+     * Tells other processes of the app, which may hold keys unlocked with a cached passphrase,
+     * that the passphrase for a key id, or for all keys if null, is no longer cached.
+     */
+    private void sendClearedBroadcast(@Nullable Long referenceKeyId) {
+        Intent intent = new Intent(BROADCAST_ACTION_PASSPHRASE_CACHE_CLEARED);
+        intent.setPackage(getPackageName());
+        if (referenceKeyId != null) {
+            intent.putExtra(EXTRA_KEY_ID, referenceKeyId.longValue());
+        }
+        sendBroadcast(intent);
+    }
+
     private void updateService() {
-        if (mPassphraseCache.size() > 0) {
-            startForeground(NotificationIds.PASSPHRASE_CACHE, getNotification());
+        Notification notification = null;
+        synchronized (mPassphraseCache) {
+            if (mPassphraseCache.size() > 0) {
+                notification = getNotification();
+            }
+        }
+
+        if (notification != null) {
+            startForeground(NotificationIds.PASSPHRASE_CACHE, notification);
         } else {
             // stop whole service if no cached passphrases remaining
             Timber.d("PassphraseCacheService: No passphrases remaining in memory, stopping service!");
@@ -577,6 +724,53 @@ public class PassphraseCacheService extends Service {
         public PassphraseCacheService getService() {
             return PassphraseCacheService.this;
         }
+
+        /**
+         * Handles batched lookups from PassphraseCacheConnection. This runs on a binder thread,
+         * so it is answered directly without a round-trip through the main thread.
+         */
+        @Override
+        protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+            if (code == PassphraseCacheConnection.TRANSACTION_ADD_CACHED_SESSION_KEYS) {
+                data.enforceInterface(PassphraseCacheConnection.DESCRIPTOR);
+                long masterKeyId = data.readLong();
+                long subKeyId = data.readLong();
+                Passphrase passphrase = Passphrase.CREATOR.createFromParcel(data);
+                addCachedSessionKeysImpl(masterKeyId, subKeyId, passphrase);
+                passphrase.removeFromMemory();
+                reply.writeNoException();
+                return true;
+            }
+            if (code != PassphraseCacheConnection.TRANSACTION_GET_CACHED_PASSPHRASES) {
+                return super.onTransact(code, data, reply, flags);
+            }
+
+            data.enforceInterface(PassphraseCacheConnection.DESCRIPTOR);
+            long[] masterKeyIds = data.createLongArray();
+            long[] subKeyIds = data.createLongArray();
+            if (masterKeyIds == null || subKeyIds == null || masterKeyIds.length != subKeyIds.length) {
+                throw new IllegalArgumentException("master key ids and subkey ids must be of equal length!");
+            }
+
+            KeyRepository keyRepository = KeyRepository.create(PassphraseCacheService.this);
+            reply.writeNoException();
+            for (int i = 0; i < subKeyIds.length; i++) {
+                try {
+                    Passphrase passphrase = handleGetRequest(keyRepository, masterKeyIds[i], subKeyIds[i]);
+                    reply.writeInt(PassphraseCacheConnection.RESULT_OKAY);
+                    if (passphrase != null) {
+                        reply.writeInt(1);
+                        passphrase.writeToParcel(reply, 0);
+                    } else {
+                        reply.writeInt(0);
+                    }
+                } catch (KeyRepository.NotFoundException e) {
+                    Timber.e("PassphraseCacheService: Passphrase for unknown key was requested!");
+                    reply.writeInt(PassphraseCacheConnection.RESULT_KEY_NOT_FOUND);
+                }
+            }
+            return true;
+        }
     }
 
     private final IBinder mBinder = new PassphraseCacheBinder();
@@ -587,7 +781,7 @@ public class PassphraseCacheService extends Service {
 
     private static class CachedPassphrase {
         private String mPrimaryUserId;
-        private Passphrase mPassphrase;
+        private volatile Passphrase mPassphrase;
         private TimeoutMode mTimeoutMode;
         private Long mTimeoutTime;
 
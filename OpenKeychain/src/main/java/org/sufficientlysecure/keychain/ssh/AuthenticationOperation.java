@@ -22,6 +22,7 @@ import java.util.Collection;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.bouncycastle.openpgp.AuthenticationSignatureGenerator;
 import org.bouncycastle.openpgp.PGPException;
@@ -58,8 +59,19 @@ public class AuthenticationOperation extends BaseOperation<AuthenticationParcel>
 
     private static final String TAG = "AuthenticationOperation";
 
+    private final SshAgentSession mAgentSession;
+
     public AuthenticationOperation(Context context, KeyRepository keyRepository) {
+        this(context, keyRepository, null);
+    }
+
+    /**
+     * @param agentSession session to take the unlocked key from and to keep it in afterwards, or null
+     */
+    public AuthenticationOperation(Context context, KeyRepository keyRepository,
+                                   @Nullable SshAgentSession agentSession) {
         super(context, keyRepository, null);
+        mAgentSession = agentSession;
     }
 
     @NonNull
@@ -110,16 +122,25 @@ public class AuthenticationOperation extends BaseOperation<AuthenticationParcel>
             }
         }
 
-        // Get keyring with the authentication key
-        CanonicalizedSecretKeyRing authKeyRing;
-        try {
-            authKeyRing = mKeyRepository.getCanonicalizedSecretKeyRing(authMasterKeyId);
-        } catch (KeyRepository.NotFoundException e) {
-            log.add(LogType.MSG_AUTH_ERROR_KEY_AUTH, indent);
-            return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
+        // Within an agent session, the key may already be unlocked
+        CanonicalizedSecretKey authKey = null;
+        if (mAgentSession != null) {
+            authKey = mAgentSession.getUnlockedKey(authMasterKeyId, authSubKeyId);
         }
+        boolean isSessionKey = authKey != null;
+
+        if (!isSessionKey) {
+            // Get keyring with the authentication key
+            CanonicalizedSecretKeyRing authKeyRing;
+            try {
+                authKeyRing = mKeyRepository.getCanonicalizedSecretKeyRing(authMasterKeyId);
+            } catch (KeyRepository.NotFoundException e) {
+                log.add(LogType.MSG_AUTH_ERROR_KEY_AUTH, indent);
+                return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
+            }
 
-        CanonicalizedSecretKey authKey = authKeyRing.getSecretKey(authSubKeyId);
+            authKey = authKeyRing.getSecretKey(authSubKeyId);
+        }
 
         // Make sure the client is allowed to access this key
         Collection<Long> allowedAuthenticationKeyIds = data.getAllowedAuthenticationKeyIds();
@@ -130,7 +151,7 @@ public class AuthenticationOperation extends BaseOperation<AuthenticationParcel>
         }
 
         // Make sure key is not expired or revoked
-        if (authKeyRing.isExpired() || authKeyRing.isRevoked()
+        if (authKey.getRing().isExpired() || authKey.getRing().isRevoked()
                 || authKey.isExpired() || authKey.isRevoked()) {
             log.add(LogType.MSG_AUTH_ERROR_REVOKED_OR_EXPIRED, indent);
             return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
@@ -142,71 +163,80 @@ public class AuthenticationOperation extends BaseOperation<AuthenticationParcel>
             return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
         }
 
-        CanonicalizedSecretKey.SecretKeyType secretKeyType;
-        try {
-            secretKeyType = mKeyRepository.getSecretKeyType(authSubKeyId);
-        } catch (KeyRepository.NotFoundException e) {
-            log.add(LogType.MSG_AUTH_ERROR_KEY_AUTH, indent);
-            return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
-        }
+        if (!isSessionKey) {
+            // Unlock the key, unless it comes from the agent session
+            CanonicalizedSecretKey.SecretKeyType secretKeyType;
+            try {
+                secretKeyType = mKeyRepository.getSecretKeyType(authSubKeyId);
+            } catch (KeyRepository.NotFoundException e) {
+                log.add(LogType.MSG_AUTH_ERROR_KEY_AUTH, indent);
+                return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
+            }
 
-        switch (secretKeyType) {
-            case DIVERT_TO_CARD:
-            case PASSPHRASE_EMPTY: {
-                boolean isUnlocked;
-                try {
-                    isUnlocked = authKey.unlock(new Passphrase());
-                } catch (PgpGeneralException e) {
-                    log.add(LogType.MSG_AUTH_ERROR_UNLOCK, indent);
-                    return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
-                }
+            switch (secretKeyType) {
+                case DIVERT_TO_CARD:
+                case PASSPHRASE_EMPTY: {
+                    boolean isUnlocked;
+                    try {
+                        isUnlocked = authKey.unlock(new Passphrase());
+                    } catch (PgpGeneralException e) {
+                        log.add(LogType.MSG_AUTH_ERROR_UNLOCK, indent);
+                        return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
+                    }
 
-                if (!isUnlocked) {
-                    throw new AssertionError(
-                            "PASSPHRASE_EMPTY/DIVERT_TO_CARD keyphrase not unlocked with empty passphrase."
-                                    + " This is a programming error!");
+                    if (!isUnlocked) {
+                        throw new AssertionError(
+                                "PASSPHRASE_EMPTY/DIVERT_TO_CARD keyphrase not unlocked with empty passphrase."
+                                        + " This is a programming error!");
+                    }
+                    break;
                 }
-                break;
-            }
 
-            case PASSPHRASE: {
-                Passphrase localPassphrase = cryptoInput.getPassphrase();
-                if (localPassphrase == null) {
+                case PASSPHRASE: {
+                    Passphrase localPassphrase = cryptoInput.getPassphrase();
+                    if (localPassphrase == null) {
+                        try {
+                            localPassphrase = getCachedPassphrase(authMasterKeyId, authKey.getKeyId());
+                        } catch (PassphraseCacheInterface.NoSecretKeyException ignored) {
+                        }
+                    }
+                    if (localPassphrase == null) {
+                        log.add(LogType.MSG_AUTH_PENDING_PASSPHRASE, indent + 1);
+                        return new AuthenticationResult(log,
+                                RequiredInputParcel.createRequiredAuthenticationPassphrase(
+                                        authMasterKeyId, authKey.getKeyId()),
+                                cryptoInput);
+                    }
+
+                    boolean isUnlocked;
                     try {
-                        localPassphrase = getCachedPassphrase(authMasterKeyId, authKey.getKeyId());
-                    } catch (PassphraseCacheInterface.NoSecretKeyException ignored) {
+                        isUnlocked = authKey.unlock(localPassphrase);
+                    } catch (PgpGeneralException e) {
+                        log.add(LogType.MSG_AUTH_ERROR_UNLOCK, indent);
+                        return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
                     }
-                }
-                if (localPassphrase == null) {
-                    log.add(LogType.MSG_AUTH_PENDING_PASSPHRASE, indent + 1);
-                    return new AuthenticationResult(log,
-                            RequiredInputParcel.createRequiredAuthenticationPassphrase(
-                                    authMasterKeyId, authKey.getKeyId()),
-                            cryptoInput);
+                    if (!isUnlocked) {
+                        log.add(LogType.MSG_AUTH_ERROR_BAD_PASSPHRASE, indent);
+                        return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
+                    }
+                    addCachedSessionKeys(authMasterKeyId, authKey.getKeyId(), localPassphrase);
+                    break;
                 }
 
-                boolean isUnlocked;
-                try {
-                    isUnlocked = authKey.unlock(localPassphrase);
-                } catch (PgpGeneralException e) {
+                case GNU_DUMMY: {
                     log.add(LogType.MSG_AUTH_ERROR_UNLOCK, indent);
                     return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
                 }
-                if (!isUnlocked) {
-                    log.add(LogType.MSG_AUTH_ERROR_BAD_PASSPHRASE, indent);
-                    return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
+                default: {
+                    throw new AssertionError("Unhandled SecretKeyType! (should not happen)");
                 }
-                break;
-            }
 
-            case GNU_DUMMY: {
-                log.add(LogType.MSG_AUTH_ERROR_UNLOCK, indent);
-                return new AuthenticationResult(AuthenticationResult.RESULT_ERROR, log);
-            }
-            default: {
-                throw new AssertionError("Unhandled SecretKeyType! (should not happen)");
             }
 
+            // keys on a security token need the token for each signature, there is nothing to keep
+            if (mAgentSession != null && secretKeyType != CanonicalizedSecretKey.SecretKeyType.DIVERT_TO_CARD) {
+                mAgentSession.putUnlockedKey(authKey);
+            }
         }
 
         AuthenticationSignatureGenerator signatureGenerator;
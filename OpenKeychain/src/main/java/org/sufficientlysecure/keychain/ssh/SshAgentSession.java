@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.ssh;
+
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import org.sufficientlysecure.keychain.daos.DatabaseNotifyManager;
+import org.sufficientlysecure.keychain.pgp.CanonicalizedPublicKey;
+import org.sufficientlysecure.keychain.pgp.CanonicalizedSecretKey;
+import org.sufficientlysecure.keychain.service.PassphraseCacheService;
+import org.sufficientlysecure.keychain.util.Preferences;
+import timber.log.Timber;
+
+
+/**
+ * Agent session of the SSH authentication API, which keeps authentication keys warm between
+ * connections for the time configured in the preferences.
+ * <p>
+ * Tools like git or ansible open a new connection for every command, and each of them resolves
+ * the authentication subkey, loads the keyring and unlocks the key again. Within a session, the
+ * resolved public key, its SSH encoding and the unlocked secret key are reused, so a signature
+ * only costs the signing itself. Only keys which can be unlocked without user interaction are
+ * kept, keys on security tokens need the token for every signature anyway.
+ * <p>
+ * A session entry is dropped when its time is up, when the key changes in the database, when
+ * the cached passphrase of the key is cleared or expires, and when the screen is turned off.
+ */
+public class SshAgentSession {
+    private static SshAgentSession sInstance;
+
+    public static synchronized SshAgentSession getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SshAgentSession(context.getApplicationContext());
+            sInstance.registerInvalidation();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        sInstance = null;
+    }
+
+    private static class SessionEntry {
+        final CanonicalizedPublicKey publicKey;
+        String sshPublicKey;
+        CanonicalizedSecretKey unlockedKey;
+        long expiresAt;
+
+        SessionEntry(CanonicalizedPublicKey publicKey) {
+            this.publicKey = publicKey;
+        }
+    }
+
+    private final Context context;
+    private final HashMap<Long, SessionEntry> sessionEntries = new HashMap<>();
+
+    private SshAgentSession(Context context) {
+        this.context = context;
+    }
+
+    /** Returns true if authentication keys should be kept, i.e. a session time is configured. */
+    public boolean isEnabled() {
+        return getTimeoutMillis() > 0;
+    }
+
+    /** Returns the authentication key resolved for a master key id, or null if there is none. */
+    @Nullable
+    public synchronized CanonicalizedPublicKey getPublicKey(long masterKeyId) {
+        SessionEntry entry = getEntry(masterKeyId);
+        return entry != null ? entry.publicKey : null;
+    }
+
+    public synchronized void putPublicKey(long masterKeyId, CanonicalizedPublicKey publicKey) {
+        long timeoutMillis = getTimeoutMillis();
+        if (timeoutMillis <= 0) {
+            return;
+        }
+        SessionEntry entry = getEntry(masterKeyId);
+        if (entry == null || entry.publicKey.getKeyId() != publicKey.getKeyId()) {
+            entry = new SessionEntry(publicKey);
+            sessionEntries.put(masterKeyId, entry);
+        }
+        entry.expiresAt = SystemClock.elapsedRealtime() + timeoutMillis;
+    }
+
+    /** Returns the SSH encoding of the authentication key for a master key id, or null if there is none. */
+    @Nullable
+    public synchronized String getSshPublicKey(long masterKeyId) {
+        SessionEntry entry = getEntry(masterKeyId);
+        return entry != null ? entry.sshPublicKey : null;
+    }
+
+    public synchronized void putSshPublicKey(long masterKeyId, String sshPublicKey) {
+        SessionEntry entry = getEntry(masterKeyId);
+        if (entry != null) {
+            entry.sshPublicKey = sshPublicKey;
+        }
+    }
+
+    /**
+     * Returns the unlocked authentication key for a master key id, or null if there is none or
+     * it is not the given subkey.
+     */
+    @Nullable
+    public synchronized CanonicalizedSecretKey getUnlockedKey(long masterKeyId, long subKeyId) {
+        SessionEntry entry = getEntry(masterKeyId);
+        if (entry == null || entry.unlockedKey == null || entry.unlockedKey.getKeyId() != subKeyId) {
+            return null;
+        }
+        return entry.unlockedKey;
+    }
+
+    public synchronized void putUnlockedKey(CanonicalizedSecretKey unlockedKey) {
+        long masterKeyId = unlockedKey.getRing().getMasterKeyId();
+        putPublicKey(masterKeyId, unlockedKey);
+        SessionEntry entry = getEntry(masterKeyId);
+        if (entry != null) {
+            entry.unlockedKey = unlockedKey;
+        }
+    }
+
+    public synchronized void remove(long masterKeyId) {
+        sessionEntries.remove(masterKeyId);
+    }
+
+    /** Removes the entries for a key id, which may be either a master key or an authentication subkey. */
+    public synchronized void removeByKeyId(long keyId) {
+        Iterator<Entry<Long, SessionEntry>> it = sessionEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry<Long, SessionEntry> sessionEntry = it.next();
+            CanonicalizedSecretKey unlockedKey = sessionEntry.getValue().unlockedKey;
+            if (sessionEntry.getKey() == keyId || (unlockedKey != null && unlockedKey.getKeyId() == keyId)) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void removeAll() {
+        if (!sessionEntries.isEmpty()) {
+            Timber.d("Ending SSH agent session for %d keys", sessionEntries.size());
+        }
+        sessionEntries.clear();
+    }
+
+    private SessionEntry getEntry(long masterKeyId) {
+        // the session ends as soon as it is turned off in the preferences
+        if (getTimeoutMillis() <= 0) {
+            sessionEntries.clear();
+            return null;
+        }
+        SessionEntry entry = sessionEntries.get(masterKeyId);
+        if (entry != null && entry.expiresAt <= SystemClock.elapsedRealtime()) {
+            sessionEntries.remove(masterKeyId);
+            return null;
+        }
+        return entry;
+    }
+
+    private long getTimeoutMillis() {
+        return Preferences.getPreferences(context).getSshAgentSessionTimeout() * 1000L;
+    }
+
+    private void registerInvalidation() {
+        BroadcastReceiver screenOffReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                removeAll();
+            }
+        };
+        context.registerReceiver(screenOffReceiver, new IntentFilter(Intent.ACTION_SCREEN_OFF));
+
+        // the passphrase cache lives in its own process, it tells us when a passphrase is gone
+        BroadcastReceiver passphraseClearedReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (intent.hasExtra(PassphraseCacheService.EXTRA_KEY_ID)) {
+                    removeByKeyId(intent.getLongExtra(PassphraseCacheService.EXTRA_KEY_ID, 0));
+                } else {
+                    removeAll();
+                }
+            }
+        };
+        IntentFilter clearedFilter = new IntentFilter(PassphraseCacheService.BROADCAST_ACTION_PASSPHRASE_CACHE_CLEARED);
+        if (VERSION.SDK_INT >= VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(passphraseClearedReceiver, clearedFilter, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(passphraseClearedReceiver, clearedFilter);
+        }
+
+        // there is no handler, so this is called on a binder thread as soon as the change is delivered
+        ContentObserver keyObserver = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                List<String> pathSegments = uri != null ? uri.getPathSegments() : null;
+                if (pathSegments != null && pathSegments.size() == 2) {
+                    try {
+                        remove(Long.parseLong(pathSegments.get(1)));
+                        return;
+                    } catch (NumberFormatException e) {
+                        // fall through
+                    }
+                }
+                removeAll();
+            }
+        };
+        context.getContentResolver().registerContentObserver(
+                DatabaseNotifyManager.getNotifyUriAllKeys(), true, keyObserver);
+    }
+}
@@ -20,6 +20,8 @@ package org.sufficientlysecure.keychain.ui;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map.Entry;
 
 import android.content.Intent;
 import android.nfc.NfcAdapter;
@@ -30,8 +32,11 @@ import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
 import androidx.core.app.TaskStackBuilder;
 
+import org.sufficientlysecure.keychain.Constants;
 import org.sufficientlysecure.keychain.R;
+import org.sufficientlysecure.keychain.pgp.KeyPairPool;
 import org.sufficientlysecure.keychain.securitytoken.KeyFormat;
+import org.sufficientlysecure.keychain.securitytoken.RsaKeyFormat;
 import org.sufficientlysecure.keychain.securitytoken.SecurityTokenConnection;
 import org.sufficientlysecure.keychain.securitytoken.SecurityTokenInfo;
 import org.sufficientlysecure.keychain.ui.base.BaseSecurityTokenActivity;
@@ -170,6 +175,15 @@ public class CreateKeyActivity extends BaseSecurityTokenActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // key pairs prepared for a security token must not outlive this screen
+        if (isFinishing()) {
+            KeyPairPool.getInstance().clear();
+        }
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -193,10 +207,29 @@ public class CreateKeyActivity extends BaseSecurityTokenActivity {
         mCreateSecurityToken = true;
         this.tokenInfo = tokenInfo;
 
+        // the user enters name, email and pins first, which leaves time for generating the keys
+        prepareSecurityTokenKeyPairs(Constants.SECURITY_TOKEN_V2_SIGN, Constants.SECURITY_TOKEN_V2_DEC,
+                Constants.SECURITY_TOKEN_V2_AUTH);
+
         CreateKeyNameFragment frag = CreateKeyNameFragment.newInstance();
         loadFragment(frag, FragAction.TO_RIGHT);
     }
 
+    /** Starts generating the RSA key pairs for these key formats in the background. */
+    void prepareSecurityTokenKeyPairs(KeyFormat... keyFormats) {
+        HashMap<Integer, Integer> rsaKeySizeCounts = new HashMap<>();
+        for (KeyFormat keyFormat : keyFormats) {
+            if (keyFormat instanceof RsaKeyFormat) {
+                int keySize = ((RsaKeyFormat) keyFormat).modulusLength();
+                Integer count = rsaKeySizeCounts.get(keySize);
+                rsaKeySizeCounts.put(keySize, count != null ? count + 1 : 1);
+            }
+        }
+        for (Entry<Integer, Integer> entry : rsaKeySizeCounts.entrySet()) {
+            KeyPairPool.getInstance().prepareRsaKeyPairs(entry.getKey(), entry.getValue());
+        }
+    }
+
     public enum FragAction {
         START,
         TO_RIGHT,
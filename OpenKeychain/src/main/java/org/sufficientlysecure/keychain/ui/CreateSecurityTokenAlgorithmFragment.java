@@ -152,6 +152,8 @@ public class CreateSecurityTokenAlgorithmFragment extends Fragment {
         mCreateKeyActivity.mSecurityTokenSign = KeyFormat.fromCreationKeyType(((Choice<SupportedKeyType>) mSignKeySpinner.getSelectedItem()).getId(), false);
         mCreateKeyActivity.mSecurityTokenDec = KeyFormat.fromCreationKeyType(((Choice<SupportedKeyType>) mDecKeySpinner.getSelectedItem()).getId(), true);
         mCreateKeyActivity.mSecurityTokenAuth = KeyFormat.fromCreationKeyType(((Choice<SupportedKeyType>) mAuthKeySpinner.getSelectedItem()).getId(), false);
+        mCreateKeyActivity.prepareSecurityTokenKeyPairs(mCreateKeyActivity.mSecurityTokenSign,
+                mCreateKeyActivity.mSecurityTokenDec, mCreateKeyActivity.mSecurityTokenAuth);
 
         CreateKeyFinalFragment frag = CreateKeyFinalFragment.newInstance();
         mCreateKeyActivity.loadFragment(frag, FragAction.TO_RIGHT);
@@ -274,13 +274,21 @@ public class ImportKeysListFragment extends Fragment implements
             Loader<AsyncTaskResultWrapper<ArrayList<ImportKeysListEntry>>> loader,
             AsyncTaskResultWrapper<ArrayList<ImportKeysListEntry>> data) {
 
+        GetKeyResult getKeyResult = (GetKeyResult) data.getOperationResult();
+        if (getKeyResult == null) {
+            // partial results of a cloud search, more may follow
+            mAdapter.setData(data.getResult(), false);
+            mBinding.setNumber(mAdapter.getItemCount());
+            mBinding.setStatus(STATUS_LOADED);
+            return;
+        }
+
         mAdapter.setData(data.getResult());
         int size = mAdapter.getItemCount();
 
         mBinding.setNumber(size);
         mBinding.setStatus(size > 0 ? STATUS_LOADED : STATUS_EMPTY);
 
-        GetKeyResult getKeyResult = (GetKeyResult) data.getOperationResult();
         switch (loader.getId()) {
             case LOADER_ID_BYTES:
                 if (!getKeyResult.success()) {
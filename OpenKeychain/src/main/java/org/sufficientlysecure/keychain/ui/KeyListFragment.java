@@ -23,6 +23,7 @@ import java.util.List;
 
 import android.animation.ObjectAnimator;
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -36,11 +37,11 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.ViewAnimator;
 
-import androidx.annotation.WorkerThread;
 import androidx.appcompat.widget.SearchView;
 import androidx.core.view.MenuItemCompat;
 import androidx.fragment.app.FragmentActivity;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProviders;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -56,9 +57,8 @@ import org.sufficientlysecure.keychain.KeychainDatabase;
 import org.sufficientlysecure.keychain.R;
 import org.sufficientlysecure.keychain.compatibility.ClipboardReflection;
 import org.sufficientlysecure.keychain.daos.DatabaseNotifyManager;
-import org.sufficientlysecure.keychain.daos.KeyRepository;
 import org.sufficientlysecure.keychain.keysync.KeyserverSyncManager;
-import org.sufficientlysecure.keychain.model.UnifiedKeyInfo;
+import org.sufficientlysecure.keychain.livedata.KeyListLiveData;
 import org.sufficientlysecure.keychain.operations.KeySyncParcel;
 import org.sufficientlysecure.keychain.operations.results.BenchmarkResult;
 import org.sufficientlysecure.keychain.operations.results.ImportKeyResult;
@@ -70,10 +70,8 @@ import org.sufficientlysecure.keychain.ui.adapter.FlexibleKeyDummyItem;
 import org.sufficientlysecure.keychain.ui.adapter.FlexibleKeyHeader;
 import org.sufficientlysecure.keychain.ui.adapter.FlexibleKeyItem;
 import org.sufficientlysecure.keychain.ui.adapter.FlexibleKeyItem.FlexibleSectionableKeyItem;
-import org.sufficientlysecure.keychain.ui.adapter.FlexibleKeyItemFactory;
 import org.sufficientlysecure.keychain.ui.base.CryptoOperationHelper;
 import org.sufficientlysecure.keychain.ui.base.RecyclerFragment;
-import org.sufficientlysecure.keychain.ui.keyview.GenericViewModel;
 import org.sufficientlysecure.keychain.ui.keyview.ViewKeyActivity;
 import org.sufficientlysecure.keychain.ui.util.Notify;
 import org.sufficientlysecure.keychain.ui.util.Notify.Style;
@@ -96,9 +94,6 @@ public class KeyListFragment extends RecyclerFragment<FlexibleAdapter<FlexibleKe
 
     private FloatingActionsMenu mFab;
 
-    private KeyRepository keyRepository;
-    private FlexibleKeyItemFactory flexibleKeyItemFactory;
-
     private Long queuedHighlightMasterKeyId;
 
     private final ActionMode.Callback mActionCallback = new ActionMode.Callback() {
@@ -238,9 +233,6 @@ public class KeyListFragment extends RecyclerFragment<FlexibleAdapter<FlexibleKe
 
         setLayoutManager(new LinearLayoutManager(activity));
 
-        keyRepository = KeyRepository.create(requireContext());
-        flexibleKeyItemFactory = new FlexibleKeyItemFactory(requireContext().getResources());
-
         Intent intent = getActivity().getIntent();
         if (intent != null && intent.hasExtra(ImportKeyResult.EXTRA_RESULT)) {
             ImportKeyResult importKeyResult = intent.getParcelableExtra(ImportKeyResult.EXTRA_RESULT);
@@ -250,15 +242,19 @@ public class KeyListFragment extends RecyclerFragment<FlexibleAdapter<FlexibleKe
             }
         }
 
-        GenericViewModel viewModel = ViewModelProviders.of(this).get(GenericViewModel.class);
-        LiveData<List<FlexibleKeyItem>> liveData = viewModel.getGenericLiveData(requireContext(), this::loadFlexibleKeyItems);
-        liveData.observe(getViewLifecycleOwner(), this::onLoadKeyItems);
+        KeyListViewModel viewModel = ViewModelProviders.of(this).get(KeyListViewModel.class);
+        viewModel.getKeyItemLiveData(requireContext()).observe(getViewLifecycleOwner(), this::onLoadKeyItems);
     }
 
-    @WorkerThread
-    private List<FlexibleKeyItem> loadFlexibleKeyItems() {
-        List<UnifiedKeyInfo> unifiedKeyInfo = keyRepository.getAllUnifiedKeyInfo();
-        return flexibleKeyItemFactory.mapUnifiedKeyInfoToFlexibleKeyItems(unifiedKeyInfo);
+    public static class KeyListViewModel extends ViewModel {
+        private LiveData<List<FlexibleKeyItem>> keyItemLiveData;
+
+        LiveData<List<FlexibleKeyItem>> getKeyItemLiveData(Context context) {
+            if (keyItemLiveData == null) {
+                keyItemLiveData = new KeyListLiveData(context.getApplicationContext());
+            }
+            return keyItemLiveData;
+        }
     }
 
     private void onLoadKeyItems(List<FlexibleKeyItem> flexibleKeyItems) {
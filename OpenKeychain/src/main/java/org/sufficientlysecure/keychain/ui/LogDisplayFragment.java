@@ -31,6 +31,7 @@ import android.view.MenuItem;
 
 import androidx.recyclerview.widget.LinearLayoutManager;
 import org.sufficientlysecure.keychain.R;
+import org.sufficientlysecure.keychain.operations.results.OperationMetrics;
 import org.sufficientlysecure.keychain.operations.results.OperationResult;
 import org.sufficientlysecure.keychain.operations.results.OperationResult.SubLogEntryParcel;
 import org.sufficientlysecure.keychain.provider.TemporaryFileProvider;
@@ -115,14 +116,18 @@ public class LogDisplayFragment extends RecyclerFragment<NestedLogAdapter>
             return;
         }
 
-        String log = mResult.getLog().getPrintableOperationLog(getResources(), 0);
+        StringBuilder log = new StringBuilder(mResult.getLog().getPrintableOperationLog(getResources(), 0));
+        // append stage timings, to compare performance across devices and versions
+        for (OperationMetrics metrics : mResult.collectMetrics()) {
+            log.append("\n\n").append(metrics.getPrintableMetrics());
+        }
 
         // if there is no log temp file yet, create one
         if (mLogTempFile == null) {
             mLogTempFile = TemporaryFileProvider.createFile(getActivity(), "openkeychain_log.txt", "text/plain");
             try {
                 OutputStream outputStream = FileHelper.openOutputStreamSafe(activity.getContentResolver(), mLogTempFile);
-                outputStream.write(log.getBytes());
+                outputStream.write(log.toString().getBytes());
                 outputStream.close();
             } catch (IOException | NullPointerException e) {
                 Notify.create(activity, R.string.error_log_share_internal, Style.ERROR).show();
@@ -64,6 +64,13 @@ public class FlexibleKeyDetailsItem extends FlexibleSectionableKeyItem<FlexibleK
         return (int) (masterKeyId ^ (masterKeyId >>> 32));
     }
 
+    @Override
+    public boolean shouldNotifyChange(IFlexible newItem) {
+        // items are equal by master key id, only rebind them if the key info changed
+        return !(newItem instanceof FlexibleKeyDetailsItem)
+                || !keyInfo.equals(((FlexibleKeyDetailsItem) newItem).keyInfo);
+    }
+
     @Override
     public boolean filter(String constraint) {
         return constraint == null || keyInfo.uidSearchString().contains(constraint);
@@ -25,19 +25,18 @@ public class FlexibleKeyItemFactory {
         myKeysHeader = new FlexibleKeyHeader(myKeysHeaderText);
     }
 
-    public List<FlexibleKeyItem> mapUnifiedKeyInfoToFlexibleKeyItems(List<UnifiedKeyInfo> unifiedKeyInfos) {
-        List<FlexibleKeyItem> result = new ArrayList<>();
-        if (unifiedKeyInfos == null) {
-            return result;
-        }
-        if (unifiedKeyInfos.isEmpty() || !unifiedKeyInfos.get(0).has_any_secret()) {
+    public FlexibleKeyDetailsItem createKeyItem(UnifiedKeyInfo unifiedKeyInfo) {
+        FlexibleKeyHeader header = getFlexibleKeyHeader(unifiedKeyInfo);
+        return new FlexibleKeyDetailsItem(unifiedKeyInfo, header);
+    }
+
+    /** Builds the item list from key items in list order, which may be reused from an earlier list. */
+    public List<FlexibleKeyItem> buildFlexibleKeyItems(List<FlexibleKeyDetailsItem> keyItems) {
+        List<FlexibleKeyItem> result = new ArrayList<>(keyItems.size() + 1);
+        if (keyItems.isEmpty() || !keyItems.get(0).keyInfo.has_any_secret()) {
             result.add(getDummyItem());
         }
-        for (UnifiedKeyInfo unifiedKeyInfo : unifiedKeyInfos) {
-            FlexibleKeyHeader header = getFlexibleKeyHeader(unifiedKeyInfo);
-            FlexibleKeyItem flexibleKeyItem = new FlexibleKeyDetailsItem(unifiedKeyInfo, header);
-            result.add(flexibleKeyItem);
-        }
+        result.addAll(keyItems);
         return result;
     }
 
@@ -78,12 +78,28 @@ public class ImportKeysAdapter extends RecyclerView.Adapter<ImportKeysAdapter.Vi
     }
 
     public void setData(List<ImportKeysListEntry> data) {
+        setData(data, true);
+    }
+
+    /**
+     * @param complete false if more entries may follow, in which case a single entry is not
+     *                 retrieved automatically
+     */
+    public void setData(List<ImportKeysListEntry> data, boolean complete) {
+        List<ImportKeysListEntry> previousData = mData;
+        KeyState[] previousKeyStates = mKeyStates;
         mData = data;
 
         mKeyStates = new KeyState[data.size()];
         for (int i = 0; i < mKeyStates.length; i++) {
             ImportKeysListEntry entry = mData.get(i);
 
+            // entries of a running search keep their position, and their state as the user left it
+            if (previousData != null && i < previousData.size() && entry.hasSameKeyAs(previousData.get(i))) {
+                mKeyStates[i] = previousKeyStates[i];
+                continue;
+            }
+
             KeyState keyState = new KeyState();
             long keyId = KeyFormattingUtils.convertKeyIdHexToKeyId(entry.getKeyIdHex());
             try {
@@ -103,7 +119,7 @@ public class ImportKeysAdapter extends RecyclerView.Adapter<ImportKeysAdapter.Vi
         }
 
         // If there is only one key, get it automatically
-        if (mData.size() == 1) {
+        if (complete && mData.size() == 1) {
             getKeyWithProgress(0, mData.get(0), true);
         }
 
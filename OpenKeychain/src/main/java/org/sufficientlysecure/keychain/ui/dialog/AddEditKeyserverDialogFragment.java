@@ -345,7 +345,7 @@ public class AddEditKeyserverDialogFragment extends DialogFragment implements On
 
             OkHttpClient client = OkHttpClientFactory.getClientPinnedIfAvailable(
                     keyserverUriHttp.toURL(), proxy.getProxy());
-            client.newCall(new Request.Builder().url(keyserverUriHttp.toURL()).build()).execute();
+            client.newCall(new Request.Builder().url(keyserverUriHttp.toURL()).build()).execute().close();
 
             // try out onion keyserver if Tor is enabled
             if (proxy.isTorEnabled()) {
@@ -353,7 +353,7 @@ public class AddEditKeyserverDialogFragment extends DialogFragment implements On
 
                 OkHttpClient clientTor = OkHttpClientFactory.getClientPinnedIfAvailable(
                         keyserverUriOnion.toURL(), proxy.getProxy());
-                clientTor.newCall(new Request.Builder().url(keyserverUriOnion.toURL()).build()).execute();
+                clientTor.newCall(new Request.Builder().url(keyserverUriOnion.toURL()).build()).execute().close();
             }
         } catch (MalformedURLException | URISyntaxException e) {
             Timber.w("Invalid keyserver URL entered by user.");
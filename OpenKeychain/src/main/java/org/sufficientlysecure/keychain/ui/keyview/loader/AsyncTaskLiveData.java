@@ -32,6 +32,10 @@ public abstract class AsyncTaskLiveData<T> extends LiveData<T> {
 
     protected abstract T asyncLoadData();
 
+    /** Called on the main thread for each change of the observed uri, before the data is reloaded. */
+    protected void onContentChanged(@Nullable Uri changedUri) {
+    }
+
     protected void updateDataInBackground() {
         new AsyncTask<Void, Void, T>() {
             @Override
@@ -105,6 +109,12 @@ public abstract class AsyncTaskLiveData<T> extends LiveData<T> {
 
         @Override
         public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, @Nullable Uri uri) {
+            onContentChanged(uri);
             updateDataInBackground();
         }
     }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.util;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+
+/**
+ * An in-memory output stream which collects data in fixed size chunks.
+ * <p>
+ * Unlike ByteArrayOutputStream, the buffer is never grown by copying it into a larger one, and
+ * the collected data can be read back without copying it into a single array first.
+ */
+public final class ChunkedByteArrayOutputStream extends OutputStream {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final ArrayList<byte[]> chunks = new ArrayList<>();
+    private int positionInChunk = CHUNK_SIZE;
+    private long count;
+
+    @Override
+    public void write(int b) {
+        if (positionInChunk == CHUNK_SIZE) {
+            addChunk();
+        }
+        chunks.get(chunks.size() - 1)[positionInChunk++] = (byte) b;
+        count++;
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            if (positionInChunk == CHUNK_SIZE) {
+                addChunk();
+            }
+            int toCopy = Math.min(len, CHUNK_SIZE - positionInChunk);
+            System.arraycopy(b, off, chunks.get(chunks.size() - 1), positionInChunk, toCopy);
+            positionInChunk += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            count += toCopy;
+        }
+    }
+
+    private void addChunk() {
+        chunks.add(new byte[CHUNK_SIZE]);
+        positionInChunk = 0;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Returns a copy of the collected data as a single array.
+     */
+    @NonNull
+    public byte[] toByteArray() {
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("data too large for a single array");
+        }
+        byte[] result = new byte[(int) count];
+        int position = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            int length = getChunkLength(i);
+            System.arraycopy(chunks.get(i), 0, result, position, length);
+            position += length;
+        }
+        return result;
+    }
+
+    /**
+     * Returns a stream which reads the collected data directly from the chunks, without copying it.
+     * The stream must not be used after further data was written.
+     */
+    @NonNull
+    public InputStream toInputStream() {
+        List<InputStream> chunkStreams = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            chunkStreams.add(new ByteArrayInputStream(chunks.get(i), 0, getChunkLength(i)));
+        }
+        return new SequenceInputStream(Collections.enumeration(chunkStreams));
+    }
+
+    private int getChunkLength(int index) {
+        return index == chunks.size() - 1 ? positionInChunk : CHUNK_SIZE;
+    }
+}
@@ -49,6 +49,8 @@ import java.util.Map.Entry;
 public class Passphrase implements Parcelable {
     private char[] mPassphrase;
     private HashMap<ParcelableS2K, byte[]> mCachedSessionKeys;
+    // not parceled, marks session keys which were derived after this object was created
+    private boolean mHasNewSessionKeys;
 
     /**
      * According to http://stackoverflow.com/a/15844273 EditText is not using String internally
@@ -116,6 +118,43 @@ public class Passphrase implements Parcelable {
             mCachedSessionKeys = new HashMap<>();
         }
         mCachedSessionKeys.put(ParcelableS2K.fromS2K(keyEncryptionAlgorithm, s2k), sessionKey);
+        mHasNewSessionKeys = true;
+    }
+
+    /** @return true if session keys were added to this object since it was created or parceled. */
+    public boolean hasNewSessionKeys() {
+        return mHasNewSessionKeys;
+    }
+
+    /**
+     * Adds copies of all cached session keys of another Passphrase object to this one's cache.
+     * The caller must make sure both objects hold the same passphrase, see {@link #hasSameChars}.
+     */
+    public void addCachedSessionKeys(Passphrase other) {
+        if (other.mCachedSessionKeys == null) {
+            return;
+        }
+        if (mCachedSessionKeys == null) {
+            mCachedSessionKeys = new HashMap<>();
+        }
+        for (Entry<ParcelableS2K, byte[]> entry : other.mCachedSessionKeys.entrySet()) {
+            if (!mCachedSessionKeys.containsKey(entry.getKey())) {
+                mCachedSessionKeys.put(entry.getKey(), entry.getValue().clone());
+            }
+        }
+    }
+
+    /** Compares the passphrase characters of two objects, in time independent of where they differ. */
+    public boolean hasSameChars(Passphrase other) {
+        char[] otherPassphrase = other.mPassphrase;
+        if (mPassphrase.length != otherPassphrase.length) {
+            return false;
+        }
+        int difference = 0;
+        for (int i = 0; i < mPassphrase.length; i++) {
+            difference |= mPassphrase[i] ^ otherPassphrase[i];
+        }
+        return difference == 0;
     }
 
     /**
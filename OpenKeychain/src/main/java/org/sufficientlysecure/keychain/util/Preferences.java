@@ -20,7 +20,10 @@ package org.sufficientlysecure.keychain.util;
 
 import java.net.Proxy;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.ListIterator;
+import java.util.Set;
 import java.util.UUID;
 
 import android.annotation.SuppressLint;
@@ -101,6 +104,15 @@ public class Preferences {
         return mSharedPreferences.getBoolean(Pref.PASSPHRASE_CACHE_SUBS, false);
     }
 
+    public boolean getPassphraseCacheSessionKeys() {
+        return mSharedPreferences.getBoolean(Pref.PASSPHRASE_CACHE_SESSION_KEYS, false);
+    }
+
+    /** Returns the time in seconds the SSH API keeps unlocked authentication keys, 0 if it doesn't. */
+    public int getSshAgentSessionTimeout() {
+        return mSharedPreferences.getInt(Pref.SSH_AGENT_SESSION_TIMEOUT, 0);
+    }
+
     public int getCacheTtlSeconds() {
         return mSharedPreferences.getInt(Pref.PASSPHRASE_CACHE_LAST_TTL, Integer.MAX_VALUE);
     }
@@ -346,6 +358,51 @@ public class Preferences {
         editor.commit();
     }
 
+    public boolean hasPendingTrustUpdate() {
+        return mSharedPreferences.contains(Pref.TRUST_UPDATE_PENDING_SIGNERS);
+    }
+
+    public Set<Long> getPendingTrustUpdateSigners() {
+        Set<Long> signerMasterKeyIds = new HashSet<>();
+        for (String signer : mSharedPreferences.getStringSet(Pref.TRUST_UPDATE_PENDING_SIGNERS,
+                Collections.emptySet())) {
+            signerMasterKeyIds.add(Long.parseLong(signer));
+        }
+        return signerMasterKeyIds;
+    }
+
+    /** Returns the master key id up to which the pending trust update is done, or null if it is not started. */
+    @Nullable
+    public Long getPendingTrustUpdateResumeAfter() {
+        if (!mSharedPreferences.contains(Pref.TRUST_UPDATE_RESUME_AFTER)) {
+            return null;
+        }
+        return mSharedPreferences.getLong(Pref.TRUST_UPDATE_RESUME_AFTER, 0);
+    }
+
+    public void setPendingTrustUpdate(Set<Long> signerMasterKeyIds, @Nullable Long resumeAfterMasterKeyId) {
+        Set<String> signers = new HashSet<>();
+        for (long signerMasterKeyId : signerMasterKeyIds) {
+            signers.add(Long.toString(signerMasterKeyId));
+        }
+
+        Editor editor = mSharedPreferences.edit();
+        editor.putStringSet(Pref.TRUST_UPDATE_PENDING_SIGNERS, signers);
+        if (resumeAfterMasterKeyId != null) {
+            editor.putLong(Pref.TRUST_UPDATE_RESUME_AFTER, resumeAfterMasterKeyId);
+        } else {
+            editor.remove(Pref.TRUST_UPDATE_RESUME_AFTER);
+        }
+        editor.commit();
+    }
+
+    public void clearPendingTrustUpdate() {
+        Editor editor = mSharedPreferences.edit();
+        editor.remove(Pref.TRUST_UPDATE_PENDING_SIGNERS);
+        editor.remove(Pref.TRUST_UPDATE_RESUME_AFTER);
+        editor.commit();
+    }
+
     public boolean isKeyserverSyncEnabled() {
         return mSharedPreferences.getBoolean(Pref.SYNC_KEYSERVER, true);
     }
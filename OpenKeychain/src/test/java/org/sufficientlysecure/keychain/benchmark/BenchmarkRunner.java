@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.benchmark;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.sufficientlysecure.keychain.operations.results.OperationMetrics;
+import org.sufficientlysecure.keychain.operations.results.OperationMetrics.Stage;
+import timber.log.Timber;
+
+
+/**
+ * A minimal benchmark harness in the spirit of JMH, which runs inside the Robolectric sandbox.
+ * <p>
+ * Each benchmark is run for a number of warmup iterations, which are discarded, followed by
+ * measured iterations. Results are reported as percentiles, and written to a JSON report which
+ * can be diffed between releases.
+ * <p>
+ * Benchmarks are skipped unless enabled with the "openkeychain.benchmark" system property, which
+ * the gradle build sets when run with -Pbenchmark.
+ */
+class BenchmarkRunner {
+    private static final String PROPERTY_ENABLED = "openkeychain.benchmark";
+    private static final String PROPERTY_SIZES = "openkeychain.benchmark.sizes";
+    private static final String PROPERTY_REPORT_DIR = "openkeychain.benchmark.dir";
+
+    private static final long[] DEFAULT_MESSAGE_SIZES = { 1 << 10, 64 << 10, 1 << 20, 16 << 20 };
+
+    interface Body {
+        /** Runs one iteration of the benchmark, optionally returning the operation's metrics. */
+        OperationMetrics run() throws Exception;
+    }
+
+    static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY_ENABLED);
+    }
+
+    /** Message sizes to run with, can be set as comma separated list of bytes, up to 1 GiB. */
+    static long[] getMessageSizes() {
+        String sizes = System.getProperty(PROPERTY_SIZES);
+        if (sizes == null || sizes.trim().isEmpty()) {
+            return DEFAULT_MESSAGE_SIZES;
+        }
+        String[] pieces = sizes.split(",");
+        long[] result = new long[pieces.length];
+        for (int i = 0; i < pieces.length; i++) {
+            result[i] = Long.parseLong(pieces[i].trim());
+        }
+        return result;
+    }
+
+    static Map<String, String> params(String... keysAndValues) {
+        LinkedHashMap<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            result.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return result;
+    }
+
+    private final String suite;
+    private final List<Result> results = new ArrayList<>();
+
+    BenchmarkRunner(String suite) {
+        this.suite = suite;
+    }
+
+    void run(String name, Map<String, String> params, long bytesPerIteration, Body body) throws Exception {
+        run(name, params, bytesPerIteration, 0, body);
+    }
+
+    /** Same as above, additionally reporting the rate of items (e.g. keys) processed per iteration. */
+    void run(String name, Map<String, String> params, long bytesPerIteration, int itemsPerIteration, Body body)
+            throws Exception {
+        // large messages take seconds per iteration, scale down so a full run stays feasible
+        int warmupIterations, measuredIterations;
+        if (bytesPerIteration >= 64 << 20) {
+            warmupIterations = 1;
+            measuredIterations = 3;
+        } else if (bytesPerIteration >= 1 << 20) {
+            warmupIterations = 3;
+            measuredIterations = 10;
+        } else {
+            warmupIterations = 10;
+            measuredIterations = 50;
+        }
+        run(name, params, bytesPerIteration, itemsPerIteration, warmupIterations, measuredIterations, body);
+    }
+
+    /** Same as above, with a fixed number of iterations, for bodies which take seconds regardless of size. */
+    void run(String name, Map<String, String> params, long bytesPerIteration, int itemsPerIteration,
+            int warmupIterations, int measuredIterations, Body body) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            body.run();
+        }
+
+        long[] nanos = new long[measuredIterations];
+        OperationMetrics metrics = null;
+        for (int i = 0; i < measuredIterations; i++) {
+            long startTime = System.nanoTime();
+            metrics = body.run();
+            nanos[i] = System.nanoTime() - startTime;
+        }
+        Arrays.sort(nanos);
+
+        Result result = new Result(name, params, bytesPerIteration, itemsPerIteration, nanos, metrics);
+        results.add(result);
+        Timber.d("benchmark %s %s: p50 %.3f ms, p90 %.3f ms, %.2f MB/s, %.1f items/s", name, params,
+                result.getPercentile(50) / 1e6, result.getPercentile(90) / 1e6, result.getThroughput(),
+                result.getItemRate());
+    }
+
+    /** Writes all results of this suite to a JSON report, returning the report file. */
+    File writeReport() throws IOException {
+        String reportDir = System.getProperty(PROPERTY_REPORT_DIR, "build/reports/benchmarks");
+        File dir = new File(reportDir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("could not create report directory " + dir);
+        }
+
+        File reportFile = new File(dir, suite + ".json");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8)) {
+            writer.write("{\n");
+            writer.write("  \"suite\": " + quote(suite) + ",\n");
+            writer.write("  \"timestamp\": " + System.currentTimeMillis() + ",\n");
+            writer.write("  \"java\": " + quote(System.getProperty("java.version")) + ",\n");
+            writer.write("  \"arch\": " + quote(System.getProperty("os.arch")) + ",\n");
+            writer.write("  \"results\": [");
+            for (int i = 0; i < results.size(); i++) {
+                writer.write(i == 0 ? "\n" : ",\n");
+                results.get(i).write(writer);
+            }
+            writer.write("\n  ]\n}\n");
+        }
+        return reportFile;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static class Result {
+        final String name;
+        final Map<String, String> params;
+        final long bytesPerIteration;
+        final int itemsPerIteration;
+        final long[] sortedNanos;
+        final OperationMetrics metrics;
+
+        Result(String name, Map<String, String> params, long bytesPerIteration, int itemsPerIteration,
+                long[] sortedNanos, OperationMetrics metrics) {
+            this.name = name;
+            this.params = params;
+            this.bytesPerIteration = bytesPerIteration;
+            this.itemsPerIteration = itemsPerIteration;
+            this.sortedNanos = sortedNanos;
+            this.metrics = metrics;
+        }
+
+        /** Nearest-rank percentile of the measured iterations. */
+        long getPercentile(int percentile) {
+            int rank = (int) Math.ceil(percentile / 100.0 * sortedNanos.length);
+            return sortedNanos[Math.max(0, rank - 1)];
+        }
+
+        long getMean() {
+            long sum = 0;
+            for (long nanos : sortedNanos) {
+                sum += nanos;
+            }
+            return sum / sortedNanos.length;
+        }
+
+        /** Throughput at the median, in MB/s. */
+        double getThroughput() {
+            return bytesPerIteration * 1e3 / getPercentile(50);
+        }
+
+        /** Items processed per second at the median. */
+        double getItemRate() {
+            return itemsPerIteration * 1e9 / getPercentile(50);
+        }
+
+        void write(Writer writer) throws IOException {
+            writer.write("    {\"name\": " + quote(name) + ", \"params\": {");
+            boolean first = true;
+            for (Entry<String, String> param : params.entrySet()) {
+                writer.write((first ? "" : ", ") + quote(param.getKey()) + ": " + quote(param.getValue()));
+                first = false;
+            }
+            writer.write("}, \"bytes\": " + bytesPerIteration);
+            writer.write(", \"iterations\": " + sortedNanos.length);
+            writer.write(", \"min_ns\": " + sortedNanos[0]);
+            writer.write(", \"p50_ns\": " + getPercentile(50));
+            writer.write(", \"p90_ns\": " + getPercentile(90));
+            writer.write(", \"p99_ns\": " + getPercentile(99));
+            writer.write(", \"max_ns\": " + sortedNanos[sortedNanos.length - 1]);
+            writer.write(", \"mean_ns\": " + getMean());
+            writer.write(String.format(Locale.ENGLISH, ", \"mb_per_s\": %.3f", getThroughput()));
+            if (itemsPerIteration > 0) {
+                writer.write(", \"items\": " + itemsPerIteration);
+                writer.write(String.format(Locale.ENGLISH, ", \"items_per_s\": %.3f", getItemRate()));
+            }
+            if (metrics != null) {
+                writer.write(", \"stages\": {");
+                first = true;
+                for (Stage stage : Stage.values()) {
+                    if (metrics.getTimeNanos(stage) == 0 && metrics.getBytes(stage) == 0) {
+                        continue;
+                    }
+                    writer.write((first ? "" : ", ") + quote(stage.name()) + ": {\"ns\": "
+                            + metrics.getTimeNanos(stage) + ", \"bytes\": " + metrics.getBytes(stage) + "}");
+                    first = false;
+                }
+                writer.write("}");
+            }
+            writer.write("}");
+        }
+    }
+}
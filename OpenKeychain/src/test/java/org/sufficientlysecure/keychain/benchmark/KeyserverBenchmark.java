@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.benchmark;
+
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.Security;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.keyimport.HkpKeyserverAddress;
+import org.sufficientlysecure.keychain.keyimport.HkpKeyserverClient;
+import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.ui.util.KeyFormattingUtils;
+import org.sufficientlysecure.keychain.util.ParcelableProxy;
+import org.sufficientlysecure.keychain.util.TestingUtils;
+
+import static org.sufficientlysecure.keychain.benchmark.BenchmarkRunner.params;
+
+
+/**
+ * Benchmark of keys refreshed per second from a local keyserver, the network part of a key sync.
+ * <p>
+ * Run with: ./gradlew :OpenKeychain:testDebugUnitTest -Pbenchmark --tests '*KeyserverBenchmark'
+ * <br>
+ * The keyserver is a MockWebServer on localhost over plain http, so this measures the overhead of
+ * the client and connection setup rather than the network. The "per-request" variant builds a
+ * new OkHttpClient for each key, as a baseline for the shared clients of OkHttpClientFactory.
+ */
+@RunWith(KeychainTestRunner.class)
+public class KeyserverBenchmark {
+    private static final int KEYS_PER_ITERATION = 100;
+
+    private static String armoredKey;
+
+    private MockWebServer server;
+
+    @BeforeClass
+    public static void setUpOnce() throws Exception {
+        Security.insertProviderAt(new BouncyCastleProvider(), 1);
+
+        UncachedKeyRing publicRing = TestingUtils.createCertifyingKeyRing("benchmark").extractPublicKeyRing();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        publicRing.encodeArmored(out, null);
+        armoredKey = new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue("benchmarks are only run with -Pbenchmark", BenchmarkRunner.isEnabled());
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setHeader("Content-Type", "text/plain; charset=utf-8")
+                        .setBody(armoredKey);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void benchmarkKeyRefresh() throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner("keyserver-refresh");
+        long bytesPerIteration = (long) KEYS_PER_ITERATION * armoredKey.length();
+
+        HkpKeyserverClient keyserverClient = HkpKeyserverClient.fromHkpKeyserverAddress(
+                HkpKeyserverAddress.createFromUri(server.url("/").toString()));
+        ParcelableProxy proxy = ParcelableProxy.getForNoProxy();
+        runner.run("refresh", params("client", "shared"), bytesPerIteration, KEYS_PER_ITERATION, () -> {
+            for (int i = 0; i < KEYS_PER_ITERATION; i++) {
+                Assert.assertNotNull(keyserverClient.get(KeyFormattingUtils.convertKeyIdToHex(i), proxy));
+            }
+            return null;
+        });
+
+        runner.run("refresh", params("client", "per-request"), bytesPerIteration, KEYS_PER_ITERATION, () -> {
+            for (int i = 0; i < KEYS_PER_ITERATION; i++) {
+                OkHttpClient client = new OkHttpClient.Builder().followRedirects(false).build();
+                Request request = new Request.Builder()
+                        .url(server.url("/pks/lookup?op=get&options=mr&search="
+                                + KeyFormattingUtils.convertKeyIdToHex(i)))
+                        .build();
+                try (Response response = client.newCall(request).execute()) {
+                    Assert.assertNotNull(response.body().string());
+                }
+                // the connection pool of each client would otherwise keep its connection open
+                client.connectionPool().evictAll();
+            }
+            return null;
+        });
+
+        runner.writeReport();
+    }
+}
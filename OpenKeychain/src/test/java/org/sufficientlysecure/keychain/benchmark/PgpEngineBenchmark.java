@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.benchmark;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.Security;
+import java.util.Map;
+import java.util.Random;
+
+import org.bouncycastle.bcpg.CompressionAlgorithmTags;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
+import org.sufficientlysecure.keychain.operations.results.DecryptVerifyResult;
+import org.sufficientlysecure.keychain.operations.results.OperationMetrics;
+import org.sufficientlysecure.keychain.operations.results.OperationResult.OperationLog;
+import org.sufficientlysecure.keychain.operations.results.PgpEditKeyResult;
+import org.sufficientlysecure.keychain.operations.results.PgpSignEncryptResult;
+import org.sufficientlysecure.keychain.pgp.PgpDecryptVerifyInputParcel;
+import org.sufficientlysecure.keychain.pgp.PgpDecryptVerifyOperation;
+import org.sufficientlysecure.keychain.pgp.PgpKeyOperation;
+import org.sufficientlysecure.keychain.pgp.PgpSignEncryptData;
+import org.sufficientlysecure.keychain.pgp.PgpSignEncryptOperation;
+import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.Algorithm;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.Curve;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.SubkeyAdd;
+import org.sufficientlysecure.keychain.service.input.CryptoInputParcel;
+import org.sufficientlysecure.keychain.util.InputData;
+import org.sufficientlysecure.keychain.util.Passphrase;
+import org.sufficientlysecure.keychain.util.TestingUtils;
+
+import static org.sufficientlysecure.keychain.benchmark.BenchmarkRunner.params;
+
+
+/**
+ * Benchmarks of the PGP engine: sign/encrypt and decrypt/verify across cipher, compression and
+ * armor settings and key types, unlocking with and without a cached session key,
+ * canonicalization and merging of keyrings, and creation of RSA keyrings with several subkeys.
+ * <p>
+ * Run with: ./gradlew :OpenKeychain:testDebugUnitTest -Pbenchmark --tests '*PgpEngineBenchmark'
+ * <br>
+ * Message sizes can be set with e.g. -Pbenchmark.sizes=1024,1073741824, reports are written to
+ * OpenKeychain/build/reports/benchmarks.
+ */
+@RunWith(KeychainTestRunner.class)
+public class PgpEngineBenchmark {
+    private static final int[] CIPHERS = {
+            SymmetricKeyAlgorithmTags.AES_128, SymmetricKeyAlgorithmTags.AES_256, SymmetricKeyAlgorithmTags.TWOFISH };
+    private static final int[] COMPRESSIONS = {
+            CompressionAlgorithmTags.UNCOMPRESSED, CompressionAlgorithmTags.ZIP,
+            CompressionAlgorithmTags.ZLIB, CompressionAlgorithmTags.BZIP2 };
+    private static final int SHORT_MESSAGE_SIZE = 1024;
+
+    enum KeyType {
+        RSA_2048(Algorithm.RSA, 2048, null, Algorithm.RSA, 2048, null),
+        RSA_4096(Algorithm.RSA, 4096, null, Algorithm.RSA, 4096, null),
+        ECC_P256(Algorithm.ECDSA, 0, Curve.NIST_P256, Algorithm.ECDH, 0, Curve.NIST_P256),
+        ED25519_CV25519(Algorithm.EDDSA, 0, null, Algorithm.ECDH, 0, Curve.CV25519);
+
+        final Algorithm signAlgorithm, encryptAlgorithm;
+        final int signKeySize, encryptKeySize;
+        final Curve signCurve, encryptCurve;
+
+        KeyType(Algorithm signAlgorithm, int signKeySize, Curve signCurve,
+                Algorithm encryptAlgorithm, int encryptKeySize, Curve encryptCurve) {
+            this.signAlgorithm = signAlgorithm;
+            this.signKeySize = signKeySize;
+            this.signCurve = signCurve;
+            this.encryptAlgorithm = encryptAlgorithm;
+            this.encryptKeySize = encryptKeySize;
+            this.encryptCurve = encryptCurve;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private KeyWritableRepository keyRepository;
+
+    @BeforeClass
+    public static void setUpOnce() {
+        Security.insertProviderAt(new BouncyCastleProvider(), 1);
+    }
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("benchmarks are only run with -Pbenchmark", BenchmarkRunner.isEnabled());
+        keyRepository = KeyWritableRepository.create(RuntimeEnvironment.getApplication());
+    }
+
+    @Test
+    public void benchmarkEncryptionSettings() throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner("pgp-encryption-settings");
+        UncachedKeyRing ring = createAndSaveRing(KeyType.ED25519_CV25519);
+
+        for (long size : BenchmarkRunner.getMessageSizes()) {
+            for (int cipher : CIPHERS) {
+                for (int compression : COMPRESSIONS) {
+                    for (boolean armor : new boolean[] { false, true }) {
+                        PgpSignEncryptData data = PgpSignEncryptData.builder()
+                                .setEncryptionMasterKeyIds(new long[] { ring.getMasterKeyId() })
+                                .setSymmetricEncryptionAlgorithm(cipher)
+                                .setCompressionAlgorithm(compression)
+                                .setEnableAsciiArmorOutput(armor)
+                                .build();
+                        benchmarkRoundTrip(runner, data, size, params(
+                                "cipher", Integer.toString(cipher), "compression", Integer.toString(compression),
+                                "armor", Boolean.toString(armor), "size", Long.toString(size)));
+                    }
+                }
+            }
+        }
+
+        runner.writeReport();
+    }
+
+    @Test
+    public void benchmarkKeyTypes() throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner("pgp-key-types");
+
+        for (KeyType keyType : KeyType.values()) {
+            UncachedKeyRing ring = createAndSaveRing(keyType);
+            for (long size : BenchmarkRunner.getMessageSizes()) {
+                PgpSignEncryptData data = PgpSignEncryptData.builder()
+                        .setEncryptionMasterKeyIds(new long[] { ring.getMasterKeyId() })
+                        .setSignatureMasterKeyId(ring.getMasterKeyId())
+                        .build();
+                benchmarkRoundTrip(runner, data, size, params("key", keyType.name(), "size", Long.toString(size)));
+            }
+        }
+
+        runner.writeReport();
+    }
+
+    @Test
+    public void benchmarkCanonicalizeMerge() throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner("pgp-keyrings");
+
+        for (KeyType keyType : KeyType.values()) {
+            UncachedKeyRing secretRing = createRing(keyType);
+            UncachedKeyRing publicRing = secretRing.extractPublicKeyRing();
+            byte[] encoded = publicRing.getEncoded();
+
+            runner.run("canonicalize", params("key", keyType.name()), encoded.length, () -> {
+                Assert.assertNotNull(publicRing.canonicalize(new OperationLog(), 0));
+                return null;
+            });
+            runner.run("merge", params("key", keyType.name()), encoded.length, () -> {
+                UncachedKeyRing other = UncachedKeyRing.decodeFromData(encoded);
+                Assert.assertNotNull(publicRing.merge(other, new OperationLog(), 0));
+                return null;
+            });
+        }
+
+        runner.writeReport();
+    }
+
+    @Test
+    public void benchmarkSessionKeyCache() throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner("pgp-session-key-cache");
+        PgpSignEncryptOperation signEncryptOperation =
+                new PgpSignEncryptOperation(RuntimeEnvironment.getApplication(), keyRepository, null);
+        PgpDecryptVerifyOperation decryptVerifyOperation =
+                new PgpDecryptVerifyOperation(RuntimeEnvironment.getApplication(), keyRepository, null);
+
+        for (KeyType keyType : KeyType.values()) {
+            UncachedKeyRing ring = createAndSaveRing(keyType, TestingUtils.testPassphrase0);
+            PgpSignEncryptData signData = PgpSignEncryptData.builder()
+                    .setSignatureMasterKeyId(ring.getMasterKeyId())
+                    .build();
+
+            // a fresh passphrase has to go through the S2K on every unlock
+            runner.run("sign", params("key", keyType.name(), "sessionKey", "derived"), 0, () -> {
+                Passphrase passphrase = new Passphrase(TestingUtils.testPassphrase0.getCharArray().clone());
+                return sign(signEncryptOperation, signData, passphrase);
+            });
+
+            // a passphrase from the cache carries the session key derived by an earlier unlock
+            Passphrase cachedPassphrase = new Passphrase(TestingUtils.testPassphrase0.getCharArray().clone());
+            runner.run("sign", params("key", keyType.name(), "sessionKey", "cached"), 0, () ->
+                    sign(signEncryptOperation, signData, cachedPassphrase));
+
+            // a short mail, so that unlocking the encryption subkey dominates the decryption
+            PgpSignEncryptData encryptData = PgpSignEncryptData.builder()
+                    .setEncryptionMasterKeyIds(new long[] { ring.getMasterKeyId() })
+                    .build();
+            ByteArrayOutputStream ciphertextStream = new ByteArrayOutputStream();
+            InputData plaintext = new InputData(new PatternInputStream(SHORT_MESSAGE_SIZE), SHORT_MESSAGE_SIZE);
+            PgpSignEncryptResult encryptResult = signEncryptOperation.execute(encryptData,
+                    CryptoInputParcel.createCryptoInputParcel(), plaintext, ciphertextStream);
+            Assert.assertTrue("encrypt must succeed", encryptResult.success());
+            byte[] ciphertext = ciphertextStream.toByteArray();
+
+            runner.run("decrypt", params("key", keyType.name(), "sessionKey", "derived"), SHORT_MESSAGE_SIZE, () -> {
+                Passphrase passphrase = new Passphrase(TestingUtils.testPassphrase0.getCharArray().clone());
+                return decrypt(decryptVerifyOperation, ciphertext, passphrase);
+            });
+
+            Passphrase cachedDecryptPassphrase = new Passphrase(TestingUtils.testPassphrase0.getCharArray().clone());
+            runner.run("decrypt", params("key", keyType.name(), "sessionKey", "cached"), SHORT_MESSAGE_SIZE,
+                    () -> decrypt(decryptVerifyOperation, ciphertext, cachedDecryptPassphrase));
+        }
+
+        runner.writeReport();
+    }
+
+    private static OperationMetrics sign(PgpSignEncryptOperation signEncryptOperation, PgpSignEncryptData data,
+            Passphrase passphrase) {
+        PgpSignEncryptResult result = signEncryptOperation.execute(data,
+                CryptoInputParcel.createCryptoInputParcel(passphrase),
+                new InputData(new PatternInputStream(0), 0), new NullOutputStream());
+        Assert.assertTrue("sign must succeed", result.success());
+        return result.getMetrics();
+    }
+
+    private static OperationMetrics decrypt(PgpDecryptVerifyOperation decryptVerifyOperation, byte[] ciphertext,
+            Passphrase passphrase) {
+        DecryptVerifyResult result = decryptVerifyOperation.execute(PgpDecryptVerifyInputParcel.builder().build(),
+                CryptoInputParcel.createCryptoInputParcel(passphrase),
+                new InputData(new ByteArrayInputStream(ciphertext), ciphertext.length), new NullOutputStream());
+        Assert.assertTrue("decrypt must succeed", result.success());
+        return result.getMetrics();
+    }
+
+    @Test
+    public void benchmarkKeyCreation() throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner("pgp-key-creation");
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // a master key with signing, encryption and authentication subkeys, as for a security token
+        for (int subkeyCount : new int[] { 0, 1, 3 }) {
+            SaveKeyringParcel.Builder builder = SaveKeyringParcel.buildNewKeyringParcel();
+            builder.addSubkeyAdd(SubkeyAdd.createSubkeyAdd(Algorithm.RSA, 4096, null, KeyFlags.CERTIFY_OTHER, 0L));
+            int[] subkeyFlags = { KeyFlags.SIGN_DATA, KeyFlags.ENCRYPT_COMMS | KeyFlags.ENCRYPT_STORAGE,
+                    KeyFlags.AUTHENTICATION };
+            for (int i = 0; i < subkeyCount; i++) {
+                builder.addSubkeyAdd(SubkeyAdd.createSubkeyAdd(Algorithm.RSA, 4096, null, subkeyFlags[i], 0L));
+            }
+            builder.addUserId("benchmark rsa 4096");
+            SaveKeyringParcel parcel = builder.build();
+
+            // a single thread is the serial baseline for the parallel generation of several subkeys
+            int[] threadCounts = subkeyCount > 1 && cores > 1 ? new int[] { 1, cores } : new int[] { cores };
+
+            // generating a 4096 bit key takes seconds, so only a few iterations
+            for (int threads : threadCounts) {
+                runner.run("createRing", params("key", KeyType.RSA_4096.name(),
+                        "keys", Integer.toString(subkeyCount + 1), "threads", Integer.toString(threads),
+                        "cores", Integer.toString(cores)), 0, subkeyCount + 1, 1, 5, () -> {
+                    PgpKeyOperation op = new PgpKeyOperation(null);
+                    op.setMaxGenerationThreads(threads);
+                    PgpEditKeyResult result = op.createSecretKeyRing(parcel);
+                    Assert.assertTrue("benchmark key creation must succeed", result.success());
+                    return null;
+                });
+            }
+        }
+
+        runner.writeReport();
+    }
+
+    private void benchmarkRoundTrip(BenchmarkRunner runner, PgpSignEncryptData data, long size,
+            Map<String, String> params) throws Exception {
+        PgpSignEncryptOperation signEncryptOperation =
+                new PgpSignEncryptOperation(RuntimeEnvironment.getApplication(), keyRepository, null);
+        PgpDecryptVerifyOperation decryptVerifyOperation =
+                new PgpDecryptVerifyOperation(RuntimeEnvironment.getApplication(), keyRepository, null);
+
+        runner.run("signEncrypt", params, size, () -> {
+            PgpSignEncryptResult result = signEncryptOperation.execute(data,
+                    CryptoInputParcel.createCryptoInputParcel(), new InputData(new PatternInputStream(size), size),
+                    new NullOutputStream());
+            Assert.assertTrue("sign/encrypt must succeed", result.success());
+            return result.getMetrics();
+        });
+
+        // decryption works on a ciphertext which is written to disk once, so this works for large sizes
+        File ciphertext = temporaryFolder.newFile();
+        try (OutputStream out = new FileOutputStream(ciphertext)) {
+            PgpSignEncryptResult result = signEncryptOperation.execute(data,
+                    CryptoInputParcel.createCryptoInputParcel(), new InputData(new PatternInputStream(size), size),
+                    out);
+            Assert.assertTrue("sign/encrypt must succeed", result.success());
+        }
+
+        PgpDecryptVerifyInputParcel input = PgpDecryptVerifyInputParcel.builder().build();
+        runner.run("decryptVerify", params, size, () -> {
+            try (InputStream in = new FileInputStream(ciphertext)) {
+                DecryptVerifyResult result = decryptVerifyOperation.execute(input,
+                        CryptoInputParcel.createCryptoInputParcel(), new InputData(in, ciphertext.length()), null);
+                Assert.assertTrue("decrypt/verify must succeed", result.success());
+                return result.getMetrics();
+            }
+        });
+
+        Assert.assertTrue(ciphertext.delete());
+    }
+
+    private UncachedKeyRing createAndSaveRing(KeyType keyType) throws Exception {
+        return createAndSaveRing(keyType, null);
+    }
+
+    private UncachedKeyRing createAndSaveRing(KeyType keyType, Passphrase passphrase) throws Exception {
+        UncachedKeyRing ring = createRing(keyType, passphrase);
+        Assert.assertTrue("saving benchmark key must succeed", keyRepository.saveSecretKeyRing(ring).success());
+        return ring;
+    }
+
+    private static UncachedKeyRing createRing(KeyType keyType) {
+        return createRing(keyType, null);
+    }
+
+    private static UncachedKeyRing createRing(KeyType keyType, Passphrase passphrase) {
+        return TestingUtils.createKeyRing("benchmark " + keyType.name().toLowerCase(), passphrase,
+                SubkeyAdd.createSubkeyAdd(keyType.signAlgorithm, keyType.signKeySize, keyType.signCurve,
+                        KeyFlags.CERTIFY_OTHER | KeyFlags.SIGN_DATA, 0L),
+                SubkeyAdd.createSubkeyAdd(keyType.encryptAlgorithm, keyType.encryptKeySize, keyType.encryptCurve,
+                        KeyFlags.ENCRYPT_COMMS | KeyFlags.ENCRYPT_STORAGE, 0L));
+    }
+
+    /** Produces a given number of bytes, repeating a block of random data. */
+    private static class PatternInputStream extends InputStream {
+        private static final byte[] PATTERN = new byte[1 << 16];
+        static {
+            new Random(0).nextBytes(PATTERN);
+        }
+
+        private long remaining;
+
+        PatternInputStream(long size) {
+            remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            return PATTERN[(int) (--remaining % PATTERN.length)] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int offset = (int) (remaining % PATTERN.length);
+            int count = (int) Math.min(Math.min(len, remaining), PATTERN.length - offset);
+            System.arraycopy(PATTERN, offset, b, off, count);
+            remaining -= count;
+            return count;
+        }
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.benchmark;
+
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
+import org.sufficientlysecure.keychain.daos.TrustedKeysCache;
+import org.sufficientlysecure.keychain.keyimport.ParcelableKeyRing;
+import org.sufficientlysecure.keychain.operations.ImportOperation;
+import org.sufficientlysecure.keychain.operations.results.ImportKeyResult;
+import org.sufficientlysecure.keychain.util.ParcelableProxy;
+import org.sufficientlysecure.keychain.util.ProgressScaler;
+import org.sufficientlysecure.keychain.util.TestingUtils;
+
+import static org.sufficientlysecure.keychain.benchmark.BenchmarkRunner.params;
+
+
+/**
+ * Benchmark of public key imports into keyrings of growing size, with a few secret keys present.
+ * <p>
+ * Run with: ./gradlew :OpenKeychain:testDebugUnitTest -Pbenchmark --tests '*TrustedKeysBenchmark'
+ * <br>
+ * Every saved keyring needs the set of trusted keys to filter its certifications. The keys/s
+ * reported for each keyring size should stay flat, since the set is loaded once from the shared
+ * TrustedKeysCache snapshot, rather than once per imported key.
+ */
+@RunWith(KeychainTestRunner.class)
+public class TrustedKeysBenchmark {
+    private static final int[] KEYRING_SIZES = { 0, 250, 1000 };
+    private static final int SECRET_KEYS = 5;
+    private static final int KEYS_PER_ITERATION = 25;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private KeyWritableRepository keyRepository;
+    private int keyCount;
+    private int createdKeyCount;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("benchmarks are only run with -Pbenchmark", BenchmarkRunner.isEnabled());
+
+        Security.insertProviderAt(new BouncyCastleProvider(), 1);
+        keyRepository = KeyWritableRepository.create(RuntimeEnvironment.getApplication());
+    }
+
+    @Test
+    public void benchmarkImportIntoGrowingKeyring() throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner("trusted-keys-import");
+
+        for (int i = 0; i < SECRET_KEYS; i++) {
+            Assert.assertTrue(keyRepository.saveSecretKeyRing(
+                    TestingUtils.createCertifyingKeyRing("trusted " + i)).success());
+        }
+
+        TrustedKeysCache trustedKeysCache = TrustedKeysCache.getInstance();
+        for (int keyringSize : KEYRING_SIZES) {
+            while (keyCount < keyringSize) {
+                importKeys(createKeys(Math.min(KEYS_PER_ITERATION, keyringSize - keyCount)));
+            }
+
+            // keys are created up front, so only their import is measured
+            List<List<ParcelableKeyRing>> batches = new ArrayList<>();
+            for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+                batches.add(createKeys(KEYS_PER_ITERATION));
+            }
+            long bytesPerIteration = 0;
+            for (ParcelableKeyRing entry : batches.get(0)) {
+                bytesPerIteration += entry.getBytes().length;
+            }
+
+            int loadCountBefore = trustedKeysCache.getLoadCount();
+            Iterator<List<ParcelableKeyRing>> nextBatch = batches.iterator();
+            runner.run("import", params("keyring_size", Integer.toString(keyringSize),
+                    "secret_keys", Integer.toString(SECRET_KEYS)), bytesPerIteration, KEYS_PER_ITERATION,
+                    WARMUP_ITERATIONS, MEASURED_ITERATIONS, () -> {
+                        importKeys(nextBatch.next());
+                        return null;
+                    });
+            Assert.assertTrue("public key imports must share one trusted keys snapshot",
+                    trustedKeysCache.getLoadCount() - loadCountBefore <= 1);
+        }
+
+        runner.writeReport();
+    }
+
+    private List<ParcelableKeyRing> createKeys(int count) throws Exception {
+        List<ParcelableKeyRing> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(ParcelableKeyRing.createFromEncodedBytes(TestingUtils.createCertifyingKeyRing(
+                    "bulk " + createdKeyCount).extractPublicKeyRing().getEncoded()));
+            createdKeyCount += 1;
+        }
+        return entries;
+    }
+
+    private void importKeys(List<ParcelableKeyRing> entries) {
+        ImportOperation op = new ImportOperation(RuntimeEnvironment.getApplication(), keyRepository,
+                new ProgressScaler());
+        ImportKeyResult result = op.serialKeyRingImport(entries.iterator(), entries.size(), null,
+                ParcelableProxy.getForNoProxy(), false, false);
+        Assert.assertTrue("import must succeed", result.success());
+        keyCount += entries.size();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.keyimport;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+
+
+@RunWith(KeychainTestRunner.class)
+public class ImportKeysListTest {
+
+    @Test
+    public void testMergeKeepsSnapshotsUnmodified() {
+        ImportKeysList list = new ImportKeysList();
+        list.addAll(Arrays.asList(createEntry(1, "alice <a@example.com>"), createEntry(2, "bob <b@example.com>")));
+        ArrayList<ImportKeysListEntry> snapshot = list.snapshot();
+
+        ImportKeysListEntry incoming = createEntry(1, "alice <alice@example.org>");
+        incoming.setRevoked(true);
+        Assert.assertTrue("merge of a new user id must modify the list", list.addAll(Collections.singletonList(incoming)));
+
+        Assert.assertEquals("duplicate must be merged", 2, list.size());
+        Assert.assertTrue(list.get(0).isRevoked());
+        Assert.assertEquals(2, list.get(0).getUserIds().size());
+
+        Assert.assertFalse("snapshot entry must not be modified", snapshot.get(0).isRevoked());
+        Assert.assertEquals(1, snapshot.get(0).getUserIds().size());
+        Assert.assertSame("unmerged entry must stay the same", snapshot.get(1), list.get(1));
+
+        Assert.assertFalse("merge of known data must not modify the list",
+                list.addAll(Collections.singletonList(createEntry(2, "bob <b@example.com>"))));
+    }
+
+    private static ImportKeysListEntry createEntry(int fingerprintByte, String userId) {
+        byte[] fingerprint = new byte[20];
+        Arrays.fill(fingerprint, (byte) fingerprintByte);
+
+        ImportKeysListEntry entry = new ImportKeysListEntry();
+        entry.setFingerprint(fingerprint);
+        entry.setSecure(true);
+        entry.setUserIds(new ArrayList<>(Collections.singletonList(userId)));
+        return entry;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.livedata;
+
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.net.Uri;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.shadows.ShadowContentResolver;
+import org.robolectric.shadows.ShadowContentResolver.NotifiedUri;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.daos.DatabaseNotifyManager;
+import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
+import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.ui.adapter.FlexibleKeyDetailsItem;
+import org.sufficientlysecure.keychain.ui.adapter.FlexibleKeyItem;
+import org.sufficientlysecure.keychain.util.TestingUtils;
+
+
+@RunWith(KeychainTestRunner.class)
+public class KeyListLiveDataTest {
+    static UncachedKeyRing ringAlice;
+    static UncachedKeyRing ringBob;
+    static UncachedKeyRing ringCarol;
+    static UncachedKeyRing ringDave;
+
+    private KeyWritableRepository keyRepository;
+    private KeyListLiveData keyListLiveData;
+
+    @BeforeClass
+    public static void setUpOnce() throws Exception {
+        Security.insertProviderAt(new BouncyCastleProvider(), 1);
+
+        ringAlice = TestingUtils.createCertifyingKeyRing("alice <alice@example.org>").extractPublicKeyRing();
+        ringBob = TestingUtils.createCertifyingKeyRing("bob <bob@example.org>").extractPublicKeyRing();
+        ringCarol = TestingUtils.createCertifyingKeyRing("carol <carol@example.org>").extractPublicKeyRing();
+        ringDave = TestingUtils.createCertifyingKeyRing("dave <dave@example.org>").extractPublicKeyRing();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        keyRepository = KeyWritableRepository.create(RuntimeEnvironment.getApplication());
+        Assert.assertTrue(keyRepository.savePublicKeyRing(ringAlice).success());
+        Assert.assertTrue(keyRepository.savePublicKeyRing(ringCarol).success());
+
+        keyListLiveData = new KeyListLiveData(RuntimeEnvironment.getApplication());
+    }
+
+    @Test
+    public void testLoadChangedKey() throws Exception {
+        List<FlexibleKeyDetailsItem> initialItems = getKeyItems(keyListLiveData.asyncLoadData());
+        Assert.assertEquals(2, initialItems.size());
+
+        Assert.assertTrue(keyRepository.savePublicKeyRing(ringBob).success());
+        keyListLiveData.onContentChanged(DatabaseNotifyManager.getNotifyUriMasterKeyId(ringBob.getMasterKeyId()));
+        List<FlexibleKeyDetailsItem> items = getKeyItems(keyListLiveData.asyncLoadData());
+
+        Assert.assertEquals("new key must be listed in order", 3, items.size());
+        Assert.assertEquals(ringBob.getMasterKeyId(), items.get(1).keyInfo.master_key_id());
+        Assert.assertSame("unchanged items must be reused", initialItems.get(0), items.get(0));
+        Assert.assertSame("unchanged items must be reused", initialItems.get(1), items.get(2));
+    }
+
+    @Test
+    public void testLoadDeletedKey() throws Exception {
+        List<FlexibleKeyDetailsItem> initialItems = getKeyItems(keyListLiveData.asyncLoadData());
+
+        Assert.assertTrue(keyRepository.deleteKeyRing(ringAlice.getMasterKeyId()));
+        keyListLiveData.onContentChanged(DatabaseNotifyManager.getNotifyUriMasterKeyId(ringAlice.getMasterKeyId()));
+        List<FlexibleKeyDetailsItem> items = getKeyItems(keyListLiveData.asyncLoadData());
+
+        Assert.assertEquals("deleted key must not be listed", 1, items.size());
+        Assert.assertSame("unchanged items must be reused", initialItems.get(1), items.get(0));
+    }
+
+    @Test
+    public void testReloadAllReusesUnchangedItems() throws Exception {
+        List<FlexibleKeyDetailsItem> initialItems = getKeyItems(keyListLiveData.asyncLoadData());
+
+        keyListLiveData.onContentChanged(DatabaseNotifyManager.getNotifyUriAllKeys());
+        List<FlexibleKeyDetailsItem> items = getKeyItems(keyListLiveData.asyncLoadData());
+
+        Assert.assertEquals(initialItems, items);
+        for (int i = 0; i < items.size(); i++) {
+            Assert.assertSame("unchanged items must be reused", initialItems.get(i), items.get(i));
+        }
+    }
+
+    @Test
+    public void testBatchNotifiesEachChangedKey() throws Exception {
+        ShadowContentResolver contentResolver =
+                Shadows.shadowOf(RuntimeEnvironment.getApplication().getContentResolver());
+        int previousNotifications = contentResolver.getNotifiedUris().size();
+
+        keyRepository.beginBatchTransaction();
+        Assert.assertTrue(keyRepository.savePublicKeyRing(ringBob).success());
+        Assert.assertTrue(keyRepository.savePublicKeyRing(ringDave).success());
+        Assert.assertTrue(keyRepository.endBatchTransaction());
+
+        List<Uri> notifiedUris = new ArrayList<>();
+        for (NotifiedUri notifiedUri : contentResolver.getNotifiedUris().subList(
+                previousNotifications, contentResolver.getNotifiedUris().size())) {
+            notifiedUris.add(notifiedUri.uri);
+        }
+        Assert.assertTrue(notifiedUris.contains(DatabaseNotifyManager.getNotifyUriMasterKeyId(ringBob.getMasterKeyId())));
+        Assert.assertTrue(notifiedUris.contains(DatabaseNotifyManager.getNotifyUriMasterKeyId(ringDave.getMasterKeyId())));
+        Assert.assertFalse("a batch of few keys must not reload all keys",
+                notifiedUris.contains(DatabaseNotifyManager.getNotifyUriAllKeys()));
+    }
+
+    private static List<FlexibleKeyDetailsItem> getKeyItems(List<FlexibleKeyItem> flexibleKeyItems) {
+        List<FlexibleKeyDetailsItem> result = new ArrayList<>();
+        for (FlexibleKeyItem item : flexibleKeyItems) {
+            if (item instanceof FlexibleKeyDetailsItem) {
+                result.add((FlexibleKeyDetailsItem) item);
+            }
+        }
+        return result;
+    }
+}
@@ -28,6 +28,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.shadows.ShadowLog;
+import org.sufficientlysecure.keychain.Constants;
 import org.sufficientlysecure.keychain.KeychainTestRunner;
 import org.sufficientlysecure.keychain.daos.KeyRepository;
 import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
@@ -38,8 +39,10 @@ import org.sufficientlysecure.keychain.ssh.AuthenticationData;
 import org.sufficientlysecure.keychain.ssh.AuthenticationOperation;
 import org.sufficientlysecure.keychain.ssh.AuthenticationParcel;
 import org.sufficientlysecure.keychain.ssh.AuthenticationResult;
+import org.sufficientlysecure.keychain.ssh.SshAgentSession;
 import org.sufficientlysecure.keychain.support.KeyringTestingHelper;
 import org.sufficientlysecure.keychain.util.Passphrase;
+import org.sufficientlysecure.keychain.util.Preferences;
 
 import java.io.PrintStream;
 import java.security.PublicKey;
@@ -391,4 +394,66 @@ public class AuthenticationOperationTest {
             Assert.assertFalse("authentication must fail with selected key disallowed", result.success());
         }
     }
+
+    @Test
+    public void testAuthenticateWithAgentSession() throws Exception {
+
+        byte[] challenge = "dies ist ein challenge ☭".getBytes();
+
+        KeyRepository keyRepository = KeyRepository.create(RuntimeEnvironment.getApplication());
+        Preferences.getPreferences(RuntimeEnvironment.getApplication()).getSharedPreferences().edit()
+                .putInt(Constants.Pref.SSH_AGENT_SESSION_TIMEOUT, 60).commit();
+        SshAgentSession agentSession = SshAgentSession.getInstance(RuntimeEnvironment.getApplication());
+
+        long masterKeyId = mStaticRingEcDsa.getMasterKeyId();
+        Long authSubKeyId = keyRepository.getEffectiveAuthenticationKeyId(masterKeyId);
+
+        AuthenticationData.Builder authData = AuthenticationData.builder();
+        authData.setAuthenticationMasterKeyId(masterKeyId);
+        authData.setAuthenticationSubKeyId(authSubKeyId);
+        authData.setHashAlgorithm(HashAlgorithmTags.SHA512);
+
+        AuthenticationParcel authenticationParcel = AuthenticationParcel
+                .createAuthenticationParcel(authData.build(), challenge);
+
+        try {
+            { // first signature, which unlocks the key
+                AuthenticationOperation op = new AuthenticationOperation(RuntimeEnvironment.getApplication(),
+                        keyRepository, agentSession);
+
+                CryptoInputParcel inputParcel = CryptoInputParcel.createCryptoInputParcel();
+                inputParcel = inputParcel.withPassphrase(mKeyPhrase, authSubKeyId);
+
+                AuthenticationResult result = op.execute(authData.build(), inputParcel, authenticationParcel);
+
+                Assert.assertTrue("authentication must succeed", result.success());
+                Assert.assertNotNull("key must be kept in session",
+                        agentSession.getUnlockedKey(masterKeyId, authSubKeyId));
+            }
+            { // second signature, without passphrase
+                AuthenticationOperation op = new AuthenticationOperation(RuntimeEnvironment.getApplication(),
+                        keyRepository, agentSession);
+
+                AuthenticationResult result = op.execute(authData.build(),
+                        CryptoInputParcel.createCryptoInputParcel(), authenticationParcel);
+
+                Assert.assertTrue("authentication with session key must succeed", result.success());
+            }
+            { // other apps are still subject to access control
+                AuthenticationOperation op = new AuthenticationOperation(RuntimeEnvironment.getApplication(),
+                        keyRepository, agentSession);
+
+                authData.setAllowedAuthenticationKeyIds(new ArrayList<Long>());
+                AuthenticationResult result = op.execute(authData.build(),
+                        CryptoInputParcel.createCryptoInputParcel(), authenticationParcel);
+
+                Assert.assertEquals("authentication with disallowed key must fail",
+                        AuthenticationResult.RESULT_KEY_DISALLOWED, result.getResult());
+            }
+        } finally {
+            Preferences.getPreferences(RuntimeEnvironment.getApplication()).getSharedPreferences().edit()
+                    .putInt(Constants.Pref.SSH_AGENT_SESSION_TIMEOUT, 0).commit();
+            agentSession.removeAll();
+        }
+    }
 }
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.operations;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.daos.KeyMetadataDao;
+import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
+import org.sufficientlysecure.keychain.keyimport.HkpKeyserverAddress;
+import org.sufficientlysecure.keychain.keyimport.HttpCacheValidators;
+import org.sufficientlysecure.keychain.keyimport.ParcelableKeyRing;
+import org.sufficientlysecure.keychain.operations.results.ImportKeyResult;
+import org.sufficientlysecure.keychain.operations.results.OperationResult.LogEntryParcel;
+import org.sufficientlysecure.keychain.operations.results.OperationResult.LogType;
+import org.sufficientlysecure.keychain.operations.results.OperationResult.SubLogEntryParcel;
+import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.service.ImportKeyringParcel;
+import org.sufficientlysecure.keychain.service.input.CryptoInputParcel;
+import org.sufficientlysecure.keychain.ui.util.KeyFormattingUtils;
+import org.sufficientlysecure.keychain.util.ParcelableFileCache;
+import org.sufficientlysecure.keychain.util.ParcelableProxy;
+import org.sufficientlysecure.keychain.util.ProgressScaler;
+import org.sufficientlysecure.keychain.util.TestingUtils;
+
+
+@RunWith(KeychainTestRunner.class)
+public class ImportOperationTest {
+    // more than one write batch
+    private static final int NUM_PUBLIC_KEYS = 70;
+    // in the middle of the first batch
+    private static final int BAD_KEY_POSITION = 10;
+
+    static UncachedKeyRing secretRing;
+    static List<UncachedKeyRing> publicRings = new ArrayList<>();
+
+    @BeforeClass
+    public static void setUpOnce() throws Exception {
+        Security.insertProviderAt(new BouncyCastleProvider(), 1);
+
+        secretRing = TestingUtils.createCertifyingKeyRing("secret");
+        for (int i = 0; i < NUM_PUBLIC_KEYS; i++) {
+            publicRings.add(TestingUtils.createCertifyingKeyRing("public " + i).extractPublicKeyRing());
+        }
+    }
+
+    @Test
+    public void testImportFromFileCache() throws Exception {
+        KeyWritableRepository keyRepository = KeyWritableRepository.create(RuntimeEnvironment.getApplication());
+
+        // one key is already known, so it is merged with the stored version
+        UncachedKeyRing existingRing = publicRings.get(NUM_PUBLIC_KEYS / 2);
+        Assert.assertTrue(keyRepository.savePublicKeyRing(existingRing).success());
+
+        ArrayList<ParcelableKeyRing> entries = new ArrayList<>();
+        for (UncachedKeyRing ring : publicRings) {
+            entries.add(ParcelableKeyRing.createFromEncodedBytes(ring.getEncoded()));
+        }
+        entries.add(BAD_KEY_POSITION, ParcelableKeyRing.createFromEncodedBytes(new byte[] { 1, 2, 3 }));
+        entries.add(ParcelableKeyRing.createFromEncodedBytes(secretRing.getEncoded()));
+
+        ParcelableFileCache<ParcelableKeyRing> cache =
+                new ParcelableFileCache<>(RuntimeEnvironment.getApplication(), ImportOperation.CACHE_FILE_NAME);
+        cache.writeCache(entries.size(), entries.iterator());
+
+        ImportOperation op = new ImportOperation(RuntimeEnvironment.getApplication(), keyRepository,
+                new ProgressScaler());
+        ImportKeyResult result = op.execute(ImportKeyringParcel.createFromFileCache(),
+                CryptoInputParcel.createCryptoInputParcel());
+
+        Assert.assertTrue("import must succeed", result.success());
+        // all public keys except the known one, plus the secret key
+        Assert.assertEquals("all new keys must be imported", NUM_PUBLIC_KEYS - 1 + 1, result.mNewKeys);
+        Assert.assertEquals("known key must be updated", 1, result.mUpdatedKeys);
+        Assert.assertEquals("garbage must count as bad key", 1, result.mBadKeys);
+        Assert.assertEquals("secret key must be counted", 1, result.mSecret);
+
+        ArrayList<LogEntryParcel> keyEntries = new ArrayList<>();
+        for (LogEntryParcel entry : result.getLog()) {
+            if (entry.mIndent == 2) {
+                keyEntries.add(entry);
+            }
+        }
+        Assert.assertEquals("each key must have one log entry", entries.size(), keyEntries.size());
+        Assert.assertEquals("bad key must be logged in input order",
+                LogType.MSG_IMPORT_FETCH_ERROR, keyEntries.get(BAD_KEY_POSITION).mType);
+        Assert.assertTrue("key results must keep their sub results",
+                keyEntries.get(0) instanceof SubLogEntryParcel);
+
+        long[] importedMasterKeyIds = result.getImportedMasterKeyIds();
+        Assert.assertEquals(NUM_PUBLIC_KEYS + 1, importedMasterKeyIds.length);
+        for (int i = 0; i < NUM_PUBLIC_KEYS; i++) {
+            Assert.assertEquals("keys must be imported in input order",
+                    publicRings.get(i).getMasterKeyId(), importedMasterKeyIds[i]);
+            Assert.assertNotNull("key must be in database",
+                    keyRepository.getUnifiedKeyInfo(publicRings.get(i).getMasterKeyId()));
+        }
+        Assert.assertTrue("secret key must be in database",
+                keyRepository.getUnifiedKeyInfo(secretRing.getMasterKeyId()).has_any_secret());
+    }
+
+    @Test
+    public void testConditionalKeyserverRefresh() throws Exception {
+        KeyWritableRepository keyRepository = KeyWritableRepository.create(RuntimeEnvironment.getApplication());
+        UncachedKeyRing ring = publicRings.get(0);
+
+        MockWebServer server = startConditionalKeyserver(ring);
+        try {
+            ImportKeyringParcel refresh = ImportKeyringParcel.createForKeySync(
+                    Collections.singletonList(ParcelableKeyRing.createFromReference(ring.getFingerprint(), null, null)),
+                    HkpKeyserverAddress.createFromUri(server.url("/").toString()), false);
+            CryptoInputParcel cryptoInput = CryptoInputParcel.createCryptoInputParcel(ParcelableProxy.getForNoProxy());
+
+            ImportKeyResult result = new ImportOperation(RuntimeEnvironment.getApplication(), keyRepository,
+                    new ProgressScaler()).execute(refresh, cryptoInput);
+            Assert.assertTrue("initial download must succeed", result.success());
+            Assert.assertEquals(1, result.mNewKeys);
+            Assert.assertNull("initial download must not be conditional",
+                    server.takeRequest().getHeader("If-None-Match"));
+
+            result = new ImportOperation(RuntimeEnvironment.getApplication(), keyRepository,
+                    new ProgressScaler()).execute(refresh, cryptoInput);
+            Assert.assertTrue("refresh must succeed", result.success());
+            Assert.assertEquals(1, result.mUpdatedKeys);
+            Assert.assertEquals("refresh must be conditional", "\"v1\"",
+                    server.takeRequest().getHeader("If-None-Match"));
+            Assert.assertTrue("unchanged key must not be merged",
+                    result.getLog().containsType(LogType.MSG_IMPORT_FETCH_KEYSERVER_NOT_MODIFIED));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testConditionalKeyserverRefreshAfterDelete() throws Exception {
+        KeyWritableRepository keyRepository = KeyWritableRepository.create(RuntimeEnvironment.getApplication());
+        UncachedKeyRing ring = publicRings.get(1);
+
+        MockWebServer server = startConditionalKeyserver(ring);
+        try {
+            HkpKeyserverAddress keyserver = HkpKeyserverAddress.createFromUri(server.url("/").toString());
+            ImportKeyringParcel refresh = ImportKeyringParcel.createForKeySync(
+                    Collections.singletonList(ParcelableKeyRing.createFromReference(ring.getFingerprint(), null, null)),
+                    keyserver, false);
+            CryptoInputParcel cryptoInput = CryptoInputParcel.createCryptoInputParcel(ParcelableProxy.getForNoProxy());
+
+            ImportKeyResult result = new ImportOperation(RuntimeEnvironment.getApplication(), keyRepository,
+                    new ProgressScaler()).execute(refresh, cryptoInput);
+            Assert.assertEquals(1, result.mNewKeys);
+            server.takeRequest();
+
+            Assert.assertTrue(keyRepository.deleteKeyRing(ring.getMasterKeyId()));
+            Assert.assertNull("validators must be dropped along with the key",
+                    KeyMetadataDao.create(RuntimeEnvironment.getApplication())
+                            .getHttpCacheValidators(ring.getMasterKeyId(), keyserver.getUrl()));
+
+            result = new ImportOperation(RuntimeEnvironment.getApplication(), keyRepository,
+                    new ProgressScaler()).execute(refresh, cryptoInput);
+            Assert.assertTrue("download must succeed", result.success());
+            Assert.assertEquals("deleted key must be imported again", 1, result.mNewKeys);
+            Assert.assertNull("download of a deleted key must not be conditional",
+                    server.takeRequest().getHeader("If-None-Match"));
+            Assert.assertNotNull("key must be in database", keyRepository.getUnifiedKeyInfo(ring.getMasterKeyId()));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchedKeyserverDownload() throws Exception {
+        MockWebServer server = startKeyserver(false);
+        try {
+            ImportKeyResult result = importFromKeyserver(server, 25);
+            Assert.assertTrue("download must succeed", result.success());
+            Assert.assertEquals(25, result.mNewKeys);
+            Assert.assertEquals("keys must be downloaded in batches", 2, server.getRequestCount());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchedKeyserverDownloadFallback() throws Exception {
+        MockWebServer server = startKeyserver(true);
+        try {
+            ImportKeyResult result = importFromKeyserver(server, 5);
+            Assert.assertTrue("download must succeed", result.success());
+            Assert.assertEquals("keys missing from batch must be downloaded individually", 5, result.mNewKeys);
+            Assert.assertEquals(1 + 4, server.getRequestCount());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchedKeyserverDownloadAfterServerError() throws Exception {
+        AtomicBoolean failMultipleGet = new AtomicBoolean(true);
+        MockWebServer server = startKeyserver(false, failMultipleGet);
+        try {
+            ImportKeyResult result = importFromKeyserver(server, 5);
+            Assert.assertTrue("download must succeed", result.success());
+            Assert.assertEquals("keys must be downloaded individually", 5, result.mNewKeys);
+            Assert.assertEquals(1 + 5, server.getRequestCount());
+
+            // a temporary error must not keep the keyserver from batched downloads
+            failMultipleGet.set(false);
+            result = importFromKeyserver(server, 5);
+            Assert.assertTrue("download must succeed", result.success());
+            Assert.assertEquals(5, result.mUpdatedKeys);
+            Assert.assertEquals(1 + 5 + 1, server.getRequestCount());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeySyncKeepsKeysWithValidatorsOutOfBatches() throws Exception {
+        KeyWritableRepository keyRepository = KeyWritableRepository.create(RuntimeEnvironment.getApplication());
+        UncachedKeyRing storedRing = publicRings.get(2);
+
+        MockWebServer server = startKeyserver(false);
+        try {
+            HkpKeyserverAddress keyserver = HkpKeyserverAddress.createFromUri(server.url("/").toString());
+            CryptoInputParcel cryptoInput = CryptoInputParcel.createCryptoInputParcel(ParcelableProxy.getForNoProxy());
+            Assert.assertTrue(keyRepository.savePublicKeyRing(storedRing).success());
+            KeyMetadataDao.create(RuntimeEnvironment.getApplication()).saveHttpCacheValidators(
+                    storedRing.getMasterKeyId(), keyserver.getUrl(), HttpCacheValidators.create("\"v1\"", null));
+
+            ArrayList<ParcelableKeyRing> entries = new ArrayList<>();
+            for (int i = 2; i < 5; i++) {
+                entries.add(ParcelableKeyRing.createFromReference(publicRings.get(i).getFingerprint(), null, null));
+            }
+            ImportKeyResult result = new ImportOperation(RuntimeEnvironment.getApplication(), keyRepository,
+                    new ProgressScaler()).execute(ImportKeyringParcel.createForKeySync(entries, keyserver, false),
+                    cryptoInput);
+            Assert.assertTrue("sync must succeed", result.success());
+            Assert.assertEquals(2, result.mNewKeys);
+
+            Assert.assertEquals("stored key and batch must be downloaded separately", 2, server.getRequestCount());
+            int conditionalRequests = 0;
+            for (int i = 0; i < 2; i++) {
+                RecordedRequest request = server.takeRequest();
+                List<String> searches = request.getRequestUrl().queryParameterValues("search");
+                if (request.getHeader("If-None-Match") != null) {
+                    Assert.assertEquals("\"v1\"", request.getHeader("If-None-Match"));
+                    Assert.assertEquals("conditional request must be for the stored key only", 1, searches.size());
+                    conditionalRequests += 1;
+                } else {
+                    Assert.assertEquals("keys without validators must be batched", 2, searches.size());
+                }
+            }
+            Assert.assertEquals("stored key must be refreshed with a conditional request", 1, conditionalRequests);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /** Starts a keyserver for a single key, which answers a request with its ETag as not modified. */
+    private static MockWebServer startConditionalKeyserver(UncachedKeyRing ring) throws Exception {
+        ByteArrayOutputStream armoredRing = new ByteArrayOutputStream();
+        ring.encodeArmored(armoredRing, null);
+
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+                    return new MockResponse().setResponseCode(304);
+                }
+                return new MockResponse()
+                        .setHeader("ETag", "\"v1\"")
+                        .setBody(armoredRing.toString());
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * Starts a keyserver for publicRings. With onlyFirstKey, it answers a request for several keys
+     * like a server which doesn't support those, with the first of them.
+     */
+    private static MockWebServer startKeyserver(boolean onlyFirstKey) throws Exception {
+        return startKeyserver(onlyFirstKey, new AtomicBoolean(false));
+    }
+
+    /** As above, but while failMultipleGet is set, requests for several keys fail with a server error. */
+    private static MockWebServer startKeyserver(boolean onlyFirstKey, AtomicBoolean failMultipleGet)
+            throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                List<String> searches = request.getRequestUrl().queryParameterValues("search");
+                if (searches.size() > 1 && failMultipleGet.get()) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                ByteArrayOutputStream armoredRings = new ByteArrayOutputStream();
+                for (UncachedKeyRing ring : publicRings) {
+                    String search = "0x" + KeyFormattingUtils.convertFingerprintToHex(ring.getFingerprint());
+                    boolean requested = onlyFirstKey ? searches.get(0).equals(search) : searches.contains(search);
+                    if (requested) {
+                        try {
+                            ring.encodeArmored(armoredRings, null);
+                        } catch (IOException e) {
+                            throw new AssertionError(e);
+                        }
+                    }
+                }
+                if (armoredRings.size() == 0) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                return new MockResponse().setBody(armoredRings.toString());
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static ImportKeyResult importFromKeyserver(MockWebServer server, int numKeys) {
+        ArrayList<ParcelableKeyRing> entries = new ArrayList<>();
+        for (int i = 0; i < numKeys; i++) {
+            entries.add(ParcelableKeyRing.createFromReference(publicRings.get(i).getFingerprint(), null, null));
+        }
+        ImportKeyringParcel download = ImportKeyringParcel.createImportKeyringParcel(
+                entries, HkpKeyserverAddress.createFromUri(server.url("/").toString()));
+
+        return new ImportOperation(RuntimeEnvironment.getApplication(),
+                KeyWritableRepository.create(RuntimeEnvironment.getApplication()), new ProgressScaler())
+                .execute(download, CryptoInputParcel.createCryptoInputParcel(ParcelableProxy.getForNoProxy()));
+    }
+}
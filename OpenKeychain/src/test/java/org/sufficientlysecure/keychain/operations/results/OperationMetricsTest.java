@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.operations.results;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Test;
+import org.sufficientlysecure.keychain.operations.results.OperationMetrics.Stage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OperationMetricsTest {
+
+    @Test
+    public void nestedStagesAreExclusive() throws Exception {
+        OperationMetrics metrics = new OperationMetrics("test");
+
+        long outerStart = metrics.start(Stage.SYMMETRIC_CIPHER);
+        long innerStart = metrics.start(Stage.INPUT_IO);
+        Thread.sleep(50);
+        metrics.stop(Stage.INPUT_IO, innerStart);
+        metrics.stop(Stage.SYMMETRIC_CIPHER, outerStart);
+
+        assertTrue(metrics.getTimeNanos(Stage.INPUT_IO) >= 50_000_000L);
+        assertTrue("time of inner stage must not be counted for outer stage",
+                metrics.getTimeNanos(Stage.SYMMETRIC_CIPHER) < 50_000_000L);
+    }
+
+    @Test
+    public void measuredStreamsCountBytes() throws Exception {
+        OperationMetrics metrics = new OperationMetrics("test");
+        byte[] data = new byte[10000];
+
+        InputStream in = metrics.measure(
+                metrics.measure(new ByteArrayInputStream(data), Stage.INPUT_IO), Stage.ARMOR);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        OutputStream out = metrics.measure(sink, Stage.OUTPUT_IO);
+
+        byte[] buffer = new byte[4096];
+        int length;
+        while ((length = in.read(buffer)) > 0) {
+            out.write(buffer, 0, length);
+        }
+        out.write(0);
+        out.close();
+
+        assertEquals(data.length, metrics.getBytes(Stage.INPUT_IO));
+        assertEquals(data.length, metrics.getBytes(Stage.ARMOR));
+        assertEquals(data.length + 1, metrics.getBytes(Stage.OUTPUT_IO));
+        assertEquals(data.length + 1, sink.size());
+        assertEquals(0, metrics.getBytes(Stage.SESSION_KEY));
+    }
+
+    @Test
+    public void singleByteReadsAreCountedButNotTimed() throws Exception {
+        OperationMetrics metrics = new OperationMetrics("test");
+        InputStream in = metrics.measure(new ByteArrayInputStream(new byte[100]), Stage.INPUT_IO);
+
+        while (in.read() >= 0) {
+            // read byte by byte
+        }
+
+        assertEquals(100, metrics.getBytes(Stage.INPUT_IO));
+        assertEquals(0, metrics.getTimeNanos(Stage.INPUT_IO));
+    }
+
+}
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 
+import androidx.collection.LongSparseArray;
 import org.bouncycastle.bcpg.BCPGInputStream;
 import org.bouncycastle.bcpg.Packet;
 import org.bouncycastle.bcpg.PacketTags;
@@ -400,6 +401,18 @@ public class PgpEncryptDecryptTest {
             Assert.assertEquals("filesize must be correct",
                     out.toByteArray().length, metadata.getOriginalSize());
 
+            // in memory, the signature is verified from the returned output instead of a copy
+            PgpDecryptVerifyInputParcel bytesInput = PgpDecryptVerifyInputParcel.builder()
+                    .setInputBytes(ciphertext)
+                    .build();
+            DecryptVerifyResult bytesResult = op.execute(bytesInput, CryptoInputParcel.createCryptoInputParcel());
+
+            Assert.assertTrue("verification must succeed", bytesResult.success());
+            Assert.assertEquals("signatureResult should be RESULT_VALID_CONFIRMED",
+                    OpenPgpSignatureResult.RESULT_VALID_KEY_CONFIRMED, bytesResult.getSignatureResult().getResult());
+            Assert.assertArrayEquals("output in memory must equal streamed output",
+                    out.toByteArray(), bytesResult.getOutputBytes());
+
         }
 
     }
@@ -1165,6 +1178,21 @@ public class PgpEncryptDecryptTest {
                 }
                 return passphrase;
             }
+
+            @Override
+            public LongSparseArray<Passphrase> getCachedPassphrases(long[] masterKeyIds, long[] subKeyIds) {
+                LongSparseArray<Passphrase> result = new LongSparseArray<>();
+                boolean expectedKeyRequested = false;
+                for (int i = 0; i < subKeyIds.length; i++) {
+                    // only the expected key has a cached passphrase
+                    boolean isExpectedKey = (checkMasterKeyId == null || checkMasterKeyId == masterKeyIds[i])
+                            && (checkSubKeyId == null || checkSubKeyId == subKeyIds[i]);
+                    expectedKeyRequested |= isExpectedKey;
+                    result.put(subKeyIds[i], isExpectedKey ? passphrase : null);
+                }
+                Assert.assertTrue("passphrases should be requested for expected key", expectedKeyRequested);
+                return result;
+            }
         };
     }
 
@@ -31,6 +31,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.AssertionFailedError;
 import org.bouncycastle.bcpg.BCPGInputStream;
@@ -56,6 +57,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.shadows.ShadowLog;
 import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.R;
+import org.sufficientlysecure.keychain.operations.results.OperationResult.LogEntryParcel;
 import org.sufficientlysecure.keychain.operations.results.OperationResult.LogType;
 import org.sufficientlysecure.keychain.operations.results.OperationResult.OperationLog;
 import org.sufficientlysecure.keychain.operations.results.PgpEditKeyResult;
@@ -278,6 +281,56 @@ public class PgpKeyOperationTest {
 
     }
 
+    @Test
+    public void testCreateWithPooledKeyPair() throws Exception {
+        // the singleton may still be busy with key pairs wanted by an earlier test
+        KeyPairPool.resetInstance();
+        KeyPairPool keyPairPool = KeyPairPool.getInstance();
+        try {
+            keyPairPool.prepareRsaKeyPairs(2048, 1);
+            waitForPooledKeyPair(keyPairPool, 2048);
+            assertEquals("key pair should have been generated in the background",
+                    1, keyPairPool.getPooledRsaKeyPairCount(2048));
+
+            SaveKeyringParcel.Builder builder = SaveKeyringParcel.buildNewKeyringParcel();
+            builder.addSubkeyAdd(SubkeyAdd.createSubkeyAdd(
+                    Algorithm.RSA, 2048, null, KeyFlags.CERTIFY_OTHER | KeyFlags.SIGN_DATA, 0L));
+            builder.addUserId("pool");
+            UncachedKeyRing pooledRing = assertCreateSuccess("creating ring with pooled key pair must succeed",
+                    builder.build());
+
+            assertEquals("pooled key pair should have been taken",
+                    0, keyPairPool.getPooledRsaKeyPairCount(2048));
+            assertEquals("master key must have the requested key size",
+                    2048, (int) pooledRing.getPublicKey().getBitStrength());
+        } finally {
+            KeyPairPool.resetInstance();
+        }
+    }
+
+    @Test
+    public void testClearKeyPairPool() throws Exception {
+        KeyPairPool.resetInstance();
+        KeyPairPool keyPairPool = KeyPairPool.getInstance();
+        try {
+            keyPairPool.prepareRsaKeyPairs(2048, 1);
+            waitForPooledKeyPair(keyPairPool, 2048);
+
+            keyPairPool.clear();
+
+            assertEquals("cleared pool must be empty", 0, keyPairPool.getPooledRsaKeyPairCount(2048));
+            assertNull("cleared pool must not hand out key pairs", keyPairPool.takeRsaKeyPair(2048));
+        } finally {
+            KeyPairPool.resetInstance();
+        }
+    }
+
+    private static void waitForPooledKeyPair(KeyPairPool keyPairPool, int keySize) throws InterruptedException {
+        for (int i = 0; i < 600 && keyPairPool.getPooledRsaKeyPairCount(keySize) == 0; i++) {
+            Thread.sleep(100);
+        }
+    }
+
     @Test
     public void testCreatedKey() throws Exception {
 
@@ -443,6 +496,74 @@ public class PgpKeyOperationTest {
 
     }
 
+    @Test
+    public void testSubkeyAddCancelled() throws Exception {
+        builder.addSubkeyAdd(SubkeyAdd.createSubkeyAdd(
+                Algorithm.ECDSA, 0, SaveKeyringParcel.Curve.NIST_P256, KeyFlags.SIGN_DATA, 0L));
+        builder.addSubkeyAdd(SubkeyAdd.createSubkeyAdd(
+                Algorithm.ECDH, 0, SaveKeyringParcel.Curve.NIST_P256, KeyFlags.ENCRYPT_COMMS, 0L));
+        SaveKeyringParcel parcel = builder.build();
+        CanonicalizedSecretKeyRing secretRing =
+                new CanonicalizedSecretKeyRing(ring.getEncoded(), VerificationStatus.UNVERIFIED);
+
+        { // cancelled before the operation started
+            PgpKeyOperation cancelledOp = new PgpKeyOperation(null, new AtomicBoolean(true));
+            PgpEditKeyResult result = cancelledOp.modifySecretKeyRing(secretRing, cryptoInput, parcel);
+
+            assertEquals("operation must be cancelled", PgpEditKeyResult.RESULT_CANCELLED, result.getResult());
+            assertNull("cancelled operation must not return a ring", result.getRing());
+        }
+
+        { // cancelled while the subkeys are generated in parallel
+            AtomicBoolean cancelled = new AtomicBoolean(false);
+            Progressable cancelOnGeneration = new Progressable() {
+                @Override
+                public void setProgress(Integer resourceId, int current, int total) {
+                    if (resourceId != null && resourceId == R.string.progress_modify_subkeyadd) {
+                        cancelled.set(true);
+                    }
+                }
+
+                @Override
+                public void setPreventCancel() {
+                }
+            };
+            PgpKeyOperation cancellingOp = new PgpKeyOperation(cancelOnGeneration, cancelled);
+            cancellingOp.setMaxGenerationThreads(2);
+            PgpEditKeyResult result = cancellingOp.modifySecretKeyRing(secretRing, cryptoInput, parcel);
+
+            assertEquals("operation must be cancelled", PgpEditKeyResult.RESULT_CANCELLED, result.getResult());
+            assertNull("cancelled operation must not return a ring", result.getRing());
+            Assert.assertTrue("cancel must be logged", result.getLog().containsType(LogType.MSG_OPERATION_CANCELLED));
+            Assert.assertFalse("no subkey must have been bound",
+                    result.getLog().containsType(LogType.MSG_MF_SUBKEY_NEW_ID));
+            Assert.assertFalse("cancel must not interrupt the calling thread", Thread.currentThread().isInterrupted());
+        }
+    }
+
+    @Test
+    public void testSubkeyAddLogOrder() throws Exception {
+        builder.addSubkeyAdd(SubkeyAdd.createSubkeyAdd(
+                Algorithm.ECDSA, 0, SaveKeyringParcel.Curve.NIST_P256, KeyFlags.SIGN_DATA, 0L));
+        builder.addSubkeyAdd(SubkeyAdd.createSubkeyAdd(
+                Algorithm.ECDH, 0, SaveKeyringParcel.Curve.NIST_P256, KeyFlags.ENCRYPT_COMMS, 0L));
+        CanonicalizedSecretKeyRing secretRing =
+                new CanonicalizedSecretKeyRing(ring.getEncoded(), VerificationStatus.UNVERIFIED);
+
+        PgpEditKeyResult result = op.modifySecretKeyRing(secretRing, cryptoInput, builder.build());
+        Assert.assertTrue("adding two subkeys must succeed", result.success());
+
+        // each new subkey is logged together with its own key id, even though they are generated at once
+        ArrayList<LogType> subkeyEntries = new ArrayList<>();
+        for (LogEntryParcel entry : result.getLog()) {
+            if (entry.mType == LogType.MSG_MF_SUBKEY_NEW || entry.mType == LogType.MSG_MF_SUBKEY_NEW_ID) {
+                subkeyEntries.add(entry.mType);
+            }
+        }
+        assertEquals(Arrays.asList(LogType.MSG_MF_SUBKEY_NEW, LogType.MSG_MF_SUBKEY_NEW_ID,
+                LogType.MSG_MF_SUBKEY_NEW, LogType.MSG_MF_SUBKEY_NEW_ID), subkeyEntries);
+    }
+
     @Test
     public void testSubkeyModify() throws Exception {
 
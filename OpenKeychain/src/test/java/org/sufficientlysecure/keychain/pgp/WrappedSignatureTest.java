@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.pgp;
+
+
+import java.security.Security;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.shadows.ShadowLog;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.util.TestingUtils;
+
+
+@RunWith(KeychainTestRunner.class)
+public class WrappedSignatureTest {
+
+    @BeforeClass
+    public static void setUpOnce() {
+        Security.insertProviderAt(new BouncyCastleProvider(), 1);
+        ShadowLog.stream = System.out;
+    }
+
+    @Test
+    public void testCachedResultIsNotUsedForOtherSigner() throws Exception {
+        UncachedPublicKey signerKey = TestingUtils.createCertifyingKeyRing("signer").getPublicKey();
+        UncachedPublicKey otherKey = TestingUtils.createCertifyingKeyRing("other").getPublicKey();
+        byte[] rawUserId = signerKey.getUnorderedRawUserIds().get(0);
+
+        WrappedSignature cert = signerKey.getSignaturesForRawId(rawUserId).next();
+        cert.init(signerKey);
+        Assert.assertTrue("self certification must verify", cert.verifySignature(signerKey, rawUserId));
+
+        // the same signature over the same data, but checked against another key, as for a
+        // third-party certification by a different key with the same key id
+        WrappedSignature sameCert = signerKey.getSignaturesForRawId(rawUserId).next();
+        sameCert.init(otherKey);
+        Assert.assertFalse("result for one signer must not be reused for another",
+                sameCert.verifySignature(signerKey, rawUserId));
+
+        sameCert.init(signerKey);
+        Assert.assertTrue("result for the right signer must still hold",
+                sameCert.verifySignature(signerKey, rawUserId));
+    }
+}
@@ -27,6 +27,7 @@ import java.net.URL;
 import java.security.Security;
 import java.util.ArrayList;
 
+import androidx.collection.LongSparseArray;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -242,6 +243,18 @@ public class InteropTest {
                         masterKeyId, decrypt.getMasterKeyId());
                 return passphrase;
             }
+
+            @Override
+            public LongSparseArray<Passphrase> getCachedPassphrases(long[] masterKeyIds, long[] subKeyIds) {
+                // only the secret key is available, like in the real cache
+                LongSparseArray<Passphrase> result = new LongSparseArray<>();
+                for (int i = 0; i < subKeyIds.length; i++) {
+                    if (masterKeyIds[i] == decrypt.getMasterKeyId()) {
+                        result.put(subKeyIds[i], passphrase);
+                    }
+                }
+                return result;
+            }
         };
     }
 }
@@ -19,7 +19,10 @@
 package org.sufficientlysecure.keychain.provider;
 
 
+import android.content.Context;
+
 import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.util.encoders.Hex;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -27,9 +30,14 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.shadows.ShadowLog;
+import org.sufficientlysecure.keychain.KeychainDatabase;
 import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.daos.ApiAppDao;
+import org.sufficientlysecure.keychain.daos.AutocryptPeerDao;
+import org.sufficientlysecure.keychain.daos.KeyMetadataDao;
 import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
 import org.sufficientlysecure.keychain.model.UnifiedKeyInfo;
+import org.sufficientlysecure.keychain.operations.results.OperationResult.LogType;
 import org.sufficientlysecure.keychain.operations.results.OperationResult.OperationLog;
 import org.sufficientlysecure.keychain.operations.results.SaveKeyringResult;
 import org.sufficientlysecure.keychain.pgp.CanonicalizedPublicKeyRing;
@@ -37,10 +45,18 @@ import org.sufficientlysecure.keychain.pgp.CanonicalizedSecretKey;
 import org.sufficientlysecure.keychain.pgp.CanonicalizedSecretKey.SecretKeyType;
 import org.sufficientlysecure.keychain.pgp.CanonicalizedSecretKeyRing;
 import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.Algorithm;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.SubkeyAdd;
 import org.sufficientlysecure.keychain.util.IterableIterator;
+import org.sufficientlysecure.keychain.util.Passphrase;
+import org.sufficientlysecure.keychain.util.TestingUtils;
 
+import java.security.Security;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 
 @SuppressWarnings("WeakerAccess")
 @RunWith(KeychainTestRunner.class)
@@ -51,6 +67,7 @@ public class KeyRepositorySaveTest {
 
     @BeforeClass
     public static void setUpOnce() {
+        Security.insertProviderAt(new BouncyCastleProvider(), 1);
         ShadowLog.stream = System.out;
     }
 
@@ -254,6 +271,150 @@ public class KeyRepositorySaveTest {
 
     }
 
+    @Test
+    public void testUnifiedKeyInfoIsKeptUpToDate() throws Exception {
+        UncachedKeyRing first = createRing("Alice <alice@example.com>");
+        UncachedKeyRing second = createRing("alice <ALICE@example.com>");
+        long firstId = first.getMasterKeyId();
+        long secondId = second.getMasterKeyId();
+
+        Assert.assertTrue(mDatabaseInteractor.savePublicKeyRing(first.extractPublicKeyRing()).success());
+        UnifiedKeyInfo firstInfo = mDatabaseInteractor.getUnifiedKeyInfo(firstId);
+        Assert.assertEquals("alice@example.com", firstInfo.email());
+        Assert.assertFalse("single key must not be a duplicate", firstInfo.has_duplicate());
+        Assert.assertFalse("public key must not have a secret", firstInfo.has_any_secret());
+
+        Assert.assertTrue(mDatabaseInteractor.saveSecretKeyRing(second).success());
+        UnifiedKeyInfo secondInfo = mDatabaseInteractor.getUnifiedKeyInfo(secondId);
+        Assert.assertTrue("secret key must have a secret", secondInfo.has_any_secret());
+        Assert.assertTrue("new key must be a duplicate", secondInfo.has_duplicate());
+        Assert.assertTrue("existing key must become a duplicate",
+                mDatabaseInteractor.getUnifiedKeyInfo(firstId).has_duplicate());
+
+        Assert.assertTrue(mDatabaseInteractor.deleteKeyRing(secondId));
+        Assert.assertNull("deleted key must be gone", mDatabaseInteractor.getUnifiedKeyInfo(secondId));
+        Assert.assertFalse("remaining key must no longer be a duplicate",
+                mDatabaseInteractor.getUnifiedKeyInfo(firstId).has_duplicate());
+    }
+
+    @Test
+    public void testReimportOfIdenticalDataSkipsMerge() throws Exception {
+        UncachedKeyRing pub = createRing("Bob <bob@example.com>").extractPublicKeyRing();
+        Context context = RuntimeEnvironment.getApplication();
+
+        SaveKeyringResult result = KeyWritableRepository.create(context).savePublicKeyRing(pub);
+        Assert.assertTrue("initial import must succeed", result.success());
+
+        // renewing the keyserver metadata must not lose the digest
+        KeyMetadataDao.create(context).renewKeyLastUpdatedTime(pub.getMasterKeyId(), true);
+
+        result = KeyWritableRepository.create(context).savePublicKeyRing(pub);
+        Assert.assertTrue("re-import must succeed", result.success());
+        Assert.assertTrue("re-import must be identical",
+                result.getLog().containsType(LogType.MSG_IP_SUCCESS_IDENTICAL));
+        Assert.assertFalse("identical data must not be merged again",
+                result.getLog().containsType(LogType.MSG_IP_MERGE_PUBLIC));
+        Assert.assertEquals(Long.valueOf(pub.getMasterKeyId()), result.savedMasterKeyId);
+
+        result = KeyWritableRepository.create(context).savePublicKeyRing(pub, true);
+        Assert.assertTrue("forced refresh must merge", result.getLog().containsType(LogType.MSG_IP_MERGE_PUBLIC));
+    }
+
+    @Test
+    public void testSecretKeyTypes() throws Exception {
+        UncachedKeyRing withPassphrase = createEncryptingRing("Carol <carol@example.com>", TestingUtils.testPassphrase0);
+        UncachedKeyRing withoutPassphrase = createEncryptingRing("Dave <dave@example.com>", new Passphrase());
+
+        int trialDecryptions = CanonicalizedSecretKey.getTrialDecryptionCount();
+        Assert.assertTrue(mDatabaseInteractor.saveSecretKeyRing(withPassphrase).success());
+        Assert.assertEquals("each encrypted key must be tried once",
+                trialDecryptions + 2, CanonicalizedSecretKey.getTrialDecryptionCount());
+
+        trialDecryptions = CanonicalizedSecretKey.getTrialDecryptionCount();
+        Assert.assertTrue(mDatabaseInteractor.saveSecretKeyRing(withoutPassphrase).success());
+        Assert.assertEquals("unencrypted keys must be classified without trial",
+                trialDecryptions, CanonicalizedSecretKey.getTrialDecryptionCount());
+
+        trialDecryptions = CanonicalizedSecretKey.getTrialDecryptionCount();
+        for (CanonicalizedSecretKey key : mDatabaseInteractor.getCanonicalizedSecretKeyRing(
+                withPassphrase.getMasterKeyId()).secretKeyIterator()) {
+            Assert.assertEquals("all subkeys must have a passphrase",
+                    SecretKeyType.PASSPHRASE, mDatabaseInteractor.getSecretKeyType(key.getKeyId()));
+            Assert.assertEquals("cached type must match",
+                    SecretKeyType.PASSPHRASE, key.getSecretKeyTypeSuperExpensive());
+        }
+        Assert.assertEquals("classified secret key packets must not be tried again",
+                trialDecryptions, CanonicalizedSecretKey.getTrialDecryptionCount());
+
+        for (CanonicalizedSecretKey key : mDatabaseInteractor.getCanonicalizedSecretKeyRing(
+                withoutPassphrase.getMasterKeyId()).secretKeyIterator()) {
+            Assert.assertEquals("all subkeys must have an empty passphrase",
+                    SecretKeyType.PASSPHRASE_EMPTY, mDatabaseInteractor.getSecretKeyType(key.getKeyId()));
+        }
+
+        // saving the same secret key packets again must give the same result, without trial
+        trialDecryptions = CanonicalizedSecretKey.getTrialDecryptionCount();
+        Assert.assertTrue(mDatabaseInteractor.saveSecretKeyRing(withPassphrase).success());
+        Assert.assertEquals(SecretKeyType.PASSPHRASE,
+                mDatabaseInteractor.getSecretKeyType(withPassphrase.getMasterKeyId()));
+        Assert.assertEquals("known secret key packets must not be tried again",
+                trialDecryptions, CanonicalizedSecretKey.getTrialDecryptionCount());
+    }
+
+    @Test
+    public void testUnifiedKeyInfoByMailAddress() throws Exception {
+        UncachedKeyRing ring = createRing("Dave <dave@example.com>").extractPublicKeyRing();
+        UncachedKeyRing otherRing = createRing("Other <other.dave@example.com>").extractPublicKeyRing();
+        Assert.assertTrue(mDatabaseInteractor.savePublicKeyRing(ring).success());
+        Assert.assertTrue(mDatabaseInteractor.savePublicKeyRing(otherRing).success());
+
+        List<UnifiedKeyInfo> result = mDatabaseInteractor.getUnifiedKeyInfosByMailAddress("Dave@Example.com");
+        Assert.assertEquals("only the key with that exact address must be found, ignoring case", 1, result.size());
+        Assert.assertEquals(ring.getMasterKeyId(), result.get(0).master_key_id());
+    }
+
+    @Test
+    public void testUnifiedKeyInfoRefreshRemovesStaleRow() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        UncachedKeyRing ring = createRing("Alice <alice@example.com>");
+        long masterKeyId = ring.getMasterKeyId();
+        Assert.assertTrue(mDatabaseInteractor.savePublicKeyRing(ring.extractPublicKeyRing()).success());
+        Assert.assertNotNull(mDatabaseInteractor.getUnifiedKeyInfo(masterKeyId));
+
+        // without user ids, the key has nothing to select its unified info from
+        KeychainDatabase.getInstance(context).getWritableDatabase()
+                .execSQL("DELETE FROM user_packets WHERE master_key_id = " + masterKeyId);
+        ApiAppDao.getInstance(context).insertApiApp("org.example.app", new byte[] { 1, 2, 3 });
+        AutocryptPeerDao.getInstance(context).updateKey("org.example.app", "alice@example.com", new Date(),
+                masterKeyId, false);
+
+        Assert.assertNull("stale unified key info must be removed", mDatabaseInteractor.getUnifiedKeyInfo(masterKeyId));
+    }
+
+    @Test
+    public void testRollbackBatchTransaction() throws Exception {
+        UncachedKeyRing ring = createRing("Erin <erin@example.com>").extractPublicKeyRing();
+
+        mDatabaseInteractor.beginBatchTransaction();
+        Assert.assertTrue(mDatabaseInteractor.savePublicKeyRing(ring).success());
+        mDatabaseInteractor.rollbackBatchTransaction();
+
+        Assert.assertNull("rolled back key must not be saved",
+                mDatabaseInteractor.getUnifiedKeyInfo(ring.getMasterKeyId()));
+    }
+
+    private static UncachedKeyRing createRing(String userId) {
+        return TestingUtils.createCertifyingKeyRing(userId);
+    }
+
+    private static UncachedKeyRing createEncryptingRing(String userId, Passphrase passphrase) {
+        return TestingUtils.createKeyRing(userId, passphrase,
+                SubkeyAdd.createSubkeyAdd(
+                        Algorithm.ECDSA, 0, SaveKeyringParcel.Curve.NIST_P256, KeyFlags.CERTIFY_OTHER, 0L),
+                SubkeyAdd.createSubkeyAdd(
+                        Algorithm.ECDH, 0, SaveKeyringParcel.Curve.NIST_P256, KeyFlags.ENCRYPT_COMMS, 0L));
+    }
+
     UncachedKeyRing readRingFromResource(String name) throws Exception {
         return UncachedKeyRing.fromStream(KeyRepositorySaveTest.class.getResourceAsStream(name)).next();
     }
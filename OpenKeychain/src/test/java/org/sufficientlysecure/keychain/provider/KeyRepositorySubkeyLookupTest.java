@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.provider;
+
+
+import java.util.Random;
+
+import android.database.Cursor;
+
+import androidx.collection.LongSparseArray;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.sufficientlysecure.keychain.KeychainDatabase;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.daos.KeyRepository;
+import timber.log.Timber;
+
+
+@RunWith(KeychainTestRunner.class)
+public class KeyRepositorySubkeyLookupTest {
+    private static final int NUM_KEYRINGS = 1000;
+    private static final int NUM_KEYRINGS_BENCHMARK = 50000;
+    private static final int NUM_LOOKUPS = 100;
+
+    private long[] masterKeyIds = new long[NUM_KEYRINGS_BENCHMARK];
+    private long[] subKeyIds = new long[NUM_KEYRINGS_BENCHMARK];
+    private Random random = new Random(0);
+
+    @Before
+    public void setUp() {
+        insertKeyRings(0, NUM_KEYRINGS);
+    }
+
+    private void insertKeyRings(int from, int to) {
+        SupportSQLiteDatabase db = KeychainDatabase.getInstance(RuntimeEnvironment.getApplication())
+                .getWritableDatabase();
+        SupportSQLiteStatement insertKeyRing =
+                db.compileStatement("INSERT INTO keyrings_public (master_key_id) VALUES (?)");
+        SupportSQLiteStatement insertKey = db.compileStatement("INSERT INTO keys (master_key_id, rank, key_id, " +
+                "algorithm, fingerprint, can_certify, can_sign, can_encrypt, can_authenticate, is_revoked, " +
+                "is_secure, creation, validFrom) VALUES (?, ?, ?, 1, ?, 0, 0, 1, 0, 0, 1, 0, 0)");
+
+        db.beginTransaction();
+        try {
+            for (int i = from; i < to; i++) {
+                masterKeyIds[i] = random.nextLong();
+                subKeyIds[i] = random.nextLong();
+
+                insertKeyRing.bindLong(1, masterKeyIds[i]);
+                insertKeyRing.executeInsert();
+
+                byte[] fingerprint = new byte[20];
+                random.nextBytes(fingerprint);
+                insertKey(insertKey, masterKeyIds[i], 0, masterKeyIds[i], fingerprint);
+                random.nextBytes(fingerprint);
+                insertKey(insertKey, masterKeyIds[i], 1, subKeyIds[i], fingerprint);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void insertKey(SupportSQLiteStatement insertKey, long masterKeyId, int rank, long keyId,
+            byte[] fingerprint) {
+        insertKey.bindLong(1, masterKeyId);
+        insertKey.bindLong(2, rank);
+        insertKey.bindLong(3, keyId);
+        insertKey.bindBlob(4, fingerprint);
+        insertKey.executeInsert();
+    }
+
+    @Test
+    public void testSubkeyLookupUsesIndex() {
+        SupportSQLiteDatabase db = KeychainDatabase.getInstance(RuntimeEnvironment.getApplication())
+                .getReadableDatabase();
+        try (Cursor cursor = db.query("EXPLAIN QUERY PLAN SELECT master_key_id FROM keys WHERE key_id = 1")) {
+            Assert.assertTrue(cursor.moveToFirst());
+            String detail = cursor.getString(cursor.getColumnIndex("detail"));
+            Assert.assertTrue("lookup by key_id must use index, was: " + detail, detail.contains("keys_by_key_id"));
+        }
+    }
+
+    @Test
+    public void testBatchedSubkeyLookup() {
+        KeyRepository keyRepository = KeyRepository.create(RuntimeEnvironment.getApplication());
+        long unknownSubKeyId = random.nextLong();
+
+        long[] lookupSubKeyIds = new long[NUM_LOOKUPS + 1];
+        for (int i = 0; i < NUM_LOOKUPS; i++) {
+            lookupSubKeyIds[i] = subKeyIds[i * (NUM_KEYRINGS / NUM_LOOKUPS)];
+        }
+        lookupSubKeyIds[NUM_LOOKUPS] = unknownSubKeyId;
+
+        LongSparseArray<Long> result = keyRepository.getMasterKeyIdsBySubkeyIds(lookupSubKeyIds);
+
+        Assert.assertEquals("unknown subkey must be absent from result", NUM_LOOKUPS, result.size());
+        for (int i = 0; i < NUM_LOOKUPS; i++) {
+            long expectedMasterKeyId = masterKeyIds[i * (NUM_KEYRINGS / NUM_LOOKUPS)];
+            Assert.assertEquals(expectedMasterKeyId, (long) result.get(lookupSubKeyIds[i]));
+            Assert.assertEquals(expectedMasterKeyId, (long) keyRepository.getMasterKeyIdBySubkeyId(lookupSubKeyIds[i]));
+        }
+        Assert.assertNull(keyRepository.getMasterKeyIdBySubkeyId(unknownSubKeyId));
+    }
+
+    @Test
+    public void testSubkeyLookupBenchmark() {
+        // a database of realistic size takes a while to fill, so this only runs with -Pbenchmark
+        Assume.assumeTrue("benchmarks are only run with -Pbenchmark", Boolean.getBoolean("openkeychain.benchmark"));
+        insertKeyRings(NUM_KEYRINGS, NUM_KEYRINGS_BENCHMARK);
+
+        KeyRepository keyRepository = KeyRepository.create(RuntimeEnvironment.getApplication());
+
+        long[] lookupSubKeyIds = new long[NUM_LOOKUPS];
+        for (int i = 0; i < NUM_LOOKUPS; i++) {
+            lookupSubKeyIds[i] = subKeyIds[i * (NUM_KEYRINGS_BENCHMARK / NUM_LOOKUPS)];
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < NUM_LOOKUPS; i++) {
+            Long masterKeyId = keyRepository.getMasterKeyIdBySubkeyId(lookupSubKeyIds[i]);
+            Assert.assertEquals(masterKeyIds[i * (NUM_KEYRINGS_BENCHMARK / NUM_LOOKUPS)], (long) masterKeyId);
+        }
+        long singleNanos = (System.nanoTime() - startTime) / NUM_LOOKUPS;
+
+        startTime = System.nanoTime();
+        LongSparseArray<Long> result = keyRepository.getMasterKeyIdsBySubkeyIds(lookupSubKeyIds);
+        long batchedNanos = (System.nanoTime() - startTime) / NUM_LOOKUPS;
+
+        Assert.assertEquals(NUM_LOOKUPS, result.size());
+
+        Timber.d("subkey lookup with %d keyrings: single %d µs, batched %d µs per key",
+                NUM_KEYRINGS_BENCHMARK, singleNanos / 1000, batchedNanos / 1000);
+    }
+}
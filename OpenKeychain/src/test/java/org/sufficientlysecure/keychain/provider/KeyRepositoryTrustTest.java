@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.provider;
+
+
+import java.security.Security;
+import java.util.Collections;
+import java.util.Date;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
+import org.sufficientlysecure.keychain.operations.CertifyOperation;
+import org.sufficientlysecure.keychain.operations.results.CertifyResult;
+import org.sufficientlysecure.keychain.operations.results.UpdateTrustResult;
+import org.sufficientlysecure.keychain.pgp.CanonicalizedKeyRing.VerificationStatus;
+import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.service.CertifyActionsParcel;
+import org.sufficientlysecure.keychain.service.CertifyActionsParcel.CertifyAction;
+import org.sufficientlysecure.keychain.service.input.CryptoInputParcel;
+import org.sufficientlysecure.keychain.util.Preferences;
+import org.sufficientlysecure.keychain.util.ProgressScaler;
+import org.sufficientlysecure.keychain.util.TestingUtils;
+
+
+@RunWith(KeychainTestRunner.class)
+public class KeyRepositoryTrustTest {
+
+    static UncachedKeyRing signerRing;
+    static UncachedKeyRing signedRing;
+
+    private KeyWritableRepository keyRepository;
+
+    @BeforeClass
+    public static void setUpOnce() throws Exception {
+        Security.insertProviderAt(new BouncyCastleProvider(), 1);
+
+        signerRing = TestingUtils.createCertifyingKeyRing("signer");
+        signedRing = TestingUtils.createCertifyingKeyRing("signed").extractPublicKeyRing();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        keyRepository = KeyWritableRepository.create(RuntimeEnvironment.getApplication());
+
+        Assert.assertTrue(keyRepository.saveSecretKeyRing(signerRing).success());
+        Assert.assertTrue(keyRepository.savePublicKeyRing(signedRing).success());
+        Assert.assertTrue(keyRepository.updateTrustDb(Collections.emptyList(), new ProgressScaler()).success());
+
+        CertifyOperation op = new CertifyOperation(RuntimeEnvironment.getApplication(), keyRepository, null, null);
+        CertifyActionsParcel.Builder actions = CertifyActionsParcel.builder(signerRing.getMasterKeyId());
+        actions.addAction(CertifyAction.createForUserIds(signedRing.getMasterKeyId(),
+                signedRing.getPublicKey().getUnorderedUserIds()));
+        CertifyResult result = op.execute(actions.build(),
+                CryptoInputParcel.createCryptoInputParcel(new Date(), TestingUtils.testPassphrase0));
+        Assert.assertTrue("certification must succeed", result.success());
+        Assert.assertEquals(VerificationStatus.VERIFIED_SECRET, getVerified());
+    }
+
+    @Test
+    public void testUpdateAfterSecretKeyChange() throws Exception {
+        Assert.assertTrue(keyRepository.deleteKeyRing(signerRing.getMasterKeyId()));
+        UpdateTrustResult result = keyRepository.updateTrustDb(
+                Collections.singletonList(signerRing.getMasterKeyId()), new ProgressScaler());
+        Assert.assertTrue("trust update must succeed", result.success());
+        Assert.assertNull("certification by deleted key must not count", getVerified());
+
+        Assert.assertTrue(keyRepository.saveSecretKeyRing(signerRing).success());
+        result = keyRepository.updateTrustDb(
+                Collections.singletonList(signerRing.getMasterKeyId()), new ProgressScaler());
+        Assert.assertTrue("trust update must succeed", result.success());
+        Assert.assertEquals("certification by imported key must count",
+                VerificationStatus.VERIFIED_SECRET, getVerified());
+    }
+
+    @Test
+    public void testResumeInterruptedUpdate() throws Exception {
+        Preferences preferences = Preferences.getPreferences(RuntimeEnvironment.getApplication());
+        Assert.assertTrue(keyRepository.deleteKeyRing(signerRing.getMasterKeyId()));
+
+        // as if an update for this signer had been interrupted before it processed any keys
+        preferences.setPendingTrustUpdate(Collections.singleton(signerRing.getMasterKeyId()), null);
+        Assert.assertEquals(VerificationStatus.VERIFIED_SECRET, getVerified());
+
+        UpdateTrustResult result = keyRepository.resumeTrustDbUpdate(new ProgressScaler());
+        Assert.assertTrue("trust update must succeed", result.success());
+        Assert.assertNull("resumed update must process pending signers", getVerified());
+        Assert.assertFalse("finished update must not be pending", preferences.hasPendingTrustUpdate());
+    }
+
+    private VerificationStatus getVerified() {
+        return keyRepository.getUnifiedKeyInfo(signedRing.getMasterKeyId()).verified();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.provider;
+
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
+import org.sufficientlysecure.keychain.daos.TrustedKeysCache;
+import org.sufficientlysecure.keychain.keyimport.ParcelableKeyRing;
+import org.sufficientlysecure.keychain.operations.ImportOperation;
+import org.sufficientlysecure.keychain.operations.results.ImportKeyResult;
+import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.util.ParcelableProxy;
+import org.sufficientlysecure.keychain.util.ProgressScaler;
+import org.sufficientlysecure.keychain.util.TestingUtils;
+
+
+@RunWith(KeychainTestRunner.class)
+public class TrustedKeysCacheTest {
+    private static final int ROUNDS = 3;
+    private static final int KEYS_PER_ROUND = 5;
+
+    static UncachedKeyRing secretRing;
+    static List<UncachedKeyRing> publicRings = new ArrayList<>();
+
+    @BeforeClass
+    public static void setUpOnce() throws Exception {
+        Security.insertProviderAt(new BouncyCastleProvider(), 1);
+
+        secretRing = TestingUtils.createCertifyingKeyRing("trusted");
+        for (int i = 0; i < (ROUNDS + 1) * KEYS_PER_ROUND; i++) {
+            publicRings.add(TestingUtils.createCertifyingKeyRing("bulk " + i).extractPublicKeyRing());
+        }
+    }
+
+    @Test
+    public void testSnapshotSurvivesPublicImports() throws Exception {
+        KeyWritableRepository keyRepository = KeyWritableRepository.create(RuntimeEnvironment.getApplication());
+        TrustedKeysCache trustedKeysCache = TrustedKeysCache.getInstance();
+
+        long versionBeforeSecret = trustedKeysCache.getVersion();
+        Assert.assertTrue(keyRepository.saveSecretKeyRing(secretRing).success());
+        long versionAfterSecret = trustedKeysCache.getVersion();
+        Assert.assertNotEquals("saving a secret key must invalidate the trusted keys",
+                versionBeforeSecret, versionAfterSecret);
+
+        int loadCountBeforeImports = trustedKeysCache.getLoadCount();
+        for (int round = 0; round < ROUNDS; round++) {
+            importRound(keyRepository, round);
+        }
+        Assert.assertEquals("all public key imports must share one snapshot",
+                loadCountBeforeImports + 1, trustedKeysCache.getLoadCount());
+        Assert.assertEquals("public key imports must not invalidate the trusted keys",
+                versionAfterSecret, trustedKeysCache.getVersion());
+
+        Assert.assertTrue(keyRepository.deleteKeyRing(secretRing.getMasterKeyId()));
+        Assert.assertNotEquals("deleting a secret key must invalidate the trusted keys",
+                versionAfterSecret, trustedKeysCache.getVersion());
+
+        int loadCountAfterDelete = trustedKeysCache.getLoadCount();
+        importRound(keyRepository, ROUNDS);
+        Assert.assertEquals("the snapshot must be loaded again after it was invalidated",
+                loadCountAfterDelete + 1, trustedKeysCache.getLoadCount());
+    }
+
+    private static void importRound(KeyWritableRepository keyRepository, int round) throws Exception {
+        ImportOperation op = new ImportOperation(RuntimeEnvironment.getApplication(), keyRepository,
+                new ProgressScaler());
+        ArrayList<ParcelableKeyRing> entries = new ArrayList<>();
+        for (UncachedKeyRing ring : publicRings.subList(round * KEYS_PER_ROUND, (round + 1) * KEYS_PER_ROUND)) {
+            entries.add(ParcelableKeyRing.createFromEncodedBytes(ring.getEncoded()));
+        }
+
+        ImportKeyResult result = op.serialKeyRingImport(entries.iterator(), entries.size(), null,
+                ParcelableProxy.getForNoProxy(), false, false);
+        Assert.assertTrue("import must succeed", result.success());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.remote;
+
+
+import android.app.Application;
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.Signature;
+import android.net.Uri;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowBinder;
+import org.robolectric.shadows.ShadowPackageManager;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.daos.ApiAppDao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.robolectric.Shadows.shadowOf;
+
+
+@RunWith(KeychainTestRunner.class)
+public class ApiPermissionCacheTest {
+    private static final String PACKAGE_NAME = "test.package";
+    private static final String OTHER_PACKAGE_NAME = "other.package";
+    private static final byte[] PACKAGE_SIGNATURE = new byte[] { 1, 2, 3 };
+    private static final int PACKAGE_UID = 42;
+
+    private Application application;
+    private ApiAppDao apiAppDao;
+    private ApiPermissionHelper apiPermissionHelper;
+
+    @Before
+    public void setUp() {
+        ApiPermissionCache.resetInstance();
+        application = RuntimeEnvironment.getApplication();
+
+        ShadowPackageManager packageManager = shadowOf(application.getPackageManager());
+        packageManager.setPackagesForUid(PACKAGE_UID, PACKAGE_NAME);
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.signatures = new Signature[] { new Signature(PACKAGE_SIGNATURE) };
+        packageInfo.packageName = PACKAGE_NAME;
+        packageManager.addPackage(packageInfo);
+
+        ShadowBinder.setCallingUid(PACKAGE_UID);
+
+        apiAppDao = spy(ApiAppDao.getInstance(application));
+        apiAppDao.insertApiApp(PACKAGE_NAME, PACKAGE_SIGNATURE);
+        apiPermissionHelper = new ApiPermissionHelper(application, apiAppDao);
+    }
+
+    @Test
+    public void testRepeatedLookupIsCached() {
+        assertTrue(apiPermissionHelper.isAllowedIgnoreErrors());
+        assertTrue(apiPermissionHelper.isAllowedIgnoreErrors());
+
+        verify(apiAppDao, times(1)).getApiAppCertificate(PACKAGE_NAME);
+    }
+
+    @Test
+    public void testPackageReplaced_dropsCachedDecision() {
+        assertTrue(apiPermissionHelper.isAllowedIgnoreErrors());
+
+        sendPackageBroadcast(Intent.ACTION_PACKAGE_REPLACED, PACKAGE_NAME);
+
+        assertTrue(apiPermissionHelper.isAllowedIgnoreErrors());
+        verify(apiAppDao, times(2)).getApiAppCertificate(PACKAGE_NAME);
+        assertEquals(0, ApiPermissionCache.getInstance(application).getHitCount());
+        assertEquals(2, ApiPermissionCache.getInstance(application).getMissCount());
+    }
+
+    @Test
+    public void testPackageReplaced_keepsDecisionOfOtherPackage() {
+        assertTrue(apiPermissionHelper.isAllowedIgnoreErrors());
+
+        sendPackageBroadcast(Intent.ACTION_PACKAGE_REPLACED, OTHER_PACKAGE_NAME);
+
+        assertTrue(apiPermissionHelper.isAllowedIgnoreErrors());
+        verify(apiAppDao, times(1)).getApiAppCertificate(PACKAGE_NAME);
+    }
+
+    @Test
+    public void testHitRateStats() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(apiPermissionHelper.isAllowedIgnoreErrors());
+        }
+        sendPackageBroadcast(Intent.ACTION_PACKAGE_REPLACED, PACKAGE_NAME);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(apiPermissionHelper.isAllowedIgnoreErrors());
+        }
+
+        ApiPermissionCache permissionCache = ApiPermissionCache.getInstance(application);
+        assertEquals(13, permissionCache.getHitCount());
+        assertEquals(2, permissionCache.getMissCount());
+    }
+
+    private void sendPackageBroadcast(String action, String packageName) {
+        application.sendBroadcast(new Intent(action, Uri.fromParts("package", packageName, null)));
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
@@ -67,6 +67,7 @@ public class KeychainExternalProviderTest {
     @Before
     public void setUp() throws Exception {
         ShadowLog.stream = System.out;
+        ApiPermissionCache.resetInstance();
 
         ShadowPackageManager packageManager = shadowOf(RuntimeEnvironment.getApplication().getPackageManager());
         packageManager.setPackagesForUid(PACKAGE_UID, PACKAGE_NAME);
@@ -111,6 +112,18 @@ public class KeychainExternalProviderTest {
         );
     }
 
+    @Test(expected = AccessControlException.class)
+    public void testPermission__afterRevocation() throws Exception {
+        assertTrue("registered app must be allowed", apiPermissionHelper.isAllowedIgnoreErrors());
+        apiAppDao.deleteApiApp(PACKAGE_NAME);
+
+        contentResolver.query(
+                AutocryptStatus.CONTENT_URI,
+                new String[] { AutocryptStatus.ADDRESS },
+                null, new String [] { }, null
+        );
+    }
+
     @Test
     public void testAutocryptStatus_autocryptPeer_withUnconfirmedKey() throws Exception {
         insertSecretKeyringFrom("/test-keys/testring.sec");
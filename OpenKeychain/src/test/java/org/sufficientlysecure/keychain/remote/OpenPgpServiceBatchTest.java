@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.remote;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.Signature;
+
+import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openintents.openpgp.util.OpenPgpApi;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowBinder;
+import org.robolectric.shadows.ShadowLog;
+import org.robolectric.shadows.ShadowPackageManager;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.daos.ApiAppDao;
+import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
+import org.sufficientlysecure.keychain.operations.results.PgpSignEncryptResult;
+import org.sufficientlysecure.keychain.pgp.PgpSignEncryptData;
+import org.sufficientlysecure.keychain.pgp.PgpSignEncryptOperation;
+import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.Algorithm;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.SubkeyAdd;
+import org.sufficientlysecure.keychain.service.input.CryptoInputParcel;
+import org.sufficientlysecure.keychain.util.InputData;
+import org.sufficientlysecure.keychain.util.TestingUtils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+
+@RunWith(KeychainTestRunner.class)
+public class OpenPgpServiceBatchTest {
+    static final String PACKAGE_NAME = "test.package";
+    static final byte[] PACKAGE_SIGNATURE = new byte[] { 1, 2, 3 };
+    static final int PACKAGE_UID = 42;
+
+    static UncachedKeyRing allowedRing;
+    static UncachedKeyRing otherRing;
+
+    OpenPgpService service;
+
+    @BeforeClass
+    public static void setUpOnce() {
+        Security.insertProviderAt(new BouncyCastleProvider(), 1);
+        ShadowLog.stream = System.out;
+
+        allowedRing = createEncryptionKeyRing("allowed");
+        otherRing = createEncryptionKeyRing("other");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ShadowPackageManager packageManager = shadowOf(RuntimeEnvironment.getApplication().getPackageManager());
+        packageManager.setPackagesForUid(PACKAGE_UID, PACKAGE_NAME);
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.signatures = new Signature[] { new Signature(PACKAGE_SIGNATURE) };
+        packageInfo.packageName = PACKAGE_NAME;
+        packageManager.addPackage(packageInfo);
+
+        ShadowBinder.setCallingUid(PACKAGE_UID);
+
+        KeyWritableRepository keyRepository = KeyWritableRepository.create(RuntimeEnvironment.getApplication());
+        keyRepository.saveSecretKeyRing(allowedRing);
+        keyRepository.saveSecretKeyRing(otherRing);
+
+        ApiAppDao apiAppDao = ApiAppDao.getInstance(RuntimeEnvironment.getApplication());
+        apiAppDao.insertApiApp(PACKAGE_NAME, PACKAGE_SIGNATURE);
+        apiAppDao.addAllowedKeyIdForApp(PACKAGE_NAME, allowedRing.getMasterKeyId());
+
+        service = Robolectric.setupService(OpenPgpService.class);
+    }
+
+    @Test
+    public void testBatchDecrypt() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Intent result = executeBatch(output,
+                encrypt("first message", allowedRing), encrypt("", allowedRing), encrypt("third", allowedRing));
+
+        assertEquals(OpenPgpApi.RESULT_CODE_SUCCESS, result.getIntExtra(OpenPgpApi.RESULT_CODE, -1));
+        ArrayList<Intent> results = result.getParcelableArrayListExtra(OpenPgpService.RESULT_BATCH_RESULTS);
+        assertEquals(3, results.size());
+        for (Intent messageResult : results) {
+            assertEquals(OpenPgpApi.RESULT_CODE_SUCCESS, messageResult.getIntExtra(OpenPgpApi.RESULT_CODE, -1));
+        }
+
+        List<byte[]> frames = readFrames(output.toByteArray());
+        assertArrayEquals("first message".getBytes(StandardCharsets.UTF_8), frames.get(0));
+        assertArrayEquals("empty plaintext must be a successful empty frame", new byte[0], frames.get(1));
+        assertArrayEquals("third".getBytes(StandardCharsets.UTF_8), frames.get(2));
+    }
+
+    @Test
+    public void testBatchDecryptWithFailedMessage() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Intent result = executeBatch(output, encrypt("first", allowedRing),
+                "not an OpenPGP message".getBytes(StandardCharsets.UTF_8), encrypt("third", allowedRing));
+
+        assertEquals(OpenPgpApi.RESULT_CODE_SUCCESS, result.getIntExtra(OpenPgpApi.RESULT_CODE, -1));
+        ArrayList<Intent> results = result.getParcelableArrayListExtra(OpenPgpService.RESULT_BATCH_RESULTS);
+        assertEquals(OpenPgpApi.RESULT_CODE_SUCCESS, results.get(0).getIntExtra(OpenPgpApi.RESULT_CODE, -1));
+        assertEquals(OpenPgpApi.RESULT_CODE_ERROR, results.get(1).getIntExtra(OpenPgpApi.RESULT_CODE, -1));
+        assertEquals(OpenPgpApi.RESULT_CODE_SUCCESS, results.get(2).getIntExtra(OpenPgpApi.RESULT_CODE, -1));
+
+        List<byte[]> frames = readFrames(output.toByteArray());
+        assertArrayEquals("first".getBytes(StandardCharsets.UTF_8), frames.get(0));
+        assertNull("failed message must be marked as failed", frames.get(1));
+        assertArrayEquals("message after a failed one must be decrypted",
+                "third".getBytes(StandardCharsets.UTF_8), frames.get(2));
+    }
+
+    @Test
+    public void testBatchDecryptWithPendingInteraction() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Intent result = executeBatch(output, encrypt("for another key", otherRing), encrypt("second", allowedRing));
+
+        ArrayList<Intent> results = result.getParcelableArrayListExtra(OpenPgpService.RESULT_BATCH_RESULTS);
+        assertEquals(OpenPgpApi.RESULT_CODE_USER_INTERACTION_REQUIRED,
+                results.get(0).getIntExtra(OpenPgpApi.RESULT_CODE, -1));
+        assertNotNull("pending message must come with an intent for the interaction",
+                results.get(0).getParcelableExtra(OpenPgpApi.RESULT_INTENT));
+        assertEquals(OpenPgpApi.RESULT_CODE_SUCCESS, results.get(1).getIntExtra(OpenPgpApi.RESULT_CODE, -1));
+
+        List<byte[]> frames = readFrames(output.toByteArray());
+        assertNull("pending message must be marked as failed", frames.get(0));
+        assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), frames.get(1));
+    }
+
+    @Test
+    public void testBatchDecryptWithTruncatedFrame() throws Exception {
+        byte[] message = encrypt("truncated", allowedRing);
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        DataOutputStream framedInput = new DataOutputStream(input);
+        framedInput.writeInt(message.length + 100);
+        framedInput.write(message);
+
+        Intent result = service.executeInternalWithStreams(createBatchIntent(),
+                new ByteArrayInputStream(input.toByteArray()), new ByteArrayOutputStream());
+
+        assertEquals(OpenPgpApi.RESULT_CODE_ERROR, result.getIntExtra(OpenPgpApi.RESULT_CODE, -1));
+    }
+
+    @Test
+    public void testBatchDecryptWithOversizedFrame() throws Exception {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        new DataOutputStream(input).writeInt(OpenPgpService.MAX_BATCH_MESSAGE_LENGTH + 1);
+
+        Intent result = service.executeInternalWithStreams(createBatchIntent(),
+                new ByteArrayInputStream(input.toByteArray()), new ByteArrayOutputStream());
+
+        assertEquals(OpenPgpApi.RESULT_CODE_ERROR, result.getIntExtra(OpenPgpApi.RESULT_CODE, -1));
+    }
+
+    private Intent executeBatch(ByteArrayOutputStream output, byte[]... messages) throws IOException {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        DataOutputStream framedInput = new DataOutputStream(input);
+        for (byte[] message : messages) {
+            framedInput.writeInt(message.length);
+            framedInput.write(message);
+        }
+
+        return service.executeInternalWithStreams(createBatchIntent(),
+                new ByteArrayInputStream(input.toByteArray()), output);
+    }
+
+    private static Intent createBatchIntent() {
+        Intent data = new Intent(OpenPgpService.ACTION_DECRYPT_VERIFY_BATCH);
+        data.putExtra(OpenPgpApi.EXTRA_API_VERSION, OpenPgpService.API_VERSION_WITH_AUTOCRYPT);
+        return data;
+    }
+
+    /** Reads the output frames of a batch, with null for each message which failed. */
+    private static List<byte[]> readFrames(byte[] output) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(output));
+        ArrayList<byte[]> frames = new ArrayList<>();
+        while (in.available() > 0) {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            int chunkLength;
+            while ((chunkLength = in.readInt()) > 0) {
+                byte[] chunk = new byte[chunkLength];
+                in.readFully(chunk);
+                frame.write(chunk);
+            }
+            frames.add(chunkLength == BatchFraming.FRAME_END_SUCCESS ? frame.toByteArray() : null);
+        }
+        return frames;
+    }
+
+    private static byte[] encrypt(String plaintext, UncachedKeyRing recipient) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayInputStream in = new ByteArrayInputStream(plaintext.getBytes(StandardCharsets.UTF_8));
+
+        PgpSignEncryptOperation op = new PgpSignEncryptOperation(RuntimeEnvironment.getApplication(),
+                KeyWritableRepository.create(RuntimeEnvironment.getApplication()), null);
+
+        PgpSignEncryptData.Builder pgpData = PgpSignEncryptData.builder();
+        pgpData.setEncryptionMasterKeyIds(new long[] { recipient.getMasterKeyId() });
+
+        PgpSignEncryptResult result = op.execute(pgpData.build(),
+                CryptoInputParcel.createCryptoInputParcel(new Date()), new InputData(in, in.available()), out);
+        assertTrue("encryption must succeed", result.success());
+        return out.toByteArray();
+    }
+
+    private static UncachedKeyRing createEncryptionKeyRing(String userId) {
+        return TestingUtils.createKeyRing(userId, null,
+                SubkeyAdd.createSubkeyAdd(Algorithm.ECDSA, 0, SaveKeyringParcel.Curve.NIST_P256,
+                        KeyFlags.CERTIFY_OTHER, 0L),
+                SubkeyAdd.createSubkeyAdd(Algorithm.ECDH, 0, SaveKeyringParcel.Curve.NIST_P256,
+                        KeyFlags.ENCRYPT_COMMS, 0L));
+    }
+}
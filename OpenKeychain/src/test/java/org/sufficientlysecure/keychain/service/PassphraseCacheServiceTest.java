@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.service;
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+
+import androidx.collection.LongSparseArray;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.sufficientlysecure.keychain.Constants.key;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.util.Passphrase;
+import org.sufficientlysecure.keychain.util.TestingUtils;
+import timber.log.Timber;
+
+
+@RunWith(KeychainTestRunner.class)
+public class PassphraseCacheServiceTest {
+    private static final int ITERATIONS = 500;
+
+    private PassphraseCacheService service;
+    private IBinder binder;
+
+    @Before
+    public void setUp() {
+        service = Robolectric.setupService(PassphraseCacheService.class);
+
+        Intent addIntent = new Intent(RuntimeEnvironment.getApplication(), PassphraseCacheService.class);
+        addIntent.setAction(PassphraseCacheService.ACTION_PASSPHRASE_CACHE_ADD);
+        addIntent.putExtra(PassphraseCacheService.EXTRA_TTL, 0);
+        addIntent.putExtra(PassphraseCacheService.EXTRA_PASSPHRASE, TestingUtils.testPassphrase0);
+        addIntent.putExtra(PassphraseCacheService.EXTRA_KEY_ID, key.symmetric);
+        addIntent.putExtra(PassphraseCacheService.EXTRA_SUBKEY_ID, key.symmetric);
+        service.onStartCommand(addIntent, 0, 0);
+
+        binder = service.onBind(new Intent(RuntimeEnvironment.getApplication(), PassphraseCacheService.class));
+    }
+
+    @Test
+    public void testBatchedBinderLookup() throws Exception {
+        long unknownSubKeyId = 0x1234L;
+
+        LongSparseArray<Passphrase> result = PassphraseCacheConnection.transactGetCachedPassphrases(binder,
+                new long[] { key.symmetric, key.symmetric }, new long[] { key.symmetric, unknownSubKeyId });
+
+        Assert.assertEquals("cached passphrase must be returned",
+                TestingUtils.testPassphrase0, result.get(key.symmetric));
+        Assert.assertTrue("bad request must be absent from result", result.indexOfKey(unknownSubKeyId) < 0);
+    }
+
+    @Test
+    public void testLookupBenchmark() throws Exception {
+        // benchmarks are skipped unless run with -Pbenchmark, see BenchmarkRunner
+        Assume.assumeTrue("benchmarks are only run with -Pbenchmark",
+                Boolean.getBoolean("openkeychain.benchmark"));
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Assert.assertEquals(TestingUtils.testPassphrase0, lookupByMessenger());
+        }
+        long messengerNanos = (System.nanoTime() - startTime) / ITERATIONS;
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            LongSparseArray<Passphrase> result = PassphraseCacheConnection.transactGetCachedPassphrases(binder,
+                    new long[] { key.symmetric }, new long[] { key.symmetric });
+            Assert.assertEquals(TestingUtils.testPassphrase0, result.get(key.symmetric));
+        }
+        long binderNanos = (System.nanoTime() - startTime) / ITERATIONS;
+
+        Timber.d("passphrase cache lookup: messenger %d µs, binder %d µs",
+                messengerNanos / 1000, binderNanos / 1000);
+    }
+
+    /** Performs the same round-trip as the Intent based lookup, minus the service dispatch. */
+    private Passphrase lookupByMessenger() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        Message returnMessage = Message.obtain();
+
+        HandlerThread handlerThread = new HandlerThread("getPassphraseThread");
+        handlerThread.start();
+        Handler returnHandler = new Handler(handlerThread.getLooper()) {
+            @Override
+            public void handleMessage(Message message) {
+                returnMessage.what = message.what;
+                returnMessage.copyFrom(message);
+                latch.countDown();
+                getLooper().quit();
+            }
+        };
+
+        Intent intent = new Intent(RuntimeEnvironment.getApplication(), PassphraseCacheService.class);
+        intent.setAction(PassphraseCacheService.ACTION_PASSPHRASE_CACHE_GET);
+        intent.putExtra(PassphraseCacheService.EXTRA_KEY_ID, key.symmetric);
+        intent.putExtra(PassphraseCacheService.EXTRA_SUBKEY_ID, key.symmetric);
+        intent.putExtra(PassphraseCacheService.EXTRA_MESSENGER, new Messenger(returnHandler));
+        service.onStartCommand(intent, 0, 0);
+
+        Assert.assertTrue("lookup must not time out", latch.await(3, TimeUnit.SECONDS));
+        Bundle returnData = returnMessage.getData();
+        returnData.setClassLoader(RuntimeEnvironment.getApplication().getClassLoader());
+        return returnData.getParcelable(PassphraseCacheService.EXTRA_PASSPHRASE);
+    }
+}
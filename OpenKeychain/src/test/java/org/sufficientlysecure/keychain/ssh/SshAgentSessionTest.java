@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.ssh;
+
+
+import java.security.Security;
+
+import android.app.Application;
+import android.content.Intent;
+import android.os.Looper;
+
+import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLog;
+import org.sufficientlysecure.keychain.Constants;
+import org.sufficientlysecure.keychain.KeychainTestRunner;
+import org.sufficientlysecure.keychain.daos.KeyRepository;
+import org.sufficientlysecure.keychain.daos.KeyWritableRepository;
+import org.sufficientlysecure.keychain.pgp.CanonicalizedSecretKey;
+import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.service.PassphraseCacheService;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.Algorithm;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.Curve;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.SubkeyAdd;
+import org.sufficientlysecure.keychain.util.Preferences;
+import org.sufficientlysecure.keychain.util.TestingUtils;
+
+import static org.robolectric.Shadows.shadowOf;
+
+
+@RunWith(KeychainTestRunner.class)
+public class SshAgentSessionTest {
+    private static UncachedKeyRing staticRing;
+
+    private Application context;
+    private PassphraseCacheService passphraseCacheService;
+    private SshAgentSession agentSession;
+    private long masterKeyId;
+    private long authSubKeyId;
+
+    @BeforeClass
+    public static void setUpOnce() {
+        Security.insertProviderAt(new BouncyCastleProvider(), 1);
+        ShadowLog.stream = System.out;
+
+        staticRing = TestingUtils.createKeyRing("ssh", TestingUtils.testPassphrase0,
+                SubkeyAdd.createSubkeyAdd(Algorithm.ECDSA, 0, Curve.NIST_P256, KeyFlags.CERTIFY_OTHER, 0L),
+                SubkeyAdd.createSubkeyAdd(Algorithm.ECDSA, 0, Curve.NIST_P256, KeyFlags.AUTHENTICATION, 0L));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.getApplication();
+        Preferences.getPreferences(context).getSharedPreferences().edit()
+                .putInt(Constants.Pref.SSH_AGENT_SESSION_TIMEOUT, 60).commit();
+
+        KeyWritableRepository.create(context).saveSecretKeyRing(staticRing);
+        KeyRepository keyRepository = KeyRepository.create(context);
+        masterKeyId = staticRing.getMasterKeyId();
+        authSubKeyId = keyRepository.getEffectiveAuthenticationKeyId(masterKeyId);
+
+        passphraseCacheService = Robolectric.setupService(PassphraseCacheService.class);
+        Intent addIntent = new Intent(context, PassphraseCacheService.class);
+        addIntent.setAction(PassphraseCacheService.ACTION_PASSPHRASE_CACHE_ADD);
+        addIntent.putExtra(PassphraseCacheService.EXTRA_TTL, 60);
+        addIntent.putExtra(PassphraseCacheService.EXTRA_PASSPHRASE, TestingUtils.testPassphrase0);
+        addIntent.putExtra(PassphraseCacheService.EXTRA_KEY_ID, masterKeyId);
+        addIntent.putExtra(PassphraseCacheService.EXTRA_SUBKEY_ID, authSubKeyId);
+        passphraseCacheService.onStartCommand(addIntent, 0, 0);
+
+        // statics outlive the application of earlier tests, so start with a fresh session
+        SshAgentSession.resetInstance();
+        agentSession = SshAgentSession.getInstance(context);
+
+        CanonicalizedSecretKey authKey =
+                keyRepository.getCanonicalizedSecretKeyRing(masterKeyId).getSecretKey(authSubKeyId);
+        Assert.assertTrue("key must unlock", authKey.unlock(TestingUtils.testPassphrase0));
+        agentSession.putUnlockedKey(authKey);
+        Assert.assertNotNull("key must be kept in session", agentSession.getUnlockedKey(masterKeyId, authSubKeyId));
+    }
+
+    @After
+    public void tearDown() {
+        Preferences.getPreferences(context).getSharedPreferences().edit()
+                .putInt(Constants.Pref.SSH_AGENT_SESSION_TIMEOUT, 0).commit();
+        agentSession.removeAll();
+        SshAgentSession.resetInstance();
+    }
+
+    @Test
+    public void testSessionEndsWhenPassphraseExpires() {
+        // what the alarm sends once the ttl of the cached passphrase is up
+        Intent timeoutIntent = new Intent(PassphraseCacheService.BROADCAST_ACTION_PASSPHRASE_CACHE_SERVICE);
+        timeoutIntent.putExtra(PassphraseCacheService.EXTRA_KEY_ID, masterKeyId);
+        context.sendBroadcast(timeoutIntent);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        Assert.assertNull("unlocked key must be dropped with the cached passphrase",
+                agentSession.getUnlockedKey(masterKeyId, authSubKeyId));
+    }
+
+    @Test
+    public void testSessionEndsWhenPassphraseIsCleared() {
+        Intent clearIntent = new Intent(context, PassphraseCacheService.class);
+        clearIntent.setAction(PassphraseCacheService.ACTION_PASSPHRASE_CACHE_CLEAR);
+        clearIntent.putExtra(PassphraseCacheService.EXTRA_KEY_ID, masterKeyId);
+        clearIntent.putExtra(PassphraseCacheService.EXTRA_SUBKEY_ID, authSubKeyId);
+        passphraseCacheService.onStartCommand(clearIntent, 0, 0);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        Assert.assertNull("unlocked key must be dropped with the cached passphrase",
+                agentSession.getUnlockedKey(masterKeyId, authSubKeyId));
+    }
+
+    @Test
+    public void testSessionEndsWhenPassphraseCacheIsCleared() {
+        Intent clearIntent = new Intent(context, PassphraseCacheService.class);
+        clearIntent.setAction(PassphraseCacheService.ACTION_PASSPHRASE_CACHE_CLEAR);
+        passphraseCacheService.onStartCommand(clearIntent, 0, 0);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        Assert.assertNull("unlocked key must be dropped with the cached passphrase",
+                agentSession.getUnlockedKey(masterKeyId, authSubKeyId));
+    }
+
+    @Test
+    public void testSessionKeepsKeyWhenOtherPassphraseIsCleared() {
+        Intent clearIntent = new Intent(context, PassphraseCacheService.class);
+        clearIntent.setAction(PassphraseCacheService.ACTION_PASSPHRASE_CACHE_CLEAR);
+        clearIntent.putExtra(PassphraseCacheService.EXTRA_KEY_ID, masterKeyId + 1);
+        clearIntent.putExtra(PassphraseCacheService.EXTRA_SUBKEY_ID, masterKeyId + 1);
+        passphraseCacheService.onStartCommand(clearIntent, 0, 0);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        Assert.assertNotNull("unlocked key of another passphrase must be kept",
+                agentSession.getUnlockedKey(masterKeyId, authSubKeyId));
+    }
+}
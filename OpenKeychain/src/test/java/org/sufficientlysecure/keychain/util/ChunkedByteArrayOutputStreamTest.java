@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2026 The OpenKeychain Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.sufficientlysecure.keychain.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ChunkedByteArrayOutputStreamTest {
+
+    @Test
+    public void writeAcrossChunks() throws Exception {
+        byte[] data = new byte[200000];
+        new Random(0).nextBytes(data);
+
+        ChunkedByteArrayOutputStream out = new ChunkedByteArrayOutputStream();
+        out.write(data[0]);
+        out.write(data, 1, 70000);
+        out.write(data, 70001, data.length - 70001);
+
+        assertEquals(data.length, out.size());
+        assertArrayEquals(data, out.toByteArray());
+
+        ByteArrayOutputStream readBack = new ByteArrayOutputStream();
+        InputStream in = out.toInputStream();
+        byte[] buf = new byte[4096];
+        int len;
+        while ((len = in.read(buf)) > 0) {
+            readBack.write(buf, 0, len);
+        }
+        assertArrayEquals(data, readBack.toByteArray());
+    }
+
+    @Test
+    public void empty() throws Exception {
+        ChunkedByteArrayOutputStream out = new ChunkedByteArrayOutputStream();
+
+        assertEquals(0, out.toByteArray().length);
+        assertEquals(-1, out.toInputStream().read());
+    }
+
+}
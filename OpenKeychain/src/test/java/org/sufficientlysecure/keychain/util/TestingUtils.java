@@ -20,6 +20,14 @@ package org.sufficientlysecure.keychain.util;
 import java.util.Random;
 
 import junit.framework.Assert;
+import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.sufficientlysecure.keychain.operations.results.PgpEditKeyResult;
+import org.sufficientlysecure.keychain.pgp.PgpKeyOperation;
+import org.sufficientlysecure.keychain.pgp.UncachedKeyRing;
+import org.sufficientlysecure.keychain.service.ChangeUnlockParcel;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.Algorithm;
+import org.sufficientlysecure.keychain.service.SaveKeyringParcel.SubkeyAdd;
 
 
 public class TestingUtils {
@@ -60,4 +68,26 @@ public class TestingUtils {
 
     }
 
+    /** Creates a secret key ring with a single ECDSA P-256 certification key, locked with testPassphrase0. */
+    public static UncachedKeyRing createCertifyingKeyRing(String userId) {
+        return createKeyRing(userId, testPassphrase0, SubkeyAdd.createSubkeyAdd(
+                Algorithm.ECDSA, 0, SaveKeyringParcel.Curve.NIST_P256, KeyFlags.CERTIFY_OTHER, 0L));
+    }
+
+    /** Creates a secret key ring with the given keys, the first one being the master key. */
+    public static UncachedKeyRing createKeyRing(String userId, Passphrase passphrase, SubkeyAdd... keys) {
+        SaveKeyringParcel.Builder builder = SaveKeyringParcel.buildNewKeyringParcel();
+        for (SubkeyAdd key : keys) {
+            builder.addSubkeyAdd(key);
+        }
+        builder.addUserId(userId);
+        if (passphrase != null) {
+            builder.setNewUnlock(ChangeUnlockParcel.createUnLockParcelForNewKey(passphrase));
+        }
+
+        PgpEditKeyResult result = new PgpKeyOperation(null).createSecretKeyRing(builder.build());
+        Assert.assertTrue("test key creation must succeed", result.success());
+        return result.getRing();
+    }
+
 }